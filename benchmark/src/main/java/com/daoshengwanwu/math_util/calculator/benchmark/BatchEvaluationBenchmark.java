@@ -0,0 +1,79 @@
+package com.daoshengwanwu.math_util.calculator.benchmark;
+
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.daoshengwanwu.math_util.calculator.BatchEvaluator;
+import com.daoshengwanwu.math_util.calculator.CompiledExpression;
+import com.daoshengwanwu.math_util.calculator.VarAriExp;
+import com.daoshengwanwu.math_util.calculator.VariableAssistant;
+import com.daoshengwanwu.math_util.calculator.VectorBatchEvaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * 批量求值的标量实现（BatchEvaluator）与Vector API实现（VectorBatchEvaluator）的对比
+ * 结果为每行的平均耗时
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class BatchEvaluationBenchmark {
+    private static final int ROW_COUNT = 1 << 16;
+
+    @Param({"x*y+x/(y+4)-x", "sqrt(|x*y|)+x^2", "sin(x)*cos(y)+ln(|x|+1)", "x%3+y"})
+    private String mExpStr;
+
+    private CompiledExpression mCompiledExp;
+    private double[][] mColumns;
+    private double[] mOut;
+    private BatchEvaluator mScalarEvaluator;
+    private BatchEvaluator mVectorEvaluator;
+
+
+    @Setup
+    public void setUp() {
+        VariableAssistant varAssist = new VariableAssistant().addVariable("x").addVariable("y");
+        mCompiledExp = new VarAriExp(mExpStr, varAssist).getCompiledExpression();
+
+        Random random = new Random(42);
+        mColumns = new double[2][ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            mColumns[0][i] = random.nextGaussian() * 100;
+            mColumns[1][i] = random.nextGaussian() * 10;
+        }//for
+        mOut = new double[ROW_COUNT];
+
+        mScalarEvaluator = new BatchEvaluator();
+        mVectorEvaluator = new VectorBatchEvaluator();
+    }//setUp
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public double[] scalar() {
+        mScalarEvaluator.evaluate(mCompiledExp, mColumns, mOut, 0, ROW_COUNT);
+        return mOut;
+    }//scalar
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public double[] vector() {
+        mVectorEvaluator.evaluate(mCompiledExp, mColumns, mOut, 0, ROW_COUNT);
+        return mOut;
+    }//vector
+}//class_BatchEvaluationBenchmark
@@ -0,0 +1,41 @@
+package com.daoshengwanwu.math_util.calculator.benchmark;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+
+/**
+ * benchmarks.jar的入口，在JMH的命令行参数前加上"-prof gc"，使吞吐量和内存分配速率（gc.alloc.rate.norm）总是一起输出
+ * 命令行中已经指定了gc分析器，或者加上了"-noprof"时不再添加；其余参数原样交给JMH
+ */
+public final class BenchmarkMain {
+    private static final String NO_PROFILER_OPTION = "-noprof";
+
+
+    private BenchmarkMain() {
+    }//con_BenchmarkMain
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        if (!jmhArgs.remove(NO_PROFILER_OPTION) && !hasGcProfiler(jmhArgs)) {
+            jmhArgs.add(0, "-prof");
+            jmhArgs.add(1, "gc");
+        }//if
+
+        Main.main(jmhArgs.toArray(new String[0]));
+    }//main
+
+    private static boolean hasGcProfiler(List<String> args) {
+        for (int i = 0; i + 1 < args.size(); i++) {
+            if ("-prof".equals(args.get(i)) && args.get(i + 1).startsWith("gc")) {
+                return true;
+            }//if
+        }//for
+
+        return false;
+    }//hasGcProfiler
+}//class_BenchmarkMain
@@ -0,0 +1,70 @@
+package com.daoshengwanwu.math_util.calculator.benchmark;
+
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import com.daoshengwanwu.math_util.calculator.Calculator;
+import com.daoshengwanwu.math_util.calculator.CompiledExpressionCache;
+
+
+/**
+ * 自检程序：检查有界缓存确实限制了内存占用
+ * 以最多缓存64个表达式的Calculator计算50000个互不相同的表达式字符串，
+ * 比较预热后与全部计算完后（均在GC之后）已用的堆内存，增长超过上限时抛出AssertionError
+ * 运行：java -cp benchmark/target/benchmarks.jar com.daoshengwanwu.math_util.calculator.benchmark.CacheChurnCheck
+ */
+public final class CacheChurnCheck {
+    private static final int MAXIMUM_SIZE = 64;
+    private static final int WARMUP_COUNT = 5000;
+    private static final int EXPRESSION_COUNT = 50000;
+    //被淘汰的表达式都能回收时堆几乎不变；每个表达式都被留住时会增长数十MB
+    private static final long MAX_HEAP_GROWTH = 4L * 1024 * 1024;
+    private static final int GC_ROUNDS = 5;
+
+
+    private CacheChurnCheck() {
+    }//con_CacheChurnCheck
+
+    public static void main(String[] args) throws InterruptedException {
+        CompiledExpressionCache cache =
+                new CompiledExpressionCache(MAXIMUM_SIZE, CompiledExpressionCache.EvictionPolicy.W_TINY_LFU);
+        Calculator calculator = new Calculator(cache);
+
+        calculateDistinct(calculator, 0, WARMUP_COUNT);
+        long before = usedHeapAfterGc();
+        calculateDistinct(calculator, WARMUP_COUNT, EXPRESSION_COUNT);
+        long after = usedHeapAfterGc();
+
+        if (cache.size() > MAXIMUM_SIZE) {
+            throw new AssertionError("缓存中有" + cache.size() + "个表达式，超过了上限" + MAXIMUM_SIZE);
+        }//if
+        long growth = after - before;
+        if (growth > MAX_HEAP_GROWTH) {
+            throw new AssertionError("计算" + (EXPRESSION_COUNT - WARMUP_COUNT) + "个不同的表达式后堆增长了"
+                    + growth / 1024 + "KB");
+        }//if
+        System.out.println("CacheChurnCheck: 堆增长" + growth / 1024 + "KB，缓存大小" + cache.size());
+    }//main
+
+    private static void calculateDistinct(Calculator calculator, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += calculator.calculate("sin(" + i + ") * 2 + " + i);
+        }//for
+
+        if (Double.isNaN(sum)) {
+            throw new AssertionError("计算结果为NaN");
+        }//if
+    }//calculateDistinct
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int round = 0; round < GC_ROUNDS; round++) {
+            System.gc();
+            Thread.sleep(50);
+        }//for
+
+        return memory.getHeapMemoryUsage().getUsed();
+    }//usedHeapAfterGc
+}//class_CacheChurnCheck
@@ -0,0 +1,52 @@
+package com.daoshengwanwu.math_util.calculator.benchmark;
+
+
+import java.util.concurrent.TimeUnit;
+
+import com.daoshengwanwu.math_util.calculator.AriExp;
+import com.daoshengwanwu.math_util.calculator.Calculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Calculator.calculate(String)从表达式字符串到结果的完整耗时
+ * cached是同一个表达式字符串反复计算（命中编译缓存）的情形，uncached每次都重新解析和编译
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CalculateBenchmark {
+    @Param({"1+2*3", "sin(pi/6)*cos(pi/3)+lg(1000)-5!", "((1.5+2.25)*(3-0.5)/7)^2+|-(4%3)|+log(2)~(1024)+sqrt(2)*e"})
+    private String mExpStr;
+
+    private Calculator mCalculator;
+
+
+    @Setup
+    public void setUp() {
+        mCalculator = new Calculator();
+    }//setUp
+
+    @Benchmark
+    public double cached() {
+        return mCalculator.calculate(mExpStr);
+    }//cached
+
+    @Benchmark
+    public double uncached() {
+        return mCalculator.calculate(new AriExp(mExpStr));
+    }//uncached
+}//class_CalculateBenchmark
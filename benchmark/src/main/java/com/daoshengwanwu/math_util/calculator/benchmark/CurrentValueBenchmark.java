@@ -0,0 +1,71 @@
+package com.daoshengwanwu.math_util.calculator.benchmark;
+
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.daoshengwanwu.math_util.calculator.Calculator;
+import com.daoshengwanwu.math_util.calculator.VarAriExp;
+import com.daoshengwanwu.math_util.calculator.VariableAssistant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * 每次计算前重新设置变量值的Calculator.calculateCurrentValue耗时
+ * 结果为每次（设置变量值 + 计算）的平均耗时
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CurrentValueBenchmark {
+    private static final int VALUE_COUNT = 1 << 10;
+
+    @Param({"x*y+x/(y+4)-x", "sin(x)*cos(y)+ln(|x|+1)-sqrt(|y|)"})
+    private String mExpStr;
+
+    private Calculator mCalculator;
+    private VarAriExp mVarAriExp;
+    private double[] mXValues;
+    private double[] mYValues;
+
+
+    @Setup
+    public void setUp() {
+        mCalculator = new Calculator();
+        mVarAriExp = new VarAriExp(mExpStr, new VariableAssistant().addVariable("x").addVariable("y"));
+
+        Random random = new Random(42);
+        mXValues = new double[VALUE_COUNT];
+        mYValues = new double[VALUE_COUNT];
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            mXValues[i] = random.nextGaussian() * 100;
+            mYValues[i] = random.nextGaussian() * 10;
+        }//for
+    }//setUp
+
+    @Benchmark
+    @OperationsPerInvocation(VALUE_COUNT)
+    public double rebindAndCalculate() {
+        double sum = 0;
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            mVarAriExp.setVariableValue("x", mXValues[i]).setVariableValue("y", mYValues[i]);
+            sum += mCalculator.calculateCurrentValue(mVarAriExp);
+        }//for
+
+        return sum;
+    }//rebindAndCalculate
+}//class_CurrentValueBenchmark
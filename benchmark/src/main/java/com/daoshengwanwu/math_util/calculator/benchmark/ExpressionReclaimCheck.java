@@ -0,0 +1,74 @@
+package com.daoshengwanwu.math_util.calculator.benchmark;
+
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.daoshengwanwu.math_util.calculator.CompiledExpression;
+import com.daoshengwanwu.math_util.calculator.VarAriExp;
+import com.daoshengwanwu.math_util.calculator.Variable;
+import com.daoshengwanwu.math_util.calculator.VariableAssistant;
+
+
+/**
+ * 自检程序：检查求过值的CompiledExpression不再被引用后可以被垃圾回收，
+ * 即各求值方法留在线程上的状态不会反过来引用表达式
+ * 运行：java -cp benchmark/target/benchmarks.jar com.daoshengwanwu.math_util.calculator.benchmark.ExpressionReclaimCheck
+ * 有表达式没有被回收时抛出AssertionError
+ */
+public final class ExpressionReclaimCheck {
+    private static final int EXPRESSION_COUNT = 1000;
+    private static final int MAX_GC_ROUNDS = 20;
+
+
+    private ExpressionReclaimCheck() {
+    }//con_ExpressionReclaimCheck
+
+    public static void main(String[] args) throws InterruptedException {
+        List<WeakReference<CompiledExpression>> references = evaluateAndDrop();
+
+        int alive = countAlive(references);
+        for (int round = 0; round < MAX_GC_ROUNDS && alive > 0; round++) {
+            System.gc();
+            Thread.sleep(50);
+            alive = countAlive(references);
+        }//for
+
+        if (alive > 0) {
+            throw new AssertionError(alive + "/" + EXPRESSION_COUNT + "个表达式求值后没有被回收");
+        }//if
+        System.out.println("ExpressionReclaimCheck: " + EXPRESSION_COUNT + "个表达式均已被回收");
+    }//main
+
+    //以各种方式对一批表达式求值，只返回它们的弱引用
+    private static List<WeakReference<CompiledExpression>> evaluateAndDrop() {
+        List<WeakReference<CompiledExpression>> references = new ArrayList<>(EXPRESSION_COUNT);
+        double[] gradient = new double[1];
+        for (int i = 0; i < EXPRESSION_COUNT; i++) {
+            VariableAssistant varAssist = new VariableAssistant().addVariable("x");
+            VarAriExp varAriExp = new VarAriExp("x * " + i + " + sin(x)", varAssist);
+            varAriExp.setVariableValue("x", i);
+            CompiledExpression compiledExp = varAriExp.getCompiledExpression();
+
+            compiledExp.evaluate();
+            compiledExp.eval(new double[] {i});
+            compiledExp.evaluateGradient(new Variable[] {varAriExp.getVariable("x")}, gradient);
+
+            references.add(new WeakReference<>(compiledExp));
+        }//for
+
+        return references;
+    }//evaluateAndDrop
+
+    private static int countAlive(List<WeakReference<CompiledExpression>> references) {
+        int alive = 0;
+        for (WeakReference<CompiledExpression> reference : references) {
+            if (null != reference.get()) {
+                alive++;
+            }//if
+        }//for
+
+        return alive;
+    }//countAlive
+}//class_ExpressionReclaimCheck
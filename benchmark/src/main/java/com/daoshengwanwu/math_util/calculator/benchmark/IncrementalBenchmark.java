@@ -0,0 +1,98 @@
+package com.daoshengwanwu.math_util.calculator.benchmark;
+
+
+import java.util.concurrent.TimeUnit;
+
+import com.daoshengwanwu.math_util.calculator.Calculator;
+import com.daoshengwanwu.math_util.calculator.CompiledExpression;
+import com.daoshengwanwu.math_util.calculator.VarAriExp;
+import com.daoshengwanwu.math_util.calculator.VariableAssistant;
+import com.daoshengwanwu.math_util.calculator.VariableFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * 宽表达式中只有部分变量变化时的求值耗时
+ * 表达式由TERM_COUNT组项相加而成，每组项分别只依赖a、b、c、d中的一个变量，每次求值前改变前mChangedCount个变量
+ * incremental为calculateCurrentValue（增量求值），full为对变量帧完整求值
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IncrementalBenchmark {
+    private static final String[] VARIABLES = {"a", "b", "c", "d"};
+    private static final int TERM_COUNT = 16;
+
+    @Param({"1", "2", "4"})
+    private int mChangedCount;
+
+    private Calculator mCalculator;
+    private VarAriExp mVarAriExp;
+    private CompiledExpression mCompiledExp;
+    private VariableFrame mFrame;
+    private int[] mChangedSlots;
+    private double mValue = 0;
+
+
+    @Setup
+    public void setUp() {
+        VariableAssistant varAssist = new VariableAssistant();
+        StringBuilder builder = new StringBuilder();
+        for (String variable : VARIABLES) {
+            varAssist.addVariable(variable);
+            for (int i = 1; i <= TERM_COUNT; i++) {
+                if (builder.length() > 0) {
+                    builder.append('+');
+                }//if
+                builder.append("sin(").append(variable).append('*').append(i).append(")*sqrt(|")
+                        .append(variable).append('-').append(i).append("|)");
+            }//for
+        }//for
+
+        mCalculator = new Calculator();
+        mVarAriExp = new VarAriExp(builder.toString(), varAssist);
+        mCompiledExp = mVarAriExp.getCompiledExpression();
+        mFrame = mCompiledExp.newFrame();
+        mChangedSlots = new int[mChangedCount];
+        for (int i = 0; i < VARIABLES.length; i++) {
+            mVarAriExp.setVariableValue(VARIABLES[i], 1.5);
+            mFrame.setValue(VARIABLES[i], 1.5);
+            if (i < mChangedCount) {
+                mChangedSlots[i] = mCompiledExp.getVariableIndex(VARIABLES[i]);
+            }//if
+        }//for
+    }//setUp
+
+    @Benchmark
+    public double incremental() {
+        mValue += 0.001;
+        for (int i = 0; i < mChangedCount; i++) {
+            mVarAriExp.setVariableValue(VARIABLES[i], mValue);
+        }//for
+
+        return mCalculator.calculateCurrentValue(mVarAriExp);
+    }//incremental
+
+    @Benchmark
+    public double full() {
+        mValue += 0.001;
+        for (int slot : mChangedSlots) {
+            mFrame.setValue(slot, mValue);
+        }//for
+
+        return mCompiledExp.evaluate(mFrame);
+    }//full
+}//class_IncrementalBenchmark
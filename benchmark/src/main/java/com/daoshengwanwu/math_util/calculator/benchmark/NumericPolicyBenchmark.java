@@ -0,0 +1,96 @@
+package com.daoshengwanwu.math_util.calculator.benchmark;
+
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.daoshengwanwu.math_util.calculator.BatchEvaluator;
+import com.daoshengwanwu.math_util.calculator.CompiledExpression;
+import com.daoshengwanwu.math_util.calculator.NumericPolicy;
+import com.daoshengwanwu.math_util.calculator.VarAriExp;
+import com.daoshengwanwu.math_util.calculator.VariableAssistant;
+import com.daoshengwanwu.math_util.calculator.VariableFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * 各数值策略（见NumericPolicy）下单点求值与批量求值的耗时
+ * 结果为每个点的平均耗时
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NumericPolicyBenchmark {
+    private static final int ROW_COUNT = 1 << 12;
+
+    @Param({"PER_OPERATION", "FINAL_ONLY", "RAW"})
+    private String mPolicyName;
+
+    @Param({"x*y+x/(y+4)-x", "sin(x)*cos(y)+ln(|x|+1)"})
+    private String mExpStr;
+
+    private CompiledExpression mCompiledExp;
+    private VariableFrame mFrame;
+    private double[][] mColumns;
+    private double[] mOut;
+    private BatchEvaluator mEvaluator;
+
+
+    @Setup
+    public void setUp() {
+        NumericPolicy policy;
+        switch (NumericPolicy.Mode.valueOf(mPolicyName)) {
+        case FINAL_ONLY: policy = NumericPolicy.FINAL_ONLY; break;
+        case RAW: policy = NumericPolicy.RAW; break;
+        default: policy = NumericPolicy.PER_OPERATION; break;
+        }//switch
+
+        VariableAssistant varAssist = new VariableAssistant().addVariable("x").addVariable("y");
+        mCompiledExp = new VarAriExp(mExpStr, varAssist, policy).getCompiledExpression();
+        mFrame = mCompiledExp.newFrame();
+
+        Random random = new Random(42);
+        mColumns = new double[2][ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            mColumns[0][i] = random.nextGaussian() * 100;
+            mColumns[1][i] = random.nextGaussian() * 10;
+        }//for
+        mOut = new double[ROW_COUNT];
+        mEvaluator = new BatchEvaluator();
+    }//setUp
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public double evaluate() {
+        double[] values = mFrame.getValues();
+        double sum = 0;
+        for (int i = 0; i < ROW_COUNT; i++) {
+            values[0] = mColumns[0][i];
+            values[1] = mColumns[1][i];
+            sum += mCompiledExp.evaluate(mFrame);
+        }//for
+
+        return sum;
+    }//evaluate
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public double[] batch() {
+        mEvaluator.evaluate(mCompiledExp, mColumns, mOut, 0, ROW_COUNT);
+        return mOut;
+    }//batch
+}//class_NumericPolicyBenchmark
@@ -0,0 +1,101 @@
+package com.daoshengwanwu.math_util.calculator.benchmark;
+
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.daoshengwanwu.math_util.calculator.CompiledExpression;
+import com.daoshengwanwu.math_util.calculator.ExpressionFunction;
+import com.daoshengwanwu.math_util.calculator.VarAriExp;
+import com.daoshengwanwu.math_util.calculator.VariableAssistant;
+import com.daoshengwanwu.math_util.calculator.VariableFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * 每种运算符（CertainOperator中的各个运算符）单独求值的耗时
+ * 每个表达式只含一个运算符，"x"是只有读取变量和规范化的基准，各运算符的开销为其结果与基准之差
+ * 变量的取值都在运算符的定义域内：x位于(0.1, 0.9)，y位于(1.1, 3)，n为[0, 20]中的整数
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OperatorBenchmark {
+    private static final int ROW_COUNT = 1 << 10;
+
+    @Param({"x", "x+y", "x-y", "x*y", "x/y", "x%y", "x^y", "-x", "sin(x)", "cos(x)", "tan(x)",
+            "asin(x)", "acos(x)", "atan(x)", "ln(y)", "lg(y)", "sqrt(y)", "log(y)~(x)", "n!", "|x-y|"})
+    private String mExpStr;
+
+    private CompiledExpression mCompiledExp;
+    private ExpressionFunction mFunction;
+    private VariableFrame mFrame;
+    //mRows[i]为第i次求值时各槽位的值
+    private double[][] mRows;
+
+
+    @Setup
+    public void setUp() {
+        VariableAssistant varAssist = new VariableAssistant().addVariable("x").addVariable("y").addVariable("n");
+        mCompiledExp = new VarAriExp(mExpStr, varAssist).getCompiledExpression();
+        mFunction = mCompiledExp.generateFunction();
+        mFrame = mCompiledExp.newFrame();
+
+        int xSlot = mCompiledExp.getVariableIndex("x");
+        int ySlot = mCompiledExp.getVariableIndex("y");
+        int nSlot = mCompiledExp.getVariableIndex("n");
+        Random random = new Random(42);
+        mRows = new double[ROW_COUNT][mCompiledExp.getVariableCount()];
+        for (double[] row : mRows) {
+            setSlot(row, xSlot, 0.1 + random.nextDouble() * 0.8);
+            setSlot(row, ySlot, 1.1 + random.nextDouble() * 1.9);
+            setSlot(row, nSlot, random.nextInt(21));
+        }//for
+    }//setUp
+
+    //解释执行指令序列
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public double interpreter() {
+        double[] values = mFrame.getValues();
+        double sum = 0;
+        for (double[] row : mRows) {
+            System.arraycopy(row, 0, values, 0, row.length);
+            sum += mCompiledExp.evaluate(mFrame);
+        }//for
+
+        return sum;
+    }//interpreter
+
+    //执行生成的字节码
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public double bytecode() {
+        double sum = 0;
+        for (double[] row : mRows) {
+            sum += mFunction.eval(row);
+        }//for
+
+        return sum;
+    }//bytecode
+
+    private static void setSlot(double[] row, int slot, double value) {
+        if (slot >= 0) {
+            row[slot] = value;
+        }//if
+    }//setSlot
+}//class_OperatorBenchmark
@@ -0,0 +1,79 @@
+package com.daoshengwanwu.math_util.calculator.benchmark;
+
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import com.daoshengwanwu.math_util.calculator.Calculator;
+import com.daoshengwanwu.math_util.calculator.CompiledExpression;
+import com.daoshengwanwu.math_util.calculator.VarAriExp;
+import com.daoshengwanwu.math_util.calculator.VariableAssistant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * 不同长度的表达式的解析与编译耗时
+ * 表达式由mTermCount个项相加减而成，各项轮流使用TERMS中的形式，覆盖了各类运算符和括号
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+    private static final String[] TERMS = {
+            "x*1.5", "sin(y)", "|x-2|", "(x+y)/3", "y^2", "ln(x+10)", "log(2)~(y+1)", "(3!)", "(-x)%4", "sqrt(|y|)"
+    };
+
+    @Param({"4", "64", "1024"})
+    private int mTermCount;
+
+    private String mExpStr;
+    private Calculator mCalculator;
+    private VariableAssistant mVarAssist;
+
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < mTermCount; i++) {
+            if (i > 0) {
+                builder.append(i % 2 == 0 ? '+' : '-');
+            }//if
+            builder.append(TERMS[i % TERMS.length]);
+        }//for
+        mExpStr = builder.toString();
+        mCalculator = new Calculator();
+        mVarAssist = new VariableAssistant().addVariable("x").addVariable("y");
+    }//setUp
+
+    //只解析为表达式项，不编译
+    @Benchmark
+    public VarAriExp parse() {
+        return new VarAriExp(mExpStr, mVarAssist);
+    }//parse
+
+    //解析后编译为指令序列（包括常量折叠和公共子表达式消除）
+    @Benchmark
+    public CompiledExpression parseAndCompile() {
+        return new VarAriExp(mExpStr, mVarAssist).getCompiledExpression();
+    }//parseAndCompile
+
+    //不生成表达式项列表，从Reader中流式编译
+    @Benchmark
+    public CompiledExpression compileStreaming() throws IOException {
+        return mCalculator.compile(new StringReader(mExpStr), mVarAssist);
+    }//compileStreaming
+}//class_ParseBenchmark
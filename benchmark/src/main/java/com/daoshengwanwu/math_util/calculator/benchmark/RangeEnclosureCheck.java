@@ -0,0 +1,138 @@
+package com.daoshengwanwu.math_util.calculator.benchmark;
+
+
+import java.util.Random;
+
+import com.daoshengwanwu.math_util.calculator.CompiledExpression;
+import com.daoshengwanwu.math_util.calculator.Interval;
+import com.daoshengwanwu.math_util.calculator.NumericPolicy;
+import com.daoshengwanwu.math_util.calculator.VarAriExp;
+import com.daoshengwanwu.math_util.calculator.VariableAssistant;
+import com.daoshengwanwu.math_util.calculator.exception.OperandOutOfBoundsException;
+
+
+/**
+ * 自检程序：随机检查CompiledExpression.evaluateRange给出的包络确实包含区间内每一点的值
+ * 表达式覆盖所有运算符（以及公共子表达式的临时槽位），数值策略覆盖逐运算规范化（包括很小的有效数字位数，
+ * 使区间经常越过±10^n）、只规范化最终结果和完全不规范化；变量区间的数量级从10^-2到10^17随机选取
+ * 对每个随机区间取端点、随机点和其中的整数点逐点计算，检查：
+ * 1. 算出有限值的点都在[getLower(), getUpper()]之内；
+ * 2. 有点超出定义域、结果为NaN或无穷时，mayFail()为true
+ * LatticeSearch的分支定界依赖于包络的正确性，包络错误时它会漏掉最值或满足条件的点
+ * 运行：java -cp benchmark/target/benchmarks.jar com.daoshengwanwu.math_util.calculator.benchmark.RangeEnclosureCheck [种子]
+ * 有违反时抛出AssertionError
+ */
+public final class RangeEnclosureCheck {
+    private static final String[] EXP_STRS = {
+            "x + y", "x - y", "x * y", "x / y", "x % y", "x ^ y", "log(x)~(y)",
+            "-x", "sin(x)", "cos(x)", "tan(x)", "asin(x)", "acos(x)", "atan(x)",
+            "ln(x)", "lg(x)", "sqrt(x)", "x!", "|x|",
+            "x * 2", "x * 10 - y", "sin(x) * sin(x) + x", "sqrt(|x * y|) - |x - y|",
+            "(x - y)! + x ^ 2", "ln(|x| + 1) / (y - 1)"
+    };
+    private static final NumericPolicy[] POLICIES = {
+            NumericPolicy.getDefault(), NumericPolicy.perOperation(3), NumericPolicy.perOperation(6),
+            NumericPolicy.finalOnly(4), NumericPolicy.RAW
+    };
+    private static final int BOXES_PER_EXPRESSION = 300;
+    private static final int POINTS_PER_BOX = 40;
+    private static final int MAX_REPORTED = 20;
+    //区间数量级的上限（10的幂），阶乘逐项相乘，操作数很大时逐点计算太慢
+    private static final int MAX_EXPONENT = 17;
+    private static final int MAX_FACT_EXPONENT = 2;
+
+
+    private RangeEnclosureCheck() {
+    }//con_RangeEnclosureCheck
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 20261018L;
+        Random random = new Random(seed);
+
+        long checked = 0;
+        int violations = 0;
+        for (String expStr : EXP_STRS) {
+            for (NumericPolicy policy : POLICIES) {
+                VariableAssistant varAssist = new VariableAssistant().addVariable("x").addVariable("y");
+                CompiledExpression compiledExp = new VarAriExp(expStr, varAssist, policy).getCompiledExpression();
+                int[] slots = {compiledExp.getVariableIndex("x"), compiledExp.getVariableIndex("y")};
+                double[] lowers = new double[compiledExp.getVariableCount()];
+                double[] uppers = new double[lowers.length];
+                double[] vars = new double[lowers.length];
+                int maxExponent = expStr.indexOf('!') >= 0 ? MAX_FACT_EXPONENT : MAX_EXPONENT;
+
+                for (int box = 0; box < BOXES_PER_EXPRESSION; box++) {
+                    for (int slot : slots) {
+                        randomRange(random, lowers, uppers, slot, maxExponent);
+                    }//for
+                    Interval range = compiledExp.evaluateRange(lowers, uppers);
+
+                    for (int point = 0; point < POINTS_PER_BOX; point++) {
+                        for (int slot : slots) {
+                            vars[slot] = randomPoint(random, lowers[slot], uppers[slot], point);
+                        }//for
+
+                        String violation = check(compiledExp, range, vars);
+                        checked++;
+                        if (null != violation) {
+                            if (violations++ < MAX_REPORTED) {
+                                System.out.println(expStr + " " + policy + " x=" + vars[slots[0]] + " y="
+                                        + vars[slots[1]] + " 区间x=[" + lowers[slots[0]] + ", " + uppers[slots[0]]
+                                        + "] y=[" + lowers[slots[1]] + ", " + uppers[slots[1]] + "] 包络" + range
+                                        + "：" + violation);
+                            }//if
+                        }//if
+                    }//for
+                }//for
+            }//for
+        }//for
+
+        if (violations > 0) {
+            throw new AssertionError(checked + "个点中有" + violations + "个违反了包络（种子" + seed + "）");
+        }//if
+        System.out.println("RangeEnclosureCheck: " + checked + "个点都在包络之内（种子" + seed + "）");
+    }//main
+
+    //返回违反包络的描述，没有违反时返回null
+    private static String check(CompiledExpression compiledExp, Interval range, double[] vars) {
+        double value;
+        try {
+            value = compiledExp.eval(vars);
+        } catch (OperandOutOfBoundsException e) {
+            return range.mayFail() ? null : "超出定义域，但mayFail()为false";
+        }//try-catch
+
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return range.mayFail() ? null : "结果为" + value + "，但mayFail()为false";
+        }//if
+        if (value < range.getLower() || value > range.getUpper()) {
+            return "结果" + value + "不在包络之内";
+        }//if
+
+        return null;
+    }//check
+
+    //数量级随机的区间，有时退化为一个点，有时跨过0
+    private static void randomRange(Random random, double[] lowers, double[] uppers, int slot, int maxExponent) {
+        double magnitude = Math.pow(10, random.nextInt(maxExponent + 3) - 2);
+        double a = (random.nextDouble() * 2 - 1) * magnitude;
+        double b = random.nextInt(8) == 0 ? a : a + random.nextDouble() * random.nextDouble() * magnitude * 2;
+        lowers[slot] = a;
+        uppers[slot] = b;
+    }//randomRange
+
+    //依次取两个端点，之后交替取随机点和离随机点最近的整数点（不在区间内时取端点）
+    private static double randomPoint(Random random, double lower, double upper, int point) {
+        if (point < 2) {
+            return point == 0 ? lower : upper;
+        }//if
+
+        double x = lower + random.nextDouble() * (upper - lower);
+        if (point % 2 == 0) {
+            double integer = Math.rint(x);
+            return integer >= lower && integer <= upper ? integer : lower;
+        }//if
+
+        return Math.min(upper, Math.max(lower, x));
+    }//randomPoint
+}//class_RangeEnclosureCheck
@@ -0,0 +1,111 @@
+package com.daoshengwanwu.math_util.calculator.benchmark;
+
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import com.daoshengwanwu.math_util.calculator.Calculator;
+import com.daoshengwanwu.math_util.calculator.VariableAssistant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * ResultGenerator产生全部结果的耗时，结果为每次产生全部（约mPointCount个）结果的耗时
+ * resultList和nextValueLoop是逐个推进变量的原有方式，会改变各变量的当前值，因此每次调用前都重新创建ResultGenerator；
+ * 其余方式按块计算、不改变变量，共用同一个ResultGenerator
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResultGeneratorBenchmark {
+    private static final String EXP_STR = "sin(x)*cos(y)+x*y-ln(|y|+1)";
+
+    @Param({"1000", "100000"})
+    private int mPointCount;
+
+    private Calculator mCalculator;
+    private Calculator.ResultGenerator mSharedGenerator;
+    private Calculator.ResultGenerator mFreshGenerator;
+    private double[] mBuffer;
+
+
+    @Setup
+    public void setUp() {
+        mCalculator = new Calculator();
+        mSharedGenerator = mCalculator.calculate(EXP_STR, newVariableAssistant());
+        mBuffer = new double[1 << 10];
+    }//setUp
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        mFreshGenerator = mCalculator.calculate(EXP_STR, newVariableAssistant());
+    }//setUpInvocation
+
+    @Benchmark
+    public List<Double> resultList() {
+        return mFreshGenerator.getResultList();
+    }//resultList
+
+    @Benchmark
+    public double nextValueLoop() {
+        double sum = mFreshGenerator.curValue();
+        while (mFreshGenerator.hasNext()) {
+            sum += mFreshGenerator.nextValue();
+        }//while
+
+        return sum;
+    }//nextValueLoop
+
+    @Benchmark
+    public double[] resultArray() {
+        return mSharedGenerator.getResultArray();
+    }//resultArray
+
+    @Benchmark
+    public double[] resultArrayParallel() {
+        return mSharedGenerator.getResultArray(ForkJoinPool.commonPool());
+    }//resultArrayParallel
+
+    @Benchmark
+    public double resultStream() {
+        return mSharedGenerator.resultStream().sum();
+    }//resultStream
+
+    //分批取到固定大小的缓冲区中，不随结果个数分配内存
+    @Benchmark
+    public double fill() {
+        Calculator.ResultGenerator generator = mCalculator.calculate(EXP_STR, newVariableAssistant());
+        double sum = 0;
+        int count;
+        while ((count = generator.fill(mBuffer)) > 0) {
+            for (int i = 0; i < count; i++) {
+                sum += mBuffer[i];
+            }//for
+        }//while
+
+        return sum;
+    }//fill
+
+    //x和y各有mPointCount / 2 + 1个取值，结果共mPointCount + 1个
+    private VariableAssistant newVariableAssistant() {
+        int half = mPointCount / 2;
+        return new VariableAssistant()
+                .addVariable("x", 0, false, 1, false, 1.0 / half)
+                .addVariable("y", -1, false, 1, false, 2.0 / half);
+    }//newVariableAssistant
+}//class_ResultGeneratorBenchmark
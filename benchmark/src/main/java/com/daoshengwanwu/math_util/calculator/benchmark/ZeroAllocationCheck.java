@@ -0,0 +1,115 @@
+package com.daoshengwanwu.math_util.calculator.benchmark;
+
+
+import java.lang.management.ManagementFactory;
+
+import com.daoshengwanwu.math_util.calculator.Calculator;
+import com.daoshengwanwu.math_util.calculator.CompiledExpression;
+import com.daoshengwanwu.math_util.calculator.VarAriExp;
+import com.daoshengwanwu.math_util.calculator.Variable;
+import com.daoshengwanwu.math_util.calculator.VariableAssistant;
+import com.daoshengwanwu.math_util.calculator.VariableFrame;
+
+
+/**
+ * 自检程序：以ThreadMXBean.getCurrentThreadAllocatedBytes检查稳定运行时各求值路径不分配内存
+ * 每条路径先预热使JIT完成编译，再在当前线程上连续求值，前后分配的字节数之差必须为0；
+ * JIT可能在测量期间重新编译，因此每条路径最多测量若干轮，任意一轮为0即通过
+ * 运行：java -cp benchmark/target/benchmarks.jar com.daoshengwanwu.math_util.calculator.benchmark.ZeroAllocationCheck
+ * 有路径分配了内存时抛出AssertionError
+ */
+public final class ZeroAllocationCheck {
+    private static final String EXP_STR = "sin(x) * cos(y) + sqrt(x * x + y * y) - ln(|x| + 1) + 3!";
+    //calculate(String)没有变量，稳定运行时每次都命中缓存
+    private static final String CONSTANT_EXP_STR = "sqrt(2) * 3 + sin(1) / 7";
+    private static final int WARMUP_ITERATIONS = 200000;
+    private static final int MEASURED_ITERATIONS = 100000;
+    private static final int MAX_ROUNDS = 5;
+
+    private static double sSink;
+
+
+    private ZeroAllocationCheck() {
+    }//con_ZeroAllocationCheck
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            throw new AssertionError("当前JVM不支持统计线程分配的内存");
+        }//if
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        VariableAssistant varAssist = new VariableAssistant().addVariable("x").addVariable("y");
+        VarAriExp varAriExp = new VarAriExp(EXP_STR, varAssist);
+        Variable x = varAriExp.getVariable("x");
+        Variable y = varAriExp.getVariable("y");
+        x.setCurValue(0.5);
+        y.setCurValue(1.5);
+        CompiledExpression compiledExp = varAriExp.getCompiledExpression();
+        VariableFrame frame = compiledExp.newFrame();
+        int xSlot = compiledExp.getVariableIndex("x");
+        int ySlot = compiledExp.getVariableIndex("y");
+        double[] vars = new double[compiledExp.getVariableCount()];
+        Calculator calculator = new Calculator();
+
+        int failures = 0;
+        failures += check(threads, "evaluate(VariableFrame)", i -> {
+            frame.setValue(xSlot, i * 0.001);
+            frame.setValue(ySlot, 1.5);
+            return compiledExp.evaluate(frame);
+        });
+        failures += check(threads, "eval(double[])", i -> {
+            vars[xSlot] = i * 0.001;
+            vars[ySlot] = 1.5;
+            return compiledExp.eval(vars);
+        });
+        failures += check(threads, "evaluate()", i -> {
+            x.setCurValue(i * 0.001);
+            return compiledExp.evaluate();
+        });
+        failures += check(threads, "Calculator.calculateCurrentValue", i -> {
+            x.setCurValue(i * 0.001);
+            return calculator.calculateCurrentValue(varAriExp);
+        });
+        failures += check(threads, "Calculator.calculate(String)", i -> calculator.calculate(CONSTANT_EXP_STR));
+
+        if (failures > 0) {
+            throw new AssertionError(failures + "条求值路径在稳定运行时分配了内存");
+        }//if
+    }//main
+
+    private static int check(com.sun.management.ThreadMXBean threads, String name, Evaluation evaluation) {
+        run(evaluation, WARMUP_ITERATIONS);
+
+        long allocated = 0;
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            run(evaluation, MEASURED_ITERATIONS);
+            allocated = threads.getCurrentThreadAllocatedBytes() - before;
+            if (allocated == 0) {
+                break;
+            }//if
+        }//for
+
+        System.out.println(name + ": " + MEASURED_ITERATIONS + "次求值分配了" + allocated + "字节");
+
+        return allocated == 0 ? 0 : 1;
+    }//check
+
+    private static void run(Evaluation evaluation, int iterations) {
+        double sum = 0;
+        for (int i = 0; i < iterations; i++) {
+            sum += evaluation.evaluate(i);
+        }//for
+        sSink += sum;
+    }//run
+
+
+    /*
+     * 一条被测的求值路径，参数为循环的序号，用于改变变量的值
+     */
+    private interface Evaluation {
+        double evaluate(int i);
+    }//interface_Evaluation
+}//class_ZeroAllocationCheck
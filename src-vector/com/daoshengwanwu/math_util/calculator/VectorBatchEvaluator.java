@@ -0,0 +1,354 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * 使用JDK Vector API（jdk.incubator.vector）的批量求值器，每次处理DoubleVector.SPECIES_PREFERRED个通道
+ * 编译和运行时都需要添加 --add-modules jdk.incubator.vector
+ * 用法与BatchEvaluator相同，同样不是线程安全的
+ *
+ * 各指令的实现方式：
+ * + - * / 取负 绝对值 sqrt 以及有效数字规范化（ROUND）使用向量指令，结果与标量计算逐位相同；
+ * sin cos tan asin acos atan ln lg ^ 使用向量lanewise运算，Vector API保证这些运算的误差不超过1 ulp，
+ * 标量计算使用的Math中的对应方法误差同样不超过1 ulp，因此单次运算的结果与标量计算最多相差2 ulp；
+ * 每次运算之后都会规范化为15位有效数字，只有当运算结果距离规范化的舍入边界不到2 ulp时，
+ * 最终结果才会与标量计算不同，此时二者相差第15位有效数字上的1；
+ * 这个差别经过后续运算（尤其是相近的数相减）后相对误差可能被放大
+ * % ! log~ 以及每块末尾不足一个向量的部分使用标量计算
+ * 定义域检查（如sqrt的操作数不能为负）发现不满足的通道时，该指令在本块剩余的部分改用标量计算，
+ * 抛出的异常与标量计算相同
+ */
+public final class VectorBatchEvaluator extends BatchEvaluator {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LENGTH = SPECIES.length();
+
+    //ROUND指令向量化所支持的有效数字位数上限，保证各个10的幂都能精确表示
+    private static final int MAX_VECTOR_SIGNIFICANT_DIGIT = 18;
+    private static final double TWO_POW_52 = 0x1p52;
+    private static final double TWO_POW_63 = 0x1p63;
+    //POWERS_OF_TEN[k] = 10^k，k位于[0, 18]
+    private static final double[] POWERS_OF_TEN = new double[MAX_VECTOR_SIGNIFICANT_DIGIT + 1];
+
+
+    static {
+        long powerOfTen = 1;
+        for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = powerOfTen;
+            powerOfTen *= 10;
+        }//for
+    }//static
+
+
+    public VectorBatchEvaluator() {
+        this(DEFAULT_BLOCK_SIZE);
+    }//con_VectorBatchEvaluator
+
+    public VectorBatchEvaluator(int blockSize) {
+        super(blockSize);
+    }//con_VectorBatchEvaluator
+
+    /**
+     * 获取每个向量的通道数
+     * @return 通道数
+     */
+    public static int getLaneCount() {
+        return LENGTH;
+    }//getLaneCount
+
+    @Override
+    void executeBinary(int opCode, double[] x, double[] y, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i;
+
+        //每种运算放在单独的小方法中，保证JIT能把其中的向量运算全部内联并编译为向量指令
+        switch (opCode) {
+        case OpCode.ADD: i = add(x, y, bound); break;
+        case OpCode.SUB: i = sub(x, y, bound); break;
+        case OpCode.MUL: i = mul(x, y, bound); break;
+        case OpCode.DIV: i = div(x, y, bound); break;
+        case OpCode.POW: i = pow(x, y, bound); break;
+        default: i = 0; break;
+        }//switch
+
+        scalarBinary(opCode, x, y, i, length);
+    }//executeBinary
+
+    @Override
+    void executeUnary(int opCode, int arg, double[] x, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i;
+
+        switch (opCode) {
+        case OpCode.ROUND: {
+            boolean isSupported = arg >= 1 && arg <= MAX_VECTOR_SIGNIFICANT_DIGIT;
+            i = isSupported ? round(x, arg, bound) : 0;
+        } break;
+        case OpCode.NEGATE: i = negate(x, bound); break;
+        case OpCode.ABS: i = abs(x, bound); break;
+        case OpCode.SQRT: i = sqrt(x, bound); break;
+        case OpCode.SIN: i = sin(x, bound); break;
+        case OpCode.COS: i = cos(x, bound); break;
+        case OpCode.TAN: i = tan(x, bound); break;
+        case OpCode.ASIN: i = asin(x, bound); break;
+        case OpCode.ACOS: i = acos(x, bound); break;
+        case OpCode.ATAN: i = atan(x, bound); break;
+        case OpCode.LN: i = ln(x, bound); break;
+        case OpCode.LG: i = lg(x, bound); break;
+        default: i = 0; break;
+        }//switch
+
+        scalarUnary(opCode, arg, x, i, length);
+    }//executeUnary
+
+    //以下各方法对[0, bound)做对应的运算，返回已处理到的位置；需要定义域检查的运算遇到定义域之外的通道时提前停止
+
+    private static int add(double[] x, double[] y, int bound) {
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            load(x, i).add(load(y, i)).intoArray(x, i);
+        }//for
+
+        return i;
+    }//add
+
+    private static int sub(double[] x, double[] y, int bound) {
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            load(x, i).sub(load(y, i)).intoArray(x, i);
+        }//for
+
+        return i;
+    }//sub
+
+    private static int mul(double[] x, double[] y, int bound) {
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            load(x, i).mul(load(y, i)).intoArray(x, i);
+        }//for
+
+        return i;
+    }//mul
+
+    private static int div(double[] x, double[] y, int bound) {
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            load(x, i).div(load(y, i)).intoArray(x, i);
+        }//for
+
+        return i;
+    }//div
+
+    private static int pow(double[] x, double[] y, int bound) {
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            load(x, i).lanewise(VectorOperators.POW, load(y, i)).intoArray(x, i);
+        }//for
+
+        return i;
+    }//pow
+
+    private static int round(double[] x, int significantDigits, int bound) {
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            reserveSignificantDigits(load(x, i), significantDigits).intoArray(x, i);
+        }//for
+
+        return i;
+    }//round
+
+    private static int negate(double[] x, int bound) {
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            zero.sub(load(x, i)).intoArray(x, i);
+        }//for
+
+        return i;
+    }//negate
+
+    private static int abs(double[] x, int bound) {
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            load(x, i).abs().intoArray(x, i);
+        }//for
+
+        return i;
+    }//abs
+
+    private static int sqrt(double[] x, int bound) {
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            DoubleVector v = load(x, i);
+            if (v.compare(VectorOperators.LT, 0).anyTrue()) {
+                break;
+            }//if
+            v.sqrt().intoArray(x, i);
+        }//for
+
+        return i;
+    }//sqrt
+
+    private static int sin(double[] x, int bound) {
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            load(x, i).lanewise(VectorOperators.SIN).intoArray(x, i);
+        }//for
+
+        return i;
+    }//sin
+
+    private static int cos(double[] x, int bound) {
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            load(x, i).lanewise(VectorOperators.COS).intoArray(x, i);
+        }//for
+
+        return i;
+    }//cos
+
+    private static int tan(double[] x, int bound) {
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            load(x, i).lanewise(VectorOperators.TAN).intoArray(x, i);
+        }//for
+
+        return i;
+    }//tan
+
+    private static int asin(double[] x, int bound) {
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            DoubleVector v = load(x, i);
+            if (isOutOfUnitRange(v)) {
+                break;
+            }//if
+            v.lanewise(VectorOperators.ASIN).intoArray(x, i);
+        }//for
+
+        return i;
+    }//asin
+
+    private static int acos(double[] x, int bound) {
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            DoubleVector v = load(x, i);
+            if (isOutOfUnitRange(v)) {
+                break;
+            }//if
+            v.lanewise(VectorOperators.ACOS).intoArray(x, i);
+        }//for
+
+        return i;
+    }//acos
+
+    private static int atan(double[] x, int bound) {
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            DoubleVector v = load(x, i);
+            if (isOutOfUnitRange(v)) {
+                break;
+            }//if
+            v.lanewise(VectorOperators.ATAN).intoArray(x, i);
+        }//for
+
+        return i;
+    }//atan
+
+    private static int ln(double[] x, int bound) {
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            DoubleVector v = load(x, i);
+            if (v.compare(VectorOperators.LE, 0).anyTrue()) {
+                break;
+            }//if
+            v.sub(1).lanewise(VectorOperators.LOG1P).intoArray(x, i);
+        }//for
+
+        return i;
+    }//ln
+
+    private static int lg(double[] x, int bound) {
+        int i = 0;
+        for (; i < bound; i += LENGTH) {
+            DoubleVector v = load(x, i);
+            if (v.compare(VectorOperators.LE, 0).anyTrue()) {
+                break;
+            }//if
+            v.lanewise(VectorOperators.LOG10).intoArray(x, i);
+        }//for
+
+        return i;
+    }//lg
+
+    private static boolean isOutOfUnitRange(DoubleVector v) {
+        return v.compare(VectorOperators.LT, -1).or(v.compare(VectorOperators.GT, 1)).anyTrue();
+    }//isOutOfUnitRange
+
+    /*
+     * DigitUtil.reserveSignificantDigits的向量版本，对每个通道的计算步骤与标量版本逐一对应，结果逐位相同：
+     * 1. 整数位数为|(long)value|的十进制位数，这里直接求10^整数位数：
+     *    先用二分的方式找出不超过|(long)value|的最大的10的幂，再乘以10
+     * 2. 整数位数超过有效位数时先除以10的相应次幂
+     * 3. 乘以10的(有效位数 - 整数位数)次幂后按Math.round的规则舍入为整数，再除回去
+     *    Math.round的舍入通过 截断取整 -> 向下取整 -> 比较小数部分与0.5 实现
+     * double到long的类型转换在JDK 17上没有对应的向量指令，因此所有步骤都只在double上计算，
+     * 截断取整时模拟long的饱和以及NaN转换为0（见truncate方法）
+     * 用到的10的幂都不超过10^19，都能被double精确表示，它们之间的乘除结果也都是精确的
+     */
+    private static DoubleVector reserveSignificantDigits(DoubleVector value, int significantDigits) {
+        DoubleVector truncated = truncate(value);
+        DoubleVector absTruncated = truncated.abs();
+
+        DoubleVector scale = DoubleVector.broadcast(SPECIES, 1);
+        for (int bit = 16; bit > 0; bit >>= 1) {
+            DoubleVector candidate = scale.mul(POWERS_OF_TEN[bit]);
+            scale = scale.blend(candidate, absTruncated.compare(VectorOperators.GE, candidate));
+        }//for
+
+        //Math.abs(Long.MIN_VALUE)仍为负数，标量版本得到的整数位数为0
+        VectorMask<Double> hasInteger = absTruncated.compare(VectorOperators.GE, 1)
+                .andNot(truncated.compare(VectorOperators.LE, -TWO_POW_63));
+        DoubleVector integerScale = DoubleVector.broadcast(SPECIES, 1).blend(scale.mul(10), hasInteger);
+
+        double maxScale = POWERS_OF_TEN[significantDigits];
+        VectorMask<Double> isOverflow = integerScale.compare(VectorOperators.GT, maxScale);
+        if (isOverflow.anyTrue()) {
+            value = value.div(integerScale.div(maxScale), isOverflow);
+            integerScale = integerScale.min(maxScale);
+        }//if
+
+        DoubleVector auxiliary = DoubleVector.broadcast(SPECIES, maxScale).div(integerScale);
+        DoubleVector scaled = value.mul(auxiliary);
+
+        DoubleVector truncatedScaled = truncate(scaled);
+        DoubleVector floor = truncatedScaled.sub(1, scaled.compare(VectorOperators.LT, truncatedScaled));
+        DoubleVector rounded = floor.add(1, scaled.sub(floor).compare(VectorOperators.GE, 0.5));
+
+        return truncate(rounded).div(auxiliary);
+    }//reserveSignificantDigits
+
+    /*
+     * 计算(double)(long)value：
+     * 绝对值小于2^52时，加上再减去2^52得到最接近的整数，比原值大时减1即为截断后的绝对值；
+     * 绝对值不小于2^52的double本身就是整数；之后按long的范围饱和，恢复符号，NaN转换为0
+     * 0 - t恢复负号，保证截断为0时得到+0.0，与(double)(long)的结果一致
+     */
+    private static DoubleVector truncate(DoubleVector value) {
+        DoubleVector abs = value.abs();
+        DoubleVector nearest = abs.add(TWO_POW_52).sub(TWO_POW_52);
+        DoubleVector truncated = nearest.sub(1, nearest.compare(VectorOperators.GT, abs));
+        truncated = truncated.blend(abs, abs.compare(VectorOperators.GE, TWO_POW_52)).min(TWO_POW_63);
+        truncated = truncated.blend(DoubleVector.zero(SPECIES).sub(truncated), value.compare(VectorOperators.LT, 0));
+
+        return truncated.blend(0, value.test(VectorOperators.IS_NAN));
+    }//truncate
+
+    private static DoubleVector load(double[] array, int offset) {
+        return DoubleVector.fromArray(SPECIES, array, offset);
+    }//load
+}//class_VectorBatchEvaluator
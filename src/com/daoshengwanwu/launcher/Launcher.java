@@ -1,6 +1,7 @@
 package com.daoshengwanwu.launcher;
 
 
+import com.daoshengwanwu.math_util.calculator.CompiledExpression;
 import com.daoshengwanwu.math_util.calculator.VarAriExp;
 import com.daoshengwanwu.math_util.calculator.Calculator;
 import com.daoshengwanwu.math_util.calculator.Variable;
@@ -38,5 +39,12 @@ public class Launcher {
         y.setCurValue(20);
         rst = calculator.calculateCurrentValue(varAriExp);
         System.out.println(expStr + " = " + rst + " (x = " + 10 + ", y = " + 20 + ")");
+
+        //如果同一个表达式需要计算非常多次，可以先将其编译，之后每次只需修改变量的值再求值即可
+        CompiledExpression compiledExp = calculator.compile(varAriExp);
+        for (int i = 0; i < 3; i++) {
+            x.setCurValue(i);
+            System.out.println(expStr + " = " + compiledExp.evaluate() + " (x = " + i + ", y = " + 20 + ")");
+        }
     }
 }//class_Launcher
@@ -5,4 +5,8 @@ public class AriExp extends VarAriExp {
     public AriExp(String expStr) {
         super(expStr, null);
     }//con_AriExp
+
+    public AriExp(String expStr, NumericPolicy numericPolicy) {
+        super(expStr, null, numericPolicy);
+    }//con_AriExp
 }//class_AriExp
@@ -0,0 +1,344 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.daoshengwanwu.math_util.calculator.exception.VariableColumnNotSetException;
+import com.daoshengwanwu.math_util.calculator.util.DigitUtil;
+
+
+/**
+ * 批量求值器，对同一个表达式在多行输入上求值
+ * 输入按列存放，每个变量一列，columnsByVariable[i]为槽位i上变量的取值列，
+ * 槽位顺序与表达式编译时VariableAssistant中变量的顺序一致（见CompiledExpression.getVariableIndex）
+ * 求值时把行分成若干块，每块内一条指令处理完整块的数据后再执行下一条指令，
+ * 指令分派的开销由整块数据分摊，每条指令的内层循环只顺序访问几个连续的数组
+ * 一个BatchEvaluator内部保存了求值用的寄存器列，不是线程安全的，每个线程应使用各自的BatchEvaluator
+ * 子类可以重写executeBinary和executeUnary，以其他方式实现单条指令在整块数据上的计算
+ * evaluateOrNaN以NaN方式求值：操作数超出定义域的行不抛出异常，结果为NaN并记录错误码（见DomainError），
+ * 定义域之外的点很多时（如在一半没有定义的区域上求ln(x)），不必为每个点创建和捕获异常
+ */
+public class BatchEvaluator {
+    public static final int DEFAULT_BLOCK_SIZE = 512;
+
+    private final int mBlockSize;
+    private double[][] mRegisters = new double[0][];
+    private double[][] mTemps = new double[0][];
+    private int[] mErrors; //NaN方式求值时当前块各行的错误码，第一次以NaN方式求值时才创建
+
+
+    public BatchEvaluator() {
+        this(DEFAULT_BLOCK_SIZE);
+    }//con_BatchEvaluator
+
+    public BatchEvaluator(int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize必须是正数：" + blockSize);
+        }//if
+
+        mBlockSize = blockSize;
+    }//con_BatchEvaluator
+
+    /**
+     * 对第from行到第to行（不含）求值，第i行的结果写入out[i]
+     * 计算结果与逐行调用CompiledExpression.evaluate完全相同
+     * 计算出错时抛出的异常类型与逐行计算相同，但由于按块计算，出错的未必是最靠前的出错行，
+     * 出错行所在块的结果不会写入out，之前各块的结果已经写入
+     * @param compiledExp 编译后的表达式
+     * @param columnsByVariable 各变量槽位的输入列，表达式中没有用到的变量对应的列可以为null
+     * @param out 结果数组
+     * @param from 起始行（包含）
+     * @param to 结束行（不包含）
+     */
+    public void evaluate(CompiledExpression compiledExp, double[][] columnsByVariable,
+                         double[] out, int from, int to) {
+        checkColumns(compiledExp, columnsByVariable);
+        ensureCapacity(compiledExp);
+        for (int blockStart = from; blockStart < to; blockStart += mBlockSize) {
+            int length = Math.min(mBlockSize, to - blockStart);
+            executeBlock(compiledExp, columnsByVariable, blockStart, length, null);
+            System.arraycopy(mRegisters[0], 0, out, blockStart, length);
+        }//for
+    }//evaluate
+
+    /**
+     * 以NaN方式对第from行到第to行（不含）求值，第i行的结果写入out[i]
+     * 操作数超出定义域的行不抛出OperandOutOfBoundsException，结果为NaN，
+     * 该行按计算顺序第一个出错的运算对应的错误码（见DomainError）写入errorCodes[i]；
+     * 没有出错的行错误码为DomainError.NONE，结果与evaluate完全相同
+     * @param errorCodes 各行的错误码，不需要逐行的错误码时可以为null
+     * @return 所有行的错误码按位或得到的错误位图
+     */
+    public int evaluateOrNaN(CompiledExpression compiledExp, double[][] columnsByVariable,
+                             double[] out, int from, int to, int[] errorCodes) {
+        checkColumns(compiledExp, columnsByVariable);
+        ensureCapacity(compiledExp);
+        if (null == mErrors) {
+            mErrors = new int[mBlockSize];
+        }//if
+
+        int errorMask = DomainError.NONE;
+        for (int blockStart = from; blockStart < to; blockStart += mBlockSize) {
+            int length = Math.min(mBlockSize, to - blockStart);
+            Arrays.fill(mErrors, 0, length, DomainError.NONE);
+            executeBlock(compiledExp, columnsByVariable, blockStart, length, mErrors);
+            System.arraycopy(mRegisters[0], 0, out, blockStart, length);
+            errorMask |= applyErrors(mErrors, out, blockStart, length);
+            if (null != errorCodes) {
+                System.arraycopy(mErrors, 0, errorCodes, blockStart, length);
+            }//if
+        }//for
+
+        return errorMask;
+    }//evaluateOrNaN
+
+    /**
+     * 按变量名提供输入列的批量求值，见evaluate(CompiledExpression, double[][], double[], int, int)
+     * @param columnsByName 变量名到输入列的映射
+     */
+    public void evaluate(CompiledExpression compiledExp, Map<String, double[]> columnsByName,
+                         double[] out, int from, int to) {
+        double[][] columnsByVariable = new double[compiledExp.getVariableCount()][];
+        for (int i = 0; i < columnsByVariable.length; i++) {
+            columnsByVariable[i] = columnsByName.get(compiledExp.getVariable(i).getFlagStr());
+        }//for
+
+        evaluate(compiledExp, columnsByVariable, out, from, to);
+    }//evaluate
+
+    public int getBlockSize() {
+        return mBlockSize;
+    }//getBlockSize
+
+    private static void checkColumns(CompiledExpression compiledExp, double[][] columnsByVariable) {
+        for (int i = 0; i < compiledExp.getVariableCount(); i++) {
+            if (compiledExp.isVariableReferenced(i) &&
+                    (i >= columnsByVariable.length || null == columnsByVariable[i])) {
+                throw new VariableColumnNotSetException(compiledExp.getVariable(i).getFlagStr());
+            }//if
+        }//for
+    }//checkColumns
+
+    private void ensureCapacity(CompiledExpression compiledExp) {
+        if (mRegisters.length < compiledExp.getMaxDepth()) {
+            mRegisters = newColumns(mRegisters, compiledExp.getMaxDepth());
+        }//if
+        if (mTemps.length < compiledExp.getTempCount()) {
+            mTemps = newColumns(mTemps, compiledExp.getTempCount());
+        }//if
+    }//ensureCapacity
+
+    private double[][] newColumns(double[][] oldColumns, int count) {
+        double[][] columns = Arrays.copyOf(oldColumns, count);
+        for (int i = oldColumns.length; i < count; i++) {
+            columns[i] = new double[mBlockSize];
+        }//for
+
+        return columns;
+    }//newColumns
+
+    //在寄存器列上逐条执行指令，每条指令处理整块的length行，执行完毕后结果位于mRegisters[0]
+    //errors不为null时以NaN方式执行有定义域限制的运算，各行的错误码记入errors
+    private void executeBlock(CompiledExpression compiledExp, double[][] columns, int rowStart, int length,
+                              int[] errors) {
+        double[][] registers = mRegisters;
+        double[][] temps = mTemps;
+        double[] constants = compiledExp.getConstants();
+        int sp = 0;
+
+        for (int instruction : compiledExp.getCode()) {
+            int opCode = OpCode.opCode(instruction);
+            int arg = OpCode.arg(instruction);
+
+            switch (opCode) {
+            case OpCode.CONST: Arrays.fill(registers[sp++], 0, length, constants[arg]); continue;
+            case OpCode.LOAD_VAR: System.arraycopy(columns[arg], rowStart, registers[sp++], 0, length); continue;
+            case OpCode.LOAD_TEMP: System.arraycopy(temps[arg], 0, registers[sp++], 0, length); continue;
+            case OpCode.STORE_TEMP: System.arraycopy(registers[sp - 1], 0, temps[arg], 0, length); continue;
+            default: break;
+            }//switch
+
+            if (null != errors && OperatorFunctions.hasDomain(opCode)) {
+                if (OpCode.getDimension(opCode) == 2) {
+                    sp--;
+                    nanBinary(opCode, registers[sp - 1], registers[sp], errors, 0, length);
+                } else {
+                    nanUnary(opCode, arg, registers[sp - 1], errors, 0, length);
+                }//if-else
+            } else if (OpCode.getDimension(opCode) == 2) {
+                sp--;
+                executeBinary(opCode, registers[sp - 1], registers[sp], length);
+            } else {
+                executeUnary(opCode, arg, registers[sp - 1], length);
+            }//if-else
+        }//for
+    }//executeBlock
+
+    //计算x[i] = x[i] op y[i]，i位于[0, length)
+    void executeBinary(int opCode, double[] x, double[] y, int length) {
+        scalarBinary(opCode, x, y, 0, length);
+    }//executeBinary
+
+    //计算x[i] = op(x[i])，i位于[0, length)
+    void executeUnary(int opCode, int arg, double[] x, int length) {
+        scalarUnary(opCode, arg, x, 0, length);
+    }//executeUnary
+
+    //以NaN方式逐个元素计算[from, to)区间上有定义域限制的运算：超出定义域的元素结果为NaN，
+    //errors中该位置还没有错误码时记下这个运算的错误码，已有的错误码是计算顺序上更早出错的运算，保持不变
+    static void nanBinary(int opCode, double[] x, double[] y, int[] errors, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int error = OperatorFunctions.domainError(opCode, x[i], y[i]);
+            if (error == DomainError.NONE) {
+                x[i] = OperatorFunctions.operate(opCode, 0, x[i], y[i]);
+            } else {
+                x[i] = Double.NaN;
+                if (errors[i] == DomainError.NONE) {
+                    errors[i] = error;
+                }//if
+            }//if-else
+        }//for
+    }//nanBinary
+
+    static void nanUnary(int opCode, int arg, double[] x, int[] errors, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int error = OperatorFunctions.domainError(opCode, x[i], 0);
+            if (error == DomainError.NONE) {
+                x[i] = OperatorFunctions.operate(opCode, arg, x[i], 0);
+            } else {
+                x[i] = Double.NaN;
+                if (errors[i] == DomainError.NONE) {
+                    errors[i] = error;
+                }//if
+            }//if-else
+        }//for
+    }//nanUnary
+
+    //出错的行在之后的运算中可能得到不是NaN的值（如规范化有效数字、NaN^0），最后统一置为NaN
+    //返回errors[0, length)的按位或，结果位于out[offset, offset + length)
+    static int applyErrors(int[] errors, double[] out, int offset, int length) {
+        int errorMask = DomainError.NONE;
+        for (int i = 0; i < length; i++) {
+            if (errors[i] != DomainError.NONE) {
+                out[offset + i] = Double.NaN;
+                errorMask |= errors[i];
+            }//if
+        }//for
+
+        return errorMask;
+    }//applyErrors
+
+    //逐个元素计算[from, to)区间
+    static void scalarBinary(int opCode, double[] x, double[] y, int from, int to) {
+        switch (opCode) {
+        case OpCode.ADD: {
+            for (int i = from; i < to; i++) {
+                x[i] += y[i];
+            }//for
+        } break;
+        case OpCode.SUB: {
+            for (int i = from; i < to; i++) {
+                x[i] -= y[i];
+            }//for
+        } break;
+        case OpCode.MUL: {
+            for (int i = from; i < to; i++) {
+                x[i] *= y[i];
+            }//for
+        } break;
+        case OpCode.DIV: {
+            for (int i = from; i < to; i++) {
+                x[i] /= y[i];
+            }//for
+        } break;
+        case OpCode.MOD: {
+            for (int i = from; i < to; i++) {
+                x[i] = OperatorFunctions.mod(x[i], y[i]);
+            }//for
+        } break;
+        case OpCode.POW: {
+            for (int i = from; i < to; i++) {
+                x[i] = OperatorFunctions.pow(x[i], y[i]);
+            }//for
+        } break;
+        case OpCode.LOG: {
+            for (int i = from; i < to; i++) {
+                x[i] = OperatorFunctions.log(x[i], y[i]);
+            }//for
+        } break;
+        default: break;
+        }//switch
+    }//scalarBinary
+
+    static void scalarUnary(int opCode, int arg, double[] x, int from, int to) {
+        switch (opCode) {
+        case OpCode.ROUND: {
+            for (int i = from; i < to; i++) {
+                x[i] = DigitUtil.reserveSignificantDigits(x[i], arg);
+            }//for
+        } break;
+        case OpCode.NEGATE: {
+            for (int i = from; i < to; i++) {
+                x[i] = OperatorFunctions.negate(x[i]);
+            }//for
+        } break;
+        case OpCode.SIN: {
+            for (int i = from; i < to; i++) {
+                x[i] = Math.sin(x[i]);
+            }//for
+        } break;
+        case OpCode.COS: {
+            for (int i = from; i < to; i++) {
+                x[i] = Math.cos(x[i]);
+            }//for
+        } break;
+        case OpCode.TAN: {
+            for (int i = from; i < to; i++) {
+                x[i] = Math.tan(x[i]);
+            }//for
+        } break;
+        case OpCode.ASIN: {
+            for (int i = from; i < to; i++) {
+                x[i] = OperatorFunctions.asin(x[i]);
+            }//for
+        } break;
+        case OpCode.ACOS: {
+            for (int i = from; i < to; i++) {
+                x[i] = OperatorFunctions.acos(x[i]);
+            }//for
+        } break;
+        case OpCode.ATAN: {
+            for (int i = from; i < to; i++) {
+                x[i] = OperatorFunctions.atan(x[i]);
+            }//for
+        } break;
+        case OpCode.LN: {
+            for (int i = from; i < to; i++) {
+                x[i] = OperatorFunctions.ln(x[i]);
+            }//for
+        } break;
+        case OpCode.LG: {
+            for (int i = from; i < to; i++) {
+                x[i] = OperatorFunctions.lg(x[i]);
+            }//for
+        } break;
+        case OpCode.SQRT: {
+            for (int i = from; i < to; i++) {
+                x[i] = OperatorFunctions.sqrt(x[i]);
+            }//for
+        } break;
+        case OpCode.FACT: {
+            for (int i = from; i < to; i++) {
+                x[i] = OperatorFunctions.fact(x[i]);
+            }//for
+        } break;
+        case OpCode.ABS: {
+            for (int i = from; i < to; i++) {
+                x[i] = Math.abs(x[i]);
+            }//for
+        } break;
+        default: break;
+        }//switch
+    }//scalarUnary
+}//class_BatchEvaluator
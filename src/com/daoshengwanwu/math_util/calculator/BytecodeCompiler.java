@@ -0,0 +1,387 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.daoshengwanwu.math_util.calculator.exception.ExpressionTooLargeException;
+
+
+/*
+ * 字节码编译器
+ * 将CompiledExpression的后缀指令序列翻译为一个隐藏类的 double eval(double[] vars) 方法：
+ * 后缀指令直接对应JVM操作数栈上的操作，加减乘除对应dadd等指令，sin、cos等直接调用Math中的方法，
+ * 带有定义域检查的运算调用OperatorFunctions，因此与CertainOperator的语义完全相同
+ * 生成的方法中没有任何分支，整个方法体足够小，C2可以将其整体内联到调用处
+ * 隐藏类不会被类加载器强引用，不再被引用时即可被卸载，大量编译用户表达式不会造成Metaspace泄漏
+ */
+final class BytecodeCompiler {
+    private static final String CLASS_NAME = "com/daoshengwanwu/math_util/calculator/GeneratedExpression";
+    private static final String OBJECT_CLASS = "java/lang/Object";
+    private static final String MATH_CLASS = "java/lang/Math";
+    private static final String FUNCTIONS_CLASS = "com/daoshengwanwu/math_util/calculator/OperatorFunctions";
+    private static final String DIGIT_UTIL_CLASS = "com/daoshengwanwu/math_util/calculator/util/DigitUtil";
+    private static final String FUNCTION_INTERFACE = "com/daoshengwanwu/math_util/calculator/ExpressionFunction";
+
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    //用到的JVM指令
+    private static final int ICONST_0 = 0x03;
+    private static final int DCONST_0 = 0x0e;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int DLOAD = 0x18;
+    private static final int DSTORE = 0x39;
+    private static final int DALOAD = 0x31;
+    private static final int DUP2 = 0x5c;
+    private static final int POP2 = 0x58;
+    private static final int DUP2_X2 = 0x5e;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DDIV = 0x6f;
+    private static final int DREM = 0x73;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int WIDE = 0xc4;
+
+    //eval方法的局部变量：0为this，1为vars，临时槽位从2开始，每个double占两个位置
+    private static final int FIRST_TEMP_LOCAL = 2;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int CLASS_FILE_VERSION = 52;
+
+    private static final MethodHandles.Lookup sLookup = MethodHandles.lookup();
+
+
+    private BytecodeCompiler() {
+    }//con_BytecodeCompiler
+
+    static ExpressionFunction generate(CompiledExpression compiledExp) {
+        byte[] classBytes = generateClassBytes(compiledExp);
+
+        try {
+            //不指定ClassOption.STRONG，隐藏类与定义它的类加载器之间只有弱关联，可以被单独卸载
+            MethodHandles.Lookup hiddenLookup = sLookup.defineHiddenClass(classBytes, true);
+            return (ExpressionFunction)hiddenLookup.findConstructor(
+                    hiddenLookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }//try-catch
+    }//generate
+
+    static byte[] generateClassBytes(CompiledExpression compiledExp) {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef(OBJECT_CLASS);
+        int functionInterface = pool.classRef(FUNCTION_INTERFACE);
+        int codeAttrName = pool.utf8("Code");
+
+        byte[] initCode = generateInitCode(pool);
+        byte[] evalCode = generateEvalCode(compiledExp, pool);
+        if (evalCode.length > MAX_CODE_LENGTH) {
+            throw new ExpressionTooLargeException(compiledExp.toString(), "JVM单个方法字节码长度");
+        }//if
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(evalCode.length + 256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            int initName = pool.utf8("<init>");
+            int initDesc = pool.utf8("()V");
+            int evalName = pool.utf8("eval");
+            int evalDesc = pool.utf8("([D)D");
+
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_FILE_VERSION);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1); //interfaces_count
+            out.writeShort(functionInterface);
+            out.writeShort(0); //fields_count
+            out.writeShort(2); //methods_count
+            writeMethod(out, initName, initDesc, codeAttrName, 1, 1, initCode);
+            writeMethod(out, evalName, evalDesc, codeAttrName, 2 * compiledExp.getMaxDepth() + 4,
+                    FIRST_TEMP_LOCAL + 2 * compiledExp.getTempCount(), evalCode);
+            out.writeShort(0); //attributes_count
+
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }//try-catch
+    }//generateClassBytes
+
+    private static byte[] generateInitCode(ConstantPool pool) {
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        code.write(ALOAD_0);
+        writeInstruction(code, INVOKESPECIAL, pool.methodRef(OBJECT_CLASS, "<init>", "()V"));
+        code.write(RETURN);
+
+        return code.toByteArray();
+    }//generateInitCode
+
+    private static byte[] generateEvalCode(CompiledExpression compiledExp, ConstantPool pool) {
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        double[] constants = compiledExp.getConstants();
+
+        for (int instruction : compiledExp.getCode()) {
+            int arg = OpCode.arg(instruction);
+
+            switch (OpCode.opCode(instruction)) {
+            case OpCode.CONST: writeInstruction(code, LDC2_W, pool.doubleConst(constants[arg])); break;
+            case OpCode.LOAD_VAR: {
+                code.write(ALOAD_1);
+                writeIntConst(code, pool, arg);
+                code.write(DALOAD);
+            } break;
+            case OpCode.LOAD_TEMP: writeLocalInstruction(code, DLOAD, FIRST_TEMP_LOCAL + 2 * arg); break;
+            case OpCode.STORE_TEMP: {
+                code.write(DUP2);
+                writeLocalInstruction(code, DSTORE, FIRST_TEMP_LOCAL + 2 * arg);
+            } break;
+            case OpCode.ROUND: {
+                writeIntConst(code, pool, arg);
+                writeInvokeStatic(code, pool, DIGIT_UTIL_CLASS, "reserveSignificantDigits", "(DI)D");
+            } break;
+            case OpCode.ADD: code.write(DADD); break;
+            case OpCode.SUB: code.write(DSUB); break;
+            case OpCode.MUL: code.write(DMUL); break;
+            case OpCode.DIV: code.write(DDIV); break;
+            case OpCode.MOD: code.write(DREM); break;
+            case OpCode.POW: writeInvokeStatic(code, pool, MATH_CLASS, "pow", "(DD)D"); break;
+            case OpCode.LOG: writeInvokeStatic(code, pool, FUNCTIONS_CLASS, "log", "(DD)D"); break;
+            case OpCode.NEGATE: {
+                //与OperatorFunctions.negate一致计算 0 - x（而不是dneg），保证 -0 的结果相同
+                code.write(DCONST_0);
+                code.write(DUP2_X2);
+                code.write(POP2);
+                code.write(DSUB);
+            } break;
+            case OpCode.SIN: writeInvokeStatic(code, pool, MATH_CLASS, "sin", "(D)D"); break;
+            case OpCode.COS: writeInvokeStatic(code, pool, MATH_CLASS, "cos", "(D)D"); break;
+            case OpCode.TAN: writeInvokeStatic(code, pool, MATH_CLASS, "tan", "(D)D"); break;
+            case OpCode.ASIN: writeInvokeStatic(code, pool, FUNCTIONS_CLASS, "asin", "(D)D"); break;
+            case OpCode.ACOS: writeInvokeStatic(code, pool, FUNCTIONS_CLASS, "acos", "(D)D"); break;
+            case OpCode.ATAN: writeInvokeStatic(code, pool, FUNCTIONS_CLASS, "atan", "(D)D"); break;
+            case OpCode.LN: writeInvokeStatic(code, pool, FUNCTIONS_CLASS, "ln", "(D)D"); break;
+            case OpCode.LG: writeInvokeStatic(code, pool, FUNCTIONS_CLASS, "lg", "(D)D"); break;
+            case OpCode.SQRT: writeInvokeStatic(code, pool, FUNCTIONS_CLASS, "sqrt", "(D)D"); break;
+            case OpCode.FACT: writeInvokeStatic(code, pool, FUNCTIONS_CLASS, "fact", "(D)D"); break;
+            case OpCode.ABS: writeInvokeStatic(code, pool, MATH_CLASS, "abs", "(D)D"); break;
+            default: break;
+            }//switch
+        }//for
+        code.write(DRETURN);
+
+        return code.toByteArray();
+    }//generateEvalCode
+
+    private static void writeIntConst(ByteArrayOutputStream code, ConstantPool pool, int value) {
+        if (value <= 5) {
+            code.write(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            code.write(BIPUSH);
+            code.write(value);
+        } else if (value <= Short.MAX_VALUE) {
+            writeInstruction(code, SIPUSH, value);
+        } else {
+            writeInstruction(code, LDC_W, pool.intConst(value));
+        }//if-else
+    }//writeIntConst
+
+    private static void writeLocalInstruction(ByteArrayOutputStream code, int opCode, int local) {
+        if (local <= 0xff) {
+            code.write(opCode);
+            code.write(local);
+        } else {
+            code.write(WIDE);
+            writeInstruction(code, opCode, local);
+        }//if-else
+    }//writeLocalInstruction
+
+    private static void writeInvokeStatic(ByteArrayOutputStream code, ConstantPool pool,
+                                          String owner, String name, String desc) {
+        writeInstruction(code, INVOKESTATIC, pool.methodRef(owner, name, desc));
+    }//writeInvokeStatic
+
+    private static void writeInstruction(ByteArrayOutputStream code, int opCode, int u2) {
+        code.write(opCode);
+        code.write(u2 >>> 8);
+        code.write(u2);
+    }//writeInstruction
+
+    private static void writeMethod(DataOutputStream out, int name, int desc, int codeAttrName,
+                                    int maxStack, int maxLocals, byte[] code) throws IOException {
+
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(name);
+        out.writeShort(desc);
+        out.writeShort(1); //attributes_count
+        out.writeShort(codeAttrName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); //exception_table_length
+        out.writeShort(0); //attributes_count
+    }//writeMethod
+
+
+    /*
+     * class文件的常量池，相同的常量只会写入一次
+     */
+    private static class ConstantPool {
+        private static final int CONSTANT_UTF8 = 1;
+        private static final int CONSTANT_INTEGER = 3;
+        private static final int CONSTANT_DOUBLE = 6;
+        private static final int CONSTANT_CLASS = 7;
+        private static final int CONSTANT_METHOD_REF = 10;
+        private static final int CONSTANT_NAME_AND_TYPE = 12;
+        private static final int MAX_POOL_SIZE = 65535;
+
+        private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+        private final DataOutputStream mOut = new DataOutputStream(mBytes);
+        private final Map<String, Integer> mEntries = new HashMap<>();
+        private int mNextIndex = 1;
+
+
+        int utf8(String value) {
+            Integer index = mEntries.get("U" + value);
+            if (null == index) {
+                index = add("U" + value, 1);
+                write(CONSTANT_UTF8);
+                writeUtf(value);
+            }//if
+
+            return index;
+        }//utf8
+
+        int classRef(String internalName) {
+            Integer index = mEntries.get("C" + internalName);
+            if (null == index) {
+                int name = utf8(internalName);
+                index = add("C" + internalName, 1);
+                write(CONSTANT_CLASS);
+                writeShort(name);
+            }//if
+
+            return index;
+        }//classRef
+
+        int methodRef(String owner, String name, String desc) {
+            String key = "M" + owner + "." + name + desc;
+            Integer index = mEntries.get(key);
+            if (null == index) {
+                int ownerIndex = classRef(owner);
+                int nameIndex = utf8(name);
+                int descIndex = utf8(desc);
+                int nameAndType = add("N" + name + desc, 1);
+                write(CONSTANT_NAME_AND_TYPE);
+                writeShort(nameIndex);
+                writeShort(descIndex);
+
+                index = add(key, 1);
+                write(CONSTANT_METHOD_REF);
+                writeShort(ownerIndex);
+                writeShort(nameAndType);
+            }//if
+
+            return index;
+        }//methodRef
+
+        int intConst(int value) {
+            Integer index = mEntries.get("I" + value);
+            if (null == index) {
+                index = add("I" + value, 1);
+                write(CONSTANT_INTEGER);
+                writeInt(value);
+            }//if
+
+            return index;
+        }//intConst
+
+        int doubleConst(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            Integer index = mEntries.get("D" + bits);
+            if (null == index) {
+                index = add("D" + bits, 2); //double常量占用两个常量池位置
+                write(CONSTANT_DOUBLE);
+                writeLong(bits);
+            }//if
+
+            return index;
+        }//doubleConst
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeShort(mNextIndex);
+            mBytes.writeTo(out);
+        }//writeTo
+
+        private int add(String key, int slots) {
+            if (mNextIndex + slots > MAX_POOL_SIZE) {
+                throw new ExpressionTooLargeException("", "class文件常量池大小");
+            }//if
+
+            int index = mNextIndex;
+            mNextIndex += slots;
+            mEntries.put(key, index);
+
+            return index;
+        }//add
+
+        private void write(int tag) {
+            mBytes.write(tag);
+        }//write
+
+        private void writeShort(int value) {
+            try {
+                mOut.writeShort(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }//try-catch
+        }//writeShort
+
+        private void writeInt(int value) {
+            try {
+                mOut.writeInt(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }//try-catch
+        }//writeInt
+
+        private void writeLong(long value) {
+            try {
+                mOut.writeLong(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }//try-catch
+        }//writeLong
+
+        private void writeUtf(String value) {
+            try {
+                mOut.writeUTF(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }//try-catch
+        }//writeUtf
+    }//class_ConstantPool
+}//class_BytecodeCompiler
@@ -1,31 +1,74 @@
 package com.daoshengwanwu.math_util.calculator;
 
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
 
-import com.daoshengwanwu.math_util.calculator.CertainOperator.CertainOperatorType;
-import com.daoshengwanwu.math_util.calculator.exception.OperatorNotMatchException;
-import com.daoshengwanwu.math_util.calculator.exception.ResultErrorException;
-import com.daoshengwanwu.math_util.calculator.util.Stack;
+import com.daoshengwanwu.math_util.calculator.exception.SweepTooLargeException;
 
 
 /**
  * 计算器类，外部通过该类来解析计算算术表达式
+ * Calculator不保存任何计算过程中的状态，同一个Calculator可以被多个线程同时使用
+ * 由Calculator解析编译的表达式使用Calculator的数值策略（见NumericPolicy），直接传入的VarAriExp使用其自身的数值策略
  */
 public class Calculator {
-    private Stack<Operand> mOperandStack = new Stack<>();
-    private Stack<CertainOperator> mOperatorStack = new Stack<>();
-    
-    
+    private static final ThreadLocal<BatchEvaluator> sBatchEvaluator = ThreadLocal.withInitial(BatchEvaluator::new);
+    private static final EquationSolver sEquationSolver = new EquationSolver();
+    private static final Integrator sIntegrator = new Integrator();
+
+    private final CompiledExpressionCache mCache;
+    private final NumericPolicy mNumericPolicy;
+
+
+    /**
+     * 使用所有Calculator共享的默认缓存（见CompiledExpressionCache.getDefault()）和默认的数值策略
+     */
+    public Calculator() {
+        this(CompiledExpressionCache.getDefault());
+    }//con_Calculator
+
+    /**
+     * 使用指定的数值策略，默认策略之外的策略使用本Calculator独有的缓存
+     * @param numericPolicy 本Calculator解析编译表达式时使用的数值策略
+     */
+    public Calculator(NumericPolicy numericPolicy) {
+        this(numericPolicy.equals(NumericPolicy.getDefault()) ? CompiledExpressionCache.getDefault() :
+                new CompiledExpressionCache(CompiledExpressionCache.DEFAULT_MAXIMUM_SIZE,
+                        CompiledExpressionCache.EvictionPolicy.W_TINY_LFU, numericPolicy));
+    }//con_Calculator
+
+    /**
+     * 使用指定的缓存，数值策略与缓存的数值策略相同
+     * @param cache 编译结果的缓存
+     */
+    public Calculator(CompiledExpressionCache cache) {
+        mCache = cache;
+        mNumericPolicy = cache.getNumericPolicy();
+    }//con_Calculator
+
+    /**
+     * 计算不含变量的表达式，相同的表达式字符串只在第一次计算时解析编译，之后直接从缓存中取出编译结果
+     * @param expStr 表达式字符串
+     * @return 计算结果
+     */
     public double calculate(String expStr) {
-        AriExp ariExp = new AriExp(expStr);
-        
-        return calculate(ariExp);
+        return mCache.get(expStr).evaluate();
     }//calculate
     
     public ResultGenerator calculate(String expStr, VariableAssistant varAssist) {
-        VarAriExp varAriExp = new VarAriExp(expStr, varAssist);
+        VarAriExp varAriExp = new VarAriExp(expStr, varAssist, mNumericPolicy);
         
         return calculate(varAriExp);
     }//calculate
@@ -38,129 +81,253 @@ public class Calculator {
         return new ResultGenerator(varAriExp, this);
     }//calculate
 
+    /**
+     * 将表达式编译为一段后缀指令序列，编译结果可以反复求值，
+     * 适用于同一个表达式需要在不同变量值下频繁计算的场景
+     * 编译时会折叠常量子表达式并消除公共子表达式，常量子表达式的计算错误（如log(1)~(5)）会在编译时抛出
+     * @param varAriExp 要编译的表达式
+     * @return 编译后的表达式
+     */
+    public CompiledExpression compile(VarAriExp varAriExp) {
+        return varAriExp.getCompiledExpression();
+    }//compile
+
+    /**
+     * 编译供NaN方式求值（calculateOrNaN、sweepOrNaN等）使用的表达式，
+     * 常量子表达式的计算错误不在编译时抛出，以NaN方式求值时得到NaN和错误码
+     * @param varAriExp 要编译的表达式
+     * @return 编译后的表达式
+     */
+    public CompiledExpression compileOrNaN(VarAriExp varAriExp) {
+        return varAriExp.getCompiledExpressionOrNaN();
+    }//compileOrNaN
+
+    /**
+     * 编译表达式字符串，每次调用都会重新解析，返回的编译结果中的变量归调用者独占，
+     * 因此不经过缓存；只需要通过变量帧求值时可以使用getCache().get(expStr)
+     * @param expStr 表达式字符串
+     * @return 编译后的表达式
+     */
+    public CompiledExpression compile(String expStr) {
+        return compile(new VarAriExp(expStr, null, mNumericPolicy));
+    }//compile
+
+    /**
+     * 从Reader中流式读取并编译表达式，适用于机器生成的超长表达式
+     * 编译过程中只保留固定大小的缓冲区，不保留表达式原文，也不生成中间的表达式项列表，
+     * 编译结果的toString()只包含表达式开头的一部分
+     * @param reader 表达式的字符输入，读取完毕后不会被关闭
+     * @param varAssist 变量助手，可以为null
+     * @return 编译后的表达式
+     * @throws IOException 读取出错时
+     */
+    public CompiledExpression compile(Reader reader, VariableAssistant varAssist) throws IOException {
+        if (null == varAssist) {
+            varAssist = new VariableAssistant();
+        }//if
+
+        return ExpressionParser.compile(reader, varAssist, mNumericPolicy);
+    }//compile
+
+    public CompiledExpression compile(Reader reader) throws IOException {
+        return compile(reader, null);
+    }//compile
+
+    /**
+     * 从字节通道中流式读取并编译表达式，字节按charset解码
+     * @param channel 表达式的字节输入，读取完毕后不会被关闭
+     * @param charset 字符集
+     * @param varAssist 变量助手，可以为null
+     * @return 编译后的表达式
+     * @throws IOException 读取出错时
+     */
+    public CompiledExpression compile(ReadableByteChannel channel, Charset charset,
+                                      VariableAssistant varAssist) throws IOException {
+        return compile(Channels.newReader(channel, charset.newDecoder(), -1), varAssist);
+    }//compile
+
     /**
      * 计算出表达式的当前值，当前值就是指，当我在解析表达式的时候如果遇到变量类型的item
      * 则直接将该变量item.curValue()压入栈中
+     * 表达式只在第一次计算时按其自身的数值策略编译一次，之后直接执行编译结果
      * @param varAriExp 要计算的表达式
      * @return 计算结果
      */
     public double calculateCurrentValue(VarAriExp varAriExp) {
-        //每次计算前清空运算符栈和操作数栈
-        mOperandStack.clear();
-        mOperatorStack.clear();
-        
-        double curValue;
-        int curIndex = 0; //当前在处理的item的索引，从0开始
-        int curLeftPrior;
-        int topRightPrior;
-        ExpItem curItem;
-        CertainOperator curOperator;
-        CertainOperator topOperator;
-
-        List<ExpItem> expItems = varAriExp.getExpItemList();
-        int expItemsSize = expItems.size();
-        while (curIndex < expItemsSize) {
-            curItem = expItems.get(curIndex);
-            
-            switch (curItem.getItemType()) {
-            case OPERAND: {
-                mOperandStack.push((Operand)curItem);
-                curIndex++;
-            } break;
-            case VARIABLE: {
-                curValue = ((Variable)curItem).curValue();
-                mOperandStack.push(Operand.getOperand(curValue));
-                curIndex++;
-            } break;
-            case OPERATOR: {
-                curOperator = (CertainOperator)curItem;
-                switch (curOperator.getCertainOperatorType()) {
-                case NORMAL: {
-                    if (curOperator.isLeftDirPriorExist()) {
-                        topOperator = mOperatorStack.getTop();
-                        switch (topOperator.getCertainOperatorType()) {
-                        case NORMAL: 
-                        case CLOSE: { //如果发现CLOSE性质
-                            if (topOperator.isRightDirPriorExist()) {
-                                curLeftPrior = curOperator.getLeftDirPriority();
-                                topRightPrior = topOperator.getRightDirPriority();
-                                
-                                if (curLeftPrior <= topRightPrior) {
-                                    makeOperate();
-                                } else {
-                                    mOperatorStack.push(curOperator);
-                                    curIndex++;
-                                }//if-else
-                            } else {
-                                makeOperate();
-                            }//if-else
-                        } break;
-                        case OPEN: {
-                            mOperatorStack.push(curOperator);
-                            curIndex++;
-                        } break;
-                        }//switch-case
-                    } else {
-                        mOperatorStack.push(curOperator);
-                        curIndex++;
-                    }//if-else
-                } break;
-                case OPEN: {
-                    //如果当前运算符是OPEN性质的，直接入栈
-                    mOperatorStack.push(curOperator);
-                    curIndex++;
-                } break;
-                case CLOSE: {
-                    topOperator = mOperatorStack.getTop();
-                    makeOperate();
-
-                    if (topOperator.getCertainOperatorType() == CertainOperatorType.OPEN) {
-                        if (topOperator.getId() == curOperator.getId()) {
-                            if (((CertainOperator.CloseOperator)curOperator).isNeedPush()) {
-                                mOperatorStack.push(curOperator);
-                            }//if
-                            curIndex++;
-                        } else {
-                            throw new OperatorNotMatchException(
-                                    topOperator.getOperatorStr(), curOperator.getOperatorStr());
-                        }//if-else
-                    }//if
-                } break;
-                }//switch
-            } break;
-            }//switch-case
-        } //while
-        
-        if (mOperandStack.size() != 1 || !mOperatorStack.isEmpty()) {
-            throw new ResultErrorException();
+        //异常分支中不引用事件对象，finish只有一个调用点，才能在未开启记录时连同事件对象一起被JIT消除
+        EvaluateEvent event = new EvaluateEvent();
+        event.begin();
+        RuntimeException failure = null;
+        double result = 0;
+        try {
+            result = varAriExp.getCompiledExpression().evaluate();
+        } catch (RuntimeException e) {
+            failure = e;
+        }//try-catch
+        event.finish(varAriExp, failure);
+
+        if (null != failure) {
+            throw failure;
         }//if
-        
-        return mOperandStack.pop().getValue();
+
+        return result;
     }//calculateCurrentValue
 
     /**
-     * 从运算符栈中弹出一个运算符，并进行相应的运算
+     * 计算表达式的当前值及其对指定变量的偏导数，一遍计算同时得到值和所有偏导数（前向自动微分），
+     * 取代对每个变量各计算两次的有限差分；详见CompiledExpression.evaluateGradient(Variable[], double[])
+     * @param varAriExp 要计算的表达式
+     * @param variables 求导变量，表达式中没有的变量偏导数为0
+     * @param gradient 偏导数的输出，gradient[j]为对variables[j]的偏导数
+     * @return 计算结果
+     */
+    public double calculateGradient(VarAriExp varAriExp, Variable[] variables, double[] gradient) {
+        return varAriExp.getCompiledExpression().evaluateGradient(variables, gradient);
+    }//calculateGradient
+
+    /**
+     * 求出表达式在变量的取值范围（Variable.set设置的上下限）上的所有零点，其他变量取其当前值
+     * 使用默认参数的EquationSolver：先粗略取样找到异号的区间，再以Brent方法结合牛顿步求根，
+     * 每个根只需要几次求值；需要调整取样密度或误差时直接使用EquationSolver
+     * @param varAriExp 表达式
+     * @param variable 求根的变量
+     * @return 从小到大排列的所有零点
      */
-    private void makeOperate() {
-        //获取栈顶运算符
-        CertainOperator operator = mOperatorStack.pop();
-        
-        if (!operator.isNeedOperate()) {
-            //如果该运算符是无需计算的，则直接返回
-            return;
+    public double[] solve(VarAriExp varAriExp, Variable variable) {
+        return sEquationSolver.solve(varAriExp, variable);
+    }//solve
+
+    /**
+     * 计算表达式在各变量取值范围（Variable.set设置的上下限）上的值的包络，未设置取值范围的变量取其当前值
+     * 只需要以区间执行一遍表达式，不必计算任何一点，包络是有保证的，但可能比真实的值域宽；
+     * 需要精确的最值或者超过阈值的点时使用LatticeSearch
+     * @param varAriExp 表达式
+     * @return 值的包络
+     */
+    public Interval calculateRange(VarAriExp varAriExp) {
+        return varAriExp.getCompiledExpression().evaluateRange();
+    }//calculateRange
+
+    /**
+     * 在公共的ForkJoinPool上求表达式在各变量取值范围（Variable.set设置的上下限）的乘积上的定积分，其他变量取其当前值
+     * 使用默认参数的Integrator：一元时为自适应Gauss-Kronrod积分，多元时为自适应Genz-Malik求积，
+     * 需要调整误差、求值次数或者线程池时直接使用Integrator
+     * @param varAriExp 表达式
+     * @param variables 积分变量
+     * @return 积分值及其误差估计
+     */
+    public Integrator.Result integrate(VarAriExp varAriExp, Variable... variables) {
+        return sIntegrator.integrate(varAriExp, variables, ForkJoinPool.commonPool());
+    }//integrate
+
+    /**
+     * 使用变量帧中的变量值计算编译后的表达式，多个线程可以同时调用，只要各自使用自己的变量帧
+     * @param compiledExp 编译后的表达式
+     * @param frame 由compiledExp.newFrame()创建的变量帧
+     * @return 计算结果
+     */
+    public double calculate(CompiledExpression compiledExp, VariableFrame frame) {
+        return compiledExp.evaluate(frame);
+    }//calculate
+
+    /**
+     * 对多行输入批量求值，第i行的结果写入out[i]，详见BatchEvaluator
+     * @param compiledExp 编译后的表达式
+     * @param columnsByVariable 各变量槽位的输入列，槽位顺序与VariableAssistant中变量的顺序一致
+     * @param out 结果数组
+     * @param from 起始行（包含）
+     * @param to 结束行（不包含）
+     */
+    public void calculate(CompiledExpression compiledExp, double[][] columnsByVariable,
+                          double[] out, int from, int to) {
+        sBatchEvaluator.get().evaluate(compiledExp, columnsByVariable, out, from, to);
+    }//calculate
+
+    public void calculate(CompiledExpression compiledExp, Map<String, double[]> columnsByName,
+                          double[] out, int from, int to) {
+        sBatchEvaluator.get().evaluate(compiledExp, columnsByName, out, from, to);
+    }//calculate
+
+    /**
+     * 以NaN方式对多行输入批量求值：操作数超出定义域的行结果为NaN，不抛出异常，详见BatchEvaluator.evaluateOrNaN
+     * @param errorCodes 各行的错误码（见DomainError），不需要时可以为null
+     * @return 所有行的错误位图
+     */
+    public int calculateOrNaN(CompiledExpression compiledExp, double[][] columnsByVariable,
+                              double[] out, int from, int to, int[] errorCodes) {
+        return sBatchEvaluator.get().evaluateOrNaN(compiledExp, columnsByVariable, out, from, to, errorCodes);
+    }//calculateOrNaN
+
+    /**
+     * 依次产生网格上第from个到第to个（不含）点的结果，点的顺序见VariableLattice
+     * 结果在遍历时才按块计算，占用的内存是固定的；返回的Spliterator可以拆分，因此可以从任意一点继续，也可以用于并行流
+     * 网格上的变量按对象本身、其次按变量名对应到表达式中的变量，表达式用到、但不在网格中的变量取其当前值
+     * @param compiledExp 编译后的表达式
+     * @param lattice 变量网格
+     * @param from 起始点（包含）
+     * @param to 结束点（不包含）
+     * @return 结果的Spliterator
+     */
+    public Spliterator.OfDouble sweep(CompiledExpression compiledExp, VariableLattice lattice, long from, long to) {
+        return new SweepSpliterator(compiledExp, lattice.bind(compiledExp), from, to);
+    }//sweep
+
+    /**
+     * 网格上所有点的结果组成的DoubleStream，见sweep(CompiledExpression, VariableLattice, long, long)
+     * @return 结果流
+     */
+    public DoubleStream sweepStream(CompiledExpression compiledExp, VariableLattice lattice) {
+        return StreamSupport.doubleStream(sweep(compiledExp, lattice, 0, lattice.size()), false);
+    }//sweepStream
+
+    /**
+     * 在ForkJoinPool上并行计算网格上第from个到第to个（不含）点的结果，第i个点的结果写入out[offset + i - from]
+     * 计算出错时抛出与逐个计算相同类型的异常，此时out中只有部分结果
+     * @param pool 执行计算的线程池
+     */
+    public void sweep(CompiledExpression compiledExp, VariableLattice lattice, long from, long to,
+                      double[] out, int offset, ForkJoinPool pool) {
+        checkSweepRange(lattice, from, to, out.length, offset);
+        ParallelSweep.sweep(SweepEvent.LATTICE, compiledExp, lattice.bind(compiledExp), from, to, out, offset, pool);
+    }//sweep
+
+    /**
+     * 以NaN方式在ForkJoinPool上并行计算网格上第from个到第to个（不含）点的结果，
+     * 见sweep(CompiledExpression, VariableLattice, long, long, double[], int, ForkJoinPool)
+     * 操作数超出定义域的点不抛出异常，结果为NaN，其错误码（见DomainError）写入errorCodes[offset + i - from]，
+     * 因此可以在有一部分没有定义的区域上完整地计算，而不必为每个出错的点创建和捕获异常
+     * @param errorCodes 各点的错误码，不需要逐点的错误码时可以为null
+     * @return 所有点的错误位图，没有出错的点时为DomainError.NONE
+     */
+    public int sweepOrNaN(CompiledExpression compiledExp, VariableLattice lattice, long from, long to,
+                          double[] out, int[] errorCodes, int offset, ForkJoinPool pool) {
+        checkSweepRange(lattice, from, to, out.length, offset);
+        if (null != errorCodes && errorCodes.length - offset < to - from) {
+            throw new IllegalArgumentException("错误码数组的长度不足：需要" + (to - from) +
+                    "个位置，offset = " + offset + "，errorCodes.length = " + errorCodes.length);
         }//if
-        
-        int operandNum = operator.getDimension(); //获取运算符需要的操作数个数
-        Operand[] operands = new Operand[operandNum]; //承载操作数的容器
 
-        //根据需要的操作数个数，依次从操作数栈中取出操作数放入operands数组中
-        for (int i = 1; i <= operandNum; i++) {
-            operands[operands.length - i] = mOperandStack.pop();
-        }//for
+        return ParallelSweep.sweepOrNaN(SweepEvent.LATTICE, compiledExp, lattice.bind(compiledExp), from, to,
+                out, errorCodes, offset, pool);
+    }//sweepOrNaN
+
+    public CompiledExpressionCache getCache() {
+        return mCache;
+    }//getCache
+
+    public NumericPolicy getNumericPolicy() {
+        return mNumericPolicy;
+    }//getNumericPolicy
 
-        //最后再将运算结果放入操作数栈中
-        mOperandStack.push(operator.operate(operands));
-    }//makeOperate
+    private static void checkSweepRange(VariableLattice lattice, long from, long to, int outLength, int offset) {
+        if (from < 0 || to > lattice.size() || from > to) {
+            throw new IndexOutOfBoundsException("[" + from + ", " + to + ")超出了网格的下标范围[0, " + lattice.size() + ")");
+        }//if
+        if (offset < 0 || outLength - offset < to - from) {
+            throw new IllegalArgumentException("结果数组的长度不足：需要" + (to - from) +
+                    "个位置，offset = " + offset + "，out.length = " + outLength);
+        }//if
+    }//checkSweepRange
 
 
     /**
@@ -170,11 +337,18 @@ public class Calculator {
      * 时对应的结果
      * 第一次调用curValue()方法会返回变量表达式的第一个值，
      * 之后每次调用nextValue()方法，会依次返回变量表达式的下一个值
+     * 也可以通过getResultArray或sweepInto在ForkJoinPool上并行计算出全部结果，
+     * 或者通过resultStream、forEachResult、fill以固定的内存逐块取得全部结果，这些方法都不改变各变量的值
      */
     public static class ResultGenerator {
+        //部分JVM会在数组头部保留几个字，数组长度超过该值时可能分配失败
+        private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
         private VarAriExp mVarAriExp;
         private Calculator mCalculator;
         private VariableAssistant mVarAssist;
+        //fill方法分批取结果时的位置
+        private SweepSpliterator mPullCursor;
         
         
         private ResultGenerator(VarAriExp varAriExp, Calculator calculator) {
@@ -214,17 +388,186 @@ public class Calculator {
          */
         public List<Double> getResultList() {
             List<Double> resultList = new ArrayList<>();
-            
-            resultList.add(curValue());
-            while (hasNext()) {
-                resultList.add(nextValue());
-            }//while
+            SweepEvent event = new SweepEvent();
+            event.begin();
+            RuntimeException failure = null;
+            try {
+                resultList.add(curValue());
+                while (hasNext()) {
+                    resultList.add(nextValue());
+                }//while
+            } catch (RuntimeException e) {
+                failure = e;
+            }//try-catch
+            event.finish(mVarAriExp.getCompiledExpression(), SweepEvent.RESULT_LIST, resultList.size(), 1, failure);
+
+            if (null != failure) {
+                throw failure;
+            }//if
             
             return resultList;
         }//getResultList
 
+        /**
+         * 获取从当前状态开始能产生的结果个数（包括当前结果），即getResultList()返回的List的长度
+         * @return 结果个数
+         */
+        public long getResultCount() {
+            return newSweepPath().size();
+        }//getResultCount
+
+        /**
+         * 在公共的ForkJoinPool上并行计算出所有结果，见getResultArray(ForkJoinPool)
+         * @return 所有结果
+         */
+        public double[] getResultArray() {
+            return getResultArray(ForkJoinPool.commonPool());
+        }//getResultArray
+
+        /**
+         * 并行计算出所有结果，结果及其顺序与getResultList()完全相同
+         * 与getResultList()不同的是，本方法不推进各变量，计算完毕后各变量仍保持原来的值
+         * @param pool 执行计算的线程池
+         * @return 所有结果
+         * @throws SweepTooLargeException 结果个数超出数组的长度上限时
+         */
+        public double[] getResultArray(ForkJoinPool pool) {
+            SweepPath path = newSweepPath();
+            if (path.size() > MAX_ARRAY_LENGTH) {
+                throw new SweepTooLargeException(path.size());
+            }//if
+
+            double[] results = new double[(int)path.size()];
+            ParallelSweep.sweep(SweepEvent.RESULT_ARRAY, mVarAriExp.getCompiledExpression(),
+                    path, 0, path.size(), results, 0, pool);
+
+            return results;
+        }//getResultArray
+
+        /**
+         * 并行计算出所有结果，写入预先分配好的数组中，第i个结果写入out[offset + i]
+         * 结果及其顺序与getResultList()完全相同，各变量的值不会被改变
+         * 计算出错时抛出与逐个计算相同类型的异常，此时out中只有部分结果
+         * @param out 结果数组，从offset开始至少要能容纳getResultCount()个结果
+         * @param offset 第一个结果在out中的位置
+         * @param pool 执行计算的线程池
+         */
+        public void sweepInto(double[] out, int offset, ForkJoinPool pool) {
+            SweepPath path = newSweepPath();
+            if (offset < 0 || out.length - offset < path.size()) {
+                throw new IllegalArgumentException("结果数组的长度不足：需要" + path.size() +
+                        "个位置，offset = " + offset + "，out.length = " + out.length);
+            }//if
+
+            ParallelSweep.sweep(SweepEvent.SWEEP_INTO, mVarAriExp.getCompiledExpression(),
+                    path, 0, path.size(), out, offset, pool);
+        }//sweepInto
+
+        /**
+         * 以NaN方式并行计算出所有结果，见sweepInto(double[], int, ForkJoinPool)
+         * 操作数超出定义域的结果为NaN，不抛出异常，第i个结果的错误码（见DomainError）写入errorCodes[offset + i]
+         * @param errorCodes 各结果的错误码，不需要逐个的错误码时可以为null
+         * @return 所有结果的错误位图，没有出错的结果时为DomainError.NONE
+         */
+        public int sweepIntoOrNaN(double[] out, int[] errorCodes, int offset, ForkJoinPool pool) {
+            CompiledExpression compiledExp = mVarAriExp.getCompiledExpressionOrNaN();
+            SweepPath path = newSweepPath(compiledExp);
+            if (offset < 0 || out.length - offset < path.size() ||
+                    (null != errorCodes && errorCodes.length - offset < path.size())) {
+                throw new IllegalArgumentException("结果数组或错误码数组的长度不足：需要" + path.size() +
+                        "个位置，offset = " + offset + "，out.length = " + out.length);
+            }//if
+
+            return ParallelSweep.sweepOrNaN(SweepEvent.SWEEP_INTO, compiledExp,
+                    path, 0, path.size(), out, errorCodes, offset, pool);
+        }//sweepIntoOrNaN
+
+        /**
+         * 以各变量的当前状态为起点，返回依次产生所有结果的Spliterator，结果及其顺序与getResultList()相同
+         * 结果在遍历时才按块计算，不论有多少个结果，占用的内存都是固定的；各变量的值不会被改变
+         * 返回的Spliterator可以拆分，因此也可以用于并行流
+         * @return 结果的Spliterator
+         */
+        public Spliterator.OfDouble resultSpliterator() {
+            SweepPath path = newSweepPath();
+            return new SweepSpliterator(mVarAriExp.getCompiledExpression(), path, 0, path.size());
+        }//resultSpliterator
+
+        /**
+         * 返回所有结果组成的DoubleStream，见resultSpliterator()
+         * @return 结果流
+         */
+        public DoubleStream resultStream() {
+            return StreamSupport.doubleStream(resultSpliterator(), false);
+        }//resultStream
+
+        /**
+         * 依次把每个结果交给consumer，结果及其顺序与getResultList()相同，占用的内存是固定的
+         * 各变量的值不会被改变
+         * @param consumer 结果的接收者
+         */
+        public void forEachResult(DoubleConsumer consumer) {
+            SweepEvent event = new SweepEvent();
+            event.begin();
+            RuntimeException failure = null;
+            Spliterator.OfDouble results = resultSpliterator();
+            long pointCount = results.estimateSize();
+            try {
+                results.forEachRemaining(consumer);
+            } catch (RuntimeException e) {
+                failure = e;
+            }//try-catch
+            event.finish(mVarAriExp.getCompiledExpression(), SweepEvent.FOR_EACH_RESULT, pointCount, 1, failure);
+
+            if (null != failure) {
+                throw failure;
+            }//if
+        }//forEachResult
+
+        /**
+         * 分批取出结果：每次调用把接下来的至多buf.length个结果写入buf，
+         * 第一次调用时以各变量的当前状态为起点，之后每次从上一次结束的地方继续，各变量的值不会被改变
+         * @param buf 结果缓冲区
+         * @return 写入的结果个数，所有结果都已取出时返回0
+         */
+        public int fill(double[] buf) {
+            return fill(buf, 0, buf.length);
+        }//fill
+
+        public int fill(double[] buf, int offset, int length) {
+            if (null == mPullCursor) {
+                mPullCursor = (SweepSpliterator)resultSpliterator();
+            }//if
+
+            SweepEvent event = new SweepEvent();
+            event.begin();
+            RuntimeException failure = null;
+            int count = 0;
+            try {
+                count = mPullCursor.fill(buf, offset, length);
+            } catch (RuntimeException e) {
+                failure = e;
+            }//try-catch
+            event.finish(mVarAriExp.getCompiledExpression(), SweepEvent.FILL, count, 1, failure);
+
+            if (null != failure) {
+                throw failure;
+            }//if
+
+            return count;
+        }//fill
+
         public VarAriExp getVarAriExp() {
             return mVarAriExp;
         }//getVarAriExp
+
+        //以各变量的当前状态为起点，生成之后依次经过的取值点组成的路径
+        private SweepPath newSweepPath() {
+            return newSweepPath(mVarAriExp.getCompiledExpression());
+        }//newSweepPath
+
+        private SweepPath newSweepPath(CompiledExpression compiledExp) {
+            return new SweepPath(mVarAssist.getVariables(), compiledExp);
+        }//newSweepPath
     }//class_ResultGenerator
 }//class_Calculator
@@ -0,0 +1,96 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/*
+ * JFR事件（ParseEvent、EvaluateEvent、SweepEvent）共用的字段取值方法
+ * 这些方法只在事件确定要提交（shouldCommit()为true）之后才会被调用，不影响未开启记录时的性能
+ * 各事件的finish只结束计时并判断是否需要提交，填写字段由单独的record方法完成：
+ * 这样finish足够小，可以被内联，未开启记录时事件对象才能被JIT消除
+ */
+final class CalculatorEvents {
+    static final String CATEGORY = "Calculator";
+    static final String OUTCOME_OK = "OK";
+
+    //事件中记录的表达式字符串的最大长度，超出部分截去
+    private static final int MAX_EXPRESSION_LENGTH = 256;
+
+
+    private CalculatorEvents() {
+    }//con_CalculatorEvents
+
+    static String abbreviate(String expStr) {
+        if (null == expStr || expStr.length() <= MAX_EXPRESSION_LENGTH) {
+            return expStr;
+        }//if
+
+        return expStr.substring(0, MAX_EXPRESSION_LENGTH) + "...";
+    }//abbreviate
+
+    //正常结束时为OUTCOME_OK，否则为异常的类名
+    static String outcomeOf(Exception failure) {
+        return null == failure ? OUTCOME_OK : failure.getClass().getSimpleName();
+    }//outcomeOf
+
+    //统计表达式项中各运算符出现的次数，括号等不需要计算的运算符不计入，形如"+:2, sin:1"
+    static String operatorMix(List<ExpItem> expItems) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (ExpItem item : expItems) {
+            if (item.getItemType() != ExpItem.ItemType.OPERATOR) {
+                continue;
+            }//if
+
+            Operator operator = (Operator)item;
+            if (operator.isCertain() && !((CertainOperator)operator).isNeedOperate()) {
+                continue;
+            }//if
+            counts.merge(operator.getOperatorStr(), 1, Integer::sum);
+        }//for
+
+        return format(counts);
+    }//operatorMix
+
+    //统计编译后的指令序列中各运算指令（包括规范化指令round）的条数，形如"+:2, sin:1, round:5"
+    static String operatorMix(CompiledExpression compiledExp) {
+        int[] opCounts = new int[OpCode.OPCODE_COUNT];
+        for (int instruction : compiledExp.getCode()) {
+            opCounts[OpCode.opCode(instruction)]++;
+        }//for
+
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (int opCode = 0; opCode < OpCode.OPCODE_COUNT; opCode++) {
+            if (OpCode.isOperation(opCode) && opCounts[opCode] > 0) {
+                counts.put(OpCode.getName(opCode), opCounts[opCode]);
+            }//if
+        }//for
+
+        return format(counts);
+    }//operatorMix
+
+    static int operatorCount(CompiledExpression compiledExp) {
+        int count = 0;
+        for (int instruction : compiledExp.getCode()) {
+            if (OpCode.isOperation(OpCode.opCode(instruction))) {
+                count++;
+            }//if
+        }//for
+
+        return count;
+    }//operatorCount
+
+    private static String format(Map<String, Integer> counts) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }//if
+            builder.append(entry.getKey()).append(':').append(entry.getValue());
+        }//for
+
+        return builder.toString();
+    }//format
+}//class_CalculatorEvents
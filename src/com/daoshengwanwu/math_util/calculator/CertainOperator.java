@@ -2,7 +2,6 @@ package com.daoshengwanwu.math_util.calculator;
 
 
 import com.daoshengwanwu.math_util.calculator.exception.OperandNumException;
-import com.daoshengwanwu.math_util.calculator.exception.OperandOutOfBoundsException;
 import com.daoshengwanwu.math_util.calculator.exception.ShouldNotOperateException;
 import com.daoshengwanwu.math_util.calculator.exception.SpecDirPriorNotExistException;
 
@@ -449,7 +448,7 @@ abstract class CertainOperator extends Operator {
             double leftOperand = operands[0].getValue();
             double rightOperand = operands[1].getValue();
 
-            return Operand.getOperand(leftOperand % rightOperand);
+            return Operand.getOperand(OperatorFunctions.mod(leftOperand, rightOperand));
         }//operate
     }//class_Mod
 
@@ -468,7 +467,7 @@ abstract class CertainOperator extends Operator {
             double leftOperand = operands[0].getValue();
             double rightOperand = operands[1].getValue();
 
-            return Operand.getOperand(Math.pow(leftOperand, rightOperand));
+            return Operand.getOperand(OperatorFunctions.pow(leftOperand, rightOperand));
         }//operate
     }//class_Pow
 
@@ -486,7 +485,7 @@ abstract class CertainOperator extends Operator {
 
             double operand = operands[0].getValue();
 
-            return Operand.getOperand(0 - operand);
+            return Operand.getOperand(OperatorFunctions.negate(operand));
         }//operate
     }//class_Negate
 
@@ -557,11 +556,8 @@ abstract class CertainOperator extends Operator {
             checkOperandNumCorrect(operands.length);
 
             double operand = operands[0].getValue();
-            if (operand < -1 || operand > 1) {
-                throw new OperandOutOfBoundsException(this.getOperatorStr(), "[-1, 1]", operand);
-            }//if
 
-            return Operand.getOperand(Math.asin(operand));
+            return Operand.getOperand(OperatorFunctions.asin(operand));
         }//operate
     }//class_ASin
 
@@ -578,11 +574,8 @@ abstract class CertainOperator extends Operator {
             checkOperandNumCorrect(operands.length);
 
             double operand = operands[0].getValue();
-            if (operand < -1 || operand > 1) {
-                throw new OperandOutOfBoundsException(this.getOperatorStr(), "[-1, 1]", operand);
-            }//if
 
-            return Operand.getOperand(Math.acos(operand));
+            return Operand.getOperand(OperatorFunctions.acos(operand));
         }//operate
     }//class_ACos
 
@@ -599,11 +592,8 @@ abstract class CertainOperator extends Operator {
             checkOperandNumCorrect(operands.length);
 
             double operand = operands[0].getValue();
-            if (operand < -1 || operand > 1) {
-                throw new OperandOutOfBoundsException(this.getOperatorStr(), "[-1, 1]", operand);
-            }//if
 
-            return Operand.getOperand(Math.atan(operand));
+            return Operand.getOperand(OperatorFunctions.atan(operand));
         }//operate
     }//class_ATan
 
@@ -620,11 +610,8 @@ abstract class CertainOperator extends Operator {
             checkOperandNumCorrect(operands.length);
 
             double operand = operands[0].getValue();
-            if (operand <= 0) {
-                throw new OperandOutOfBoundsException(getOperatorStr(), "(0, +∞)", operand);
-            }//if
 
-            return Operand.getOperand(Math.log1p(operand - 1)); //Math.log1p(x)返回值为：ln(1 + x);
+            return Operand.getOperand(OperatorFunctions.ln(operand));
         }//operate
     }//class_Ln
 
@@ -641,11 +628,8 @@ abstract class CertainOperator extends Operator {
             checkOperandNumCorrect(operands.length);
 
             double operand = operands[0].getValue();
-            if (operand <= 0) {
-                throw new OperandOutOfBoundsException(getOperatorStr(), "(0, +∞)", operand);
-            }//if
 
-            return Operand.getOperand(Math.log10(operand));
+            return Operand.getOperand(OperatorFunctions.lg(operand));
         }//operate
     }//class_Lg
 
@@ -662,11 +646,8 @@ abstract class CertainOperator extends Operator {
             checkOperandNumCorrect(operands.length);
 
             double operand = operands[0].getValue();
-            if (operand < 0) {
-                throw new OperandOutOfBoundsException(getOperatorStr(), "[0, +∞)", operand);
-            }//if
 
-            return Operand.getOperand(Math.sqrt(operand));
+            return Operand.getOperand(OperatorFunctions.sqrt(operand));
         }//operate
     }//class_Sqrt
 
@@ -684,26 +665,8 @@ abstract class CertainOperator extends Operator {
 
             double operand = operands[0].getValue();
 
-            return Operand.getOperand(fact(operand));
+            return Operand.getOperand(OperatorFunctions.fact(operand));
         }//operate
-
-        private long fact(double operand) {
-            if (operand < 0) {
-                throw new OperandOutOfBoundsException(getOperatorStr(), "非负整数", operand);
-            }//if
-
-            if (!Operand.getOperand(operand - (int)operand).equals(Operand.getOperand(0))) {
-                throw new OperandOutOfBoundsException(getOperatorStr(), "非负整数", operand);
-            }//if
-
-            long result = 1;
-            int nOperand = (int)operand;
-            for (int i = 2; i <= nOperand; i++) {
-                result *= i;
-            }//for
-
-            return result;
-        }//fact
     }//class_Fact
 
     /*
@@ -817,15 +780,7 @@ abstract class CertainOperator extends Operator {
             double leftOperand = operands[0].getValue();
             double rightOperand =  operands[1].getValue();
 
-            if (leftOperand <= 0 || leftOperand == 1) {
-                throw new OperandOutOfBoundsException(getOperatorStr(), "底数应该大于0并且不等于1", leftOperand);
-            }//if
-
-            if (rightOperand <= 0) {
-                throw new OperandOutOfBoundsException(getOperatorStr(), "logx~y: 中的y的取值应该大于0", rightOperand);
-            }//if
-
-            return Operand.getOperand(Math.log(rightOperand) / Math.log(leftOperand));
+            return Operand.getOperand(OperatorFunctions.log(leftOperand, rightOperand));
         }//operate
 
         @Override
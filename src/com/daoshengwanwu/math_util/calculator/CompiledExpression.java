@@ -0,0 +1,409 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.daoshengwanwu.math_util.calculator.exception.ExpressionTooLargeException;
+import com.daoshengwanwu.math_util.calculator.exception.FrameNotMatchException;
+import com.daoshengwanwu.math_util.calculator.util.DigitUtil;
+import com.daoshengwanwu.math_util.calculator.util.DoubleStack;
+
+
+/**
+ * 编译后的表达式
+ * 由VarAriExp编译一次得到，内部是一段按计算顺序排列的后缀指令序列，
+ * 求值时只需线性执行一遍，不再进行运算符优先级的判定，也没有CertainOperator的虚方法调用
+ * CompiledExpression是不可变的，求值所需的可变状态都放在VariableFrame中，
+ * 因此任意多个线程可以同时对同一个CompiledExpression求值，每个线程传入各自的VariableFrame即可
+ */
+public final class CompiledExpression implements ExpressionFunction {
+    //eval(double[])使用的求值栈和临时槽位，同一线程上的所有表达式共用一份；不引用任何表达式，不会妨碍表达式被回收
+    private static final ThreadLocal<Scratch> sLocalScratch = ThreadLocal.withInitial(Scratch::new);
+    //evaluate()在各线程上的增量求值状态，以表达式为弱键，表达式不再被引用时对应的状态随之清除
+    private static final ThreadLocal<Map<CompiledExpression, IncrementalEvaluator>> sLocalIncrementalEvaluators =
+            ThreadLocal.withInitial(WeakHashMap::new);
+
+    private final String mExpStr;
+    private final int[] mCode;
+    private final double[] mConstants;
+    private final Variable[] mVariables;
+    private final boolean[] mIsVariableReferenced;
+    private final int mMaxDepth;
+    private final int mTempCount;
+    private final NumericPolicy mNumericPolicy;
+    private volatile DependencyAnalysis mDependencyAnalysis;
+
+
+    CompiledExpression(String expStr, int[] code, double[] constants,
+                       Variable[] variables, int maxDepth, int tempCount, NumericPolicy numericPolicy) {
+        mExpStr = expStr;
+        mCode = code;
+        mConstants = constants;
+        mVariables = variables;
+        mMaxDepth = maxDepth;
+        mTempCount = tempCount;
+        mNumericPolicy = numericPolicy;
+
+        mIsVariableReferenced = new boolean[variables.length];
+        for (int instruction : code) {
+            if (OpCode.opCode(instruction) == OpCode.LOAD_VAR) {
+                mIsVariableReferenced[OpCode.arg(instruction)] = true;
+            }//if
+        }//for
+    }//con_CompiledExpression
+
+    /**
+     * 创建一个用于本表达式求值的变量帧，帧中各变量的初始值均为0
+     * @return 新的变量帧
+     */
+    public VariableFrame newFrame() {
+        return new VariableFrame(this);
+    }//newFrame
+
+    /**
+     * 使用变量帧中的变量值计算表达式的值
+     * 不同线程使用各自的变量帧时可以同时调用本方法；计算过程不产生任何对象，稳定运行时不分配内存
+     * @param frame 由本表达式的newFrame方法创建的变量帧
+     * @return 计算结果
+     */
+    public double evaluate(VariableFrame frame) {
+        if (frame.getCompiledExpression() != this) {
+            throw new FrameNotMatchException(mExpStr);
+        }//if
+
+        return execute(frame.getValues(), frame.getStack(), frame.getTemps());
+    }//evaluate
+
+    /**
+     * 以NaN方式使用变量帧中的变量值计算表达式的值：操作数超出定义域时不抛出OperandOutOfBoundsException，而是返回NaN，
+     * 按计算顺序第一个出错的运算对应的错误码（见DomainError）记录在变量帧中，通过frame.getErrorCode()读取
+     * 没有出错时结果与evaluate(VariableFrame)完全相同，错误码为DomainError.NONE
+     * @param frame 由本表达式的newFrame方法创建的变量帧
+     * @return 计算结果，出错时为NaN
+     */
+    public double evaluateOrNaN(VariableFrame frame) {
+        if (frame.getCompiledExpression() != this) {
+            throw new FrameNotMatchException(mExpStr);
+        }//if
+
+        DoubleStack stack = frame.getStack();
+        double[] values = frame.getValues();
+        double[] temps = frame.getTemps();
+        stack.clear();
+
+        for (int instruction : mCode) {
+            int opCode = OpCode.opCode(instruction);
+            int arg = OpCode.arg(instruction);
+            switch (opCode) {
+            case OpCode.CONST: stack.push(mConstants[arg]); break;
+            case OpCode.LOAD_VAR: stack.push(values[arg]); break;
+            case OpCode.LOAD_TEMP: stack.push(temps[arg]); break;
+            case OpCode.STORE_TEMP: temps[arg] = stack.getTop(); break;
+            default: {
+                double right = OpCode.getDimension(opCode) == 2 ? stack.pop() : 0;
+                double left = stack.getTop();
+                int errorCode = OperatorFunctions.domainError(opCode, left, right);
+                if (errorCode != DomainError.NONE) {
+                    //之后的运算不会改变错误码，结果总是NaN
+                    frame.setErrorCode(errorCode);
+                    return Double.NaN;
+                }//if
+                stack.setTop(OperatorFunctions.operate(opCode, arg, left, right));
+            } break;
+            }//switch
+        }//for
+
+        frame.setErrorCode(DomainError.NONE);
+
+        return stack.pop();
+    }//evaluateOrNaN
+
+    /**
+     * 使用变量帧中的变量值计算表达式的值，同时以前向自动微分（对偶数）求出表达式对指定变量槽位的偏导数
+     * 只需要执行一遍指令序列，偏导数是精确的，没有有限差分的截断误差；值和抛出的异常与evaluate(VariableFrame)相同
+     * 不可导处的约定（如|x|在0处导数取0，x!的导数取Γ(x + 1)的导数）见DualEvaluator
+     * @param frame 由本表达式的newFrame方法创建的变量帧
+     * @param slots 求导变量的槽位（见getVariableIndex），表达式没有用到的槽位偏导数为0
+     * @param gradient 偏导数的输出，gradient[j]为对slots[j]的偏导数，长度不能小于slots.length
+     * @return 计算结果
+     */
+    public double evaluateGradient(VariableFrame frame, int[] slots, double[] gradient) {
+        if (frame.getCompiledExpression() != this) {
+            throw new FrameNotMatchException(mExpStr);
+        }//if
+        checkGradientLength(slots.length, gradient);
+
+        return frame.getDualEvaluator().evaluate(frame.getValues(), slots, gradient);
+    }//evaluateGradient
+
+    /**
+     * 使用各变量的当前值计算表达式的值及其对指定变量的偏导数，见evaluateGradient(VariableFrame, int[], double[])
+     * 变量先按对象本身、其次按变量名对应到表达式中的变量，表达式中没有的变量偏导数为0
+     * @param variables 求导变量
+     * @param gradient 偏导数的输出，gradient[j]为对variables[j]的偏导数，长度不能小于variables.length
+     * @return 计算结果
+     */
+    public double evaluateGradient(Variable[] variables, double[] gradient) {
+        checkGradientLength(variables.length, gradient);
+
+        int[] slots = new int[variables.length];
+        for (int j = 0; j < variables.length; j++) {
+            slots[j] = slotOf(variables[j]);
+        }//for
+
+        VariableFrame frame = newFrame();
+        double[] values = frame.getValues();
+        for (int slot = 0; slot < mVariables.length; slot++) {
+            if (mIsVariableReferenced[slot]) {
+                values[slot] = mVariables[slot].curValue();
+            }//if
+        }//for
+
+        return frame.getDualEvaluator().evaluate(values, slots, gradient);
+    }//evaluateGradient
+
+    /**
+     * 以区间算术计算表达式在各变量槽位取[lowers[slot], uppers[slot]]时的值的包络，只需要执行一遍指令序列
+     * 包络是有保证的（端点向外舍入），但可能比真实的值域宽，变量区间越窄越接近真实的值域；详见IntervalEvaluator
+     * @param lowers 各变量槽位的下限
+     * @param uppers 各变量槽位的上限
+     * @return 值的包络
+     */
+    public Interval evaluateRange(double[] lowers, double[] uppers) {
+        IntervalEvaluator evaluator = new IntervalEvaluator(this);
+        evaluator.evaluate(lowers, uppers);
+
+        return new Interval(evaluator.getLower(), evaluator.getUpper(), evaluator.mayFail());
+    }//evaluateRange
+
+    /**
+     * 以各变量的取值范围计算表达式的值的包络：已设置取值范围的变量取[getLowerLimit(), getUpperLimit()]，
+     * 其余变量取其当前值，见evaluateRange(double[], double[])
+     * @return 值的包络
+     */
+    public Interval evaluateRange() {
+        double[] lowers = new double[mVariables.length];
+        double[] uppers = new double[mVariables.length];
+        for (int slot = 0; slot < mVariables.length; slot++) {
+            if (!mIsVariableReferenced[slot]) {
+                continue;
+            }//if
+
+            Variable variable = mVariables[slot];
+            if (variable.isSet()) {
+                lowers[slot] = variable.getLowerLimit();
+                uppers[slot] = variable.getUpperLimit();
+            } else {
+                lowers[slot] = variable.curValue();
+                uppers[slot] = lowers[slot];
+            }//if-else
+        }//for
+
+        return evaluateRange(lowers, uppers);
+    }//evaluateRange
+
+    /**
+     * 使用各变量的当前值计算表达式的值，结果与Calculator.calculateCurrentValue一致
+     * 求值是增量的：当前线程上一次求值时各子树的值都被保存下来，
+     * 只有依赖了值发生变化的变量的子树才会重新计算，其余子树直接使用上一次的值（见IncrementalEvaluator），
+     * 因此只改变少数几个变量时，求值的耗时只与受影响的路径的长度有关；结果与完整计算完全相同
+     * 求值的状态是当前线程私有的，因此本方法本身是可重入的，
+     * 但各Variable的当前值是共享的，多线程下应改用evaluate(VariableFrame)
+     * @return 计算结果
+     */
+    public double evaluate() {
+        Map<CompiledExpression, IncrementalEvaluator> evaluators = sLocalIncrementalEvaluators.get();
+        IncrementalEvaluator evaluator = evaluators.get(this);
+        if (null == evaluator) {
+            evaluator = new IncrementalEvaluator(this);
+            evaluators.put(this, evaluator);
+        }//if
+
+        return evaluator.evaluate();
+    }//evaluate
+
+    /**
+     * 以数组传入各变量的值计算表达式的值，数组下标为变量槽位，可被多个线程同时调用
+     * @param vars 各变量的值
+     * @return 计算结果
+     */
+    @Override
+    public double eval(double[] vars) {
+        Scratch scratch = sLocalScratch.get();
+        scratch.ensureCapacity(mMaxDepth, mTempCount);
+
+        return execute(vars, scratch.mStack, scratch.mTemps);
+    }//eval
+
+    //在给定的求值栈和临时槽位上执行指令序列
+    private double execute(double[] values, DoubleStack stack, double[] temps) {
+        stack.clear();
+
+        double right;
+        for (int instruction : mCode) {
+            switch (OpCode.opCode(instruction)) {
+            case OpCode.CONST: stack.push(mConstants[OpCode.arg(instruction)]); break;
+            case OpCode.LOAD_VAR: stack.push(values[OpCode.arg(instruction)]); break;
+            case OpCode.LOAD_TEMP: stack.push(temps[OpCode.arg(instruction)]); break;
+            case OpCode.STORE_TEMP: temps[OpCode.arg(instruction)] = stack.getTop(); break;
+            case OpCode.ROUND: stack.setTop(DigitUtil.reserveSignificantDigits(
+                    stack.getTop(), OpCode.arg(instruction))); break;
+            case OpCode.ADD: right = stack.pop(); stack.setTop(stack.getTop() + right); break;
+            case OpCode.SUB: right = stack.pop(); stack.setTop(stack.getTop() - right); break;
+            case OpCode.MUL: right = stack.pop(); stack.setTop(stack.getTop() * right); break;
+            case OpCode.DIV: right = stack.pop(); stack.setTop(stack.getTop() / right); break;
+            case OpCode.MOD: right = stack.pop(); stack.setTop(OperatorFunctions.mod(stack.getTop(), right)); break;
+            case OpCode.POW: right = stack.pop(); stack.setTop(OperatorFunctions.pow(stack.getTop(), right)); break;
+            case OpCode.LOG: right = stack.pop(); stack.setTop(OperatorFunctions.log(stack.getTop(), right)); break;
+            case OpCode.NEGATE: stack.setTop(OperatorFunctions.negate(stack.getTop())); break;
+            case OpCode.SIN: stack.setTop(Math.sin(stack.getTop())); break;
+            case OpCode.COS: stack.setTop(Math.cos(stack.getTop())); break;
+            case OpCode.TAN: stack.setTop(Math.tan(stack.getTop())); break;
+            case OpCode.ASIN: stack.setTop(OperatorFunctions.asin(stack.getTop())); break;
+            case OpCode.ACOS: stack.setTop(OperatorFunctions.acos(stack.getTop())); break;
+            case OpCode.ATAN: stack.setTop(OperatorFunctions.atan(stack.getTop())); break;
+            case OpCode.LN: stack.setTop(OperatorFunctions.ln(stack.getTop())); break;
+            case OpCode.LG: stack.setTop(OperatorFunctions.lg(stack.getTop())); break;
+            case OpCode.SQRT: stack.setTop(OperatorFunctions.sqrt(stack.getTop())); break;
+            case OpCode.FACT: stack.setTop(OperatorFunctions.fact(stack.getTop())); break;
+            case OpCode.ABS: stack.setTop(Math.abs(stack.getTop())); break;
+            default: break;
+            }//switch
+        }//for
+
+        return stack.pop();
+    }//execute
+
+    private static void checkGradientLength(int count, double[] gradient) {
+        if (gradient.length < count) {
+            throw new IllegalArgumentException("偏导数数组的长度不足：需要" + count + "个位置，gradient.length = "
+                    + gradient.length);
+        }//if
+    }//checkGradientLength
+
+    /**
+     * 将表达式进一步编译为JVM字节码，生成一个隐藏类实现的ExpressionFunction
+     * 生成的函数不持有任何可变状态，可被多个线程同时调用；不再被引用时生成的类即可被卸载
+     * 变量值通过参数数组传入，数组下标为变量槽位（见getVariableIndex）
+     * 表达式过大、超出JVM单个方法的限制时，直接返回本表达式自身（解释执行）
+     * @return 生成的表达式函数
+     */
+    public ExpressionFunction generateFunction() {
+        try {
+            return BytecodeCompiler.generate(this);
+        } catch (ExpressionTooLargeException e) {
+            return this;
+        }//try-catch
+    }//generateFunction
+
+    /**
+     * 获取表达式中变量的个数（即变量槽位数），槽位顺序与编译时VariableAssistant中变量的顺序一致
+     * @return 变量个数
+     */
+    public int getVariableCount() {
+        return mVariables.length;
+    }//getVariableCount
+
+    /**
+     * 获取指定槽位上的变量
+     * @param index 变量槽位
+     * @return 对应的变量
+     */
+    public Variable getVariable(int index) {
+        return mVariables[index];
+    }//getVariable
+
+    /**
+     * 获取变量名对应的槽位
+     * @param flagStr 变量名
+     * @return 变量槽位，若不存在该变量则返回-1
+     */
+    public int getVariableIndex(String flagStr) {
+        for (int i = 0; i < mVariables.length; i++) {
+            if (mVariables[i].getFlagStr().equals(flagStr)) {
+                return i;
+            }//if
+        }//for
+
+        return -1;
+    }//getVariableIndex
+
+    /**
+     * 获取编译时使用的数值策略
+     * @return 数值策略
+     */
+    public NumericPolicy getNumericPolicy() {
+        return mNumericPolicy;
+    }//getNumericPolicy
+
+    @Override
+    public String toString() {
+        return mExpStr;
+    }//toString
+
+    //以下方法供同包中的其他求值后端读取指令序列
+    int[] getCode() {
+        return mCode;
+    }//getCode
+
+    double[] getConstants() {
+        return mConstants;
+    }//getConstants
+
+    int getMaxDepth() {
+        return mMaxDepth;
+    }//getMaxDepth
+
+    int getTempCount() {
+        return mTempCount;
+    }//getTempCount
+
+    Variable[] getVariables() {
+        return mVariables;
+    }//getVariables
+
+    boolean isVariableReferenced(int index) {
+        return mIsVariableReferenced[index];
+    }//isVariableReferenced
+
+    //获取变量对应的槽位：先按对象本身，其次按变量名，都不存在时返回-1
+    int slotOf(Variable variable) {
+        for (int slot = 0; slot < mVariables.length; slot++) {
+            if (mVariables[slot] == variable) {
+                return slot;
+            }//if
+        }//for
+
+        return getVariableIndex(variable.getFlagStr());
+    }//slotOf
+
+    //获取指令序列的依赖分析，只在第一次调用时分析，并发调用最多只会重复分析，结果相同
+    DependencyAnalysis getDependencyAnalysis() {
+        DependencyAnalysis analysis = mDependencyAnalysis;
+        if (null == analysis) {
+            analysis = new DependencyAnalysis(this);
+            mDependencyAnalysis = analysis;
+        }//if
+
+        return analysis;
+    }//getDependencyAnalysis
+
+    /*
+     * 一个线程上eval(double[])使用的求值栈和临时槽位，容量不足时按需扩大，之后保持不变
+     */
+    private static final class Scratch {
+        private DoubleStack mStack = new DoubleStack(0);
+        private double[] mTemps = new double[0];
+
+
+        void ensureCapacity(int maxDepth, int tempCount) {
+            if (mStack.capacity() < maxDepth) {
+                mStack = new DoubleStack(maxDepth);
+            }//if
+            if (mTemps.length < tempCount) {
+                mTemps = new double[tempCount];
+            }//if
+        }//ensureCapacity
+    }//class_Scratch
+}//class_CompiledExpression
@@ -0,0 +1,432 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+
+/**
+ * 以表达式字符串为键、编译结果为值的有界并发缓存
+ * 同一个表达式字符串被多个线程同时未命中时只会解析编译一次，其余线程等待同一个编译结果
+ * 淘汰策略可选LRU或W-TinyLFU：
+ * LRU淘汰最久未被访问的表达式；
+ * W-TinyLFU由一个较小的LRU窗口和一个分段LRU主区组成，窗口淘汰出的表达式只有在历史访问频率
+ * 高于主区中待淘汰的表达式时才会被接纳，能抵御大量只出现一次的表达式冲刷掉常用表达式
+ * 命中时对淘汰顺序的维护是有损的：淘汰锁被占用时直接跳过本次记录，因此命中路径上不会发生锁等待
+ */
+public class CompiledExpressionCache {
+    //默认缓存的共享实例所能容纳的表达式个数
+    public static final int DEFAULT_MAXIMUM_SIZE = 4096;
+
+    //W-TinyLFU中窗口区占总容量的比例、受保护区占主区的比例
+    private static final double WINDOW_RATIO = 0.01;
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private static final CompiledExpressionCache sDefaultCache =
+            new CompiledExpressionCache(DEFAULT_MAXIMUM_SIZE, EvictionPolicy.W_TINY_LFU);
+
+    private final ConcurrentHashMap<String, Node> mNodeMap = new ConcurrentHashMap<>();
+    private final Function<String, CompiledExpression> mLoader;
+    private final EvictionPolicy mPolicy;
+    private final NumericPolicy mNumericPolicy;
+    private final int mMaximumSize;
+    private final int mMaximumWindowSize;
+    private final int mMaximumProtectedSize;
+
+    //以下字段均只在持有mEvictionLock时访问
+    private final ReentrantLock mEvictionLock = new ReentrantLock();
+    private final AccessOrderQueue mWindowQueue = new AccessOrderQueue();
+    private final AccessOrderQueue mProbationQueue = new AccessOrderQueue();
+    private final AccessOrderQueue mProtectedQueue = new AccessOrderQueue();
+    private final FrequencySketch mSketch;
+
+    private final LongAdder mHitCount = new LongAdder();
+    private final LongAdder mMissCount = new LongAdder();
+    private final LongAdder mEvictionCount = new LongAdder();
+
+
+    public CompiledExpressionCache(int maximumSize, EvictionPolicy policy) {
+        this(maximumSize, policy, NumericPolicy.getDefault());
+    }//con_CompiledExpressionCache
+
+    /**
+     * @param maximumSize 最多缓存的表达式个数
+     * @param policy 淘汰策略
+     * @param numericPolicy 编译缓存中的表达式时使用的数值策略
+     */
+    public CompiledExpressionCache(int maximumSize, EvictionPolicy policy, NumericPolicy numericPolicy) {
+        this(maximumSize, policy, numericPolicy,
+                expStr -> new AriExp(expStr, numericPolicy).getCompiledExpression());
+    }//con_CompiledExpressionCache
+
+    CompiledExpressionCache(int maximumSize, EvictionPolicy policy, NumericPolicy numericPolicy,
+                            Function<String, CompiledExpression> loader) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize必须是正数：" + maximumSize);
+        }//if
+
+        mLoader = loader;
+        mPolicy = policy;
+        mNumericPolicy = numericPolicy;
+        mMaximumSize = maximumSize;
+        if (policy == EvictionPolicy.W_TINY_LFU) {
+            mMaximumWindowSize = Math.max(1, (int)(maximumSize * WINDOW_RATIO));
+            mMaximumProtectedSize = (int)((maximumSize - mMaximumWindowSize) * PROTECTED_RATIO);
+            mSketch = new FrequencySketch(maximumSize);
+        } else {
+            mMaximumWindowSize = 0;
+            mMaximumProtectedSize = 0;
+            mSketch = null;
+        }//if-else
+    }//con_CompiledExpressionCache
+
+    /**
+     * 获取Calculator默认使用的共享缓存
+     * @return 默认缓存
+     */
+    public static CompiledExpressionCache getDefault() {
+        return sDefaultCache;
+    }//getDefault
+
+    /**
+     * 获取表达式字符串对应的编译结果，缓存中不存在时解析并编译
+     * 解析或编译失败时抛出与直接解析相同的异常，失败的结果不会被缓存
+     * @param expStr 表达式字符串
+     * @return 编译后的表达式
+     */
+    public CompiledExpression get(String expStr) {
+        Node node = mNodeMap.get(expStr);
+        if (null == node) {
+            Node newNode = new Node(expStr, mLoader);
+            node = mNodeMap.putIfAbsent(expStr, newNode);
+
+            if (null == node) {
+                mMissCount.increment();
+                return load(newNode);
+            }//if
+        }//if
+
+        //等待的编译失败时getValue抛出异常，不计为命中
+        CompiledExpression compiledExp = node.getValue();
+        mHitCount.increment();
+        afterRead(node);
+
+        return compiledExp;
+    }//get
+
+    public long getHitCount() {
+        return mHitCount.sum();
+    }//getHitCount
+
+    public long getMissCount() {
+        return mMissCount.sum();
+    }//getMissCount
+
+    public long getEvictionCount() {
+        return mEvictionCount.sum();
+    }//getEvictionCount
+
+    public int size() {
+        return mNodeMap.size();
+    }//size
+
+    public int getMaximumSize() {
+        return mMaximumSize;
+    }//getMaximumSize
+
+    public NumericPolicy getNumericPolicy() {
+        return mNumericPolicy;
+    }//getNumericPolicy
+
+    public EvictionPolicy getPolicy() {
+        return mPolicy;
+    }//getPolicy
+
+    public void clear() {
+        mEvictionLock.lock();
+        try {
+            for (Node node : mNodeMap.values()) {
+                if (null != node.mQueue) {
+                    node.mQueue.remove(node);
+                }//if
+            }//for
+            mNodeMap.clear();
+        } finally {
+            mEvictionLock.unlock();
+        }//try-finally
+    }//clear
+
+    private CompiledExpression load(Node node) {
+        try {
+            node.mTask.run();
+            CompiledExpression compiledExp = node.getValue();
+            afterWrite(node);
+
+            return compiledExp;
+        } catch (RuntimeException | Error e) {
+            mNodeMap.remove(node.mKey, node);
+            throw e;
+        }//try-catch
+    }//load
+
+    private void afterRead(Node node) {
+        //命中时只尝试获取淘汰锁，获取失败则放弃记录本次访问
+        if (!mEvictionLock.tryLock()) {
+            return;
+        }//if
+
+        try {
+            if (null == node.mQueue) {
+                return; //节点尚未加入队列或已被淘汰
+            }//if
+
+            if (mPolicy == EvictionPolicy.LRU) {
+                node.mQueue.moveToTail(node);
+                return;
+            }//if
+
+            mSketch.increment(node.mKey.hashCode());
+            if (node.mQueue == mProbationQueue) {
+                //试用区中再次被访问的表达式晋升到受保护区，受保护区溢出的表达式降回试用区
+                mProbationQueue.remove(node);
+                mProtectedQueue.add(node);
+                if (mProtectedQueue.size() > mMaximumProtectedSize) {
+                    Node demoted = mProtectedQueue.peekHead();
+                    mProtectedQueue.remove(demoted);
+                    mProbationQueue.add(demoted);
+                }//if
+            } else {
+                node.mQueue.moveToTail(node);
+            }//if-else
+        } finally {
+            mEvictionLock.unlock();
+        }//try-finally
+    }//afterRead
+
+    private void afterWrite(Node node) {
+        mEvictionLock.lock();
+        try {
+            if (mNodeMap.get(node.mKey) != node) {
+                return; //编译期间缓存被clear，节点已不在缓存中，不再占用队列的容量
+            }//if
+
+            if (mPolicy == EvictionPolicy.LRU) {
+                mProbationQueue.add(node);
+                while (mProbationQueue.size() > mMaximumSize) {
+                    evict(mProbationQueue.peekHead());
+                }//while
+                return;
+            }//if
+
+            mSketch.increment(node.mKey.hashCode());
+            mWindowQueue.add(node);
+            while (mWindowQueue.size() > mMaximumWindowSize) {
+                //窗口区溢出的表达式作为候选者进入试用区，主区溢出时由TinyLFU决定淘汰候选者还是主区的受害者
+                Node candidate = mWindowQueue.peekHead();
+                mWindowQueue.remove(candidate);
+                mProbationQueue.add(candidate);
+
+                if (mProbationQueue.size() + mProtectedQueue.size() > mMaximumSize - mMaximumWindowSize) {
+                    Node victim = mProbationQueue.peekHead();
+                    if (victim == candidate) {
+                        evict(candidate);
+                    } else if (mSketch.frequency(candidate.mKey.hashCode()) >
+                            mSketch.frequency(victim.mKey.hashCode())) {
+                        evict(victim);
+                    } else {
+                        evict(candidate);
+                    }//if-else
+                }//if
+            }//while
+        } finally {
+            mEvictionLock.unlock();
+        }//try-finally
+    }//afterWrite
+
+    private void evict(Node node) {
+        node.mQueue.remove(node);
+        if (mNodeMap.remove(node.mKey, node)) {
+            mEvictionCount.increment();
+        }//if
+    }//evict
+
+
+    /**
+     * 淘汰策略
+     */
+    public enum EvictionPolicy {
+        LRU, W_TINY_LFU
+    }//enum_EvictionPolicy
+
+
+    /*
+     * 缓存节点，同时也是访问顺序队列中的链表节点
+     */
+    private static class Node {
+        private final String mKey;
+        private final FutureTask<CompiledExpression> mTask;
+
+        //以下字段只在持有淘汰锁时访问
+        private AccessOrderQueue mQueue;
+        private Node mPrev;
+        private Node mNext;
+
+
+        Node(String key, Function<String, CompiledExpression> loader) {
+            mKey = key;
+            mTask = new FutureTask<>(() -> loader.apply(key));
+        }//con_Node
+
+        CompiledExpression getValue() {
+            boolean isInterrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return mTask.get();
+                    } catch (InterruptedException e) {
+                        isInterrupted = true;
+                    }//try-catch
+                }//while
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException)cause;
+                } else if (cause instanceof Error) {
+                    throw (Error)cause;
+                }//if-else
+
+                throw new IllegalStateException(cause);
+            } finally {
+                if (isInterrupted) {
+                    Thread.currentThread().interrupt();
+                }//if
+            }//try-catch-finally
+        }//getValue
+    }//class_Node
+
+
+    /*
+     * 按访问顺序排列的双向链表，表头为最久未访问的节点
+     */
+    private static class AccessOrderQueue {
+        private Node mHead;
+        private Node mTail;
+        private int mSize = 0;
+
+
+        void add(Node node) {
+            node.mQueue = this;
+            node.mPrev = mTail;
+            node.mNext = null;
+            if (null == mTail) {
+                mHead = node;
+            } else {
+                mTail.mNext = node;
+            }//if-else
+            mTail = node;
+            mSize++;
+        }//add
+
+        void remove(Node node) {
+            if (null == node.mPrev) {
+                mHead = node.mNext;
+            } else {
+                node.mPrev.mNext = node.mNext;
+            }//if-else
+
+            if (null == node.mNext) {
+                mTail = node.mPrev;
+            } else {
+                node.mNext.mPrev = node.mPrev;
+            }//if-else
+
+            node.mQueue = null;
+            node.mPrev = null;
+            node.mNext = null;
+            mSize--;
+        }//remove
+
+        void moveToTail(Node node) {
+            if (node != mTail) {
+                remove(node);
+                add(node);
+            }//if
+        }//moveToTail
+
+        Node peekHead() {
+            return mHead;
+        }//peekHead
+
+        int size() {
+            return mSize;
+        }//size
+    }//class_AccessOrderQueue
+
+
+    /*
+     * 4行的Count-Min Sketch，用于估计表达式的近期访问频率
+     * 每个计数器最大为15，累计计数达到采样数后所有计数器减半，使频率估计随时间衰减
+     */
+    private static class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0x84222325, 0xcbf29ce4, 0x5bd1e995};
+
+        private final byte[][] mTable;
+        private final int mMask;
+        private final int mSampleSize;
+        private int mAdditions = 0;
+
+
+        FrequencySketch(int maximumSize) {
+            int width = Integer.highestOneBit(Math.max(16, maximumSize) * 2 - 1);
+            mTable = new byte[DEPTH][width];
+            mMask = width - 1;
+            mSampleSize = 10 * Math.max(16, maximumSize);
+        }//con_FrequencySketch
+
+        void increment(int hash) {
+            boolean isAdded = false;
+            for (int i = 0; i < DEPTH; i++) {
+                int index = indexOf(hash, i);
+                if (mTable[i][index] < MAX_COUNT) {
+                    mTable[i][index]++;
+                    isAdded = true;
+                }//if
+            }//for
+
+            if (isAdded && ++mAdditions >= mSampleSize) {
+                reset();
+            }//if
+        }//increment
+
+        int frequency(int hash) {
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, mTable[i][indexOf(hash, i)]);
+            }//for
+
+            return frequency;
+        }//frequency
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+            h ^= h >>> 16;
+
+            return h & mMask;
+        }//indexOf
+
+        private void reset() {
+            for (byte[] row : mTable) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }//for
+            }//for
+            mAdditions /= 2;
+        }//reset
+    }//class_FrequencySketch
+}//class_CompiledExpressionCache
@@ -0,0 +1,339 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import com.daoshengwanwu.math_util.calculator.exception.OperandOutOfBoundsException;
+import com.daoshengwanwu.math_util.calculator.exception.VariableNotExistException;
+import com.daoshengwanwu.math_util.calculator.exception.VariableNotSetException;
+
+
+/**
+ * 自适应曲线取样：为一元表达式在变量的取值范围上生成绘图用的点集，平坦的地方点稀疏，弯曲、转折和间断的地方点密集
+ * 先在区间上等距取INITIAL_INTERVALS + 1个点，之后每次把误差估计最大的区间在中点一分为二，
+ * 直到所有区间的误差都不超过tolerance、区间长度不大于minSpan或者点数达到maxPoints
+ * 误差估计不需要额外的求值：每次求值都以前向自动微分同时得到导数，
+ * 以两端导数与弦斜率之差估计曲线偏离两点连线的距离（两端的三次Hermite插值与弦之差的上界）
+ * 区间已经不能再分、误差仍然超过tolerance，并且两端的值无法由导数解释（弦的斜率与两端的导数都反号，
+ * 或者两端的差远大于导数与区间长度之积）时，认为区间内有间断点（如tan的极点、%的跳跃），在其中插入一个y为NaN的断点；
+ * 超出定义域的点的y也为NaN，因此绘图时遇到NaN应当断开，不跨过它连线
+ * CurveSampler是不可变的，可以被多个线程同时使用
+ */
+public final class CurveSampler {
+    public static final int INITIAL_INTERVALS = 32;
+
+    //三次Hermite插值与弦之差的最大值不超过 区间长度 * 4/27 * (|f'(a) - 弦斜率| + |f'(b) - 弦斜率|)
+    private static final double HERMITE_BOUND = 4.0 / 27;
+    //两端的差超过导数的绝对值较大者与区间长度之积的这个倍数时认为是跳跃
+    private static final double JUMP_RATIO = 2;
+
+    private final double mTolerance;
+    private final double mMinSpan;
+    private final int mMaxPoints;
+
+
+    /**
+     * @param tolerance 允许的曲线偏离相邻两点连线的最大距离（y方向）
+     * @param minSpan 最小的取样间隔，间断点和转折点处的区间最多分到这么小
+     * @param maxPoints 最多的求值次数（即断点之外的点数），达到后不再细分
+     */
+    public CurveSampler(double tolerance, double minSpan, int maxPoints) {
+        if (!(tolerance > 0) || !(minSpan >= 0)) {
+            throw new IllegalArgumentException("误差必须为正数，最小间隔不能为负数：tolerance = " + tolerance
+                    + ", minSpan = " + minSpan);
+        }//if
+
+        if (maxPoints < 2) {
+            throw new IllegalArgumentException("最多点数不能小于2：" + maxPoints);
+        }//if
+
+        mTolerance = tolerance;
+        mMinSpan = minSpan;
+        mMaxPoints = maxPoints;
+    }//con_CurveSampler
+
+    /**
+     * 按屏幕的像素设置取样参数：误差为半个像素，最小间隔为四分之一个像素，最多点数为宽度的16倍
+     * @param xRange 横轴显示的范围
+     * @param width 横轴的像素数
+     * @param yRange 纵轴显示的范围
+     * @param height 纵轴的像素数
+     * @return 取样器
+     */
+    public static CurveSampler forScreen(double xRange, int width, double yRange, int height) {
+        return new CurveSampler(yRange / height / 2, xRange / width / 4, width * 16);
+    }//forScreen
+
+    /**
+     * 在变量的取值范围（Variable.set设置的上下限）上对表达式取样，表达式用到的其他变量取其当前值，取样不改变任何变量的值
+     * @param varAriExp 表达式
+     * @param variable 取样的变量
+     * @return 取样得到的曲线
+     */
+    public Curve sample(VarAriExp varAriExp, Variable variable) {
+        if (!variable.isSet()) {
+            throw new VariableNotSetException(variable.getFlagStr());
+        }//if
+
+        CompiledExpression compiledExp = varAriExp.getCompiledExpression();
+        int slot = compiledExp.slotOf(variable);
+        if (slot < 0) {
+            throw new VariableNotExistException(variable.getFlagStr());
+        }//if
+
+        VariableFrame frame = compiledExp.newFrame();
+        for (int i = 0; i < compiledExp.getVariableCount(); i++) {
+            if (i != slot && compiledExp.isVariableReferenced(i)) {
+                frame.setValue(i, compiledExp.getVariable(i).curValue());
+            }//if
+        }//for
+
+        return sample(compiledExp, frame, slot, variable.getLowerLimit(), variable.getUpperLimit());
+    }//sample
+
+    /**
+     * 以变量帧中其他变量的值，对表达式在槽位slot上的变量取[lower, upper]时取样
+     * 取样过程中会改写帧中slot上的值，返回前恢复为原来的值
+     * @return 取样得到的曲线
+     */
+    public Curve sample(CompiledExpression compiledExp, VariableFrame frame, int slot, double lower, double upper) {
+        if (!(lower <= upper) || Double.isInfinite(upper - lower)) {
+            throw new IllegalArgumentException("区间必须是有限的，并且下限不大于上限：[" + lower + ", " + upper + "]");
+        }//if
+
+        double original = frame.getValue(slot);
+        try {
+            return new Sampling(compiledExp, frame, slot).run(lower, upper);
+        } finally {
+            frame.setValue(slot, original);
+        }//try-finally
+    }//sample
+
+    public double getTolerance() {
+        return mTolerance;
+    }//getTolerance
+
+    public double getMinSpan() {
+        return mMinSpan;
+    }//getMinSpan
+
+    public int getMaxPoints() {
+        return mMaxPoints;
+    }//getMaxPoints
+
+
+    /**
+     * 取样得到的曲线：按x从小到大排列的点，y为NaN的点表示曲线在此断开
+     */
+    public static final class Curve {
+        private final double[] mXs;
+        private final double[] mYs;
+        private final int mEvaluationCount;
+
+
+        private Curve(double[] xs, double[] ys, int evaluationCount) {
+            mXs = xs;
+            mYs = ys;
+            mEvaluationCount = evaluationCount;
+        }//con_Curve
+
+        public int size() {
+            return mXs.length;
+        }//size
+
+        public double getX(int index) {
+            return mXs[index];
+        }//getX
+
+        public double getY(int index) {
+            return mYs[index];
+        }//getY
+
+        public double[] getXs() {
+            return mXs.clone();
+        }//getXs
+
+        public double[] getYs() {
+            return mYs.clone();
+        }//getYs
+
+        /**
+         * 获取取样时表达式的求值次数
+         */
+        public int getEvaluationCount() {
+            return mEvaluationCount;
+        }//getEvaluationCount
+    }//class_Curve
+
+
+    /*
+     * 一次取样的状态：点按x的顺序串成链表，mNext[i]是点i右侧相邻的点，区间以其左端点的下标表示
+     */
+    private final class Sampling {
+        private final VariableFrame mFrame;
+        private final int mSlot;
+        private final int[] mSlots;
+        private final double[] mGradient = new double[1];
+        //超出定义域的点会被捕获后当作NaN，异常不必记录调用栈
+        private final DualEvaluator mDualEvaluator;
+
+        private double[] mXs = new double[INITIAL_INTERVALS * 4];
+        private double[] mYs = new double[mXs.length];
+        private double[] mDerivatives = new double[mXs.length];
+        private double[] mErrors = new double[mXs.length]; //以该点为左端点的区间的误差估计
+        private int[] mNext = new int[mXs.length];
+        private boolean[] mIsBreak = new boolean[mXs.length]; //以该点为左端点的区间内有间断点
+        private int mCount = 0;
+        private final PriorityQueue<Integer> mQueue = new PriorityQueue<>(this::compareErrors);
+
+
+        Sampling(CompiledExpression compiledExp, VariableFrame frame, int slot) {
+            mFrame = frame;
+            mSlot = slot;
+            mSlots = new int[] {slot};
+            mDualEvaluator = new DualEvaluator(compiledExp, false);
+        }//con_Sampling
+
+        Curve run(double lower, double upper) {
+            int n = lower == upper ? 0 : Math.min(INITIAL_INTERVALS, mMaxPoints - 1);
+            for (int i = 0; i <= n; i++) {
+                int point = addPoint(i == n ? upper : lower + (upper - lower) * i / n);
+                mNext[point] = -1;
+                if (i > 0) {
+                    mNext[point - 1] = point;
+                }//if
+            }//for
+
+            for (int i = 0; i < n; i++) {
+                classify(i);
+            }//for
+
+            while (!mQueue.isEmpty() && mCount < mMaxPoints) {
+                int left = mQueue.poll();
+                int right = mNext[left];
+                int middle = addPoint(0.5 * (mXs[left] + mXs[right]));
+                mNext[left] = middle;
+                mNext[middle] = right;
+                classify(left);
+                classify(middle);
+            }//while
+
+            return toCurve();
+        }//run
+
+        //估计以left为左端点的区间的误差，需要继续细分时放入队列，不能再分时判断是否为间断点
+        private void classify(int left) {
+            int right = mNext[left];
+            double error = estimateError(left, right);
+            mErrors[left] = error;
+            mIsBreak[left] = false;
+            if (error <= mTolerance) {
+                return;
+            }//if
+
+            double a = mXs[left];
+            double b = mXs[right];
+            double middle = 0.5 * (a + b);
+            if (b - a > mMinSpan && middle > a && middle < b) {
+                mQueue.add(left);
+            } else {
+                mIsBreak[left] = isJump(left, right);
+            }//if-else
+        }//classify
+
+        private double estimateError(int left, int right) {
+            double fa = mYs[left];
+            double fb = mYs[right];
+            boolean isFiniteA = Double.isFinite(fa);
+            boolean isFiniteB = Double.isFinite(fb);
+            if (!isFiniteA && !isFiniteB) {
+                return 0;
+            }//if
+
+            if (isFiniteA != isFiniteB) {
+                //定义域的边界，细分到最小间隔
+                return Double.POSITIVE_INFINITY;
+            }//if
+
+            double h = mXs[right] - mXs[left];
+            double slope = (fb - fa) / h;
+            double da = mDerivatives[left];
+            double db = mDerivatives[right];
+            double error = h * HERMITE_BOUND * (Math.abs(da - slope) + Math.abs(db - slope));
+
+            return Double.isNaN(error) ? Double.POSITIVE_INFINITY : error;
+        }//estimateError
+
+        private boolean isJump(int left, int right) {
+            double fa = mYs[left];
+            double fb = mYs[right];
+            if (!Double.isFinite(fa) || !Double.isFinite(fb)) {
+                return false;
+            }//if
+
+            double h = mXs[right] - mXs[left];
+            double slope = (fb - fa) / h;
+            double da = mDerivatives[left];
+            double db = mDerivatives[right];
+
+            return (slope * da < 0 && slope * db < 0)
+                    || Math.abs(fb - fa) > JUMP_RATIO * h * Math.max(Math.abs(da), Math.abs(db));
+        }//isJump
+
+        private int addPoint(double x) {
+            if (mCount == mXs.length) {
+                int capacity = mCount * 2;
+                mXs = Arrays.copyOf(mXs, capacity);
+                mYs = Arrays.copyOf(mYs, capacity);
+                mDerivatives = Arrays.copyOf(mDerivatives, capacity);
+                mErrors = Arrays.copyOf(mErrors, capacity);
+                mNext = Arrays.copyOf(mNext, capacity);
+                mIsBreak = Arrays.copyOf(mIsBreak, capacity);
+            }//if
+
+            mFrame.setValue(mSlot, x);
+            double y;
+            double derivative;
+            try {
+                y = mDualEvaluator.evaluate(mFrame.getValues(), mSlots, mGradient);
+                derivative = mGradient[0];
+            } catch (OperandOutOfBoundsException e) {
+                y = Double.NaN;
+                derivative = Double.NaN;
+            }//try-catch
+
+            mXs[mCount] = x;
+            mYs[mCount] = y;
+            mDerivatives[mCount] = derivative;
+
+            return mCount++;
+        }//addPoint
+
+        //按链表顺序输出各点，间断的区间中插入一个断点，连续的多个NaN只保留一个
+        private Curve toCurve() {
+            double[] xs = new double[mCount * 2];
+            double[] ys = new double[mCount * 2];
+            int length = 0;
+            for (int point = 0; point >= 0; point = mNext[point]) {
+                if (!Double.isNaN(mYs[point]) || length == 0 || !Double.isNaN(ys[length - 1])) {
+                    xs[length] = mXs[point];
+                    ys[length] = mYs[point];
+                    length++;
+                }//if
+
+                if (mIsBreak[point]) {
+                    xs[length] = 0.5 * (mXs[point] + mXs[mNext[point]]);
+                    ys[length] = Double.NaN;
+                    length++;
+                }//if
+            }//for
+
+            return new Curve(Arrays.copyOf(xs, length), Arrays.copyOf(ys, length), mCount);
+        }//toCurve
+
+        private int compareErrors(int left, int right) {
+            return Double.compare(mErrors[right], mErrors[left]);
+        }//compareErrors
+    }//class_Sampling
+}//class_CurveSampler
@@ -0,0 +1,98 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+/*
+ * 编译后指令序列的依赖分析
+ * 后缀指令序列中，每条指令i都是一棵子树的根：子树由[getSubtreeStart(i), i]区间内的指令组成，
+ * 执行完这些指令后栈顶就是该子树的值；STORE_TEMP不改变栈，视为以其前一棵子树为操作数的单目运算
+ * getDependencies(i)为子树的值所依赖的变量集合，第k个槽位对应第(k % 64)位，
+ * 槽位超过64个时不同的变量会共用同一位，只会把不相关的子树误判为相关，不会漏判；
+ * LOAD_TEMP依赖的是对应STORE_TEMP所保存的子树所依赖的变量
+ * 依赖不包含任何变量的子树（常量子树）的依赖为0
+ * 分析结果是不可变的
+ */
+final class DependencyAnalysis {
+    private static final int[] NO_ROOTS = new int[0];
+
+    private final int[] mSubtreeStarts;
+    private final long[] mDependencies;
+    //mRootsByStart[s]为以s为起点、至少包含两条指令的子树的根，按从小到大排列（即子树从小到大）
+    private final int[][] mRootsByStart;
+
+
+    DependencyAnalysis(CompiledExpression compiledExp) {
+        int[] code = compiledExp.getCode();
+        mSubtreeStarts = new int[code.length];
+        mDependencies = new long[code.length];
+        long[] tempDependencies = new long[compiledExp.getTempCount()];
+        //模拟求值栈，栈中存放的是各操作数子树的根
+        int[] stack = new int[Math.max(1, compiledExp.getMaxDepth())];
+        int size = 0;
+        int[] rootCounts = new int[code.length];
+
+        for (int i = 0; i < code.length; i++) {
+            int opCode = OpCode.opCode(code[i]);
+            int arg = OpCode.arg(code[i]);
+            switch (opCode) {
+            case OpCode.CONST:
+                mSubtreeStarts[i] = i;
+                stack[size++] = i;
+                break;
+            case OpCode.LOAD_VAR:
+                mSubtreeStarts[i] = i;
+                mDependencies[i] = dependencyBit(arg);
+                stack[size++] = i;
+                break;
+            case OpCode.LOAD_TEMP:
+                mSubtreeStarts[i] = i;
+                mDependencies[i] = tempDependencies[arg];
+                stack[size++] = i;
+                break;
+            default:
+                //STORE_TEMP与单目运算相同，另外记下所保存子树的依赖
+                if (opCode == OpCode.STORE_TEMP) {
+                    tempDependencies[arg] = mDependencies[stack[size - 1]];
+                }//if
+                int dimension = opCode == OpCode.STORE_TEMP ? 1 : OpCode.getDimension(opCode);
+                long dependencies = 0;
+                for (int k = size - dimension; k < size; k++) {
+                    dependencies |= mDependencies[stack[k]];
+                }//for
+                mSubtreeStarts[i] = mSubtreeStarts[stack[size - dimension]];
+                mDependencies[i] = dependencies;
+                size -= dimension;
+                stack[size++] = i;
+                rootCounts[mSubtreeStarts[i]]++;
+                break;
+            }//switch
+        }//for
+
+        mRootsByStart = new int[code.length][];
+        for (int s = 0; s < code.length; s++) {
+            mRootsByStart[s] = rootCounts[s] == 0 ? NO_ROOTS : new int[rootCounts[s]];
+            rootCounts[s] = 0;
+        }//for
+        for (int i = 0; i < code.length; i++) {
+            int start = mSubtreeStarts[i];
+            if (start < i) {
+                mRootsByStart[start][rootCounts[start]++] = i;
+            }//if
+        }//for
+    }//con_DependencyAnalysis
+
+    static long dependencyBit(int slot) {
+        return 1L << slot;
+    }//dependencyBit
+
+    int getSubtreeStart(int root) {
+        return mSubtreeStarts[root];
+    }//getSubtreeStart
+
+    long getDependencies(int root) {
+        return mDependencies[root];
+    }//getDependencies
+
+    int[] getRootsByStart(int start) {
+        return mRootsByStart[start];
+    }//getRootsByStart
+}//class_DependencyAnalysis
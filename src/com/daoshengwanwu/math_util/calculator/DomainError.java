@@ -0,0 +1,51 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+/**
+ * 定义域错误码
+ * 以NaN方式求值时（CompiledExpression.evaluateOrNaN、BatchEvaluator.evaluateOrNaN、Calculator.sweepOrNaN等），
+ * 操作数超出运算符定义域的点不抛出OperandOutOfBoundsException，而是以NaN作为结果，并记录一个错误码
+ * 每个点的错误码是按计算顺序第一个出错的运算，即以抛出异常的方式计算该点时抛出的那个异常所对应的运算；
+ * 每个错误码各占一位，一批点的错误码按位或得到这批点的错误位图
+ */
+public final class DomainError {
+    public static final int NONE = 0;
+    public static final int ASIN = 1; //asin的操作数不在[-1, 1]中
+    public static final int ACOS = 1 << 1; //acos的操作数不在[-1, 1]中
+    public static final int ATAN = 1 << 2; //atan的操作数不在[-1, 1]中
+    public static final int LN = 1 << 3; //ln的操作数不大于0
+    public static final int LG = 1 << 4; //lg的操作数不大于0
+    public static final int SQRT = 1 << 5; //sqrt的操作数小于0
+    public static final int FACT = 1 << 6; //阶乘的操作数不是非负整数
+    public static final int LOG_BASE = 1 << 7; //log~的底数不大于0或等于1
+    public static final int LOG_OPERAND = 1 << 8; //log~的真数不大于0
+
+    private static final String[] NAMES = {"asin", "acos", "atan", "ln", "lg", "sqrt", "!", "log~(底数)", "log~(真数)"};
+
+
+    private DomainError() {
+    }//con_DomainError
+
+    /**
+     * 把错误码或错误位图转换为可读的形式，例如"ln|sqrt"
+     * @param errors 错误码或错误位图
+     * @return 各错误对应的运算符，以'|'分隔；没有错误时为"none"
+     */
+    public static String describe(int errors) {
+        if (errors == NONE) {
+            return "none";
+        }//if
+
+        StringBuilder builder = new StringBuilder();
+        for (int bit = 0; bit < NAMES.length; bit++) {
+            if ((errors & (1 << bit)) != 0) {
+                if (builder.length() > 0) {
+                    builder.append('|');
+                }//if
+                builder.append(NAMES[bit]);
+            }//if
+        }//for
+
+        return builder.toString();
+    }//describe
+}//class_DomainError
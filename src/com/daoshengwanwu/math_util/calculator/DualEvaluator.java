@@ -0,0 +1,190 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.Arrays;
+
+
+/*
+ * 前向自动微分：以对偶数执行编译后的指令序列，一遍同时得到表达式的值和对若干个变量的偏导数
+ * 栈上每个位置除了值之外还带有一组切向量分量，第j个分量是该位置的值对第j个求导变量的偏导数；
+ * 每条运算指令先用OperatorFunctions计算值（因此值和抛出的异常与evaluate完全相同），再按链式法则更新切向量
+ *
+ * 不可导处及特殊运算的约定：
+ * 1. |x|：导数为signum(x)，在x = 0处取0（次梯度[-1, 1]的中点）
+ * 2. x!：只在非负整数上有定义，导数取其连续延拓Γ(x + 1)在该点的导数，即n! * ψ(n + 1) = n! * (1 + 1/2 + ... + 1/n - γ)
+ * 3. 有效数字的规范化（数值策略插入的ROUND）视为恒等映射，切向量原样传递
+ * 4. x % y：视为x - y * trunc(x / y)并把trunc(x / y)当作常数求导，在x / y为整数（结果跳变）处同样按此计算
+ * 5. 某个方向上操作数的切向量分量为0时，该操作数在这个方向上的贡献为0，即使该处的局部导数为无穷或NaN，
+ *    例如对y求导时sqrt(x) + y在x = 0处为1，x^2在x < 0时对x的导数正常，不受ln(x)的影响
+ * 其余运算的局部导数为无穷时（如sqrt在0处、asin在±1处），结果按IEEE 754运算得到无穷或NaN
+ */
+final class DualEvaluator {
+    private static final double EULER_GAMMA = 0.5772156649015329;
+
+    private final int[] mCode;
+    private final double[] mConstants;
+    private final double[] mStack;
+    private final double[] mTemps;
+    private final boolean mWritableStackTrace;
+    private double[] mTangents = new double[0]; //栈位置p的第j个分量位于p * k + j，k为求导变量个数
+    private double[] mTempTangents = new double[0];
+
+
+    /**
+     * @param writableStackTrace 操作数超出定义域时抛出的异常是否记录调用栈，异常会被捕获后丢弃时应为false
+     */
+    DualEvaluator(CompiledExpression compiledExp, boolean writableStackTrace) {
+        mWritableStackTrace = writableStackTrace;
+        mCode = compiledExp.getCode();
+        mConstants = compiledExp.getConstants();
+        mStack = new double[compiledExp.getMaxDepth()];
+        mTemps = new double[compiledExp.getTempCount()];
+    }//con_DualEvaluator
+
+    /**
+     * 计算表达式的值及其对各个变量槽位的偏导数
+     * @param values 各变量槽位的值
+     * @param slots 求导变量的槽位，表达式没有用到的槽位（包括-1）偏导数为0
+     * @param gradient 偏导数的输出，gradient[j]为对slots[j]的偏导数
+     * @return 表达式的值
+     */
+    double evaluate(double[] values, int[] slots, double[] gradient) {
+        int k = slots.length;
+        ensureCapacity(k);
+        double[] stack = mStack;
+        double[] temps = mTemps;
+        double[] tangents = mTangents;
+        double[] tempTangents = mTempTangents;
+
+        int sp = 0;
+        for (int instruction : mCode) {
+            int opCode = OpCode.opCode(instruction);
+            int arg = OpCode.arg(instruction);
+            switch (opCode) {
+            case OpCode.CONST: {
+                stack[sp] = mConstants[arg];
+                Arrays.fill(tangents, sp * k, sp * k + k, 0);
+                sp++;
+            } break;
+            case OpCode.LOAD_VAR: {
+                stack[sp] = values[arg];
+                for (int j = 0; j < k; j++) {
+                    tangents[sp * k + j] = slots[j] == arg ? 1 : 0;
+                }//for
+                sp++;
+            } break;
+            case OpCode.LOAD_TEMP: {
+                stack[sp] = temps[arg];
+                System.arraycopy(tempTangents, arg * k, tangents, sp * k, k);
+                sp++;
+            } break;
+            case OpCode.STORE_TEMP: {
+                temps[arg] = stack[sp - 1];
+                System.arraycopy(tangents, (sp - 1) * k, tempTangents, arg * k, k);
+            } break;
+            default: {
+                if (OpCode.getDimension(opCode) == 2) {
+                    sp--;
+                    double left = stack[sp - 1];
+                    double right = stack[sp];
+                    double result = OperatorFunctions.operate(opCode, arg, left, right, mWritableStackTrace);
+                    combineBinary(opCode, left, right, result, tangents, (sp - 1) * k, sp * k, k);
+                    stack[sp - 1] = result;
+                } else {
+                    double operand = stack[sp - 1];
+                    double result = OperatorFunctions.operate(opCode, arg, operand, 0, mWritableStackTrace);
+                    double partial = unaryPartial(opCode, operand, result);
+                    int offset = (sp - 1) * k;
+                    for (int j = 0; j < k; j++) {
+                        tangents[offset + j] = scale(partial, tangents[offset + j]);
+                    }//for
+                    stack[sp - 1] = result;
+                }//if-else
+            } break;
+            }//switch
+        }//for
+
+        System.arraycopy(tangents, 0, gradient, 0, k);
+
+        return stack[0];
+    }//evaluate
+
+    //按链式法则把右操作数的切向量合并到左操作数的位置上
+    private static void combineBinary(int opCode, double left, double right, double result,
+                                      double[] tangents, int leftOffset, int rightOffset, int k) {
+        double leftPartial;
+        double rightPartial;
+        switch (opCode) {
+        case OpCode.ADD: leftPartial = 1; rightPartial = 1; break;
+        case OpCode.SUB: leftPartial = 1; rightPartial = -1; break;
+        case OpCode.MUL: leftPartial = right; rightPartial = left; break;
+        case OpCode.DIV: leftPartial = 1 / right; rightPartial = -left / (right * right); break;
+        case OpCode.MOD: {
+            double quotient = left / right;
+            leftPartial = 1;
+            rightPartial = -(quotient < 0 ? Math.ceil(quotient) : Math.floor(quotient));
+        } break;
+        case OpCode.POW: {
+            //x^0恒为1，0^y（y > 0）恒为0，这两处直接给出导数，避免0 * ∞
+            leftPartial = right == 0 ? 0 : right * Math.pow(left, right - 1);
+            rightPartial = result == 0 ? 0 : result * Math.log(left);
+        } break;
+        case OpCode.LOG: {
+            //log(b)~(x) = ln(x) / ln(b)
+            double lnBase = Math.log(left);
+            leftPartial = -result / (left * lnBase);
+            rightPartial = 1 / (right * lnBase);
+        } break;
+        default: throw new IllegalArgumentException(OpCode.getName(opCode));
+        }//switch
+
+        for (int j = 0; j < k; j++) {
+            tangents[leftOffset + j] = scale(leftPartial, tangents[leftOffset + j])
+                    + scale(rightPartial, tangents[rightOffset + j]);
+        }//for
+    }//combineBinary
+
+    private static double unaryPartial(int opCode, double operand, double result) {
+        switch (opCode) {
+        case OpCode.ROUND: return 1;
+        case OpCode.NEGATE: return -1;
+        case OpCode.SIN: return Math.cos(operand);
+        case OpCode.COS: return -Math.sin(operand);
+        case OpCode.TAN: return 1 + result * result;
+        case OpCode.ASIN: return 1 / Math.sqrt(1 - operand * operand);
+        case OpCode.ACOS: return -1 / Math.sqrt(1 - operand * operand);
+        case OpCode.ATAN: return 1 / (1 + operand * operand);
+        case OpCode.LN: return 1 / operand;
+        case OpCode.LG: return 1 / (operand * Math.log(10));
+        case OpCode.SQRT: return 0.5 / result;
+        case OpCode.FACT: return result * digammaOfSuccessor((int)operand);
+        case OpCode.ABS: return Math.signum(operand);
+        default: throw new IllegalArgumentException(OpCode.getName(opCode));
+        }//switch
+    }//unaryPartial
+
+    //ψ(n + 1) = 1 + 1/2 + ... + 1/n - γ
+    private static double digammaOfSuccessor(int n) {
+        double harmonic = 0;
+        for (int i = n; i >= 1; i--) {
+            harmonic += 1.0 / i;
+        }//for
+
+        return harmonic - EULER_GAMMA;
+    }//digammaOfSuccessor
+
+    //切向量分量为0时贡献为0，不与局部导数相乘，以免∞ * 0得到NaN
+    private static double scale(double partial, double tangent) {
+        return tangent == 0 ? 0 : partial * tangent;
+    }//scale
+
+    private void ensureCapacity(int k) {
+        if (mTangents.length < mStack.length * k) {
+            mTangents = new double[mStack.length * k];
+        }//if
+
+        if (mTempTangents.length < mTemps.length * k) {
+            mTempTangents = new double[mTemps.length * k];
+        }//if
+    }//ensureCapacity
+}//class_DualEvaluator
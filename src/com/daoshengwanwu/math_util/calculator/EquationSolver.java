@@ -0,0 +1,363 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.Arrays;
+
+import com.daoshengwanwu.math_util.calculator.exception.OperandOutOfBoundsException;
+import com.daoshengwanwu.math_util.calculator.exception.VariableNotExistException;
+import com.daoshengwanwu.math_util.calculator.exception.VariableNotSetException;
+
+
+/**
+ * 方程求根：求出表达式在一个变量的区间上的所有零点
+ * 先在区间上等距取sampleCount + 1个点，相邻两点异号的区间用Brent方法求根；
+ * 每次求值都以前向自动微分（见CompiledExpression.evaluateGradient）同时得到导数，导数可用时优先取牛顿步，
+ * 因此每个根通常只需要几次求值，而不必用很小的跨度扫描整个区间
+ * 相邻两点同号、但两端的|f|都向区间内部减小时，再对导数求根找到区间内的极值点：
+ * 极值点处异号则分成两个区间分别求根，极值点处的值在舍入误差内为0则它是一个重根（如(x-1)^2的x = 1）
+ * 零点之间的距离小于取样间隔、并且不满足上述条件时可能被遗漏，此时应增大sampleCount
+ * 操作数超出定义域的点视为没有值，不与相邻的点组成区间；
+ * 在不连续点（如1/x的极点）两侧异号的区间收敛后的值不接近0，不作为根返回
+ * EquationSolver是不可变的，可以被多个线程同时使用
+ */
+public final class EquationSolver {
+    public static final int DEFAULT_SAMPLE_COUNT = 32;
+
+    private static final int MAX_ITERATIONS = 100;
+    private static final double EPSILON = Math.ulp(1.0);
+    //收敛点的值超过区间两端的值的这个比例时，认为收敛到了不连续点而不是零点
+    private static final double DISCONTINUITY_RATIO = 1e-6;
+    //极值点处的值不超过区间两端的值的这么多个ulp时，认为它是重根
+    private static final int TOUCH_ULPS = 64;
+    //端点恰好是根时，为在区间内部找到异号的区间最多二分的次数
+    private static final int MAX_SPLIT_DEPTH = 16;
+
+    private final int mSampleCount;
+    private final double mTolerance;
+
+
+    public EquationSolver() {
+        this(DEFAULT_SAMPLE_COUNT, 0);
+    }//con_EquationSolver
+
+    /**
+     * @param sampleCount 初始取样的区间个数，零点之间的距离应大于区间长度除以sampleCount
+     * @param tolerance 根的绝对误差，为0时只受浮点精度的限制（相对误差约为2个ulp）
+     */
+    public EquationSolver(int sampleCount, double tolerance) {
+        if (sampleCount < 1) {
+            throw new IllegalArgumentException("取样区间的个数必须为正数：" + sampleCount);
+        }//if
+
+        if (!(tolerance >= 0)) {
+            throw new IllegalArgumentException("误差不能为负数：" + tolerance);
+        }//if
+
+        mSampleCount = sampleCount;
+        mTolerance = tolerance;
+    }//con_EquationSolver
+
+    /**
+     * 求出表达式在变量的取值范围（Variable.set设置的上下限，开区间的端点已按跨度收缩）上的所有零点
+     * 变量先按对象本身、其次按变量名对应到表达式中的变量；表达式用到的其他变量取其当前值，求根不改变任何变量的值
+     * @param varAriExp 表达式
+     * @param variable 求根的变量
+     * @return 从小到大排列的所有零点，没有零点时为空数组
+     */
+    public double[] solve(VarAriExp varAriExp, Variable variable) {
+        if (!variable.isSet()) {
+            throw new VariableNotSetException(variable.getFlagStr());
+        }//if
+
+        CompiledExpression compiledExp = varAriExp.getCompiledExpression();
+        int slot = compiledExp.slotOf(variable);
+        if (slot < 0) {
+            throw new VariableNotExistException(variable.getFlagStr());
+        }//if
+
+        VariableFrame frame = compiledExp.newFrame();
+        for (int i = 0; i < compiledExp.getVariableCount(); i++) {
+            if (i != slot && compiledExp.isVariableReferenced(i)) {
+                frame.setValue(i, compiledExp.getVariable(i).curValue());
+            }//if
+        }//for
+
+        return solve(compiledExp, frame, slot, variable.getLowerLimit(), variable.getUpperLimit());
+    }//solve
+
+    /**
+     * 以变量帧中其他变量的值，求出表达式在槽位slot上的变量取[lower, upper]时的所有零点
+     * 求根过程中会改写帧中slot上的值，返回前恢复为原来的值
+     * @param compiledExp 编译后的表达式
+     * @param frame 由compiledExp.newFrame()创建的变量帧
+     * @param slot 求根的变量槽位
+     * @param lower 区间下限（包含）
+     * @param upper 区间上限（包含）
+     * @return 从小到大排列的所有零点，没有零点时为空数组
+     */
+    public double[] solve(CompiledExpression compiledExp, VariableFrame frame, int slot, double lower, double upper) {
+        if (!(lower <= upper) || Double.isInfinite(upper - lower)) {
+            throw new IllegalArgumentException("区间必须是有限的，并且下限不大于上限：[" + lower + ", " + upper + "]");
+        }//if
+
+        double original = frame.getValue(slot);
+        try {
+            return new Search(compiledExp, frame, slot).run(lower, upper);
+        } finally {
+            frame.setValue(slot, original);
+        }//try-finally
+    }//solve
+
+    public int getSampleCount() {
+        return mSampleCount;
+    }//getSampleCount
+
+    public double getTolerance() {
+        return mTolerance;
+    }//getTolerance
+
+
+    /*
+     * 一次求根的状态：每次求值得到的值和导数，以及已找到的根
+     */
+    private final class Search {
+        private final VariableFrame mFrame;
+        private final int mSlot;
+        private final int[] mSlots;
+        private final double[] mGradient = new double[1];
+        //probe把超出定义域的点记为NaN，用不到异常的调用栈
+        private final DualEvaluator mDualEvaluator;
+
+        private double mValue; //最近一次求值的值，超出定义域时为NaN
+        private double mDerivative; //最近一次求值的导数
+        private double mRootValue; //最近一次brent返回的点上目标函数的值
+        private double[] mRoots = new double[4];
+        private int mRootCount = 0;
+
+
+        Search(CompiledExpression compiledExp, VariableFrame frame, int slot) {
+            mFrame = frame;
+            mSlot = slot;
+            mSlots = new int[] {slot};
+            mDualEvaluator = new DualEvaluator(compiledExp, false);
+        }//con_Search
+
+        double[] run(double lower, double upper) {
+            int n = lower == upper ? 0 : mSampleCount;
+            double[] xs = new double[n + 1];
+            double[] fs = new double[n + 1];
+            double[] ds = new double[n + 1];
+            for (int i = 0; i <= n; i++) {
+                xs[i] = i == n ? upper : lower + (upper - lower) * i / n;
+                probe(xs[i]);
+                fs[i] = mValue;
+                ds[i] = mDerivative;
+                if (fs[i] == 0) {
+                    addRoot(xs[i]);
+                }//if
+            }//for
+
+            for (int i = 0; i < n; i++) {
+                searchInterval(xs[i], fs[i], ds[i], xs[i + 1], fs[i + 1], ds[i + 1], MAX_SPLIT_DEPTH);
+            }//for
+
+            return sortedRoots();
+        }//run
+
+        private void searchInterval(double a, double fa, double da, double b, double fb, double db, int depth) {
+            if (!Double.isFinite(fa) || !Double.isFinite(fb)) {
+                return;
+            }//if
+
+            if (fa == 0 || fb == 0) {
+                splitAtRoot(a, fa, da, b, fb, db, depth);
+                return;
+            }//if
+
+            if ((fa > 0) != (fb > 0)) {
+                solveBracket(a, fa, da, b, fb, db);
+                return;
+            }//if
+
+            //同号时只有两端的|f|都向区间内部减小，区间内才一定有|f|的极小值点，此时两端的导数异号
+            if (!(fa * da < 0 && fb * db > 0)) {
+                return;
+            }//if
+
+            double c = brent(a, da, Double.NaN, b, db, Double.NaN, true);
+            if (Double.isNaN(c)) {
+                return;
+            }//if
+
+            probe(c);
+            double fc = mValue;
+            double dc = mDerivative;
+            if (!Double.isFinite(fc)) {
+                return;
+            }//if
+
+            if (fc != 0 && (fc > 0) != (fa > 0)) {
+                solveBracket(a, fa, da, c, fc, dc);
+                solveBracket(c, fc, dc, b, fb, db);
+            } else if (Math.abs(fc) <= TOUCH_ULPS * Math.ulp(Math.max(Math.abs(fa), Math.abs(fb)))) {
+                addRoot(c);
+            }//if-else
+        }//searchInterval
+
+        /*
+         * 端点恰好是根（已经记录）时区间内部仍可能有根：端点内侧的符号由导数得到，
+         * 与另一端的符号不同时区间内部有根，在中点处分开，直到得到两端都不为0的区间
+         */
+        private void splitAtRoot(double a, double fa, double da, double b, double fb, double db, int depth) {
+            double signA = fa != 0 ? Math.signum(fa) : Math.signum(da);
+            double signB = fb != 0 ? Math.signum(fb) : -Math.signum(db);
+            if (depth == 0 || (fa == 0 && fb == 0) || signA == signB) {
+                return;
+            }//if
+
+            double m = 0.5 * (a + b);
+            probe(m);
+            double fm = mValue;
+            double dm = mDerivative;
+            if (fm == 0) {
+                addRoot(m);
+            }//if
+            searchInterval(a, fa, da, m, fm, dm, depth - 1);
+            searchInterval(m, fm, dm, b, fb, db, depth - 1);
+        }//splitAtRoot
+
+        private void solveBracket(double a, double fa, double da, double b, double fb, double db) {
+            double root = brent(a, fa, da, b, fb, db, false);
+            if (!Double.isNaN(root)
+                    && Math.abs(mRootValue) <= DISCONTINUITY_RATIO * Math.max(Math.abs(fa), Math.abs(fb))) {
+                addRoot(root);
+            }//if
+        }//solveBracket
+
+        /*
+         * Brent方法求[a, b]上目标函数的零点，fa、fb异号；isDerivative为true时目标函数是导数，否则是表达式的值
+         * ga、gb为目标函数在两端的导数，不可用时为NaN；可用时以牛顿步代替割线或逆二次插值，
+         * 牛顿步同样要经过Brent方法的检查（落在区间内并且比上上步缩短一半以上），否则退回二分
+         * 求值超出定义域或没有收敛时返回NaN
+         */
+        private double brent(double a, double fa, double ga, double b, double fb, double gb, boolean isDerivative) {
+            double c = a;
+            double fc = fa;
+            double gc = ga;
+            double d = b - a;
+            double e = d;
+            for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+                if ((fb > 0) == (fc > 0)) {
+                    c = a;
+                    fc = fa;
+                    gc = ga;
+                    d = b - a;
+                    e = d;
+                }//if
+
+                //保持b是目前最好的点，c与b异号
+                if (Math.abs(fc) < Math.abs(fb)) {
+                    a = b;
+                    b = c;
+                    c = a;
+                    fa = fb;
+                    fb = fc;
+                    fc = fa;
+                    ga = gb;
+                    gb = gc;
+                    gc = ga;
+                }//if
+
+                double tol = 2 * EPSILON * Math.abs(b) + 0.5 * mTolerance;
+                double middle = 0.5 * (c - b);
+                if (Math.abs(middle) <= tol || fb == 0) {
+                    mRootValue = fb;
+                    return b;
+                }//if
+
+                if (Math.abs(e) >= tol && Math.abs(fa) > Math.abs(fb)) {
+                    //候选步长为-p / q（符号在下面统一调整）
+                    double p;
+                    double q;
+                    if (Double.isFinite(gb) && gb != 0) {
+                        p = fb;
+                        q = gb;
+                    } else if (a == c) {
+                        double s = fb / fa;
+                        p = 2 * middle * s;
+                        q = 1 - s;
+                    } else {
+                        double s = fb / fa;
+                        double r = fb / fc;
+                        double t = fa / fc;
+                        p = s * (2 * middle * t * (t - r) - (b - a) * (r - 1));
+                        q = (t - 1) * (r - 1) * (s - 1);
+                    }//if-else
+
+                    if (p > 0) {
+                        q = -q;
+                    }//if
+                    p = Math.abs(p);
+
+                    if (2 * p < Math.min(3 * middle * q - Math.abs(tol * q), Math.abs(e * q))) {
+                        e = d;
+                        d = p / q;
+                    } else {
+                        d = middle;
+                        e = d;
+                    }//if-else
+                } else {
+                    d = middle;
+                    e = d;
+                }//if-else
+
+                a = b;
+                fa = fb;
+                ga = gb;
+                b += Math.abs(d) > tol ? d : Math.copySign(tol, middle);
+                probe(b);
+                fb = isDerivative ? mDerivative : mValue;
+                gb = isDerivative ? Double.NaN : mDerivative;
+                if (Double.isNaN(fb)) {
+                    return Double.NaN;
+                }//if
+            }//for
+
+            return Double.NaN;
+        }//brent
+
+        private void probe(double x) {
+            mFrame.setValue(mSlot, x);
+            try {
+                mValue = mDualEvaluator.evaluate(mFrame.getValues(), mSlots, mGradient);
+                mDerivative = mGradient[0];
+            } catch (OperandOutOfBoundsException e) {
+                mValue = Double.NaN;
+                mDerivative = Double.NaN;
+            }//try-catch
+        }//probe
+
+        private void addRoot(double root) {
+            if (mRootCount == mRoots.length) {
+                mRoots = Arrays.copyOf(mRoots, mRootCount * 2);
+            }//if
+
+            mRoots[mRootCount++] = root;
+        }//addRoot
+
+        //排序并去掉误差范围内重复的根（取样点恰好是根时，相邻区间的极值点也可能收敛到它）
+        private double[] sortedRoots() {
+            double[] roots = Arrays.copyOf(mRoots, mRootCount);
+            Arrays.sort(roots);
+
+            int count = 0;
+            for (double root : roots) {
+                if (count == 0 || root - roots[count - 1] > 4 * EPSILON * Math.abs(root) + mTolerance) {
+                    roots[count++] = root;
+                }//if
+            }//for
+
+            return Arrays.copyOf(roots, count);
+        }//sortedRoots
+    }//class_Search
+}//class_EquationSolver
@@ -0,0 +1,67 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+
+/*
+ * Calculator.calculateCurrentValue求值的JFR事件
+ * 单次求值通常只需要几百纳秒，默认只记录耗时超过阈值的异常情况（如首次求值时的编译、计算出错）；
+ * 需要统计全部求值时可以在记录配置中把阈值设为0，此时开销主要来自事件本身的写入
+ */
+@Name("com.daoshengwanwu.calculator.Evaluate")
+@Label("表达式求值")
+@Category(CalculatorEvents.CATEGORY)
+@Description("Calculator.calculateCurrentValue以各变量的当前值求值的耗时")
+@Threshold("1 ms")
+@StackTrace(false)
+final class EvaluateEvent extends Event {
+    @Name("expression")
+    @Label("表达式")
+    String mExpression;
+
+    @Name("expressionLength")
+    @Label("表达式长度")
+    int mExpressionLength;
+
+    @Name("itemCount")
+    @Label("项数")
+    @Description("表达式中运算符、操作数和变量的个数，不含开始和结束标记")
+    int mItemCount;
+
+    @Name("operatorMix")
+    @Label("运算符构成")
+    @Description("编译后各运算指令的条数，包括规范化指令round")
+    String mOperatorMix;
+
+    @Name("outcome")
+    @Label("结果")
+    @Description("OK或求值时抛出的异常的类名")
+    String mOutcome;
+
+
+    void finish(VarAriExp varAriExp, RuntimeException failure) {
+        end();
+        if (shouldCommit()) {
+            record(varAriExp, failure);
+        }//if
+    }//finish
+
+    //只在事件需要提交时调用，见CalculatorEvents
+    private void record(VarAriExp varAriExp, RuntimeException failure) {
+        String expStr = varAriExp.toString();
+        mExpression = CalculatorEvents.abbreviate(expStr);
+        mExpressionLength = expStr.length();
+        mItemCount = Math.max(0, varAriExp.getExpItemList().size() - 2);
+        mOperatorMix = failure == null ? CalculatorEvents.operatorMix(varAriExp.getCompiledExpression()) :
+                CalculatorEvents.operatorMix(varAriExp.getExpItemList());
+        mOutcome = CalculatorEvents.outcomeOf(failure);
+        commit();
+    }//record
+}//class_EvaluateEvent
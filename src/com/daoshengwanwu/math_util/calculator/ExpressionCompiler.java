@@ -0,0 +1,236 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.daoshengwanwu.math_util.calculator.CertainOperator.CertainOperatorType;
+import com.daoshengwanwu.math_util.calculator.exception.OperatorNotMatchException;
+import com.daoshengwanwu.math_util.calculator.exception.ResultErrorException;
+import com.daoshengwanwu.math_util.calculator.util.Stack;
+
+
+/*
+ * 表达式编译器
+ * 根据各运算符的左右优先级用运算符栈确定计算顺序，遇到需要计算的运算符时并不立即计算，
+ * 而是按计算顺序输出一条指令，最终得到一段只需线性执行一遍的后缀指令序列
+ * 编译器按项依次接收ExpItem（见accept方法），因此既可以编译VarAriExp中现成的项列表，也可以边解析边编译
+ * 有效数字的规范化指令按数值策略（见NumericPolicy）输出：逐个运算之后、只在最后，或者不输出
+ */
+class ExpressionCompiler {
+    private final VariableAssistant mVarAssist;
+    private final NumericPolicy mNumericPolicy;
+    private final Stack<CertainOperator> mOperatorStack = new Stack<>();
+    private final Map<Variable, Integer> mVariableIndexMap = new IdentityHashMap<>();
+    private final List<Variable> mVariables = new ArrayList<>();
+
+    private int[] mCode = new int[16];
+    private int mCodeSize = 0;
+    private double[] mConstants = new double[8];
+    private int mConstantsSize = 0;
+    private int mDepth = 0;
+    private int mMaxDepth = 0;
+
+
+    ExpressionCompiler(VariableAssistant varAssist, NumericPolicy numericPolicy) {
+        mVarAssist = varAssist;
+        mNumericPolicy = numericPolicy;
+    }//con_ExpressionCompiler
+
+    static CompiledExpression compile(VarAriExp varAriExp) {
+        ExpressionCompiler compiler = new ExpressionCompiler(
+                varAriExp.getVariableAssistant(), varAriExp.getNumericPolicy());
+        for (ExpItem item : varAriExp.getExpItemList()) {
+            compiler.accept(item);
+        }//for
+
+        return compiler.finish(varAriExp.toString());
+    }//compile
+
+    /**
+     * 接收表达式中的下一项
+     * @param item 表达式项，第一项必须为开始标记
+     */
+    void accept(ExpItem item) {
+        switch (item.getItemType()) {
+        case OPERAND: {
+            emitConstant(((Operand)item).getValue());
+        } break;
+        case VARIABLE: {
+            emitVariable((Variable)item);
+        } break;
+        case OPERATOR: {
+            acceptOperator((CertainOperator)item);
+        } break;
+        }//switch
+    }//accept
+
+    /**
+     * 所有项接收完毕后调用，检查表达式是否完整并生成编译结果
+     * @param expStr 表达式的字符串描述
+     * @return 编译后的表达式
+     */
+    CompiledExpression finish(String expStr) {
+        if (mDepth != 1 || !mOperatorStack.isEmpty()) {
+            throw new ResultErrorException();
+        }//if
+
+        if (mNumericPolicy.getMode() == NumericPolicy.Mode.FINAL_ONLY) {
+            emitRound();
+        }//if
+
+        //变量槽位按照VariableAssistant中变量的顺序分配
+        List<Variable> slotVariables = new ArrayList<>(mVarAssist.getVariables());
+        for (Variable variable : mVariables) {
+            if (!slotVariables.contains(variable)) {
+                slotVariables.add(variable);
+            }//if
+        }//for
+
+        int[] slotMap = new int[mVariables.size()];
+        for (int i = 0; i < slotMap.length; i++) {
+            slotMap[i] = slotVariables.indexOf(mVariables.get(i));
+        }//for
+
+        int[] code = Arrays.copyOf(mCode, mCodeSize);
+        for (int pc = 0; pc < code.length; pc++) {
+            if (OpCode.opCode(code[pc]) == OpCode.LOAD_VAR) {
+                code[pc] = OpCode.encode(OpCode.LOAD_VAR, slotMap[OpCode.arg(code[pc])]);
+            }//if
+        }//for
+
+        return new CompiledExpression(expStr, code, Arrays.copyOf(mConstants, mConstantsSize),
+                slotVariables.toArray(new Variable[0]), mMaxDepth, 0, mNumericPolicy);
+    }//finish
+
+    private void acceptOperator(CertainOperator curOperator) {
+        int curLeftPrior;
+        int topRightPrior;
+        CertainOperator topOperator;
+        boolean isConsumed = false;
+
+        while (!isConsumed) {
+            switch (curOperator.getCertainOperatorType()) {
+            case NORMAL: {
+                if (curOperator.isLeftDirPriorExist()) {
+                    topOperator = getTopOperator();
+                    switch (topOperator.getCertainOperatorType()) {
+                    case NORMAL:
+                    case CLOSE: {
+                        if (topOperator.isRightDirPriorExist()) {
+                            curLeftPrior = curOperator.getLeftDirPriority();
+                            topRightPrior = topOperator.getRightDirPriority();
+
+                            if (curLeftPrior <= topRightPrior) {
+                                emitOperate();
+                            } else {
+                                mOperatorStack.push(curOperator);
+                                isConsumed = true;
+                            }//if-else
+                        } else {
+                            emitOperate();
+                        }//if-else
+                    } break;
+                    case OPEN: {
+                        mOperatorStack.push(curOperator);
+                        isConsumed = true;
+                    } break;
+                    }//switch-case
+                } else {
+                    mOperatorStack.push(curOperator);
+                    isConsumed = true;
+                }//if-else
+            } break;
+            case OPEN: {
+                mOperatorStack.push(curOperator);
+                isConsumed = true;
+            } break;
+            case CLOSE: {
+                topOperator = getTopOperator();
+                emitOperate();
+
+                if (topOperator.getCertainOperatorType() == CertainOperatorType.OPEN) {
+                    if (topOperator.getId() == curOperator.getId()) {
+                        if (((CertainOperator.CloseOperator)curOperator).isNeedPush()) {
+                            mOperatorStack.push(curOperator);
+                        }//if
+                        isConsumed = true;
+                    } else {
+                        throw new OperatorNotMatchException(
+                                topOperator.getOperatorStr(), curOperator.getOperatorStr());
+                    }//if-else
+                }//if
+            } break;
+            }//switch
+        }//while
+    }//acceptOperator
+
+    private CertainOperator getTopOperator() {
+        if (mOperatorStack.isEmpty()) {
+            throw new ResultErrorException();
+        }//if
+
+        return mOperatorStack.getTop();
+    }//getTopOperator
+
+    //弹出栈顶运算符，如需计算则输出对应的指令
+    private void emitOperate() {
+        CertainOperator operator = mOperatorStack.pop();
+
+        if (!operator.isNeedOperate()) {
+            return;
+        }//if
+
+        int opCode = OpCode.fromOperatorFlag(OperatorAssistant.getOperatorFlag(operator));
+        if (mDepth < operator.getDimension()) {
+            throw new ResultErrorException();
+        }//if
+
+        emit(OpCode.encode(opCode, 0), 1 - operator.getDimension());
+        //每个运算结果都和Operand.getOperand一样规范化有效数字
+        if (mNumericPolicy.getMode() == NumericPolicy.Mode.PER_OPERATION) {
+            emitRound();
+        }//if
+    }//emitOperate
+
+    private void emitConstant(double value) {
+        if (mConstantsSize == mConstants.length) {
+            mConstants = Arrays.copyOf(mConstants, mConstantsSize * 2);
+        }//if
+        mConstants[mConstantsSize] = value;
+
+        emit(OpCode.encode(OpCode.CONST, mConstantsSize++), 1);
+    }//emitConstant
+
+    private void emitVariable(Variable variable) {
+        Integer index = mVariableIndexMap.get(variable);
+        if (null == index) {
+            index = mVariables.size();
+            mVariables.add(variable);
+            mVariableIndexMap.put(variable, index);
+        }//if
+
+        emit(OpCode.encode(OpCode.LOAD_VAR, index), 1);
+        //变量的当前值入栈时同样经过Operand.getOperand的规范化
+        if (mNumericPolicy.getMode() == NumericPolicy.Mode.PER_OPERATION) {
+            emitRound();
+        }//if
+    }//emitVariable
+
+    private void emitRound() {
+        emit(OpCode.encode(OpCode.ROUND, mNumericPolicy.getSignificantDigits()), 0);
+    }//emitRound
+
+    private void emit(int instruction, int depthChange) {
+        if (mCodeSize == mCode.length) {
+            mCode = Arrays.copyOf(mCode, mCodeSize * 2);
+        }//if
+        mCode[mCodeSize++] = instruction;
+
+        mDepth += depthChange;
+        mMaxDepth = Math.max(mMaxDepth, mDepth);
+    }//emit
+}//class_ExpressionCompiler
@@ -0,0 +1,15 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+/**
+ * 以double数组传入变量值的表达式函数
+ * 数组下标即变量槽位，与CompiledExpression.getVariableIndex返回的槽位一致
+ */
+public interface ExpressionFunction {
+    /**
+     * 计算表达式的值
+     * @param vars 各变量的值，下标为变量槽位
+     * @return 计算结果
+     */
+    double eval(double[] vars);
+}//interface_ExpressionFunction
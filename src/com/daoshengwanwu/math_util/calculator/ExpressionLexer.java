@@ -0,0 +1,269 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.nio.CharBuffer;
+
+
+/*
+ * 表达式词法分析器
+ * 直接在字符序列的[start, end)区间上扫描，不复制输入，也不为每个词法单元截取字符串，
+ * 每个字符的类别通过预先计算好的字符类别表一次查出
+ * 词法单元的划分规则：
+ * 数字由数字字符和小数点开头，之后可以是数字字符、小数点、'e'，以及紧跟在'e'之后的'-'（如1e-5）
+ * 标识符由字母或下划线开头，之后可以是字母、数字、下划线
+ * 运算符由其余的特殊字符组成，连续的特殊字符（包括其后的小数点和下划线）组成同一个运算符，
+ * 但'('、')'、'|'总是单独成为一个运算符
+ * 空白字符只用于分隔
+ * 输入可以分段提供（见reset方法）：输入未结束时，扫描到当前输入末尾的词法单元可能还未结束，
+ * 此时返回NEED_INPUT，调用者补充输入后从getPosition()处继续扫描
+ */
+final class ExpressionLexer {
+    //词法单元类型
+    static final int NEED_INPUT = -1;
+    static final int END = 0;
+    static final int NUMBER = 1;
+    static final int IDENTIFIER = 2;
+    static final int OPERATOR = 3;
+
+    //字符类别
+    private static final int C_BLANK = 1;
+    private static final int C_DIGIT = 1 << 1;
+    private static final int C_DOT = 1 << 2;
+    private static final int C_LETTER = 1 << 3;
+    private static final int C_UNDERSCORE = 1 << 4;
+    private static final int C_SINGLE = 1 << 5; //单独成为运算符的字符
+    private static final int C_SPECIAL = 1 << 6;
+
+    private static final int NUMBER_START = C_DIGIT | C_DOT;
+    private static final int NUMBER_PART = C_DIGIT | C_DOT;
+    private static final int IDENTIFIER_START = C_LETTER | C_UNDERSCORE;
+    private static final int IDENTIFIER_PART = C_LETTER | C_DIGIT | C_UNDERSCORE;
+    private static final int OPERATOR_PART = C_SPECIAL | C_DOT | C_UNDERSCORE;
+
+    //Clinger快速路径的范围：尾数不超过2^53，10的幂不超过22时，一次乘除即可得到正确舍入的结果
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] EXACT_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final byte[] sCharClasses = new byte[128];
+
+    private CharSequence mSeq;
+    private int mEnd;
+    private boolean mIsEndOfInput;
+    private int mPos;
+    private int mTokenStart;
+    private int mTokenEnd;
+
+
+    static {
+        for (int c = 0; c < sCharClasses.length; c++) {
+            int charClass;
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                charClass = C_BLANK;
+            } else if (c >= '0' && c <= '9') {
+                charClass = C_DIGIT;
+            } else if (c == '.') {
+                charClass = C_DOT;
+            } else if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z') {
+                charClass = C_LETTER;
+            } else if (c == '_') {
+                charClass = C_UNDERSCORE;
+            } else if (c == '(' || c == ')' || c == '|') {
+                charClass = C_SINGLE;
+            } else {
+                charClass = C_SPECIAL;
+            }//if-else
+
+            sCharClasses[c] = (byte)charClass;
+        }//for
+    }//static
+
+
+    ExpressionLexer(CharSequence seq, int start, int end) {
+        reset(seq, start, end, true);
+    }//con_ExpressionLexer
+
+    ExpressionLexer(char[] buf, int start, int end) {
+        this(CharBuffer.wrap(buf), start, end);
+    }//con_ExpressionLexer
+
+    /**
+     * 设置新的一段输入，之后从start处开始扫描
+     * @param isEndOfInput 这段输入之后是否还有后续输入
+     */
+    void reset(CharSequence seq, int start, int end, boolean isEndOfInput) {
+        mSeq = seq;
+        mPos = mTokenStart = mTokenEnd = start;
+        mEnd = end;
+        mIsEndOfInput = isEndOfInput;
+    }//reset
+
+    /**
+     * 扫描下一个词法单元
+     * @return 词法单元类型，输入结束时返回END，需要补充输入时返回NEED_INPUT
+     */
+    int next() {
+        int pos = mPos;
+        while (pos < mEnd && charClass(mSeq.charAt(pos)) == C_BLANK) {
+            pos++;
+        }//while
+
+        if (pos == mEnd) {
+            mPos = mTokenStart = mTokenEnd = pos;
+            return mIsEndOfInput ? END : NEED_INPUT;
+        }//if
+
+        mTokenStart = pos;
+        char c = mSeq.charAt(pos++);
+        int charClass = charClass(c);
+        int tokenType;
+
+        if ((charClass & NUMBER_START) != 0) {
+            char preC = c;
+            while (pos < mEnd) {
+                c = mSeq.charAt(pos);
+                if ((charClass(c) & NUMBER_PART) == 0 && c != 'e' && (c != '-' || preC != 'e')) {
+                    break;
+                }//if
+                preC = c;
+                pos++;
+            }//while
+            tokenType = NUMBER;
+        } else if ((charClass & IDENTIFIER_START) != 0) {
+            while (pos < mEnd && (charClass(mSeq.charAt(pos)) & IDENTIFIER_PART) != 0) {
+                pos++;
+            }//while
+            tokenType = IDENTIFIER;
+        } else {
+            if (charClass != C_SINGLE) {
+                while (pos < mEnd && (charClass(mSeq.charAt(pos)) & OPERATOR_PART) != 0) {
+                    pos++;
+                }//while
+            }//if
+            tokenType = OPERATOR;
+        }//if-else
+
+        if (pos == mEnd && !mIsEndOfInput) {
+            //词法单元可能延续到后续输入中，补充输入后从词法单元的开头重新扫描
+            mPos = mTokenEnd = mTokenStart;
+            return NEED_INPUT;
+        }//if
+
+        mPos = mTokenEnd = pos;
+
+        return tokenType;
+    }//next
+
+    /**
+     * 获取尚未扫描的输入的起始位置，在此之前的输入都已经扫描完毕，可以丢弃
+     * @return 起始位置
+     */
+    int getPosition() {
+        return mPos;
+    }//getPosition
+
+    CharSequence getSource() {
+        return mSeq;
+    }//getSource
+
+    int getTokenStart() {
+        return mTokenStart;
+    }//getTokenStart
+
+    int getTokenEnd() {
+        return mTokenEnd;
+    }//getTokenEnd
+
+    String getTokenString() {
+        return mSeq.subSequence(mTokenStart, mTokenEnd).toString();
+    }//getTokenString
+
+    /**
+     * 将当前的数字词法单元解析为double，结果与对其字符串调用Double.parseDouble完全相同
+     * @return 数值
+     * @throws NumberFormatException 数字格式错误时（如1.2.3）
+     */
+    double parseNumber() {
+        return parseDecimal(mSeq, mTokenStart, mTokenEnd);
+    }//parseNumber
+
+    /*
+     * 直接从字符序列中解析十进制数，只处理词法分析器可能产生的格式：数字[.数字][e[-]数字]
+     * 尾数和指数都在Clinger快速路径范围内时直接计算，
+     * 否则（以及格式错误时）交给Double.parseDouble，因此结果和抛出的异常都与Double.parseDouble相同
+     */
+    static double parseDecimal(CharSequence seq, int start, int end) {
+        long mantissa = 0;
+        int digitCount = 0;
+        int exponent = 0;
+        boolean isDotFound = false;
+        int pos = start;
+
+        for (; pos < end; pos++) {
+            char c = seq.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                if (mantissa >= MAX_EXACT_MANTISSA / 10) {
+                    return parseSlowly(seq, start, end);
+                }//if
+                mantissa = mantissa * 10 + (c - '0');
+                digitCount++;
+                if (isDotFound) {
+                    exponent--;
+                }//if
+            } else if (c == '.' && !isDotFound) {
+                isDotFound = true;
+            } else {
+                break;
+            }//if-else
+        }//for
+
+        if (digitCount == 0) {
+            return parseSlowly(seq, start, end);
+        }//if
+
+        if (pos < end) {
+            if (seq.charAt(pos++) != 'e') {
+                return parseSlowly(seq, start, end);
+            }//if
+
+            boolean isNegative = pos < end && seq.charAt(pos) == '-';
+            if (isNegative) {
+                pos++;
+            }//if
+            if (pos == end || end - pos > 3) {
+                return parseSlowly(seq, start, end);
+            }//if
+
+            int explicitExponent = 0;
+            for (; pos < end; pos++) {
+                char c = seq.charAt(pos);
+                if (c < '0' || c > '9') {
+                    return parseSlowly(seq, start, end);
+                }//if
+                explicitExponent = explicitExponent * 10 + (c - '0');
+            }//for
+
+            exponent += isNegative ? -explicitExponent : explicitExponent;
+        }//if
+
+        if (mantissa == 0) {
+            return 0;
+        } else if (exponent >= 0 && exponent < EXACT_POWERS_OF_TEN.length) {
+            return mantissa * EXACT_POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < EXACT_POWERS_OF_TEN.length) {
+            return mantissa / EXACT_POWERS_OF_TEN[-exponent];
+        }//if-else
+
+        return parseSlowly(seq, start, end);
+    }//parseDecimal
+
+    private static double parseSlowly(CharSequence seq, int start, int end) {
+        return Double.parseDouble(seq.subSequence(start, end).toString());
+    }//parseSlowly
+
+    private static int charClass(char c) {
+        return c < 128 ? sCharClasses[c] : C_SPECIAL;
+    }//charClass
+}//class_ExpressionLexer
@@ -0,0 +1,279 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/*
+ * 表达式优化器，位于编译与求值之间，对后缀指令序列做两项优化：
+ * 1. 常量折叠：只由字面量和pi、e等常量组成的子表达式在编译期直接算出结果，
+ *    计算方式与运行时完全相同（包括有效数字的规范化），因此结果不变；
+ *    子表达式计算出错时（例如log(1)~(5)）同样会抛出运行时会抛出的异常，只是提前到了编译期；
+ *    optimizeOrNaN供NaN方式求值使用，这样的子表达式不折叠，留到求值时按求值方式抛出异常或得到NaN
+ * 2. 公共子表达式消除：结构完全相同的子表达式只计算一次，第一次计算后通过STORE_TEMP保存到临时槽位，
+ *    之后出现的地方用LOAD_TEMP直接取值
+ * 表达式中的运算都没有副作用，也不存在条件求值，所以以上两项优化都不会改变计算结果
+ */
+final class ExpressionOptimizer {
+    private static final int NO_CHILD = -1;
+
+    //表达式DAG的节点，以数组方式存储，节点编号即数组下标
+    private int[] mNodeOp = new int[16];
+    private int[] mNodeArg = new int[16];
+    private int[] mNodeLeft = new int[16];
+    private int[] mNodeRight = new int[16];
+    private int[] mNodeUseCount = new int[16];
+    private int mNodeCount = 0;
+
+    private final Map<NodeKey, Integer> mNodeMap = new HashMap<>();
+    private double[] mConstants = new double[8];
+    private int mConstantsSize = 0;
+    //为true时超出定义域的常量子表达式不折叠，否则在折叠时抛出异常
+    private final boolean mKeepsOutOfDomainConstants;
+
+
+    private ExpressionOptimizer(boolean keepsOutOfDomainConstants) {
+        mKeepsOutOfDomainConstants = keepsOutOfDomainConstants;
+    }//con_ExpressionOptimizer
+
+    static CompiledExpression optimize(CompiledExpression compiledExp) {
+        return new ExpressionOptimizer(false).optimizeDag(compiledExp);
+    }//optimize
+
+    static CompiledExpression optimizeOrNaN(CompiledExpression compiledExp) {
+        return new ExpressionOptimizer(true).optimizeDag(compiledExp);
+    }//optimizeOrNaN
+
+    private CompiledExpression optimizeDag(CompiledExpression compiledExp) {
+        int root = buildDag(compiledExp);
+
+        return emit(compiledExp, root);
+    }//optimizeDag
+
+    //模拟执行后缀指令序列，构建去重后的表达式DAG，构建的同时进行常量折叠
+    private int buildDag(CompiledExpression compiledExp) {
+        int[] code = compiledExp.getCode();
+        double[] constants = compiledExp.getConstants();
+        int[] nodeStack = new int[compiledExp.getMaxDepth()];
+        int[] tempNodes = new int[compiledExp.getTempCount()];
+        int sp = 0;
+
+        for (int instruction : code) {
+            int opCode = OpCode.opCode(instruction);
+            int arg = OpCode.arg(instruction);
+
+            switch (opCode) {
+            case OpCode.CONST: nodeStack[sp++] = constantNode(constants[arg]); break;
+            case OpCode.LOAD_VAR: nodeStack[sp++] = node(OpCode.LOAD_VAR, arg, NO_CHILD, NO_CHILD); break;
+            case OpCode.LOAD_TEMP: nodeStack[sp++] = tempNodes[arg]; break;
+            case OpCode.STORE_TEMP: tempNodes[arg] = nodeStack[sp - 1]; break;
+            default: {
+                if (OpCode.getDimension(opCode) == 2) {
+                    sp--;
+                    nodeStack[sp - 1] = operationNode(opCode, arg, nodeStack[sp - 1], nodeStack[sp]);
+                } else {
+                    nodeStack[sp - 1] = operationNode(opCode, arg, nodeStack[sp - 1], NO_CHILD);
+                }//if-else
+            } break;
+            }//switch
+        }//for
+
+        return nodeStack[0];
+    }//buildDag
+
+    private int operationNode(int opCode, int arg, int left, int right) {
+        boolean isConstant = mNodeOp[left] == OpCode.CONST &&
+                (right == NO_CHILD || mNodeOp[right] == OpCode.CONST);
+        if (isConstant) {
+            double leftValue = mConstants[mNodeArg[left]];
+            double rightValue = right == NO_CHILD ? 0 : mConstants[mNodeArg[right]];
+            if (mKeepsOutOfDomainConstants &&
+                    OperatorFunctions.domainError(opCode, leftValue, rightValue) != DomainError.NONE) {
+                return node(opCode, arg, left, right);
+            }//if
+
+            return constantNode(OperatorFunctions.operate(opCode, arg, leftValue, rightValue));
+        }//if
+
+        return node(opCode, arg, left, right);
+    }//operationNode
+
+    private int constantNode(double value) {
+        NodeKey key = new NodeKey(OpCode.CONST, Double.doubleToRawLongBits(value), NO_CHILD, NO_CHILD);
+        Integer nodeIndex = mNodeMap.get(key);
+        if (null != nodeIndex) {
+            return nodeIndex;
+        }//if
+
+        if (mConstantsSize == mConstants.length) {
+            mConstants = Arrays.copyOf(mConstants, mConstantsSize * 2);
+        }//if
+        mConstants[mConstantsSize] = value;
+
+        return addNode(key, OpCode.CONST, mConstantsSize++, NO_CHILD, NO_CHILD);
+    }//constantNode
+
+    private int node(int opCode, int arg, int left, int right) {
+        NodeKey key = new NodeKey(opCode, arg, left, right);
+        Integer nodeIndex = mNodeMap.get(key);
+        if (null != nodeIndex) {
+            return nodeIndex;
+        }//if
+
+        return addNode(key, opCode, arg, left, right);
+    }//node
+
+    private int addNode(NodeKey key, int opCode, int arg, int left, int right) {
+        if (mNodeCount == mNodeOp.length) {
+            int newLength = mNodeCount * 2;
+            mNodeOp = Arrays.copyOf(mNodeOp, newLength);
+            mNodeArg = Arrays.copyOf(mNodeArg, newLength);
+            mNodeLeft = Arrays.copyOf(mNodeLeft, newLength);
+            mNodeRight = Arrays.copyOf(mNodeRight, newLength);
+            mNodeUseCount = Arrays.copyOf(mNodeUseCount, newLength);
+        }//if
+
+        mNodeOp[mNodeCount] = opCode;
+        mNodeArg[mNodeCount] = arg;
+        mNodeLeft[mNodeCount] = left;
+        mNodeRight[mNodeCount] = right;
+        mNodeMap.put(key, mNodeCount);
+
+        return mNodeCount++;
+    }//addNode
+
+    /*
+     * 将DAG重新输出为后缀指令序列
+     * 被引用多次的运算节点第一次输出时保存到临时槽位，之后直接读取临时槽位
+     * 常量和变量节点取值本身就很廉价，不占用临时槽位
+     * 使用显式栈做后序遍历，避免超长表达式（如几十万项的多项式）导致递归过深
+     */
+    private CompiledExpression emit(CompiledExpression compiledExp, int root) {
+        countUses(root);
+
+        int[] tempSlots = new int[mNodeCount];
+        Arrays.fill(tempSlots, -1);
+        int tempCount = 0;
+
+        int[] code = new int[16];
+        int codeSize = 0;
+        int depth = 0;
+        int maxDepth = 0;
+
+        //栈中的元素为 节点编号 * 2 + 是否已输出子节点
+        int[] workStack = new int[16];
+        int workSize = 0;
+        workStack[workSize++] = root * 2;
+
+        while (workSize > 0) {
+            int work = workStack[--workSize];
+            int nodeIndex = work >>> 1;
+            boolean isChildrenEmitted = (work & 1) == 1;
+            int opCode = mNodeOp[nodeIndex];
+
+            if (codeSize + 2 > code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }//if
+
+            if (opCode == OpCode.CONST || opCode == OpCode.LOAD_VAR) {
+                code[codeSize++] = OpCode.encode(opCode, mNodeArg[nodeIndex]);
+                maxDepth = Math.max(maxDepth, ++depth);
+            } else if (tempSlots[nodeIndex] >= 0) {
+                code[codeSize++] = OpCode.encode(OpCode.LOAD_TEMP, tempSlots[nodeIndex]);
+                maxDepth = Math.max(maxDepth, ++depth);
+            } else if (isChildrenEmitted) {
+                code[codeSize++] = OpCode.encode(opCode, mNodeArg[nodeIndex]);
+                depth -= OpCode.getDimension(opCode) - 1;
+
+                if (mNodeUseCount[nodeIndex] > 1) {
+                    tempSlots[nodeIndex] = tempCount++;
+                    code[codeSize++] = OpCode.encode(OpCode.STORE_TEMP, tempSlots[nodeIndex]);
+                }//if
+            } else {
+                if (workSize + 3 > workStack.length) {
+                    workStack = Arrays.copyOf(workStack, workStack.length * 2);
+                }//if
+
+                workStack[workSize++] = nodeIndex * 2 + 1;
+                if (mNodeRight[nodeIndex] != NO_CHILD) {
+                    workStack[workSize++] = mNodeRight[nodeIndex] * 2;
+                }//if
+                workStack[workSize++] = mNodeLeft[nodeIndex] * 2;
+            }//if-else
+        }//while
+
+        return new CompiledExpression(compiledExp.toString(), Arrays.copyOf(code, codeSize),
+                Arrays.copyOf(mConstants, mConstantsSize), compiledExp.getVariables(), maxDepth, tempCount,
+                compiledExp.getNumericPolicy());
+    }//emit
+
+    //统计从根节点可达的每个节点被父节点引用的次数（DAG中同一条边只统计一次）
+    private void countUses(int root) {
+        boolean[] isVisited = new boolean[mNodeCount];
+        int[] workStack = new int[mNodeCount];
+        int workSize = 0;
+
+        mNodeUseCount[root] = 1;
+        isVisited[root] = true;
+        workStack[workSize++] = root;
+        while (workSize > 0) {
+            int nodeIndex = workStack[--workSize];
+            int[] children = {mNodeLeft[nodeIndex], mNodeRight[nodeIndex]};
+
+            for (int child : children) {
+                if (child == NO_CHILD) {
+                    continue;
+                }//if
+
+                mNodeUseCount[child]++;
+                if (!isVisited[child]) {
+                    isVisited[child] = true;
+                    workStack[workSize++] = child;
+                }//if
+            }//for
+        }//while
+    }//countUses
+
+
+    /*
+     * 用于判断两个节点是否结构相同的键
+     * 子节点已经去重，所以只需比较子节点编号
+     */
+    private static class NodeKey {
+        private final int mOpCode;
+        private final long mPayload;
+        private final int mLeft;
+        private final int mRight;
+
+
+        NodeKey(int opCode, long payload, int left, int right) {
+            mOpCode = opCode;
+            mPayload = payload;
+            mLeft = left;
+            mRight = right;
+        }//con_NodeKey
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof NodeKey)) {
+                return false;
+            }//if
+
+            NodeKey key = (NodeKey)obj;
+            return mOpCode == key.mOpCode && mPayload == key.mPayload &&
+                    mLeft == key.mLeft && mRight == key.mRight;
+        }//equals
+
+        @Override
+        public int hashCode() {
+            int hash = mOpCode;
+            hash = hash * 31 + Long.hashCode(mPayload);
+            hash = hash * 31 + mLeft;
+            hash = hash * 31 + mRight;
+
+            return hash;
+        }//hashCode
+    }//class_NodeKey
+}//class_ExpressionOptimizer
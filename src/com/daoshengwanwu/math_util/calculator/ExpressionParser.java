@@ -0,0 +1,155 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+import com.daoshengwanwu.math_util.calculator.exception.OperatorNotExistException;
+
+
+/*
+ * 表达式语法分析器，把词法分析器扫描出的词法单元逐个转换为表达式项
+ * 标识符依次尝试解析为运算符、常量、变量；不确定的运算符根据前一个表达式项确定具体类型
+ * 除了VarAriExp构造时使用之外，还可以从Reader中流式读取表达式，边解析边编译（见compile方法）：
+ * 这时只保留一个固定大小的字符缓冲区，不保留表达式的原文，也不生成表达式项列表，
+ * 编译所需的时间与表达式长度成正比，适用于机器生成的超长表达式（如几十万项的多项式）
+ */
+final class ExpressionParser {
+    private static final int BUFFER_SIZE = 8192;
+    //流式编译时只保留表达式开头的这么多个字符，作为编译结果的字符串描述
+    private static final int DESCRIPTION_LENGTH = 64;
+
+    private final VariableAssistant mVarAssist;
+    private final SymbolTable<Variable> mVariableTable = new SymbolTable<>();
+    private ExpItem mLastItem = OperatorAssistant.getStartFlag();
+
+
+    ExpressionParser(VariableAssistant varAssist) {
+        mVarAssist = varAssist;
+    }//con_ExpressionParser
+
+    /**
+     * 从Reader中流式读取表达式并编译，读取完毕后不会关闭reader
+     * @param reader 表达式的字符输入
+     * @param varAssist 变量助手，表达式中的变量从中获取，不存在的变量会被添加进去
+     * @param numericPolicy 数值策略
+     * @return 编译（并优化）后的表达式
+     * @throws IOException 读取reader出错时
+     */
+    static CompiledExpression compile(Reader reader, VariableAssistant varAssist,
+                                      NumericPolicy numericPolicy) throws IOException {
+        ExpressionParser parser = new ExpressionParser(varAssist);
+        ExpressionCompiler compiler = new ExpressionCompiler(varAssist, numericPolicy);
+        ExpressionLexer lexer = new ExpressionLexer("", 0, 0);
+        StringBuilder description = new StringBuilder();
+        char[] buf = new char[BUFFER_SIZE];
+        int end = 0;
+        int tokenType;
+
+        lexer.reset(CharBuffer.wrap(buf), 0, 0, false);
+        compiler.accept(OperatorAssistant.getStartFlag());
+        while ((tokenType = lexer.next()) != ExpressionLexer.END) {
+            if (tokenType != ExpressionLexer.NEED_INPUT) {
+                compiler.accept(parser.parseToken(lexer, tokenType));
+                continue;
+            }//if
+
+            //丢弃已经扫描过的输入，只保留未扫描完的词法单元；单个词法单元比缓冲区还长时扩大缓冲区
+            int pos = lexer.getPosition();
+            if (pos == 0 && end == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            } else {
+                System.arraycopy(buf, pos, buf, 0, end - pos);
+                end -= pos;
+            }//if-else
+
+            int readCount = reader.read(buf, end, buf.length - end);
+            if (readCount > 0) {
+                appendDescription(description, buf, end, readCount);
+                end += readCount;
+            }//if
+            lexer.reset(CharBuffer.wrap(buf), 0, end, readCount < 0);
+        }//while
+        compiler.accept(OperatorAssistant.getEndFlag());
+
+        return ExpressionOptimizer.optimize(compiler.finish(description.toString()));
+    }//compile
+
+    /**
+     * 将词法分析器当前的词法单元转换为表达式项
+     * @param lexer 词法分析器
+     * @param tokenType 词法单元类型
+     * @return 表达式项
+     */
+    ExpItem parseToken(ExpressionLexer lexer, int tokenType) {
+        ExpItem item;
+        switch (tokenType) {
+        case ExpressionLexer.NUMBER: item = Operand.getOperand(lexer.parseNumber()); break;
+        case ExpressionLexer.IDENTIFIER: item = parseIdentifier(lexer); break;
+        default: item = parseOperator(lexer); break;
+        }//switch
+
+        mLastItem = item;
+
+        return item;
+    }//parseToken
+
+    private ExpItem parseIdentifier(ExpressionLexer lexer) {
+        CharSequence seq = lexer.getSource();
+        int start = lexer.getTokenStart();
+        int end = lexer.getTokenEnd();
+
+        Operator operator = OperatorAssistant.getOperator(seq, start, end);
+        if (null != operator) {
+            return certainOperator(operator);
+        }//if
+
+        Operand constant = Operand.getConstant(seq, start, end);
+        if (null != constant) {
+            return constant;
+        }//if
+
+        //同一个变量名只在第一次出现时截取字符串
+        Variable variable = mVariableTable.get(seq, start, end);
+        if (null == variable) {
+            String flagStr = lexer.getTokenString();
+            variable = mVarAssist.getVariable(flagStr);
+            mVariableTable.put(flagStr, variable);
+        }//if
+
+        return variable;
+    }//parseIdentifier
+
+    private ExpItem parseOperator(ExpressionLexer lexer) {
+        Operator operator = OperatorAssistant.getOperator(
+                lexer.getSource(), lexer.getTokenStart(), lexer.getTokenEnd());
+        if (null == operator) {
+            throw new OperatorNotExistException(lexer.getTokenString());
+        }//if
+
+        return certainOperator(operator);
+    }//parseOperator
+
+    private ExpItem certainOperator(Operator operator) {
+        if (!operator.isCertain()) {
+            operator = ((UncertainOperator)operator).getCertainOperator(mLastItem);
+        }//if
+
+        return operator;
+    }//certainOperator
+
+    private static void appendDescription(StringBuilder description, char[] buf, int start, int count) {
+        int remaining = DESCRIPTION_LENGTH - description.length();
+        if (remaining < 0) {
+            return; //已经截断
+        }//if
+
+        if (count > remaining) {
+            description.append(buf, start, remaining).append("...");
+        } else {
+            description.append(buf, start, count);
+        }//if-else
+    }//appendDescription
+}//class_ExpressionParser
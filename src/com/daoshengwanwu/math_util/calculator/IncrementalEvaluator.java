@@ -0,0 +1,150 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.Arrays;
+
+import com.daoshengwanwu.math_util.calculator.util.DigitUtil;
+import com.daoshengwanwu.math_util.calculator.util.DoubleStack;
+
+
+/*
+ * 以各变量的当前值增量求值
+ * 保存上一次求值时各变量的值以及每棵子树（见DependencyAnalysis）的值，
+ * 求值时先找出值发生了变化的变量，之后按顺序执行指令：在每个位置上，
+ * 若以该位置为起点的某棵子树不依赖任何发生了变化的变量，则直接取出其中最大的一棵上次的值，跳过整棵子树；
+ * 否则执行该条指令，并记下执行后栈顶的值。因此只有依赖了变化变量的子树（从变量到根的路径）会被重新计算
+ * 变量的值按二进制位比较，NaN与自身相等，0.0与-0.0不相等
+ * 上一次求值出错、还没有求过值或者所有变量都发生了变化时，执行全部指令
+ * 每个线程使用各自的IncrementalEvaluator（见CompiledExpression.evaluate()），本类不是线程安全的
+ * 本类不引用CompiledExpression，以便以表达式为弱键保存在线程上时不妨碍表达式被回收
+ */
+final class IncrementalEvaluator {
+    private final DependencyAnalysis mAnalysis;
+    private final int[] mCode;
+    private final double[] mConstants;
+    private final Variable[] mVariables;
+    private final int[] mReferencedSlots;
+    //表达式用到的全部变量对应的依赖位
+    private final long mReferencedDependencies;
+    private final DoubleStack mStack;
+    private final double[] mTemps;
+    private final double[] mValues;
+    //mSubtreeValues[i]为上一次求值时以指令i为根的子树的值
+    private final double[] mSubtreeValues;
+    private double mResult;
+    private boolean mIsValid = false;
+
+
+    IncrementalEvaluator(CompiledExpression compiledExp) {
+        mAnalysis = compiledExp.getDependencyAnalysis();
+        mCode = compiledExp.getCode();
+        mConstants = compiledExp.getConstants();
+        mVariables = compiledExp.getVariables();
+        mStack = new DoubleStack(compiledExp.getMaxDepth());
+        mTemps = new double[compiledExp.getTempCount()];
+        mValues = new double[mVariables.length];
+        mSubtreeValues = new double[mCode.length];
+
+        int count = 0;
+        int[] referencedSlots = new int[mVariables.length];
+        for (int slot = 0; slot < mVariables.length; slot++) {
+            if (compiledExp.isVariableReferenced(slot)) {
+                referencedSlots[count++] = slot;
+            }//if
+        }//for
+        mReferencedSlots = Arrays.copyOf(referencedSlots, count);
+
+        long referencedDependencies = 0;
+        for (int slot : mReferencedSlots) {
+            referencedDependencies |= DependencyAnalysis.dependencyBit(slot);
+        }//for
+        mReferencedDependencies = referencedDependencies;
+    }//con_IncrementalEvaluator
+
+    double evaluate() {
+        long changed = 0;
+        for (int slot : mReferencedSlots) {
+            double value = mVariables[slot].curValue();
+            if (Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(mValues[slot])) {
+                mValues[slot] = value;
+                changed |= DependencyAnalysis.dependencyBit(slot);
+            }//if
+        }//for
+
+        if (mIsValid && changed == 0) {
+            return mResult;
+        }//if
+
+        //所有变量都变化时没有可以跳过的子树（常量子树已在编译时折叠，没有折叠的常量子树总会出错），不必逐个位置查找
+        boolean canSkip = mIsValid && changed != mReferencedDependencies;
+
+        //执行出错时保持无效，下一次重新执行全部指令
+        mIsValid = false;
+        mResult = execute(changed, canSkip);
+        mIsValid = true;
+
+        return mResult;
+    }//evaluate
+
+    private double execute(long changed, boolean canSkip) {
+        int[] code = mCode;
+        double[] subtreeValues = mSubtreeValues;
+        DoubleStack stack = mStack;
+        double[] values = mValues;
+        double[] temps = mTemps;
+        stack.clear();
+
+        int i = 0;
+        while (i < code.length) {
+            if (canSkip) {
+                int skipTo = -1;
+                for (int root : mAnalysis.getRootsByStart(i)) {
+                    if ((mAnalysis.getDependencies(root) & changed) != 0) {
+                        break;
+                    }//if
+                    skipTo = root;
+                }//for
+
+                if (skipTo >= 0) {
+                    stack.push(subtreeValues[skipTo]);
+                    i = skipTo + 1;
+                    continue;
+                }//if
+            }//if
+
+            double right;
+            int instruction = code[i];
+            switch (OpCode.opCode(instruction)) {
+            case OpCode.CONST: stack.push(mConstants[OpCode.arg(instruction)]); break;
+            case OpCode.LOAD_VAR: stack.push(values[OpCode.arg(instruction)]); break;
+            case OpCode.LOAD_TEMP: stack.push(temps[OpCode.arg(instruction)]); break;
+            case OpCode.STORE_TEMP: temps[OpCode.arg(instruction)] = stack.getTop(); break;
+            case OpCode.ROUND: stack.setTop(DigitUtil.reserveSignificantDigits(
+                    stack.getTop(), OpCode.arg(instruction))); break;
+            case OpCode.ADD: right = stack.pop(); stack.setTop(stack.getTop() + right); break;
+            case OpCode.SUB: right = stack.pop(); stack.setTop(stack.getTop() - right); break;
+            case OpCode.MUL: right = stack.pop(); stack.setTop(stack.getTop() * right); break;
+            case OpCode.DIV: right = stack.pop(); stack.setTop(stack.getTop() / right); break;
+            case OpCode.MOD: right = stack.pop(); stack.setTop(OperatorFunctions.mod(stack.getTop(), right)); break;
+            case OpCode.POW: right = stack.pop(); stack.setTop(OperatorFunctions.pow(stack.getTop(), right)); break;
+            case OpCode.LOG: right = stack.pop(); stack.setTop(OperatorFunctions.log(stack.getTop(), right)); break;
+            case OpCode.NEGATE: stack.setTop(OperatorFunctions.negate(stack.getTop())); break;
+            case OpCode.SIN: stack.setTop(Math.sin(stack.getTop())); break;
+            case OpCode.COS: stack.setTop(Math.cos(stack.getTop())); break;
+            case OpCode.TAN: stack.setTop(Math.tan(stack.getTop())); break;
+            case OpCode.ASIN: stack.setTop(OperatorFunctions.asin(stack.getTop())); break;
+            case OpCode.ACOS: stack.setTop(OperatorFunctions.acos(stack.getTop())); break;
+            case OpCode.ATAN: stack.setTop(OperatorFunctions.atan(stack.getTop())); break;
+            case OpCode.LN: stack.setTop(OperatorFunctions.ln(stack.getTop())); break;
+            case OpCode.LG: stack.setTop(OperatorFunctions.lg(stack.getTop())); break;
+            case OpCode.SQRT: stack.setTop(OperatorFunctions.sqrt(stack.getTop())); break;
+            case OpCode.FACT: stack.setTop(OperatorFunctions.fact(stack.getTop())); break;
+            case OpCode.ABS: stack.setTop(Math.abs(stack.getTop())); break;
+            default: break;
+            }//switch
+            subtreeValues[i++] = stack.getTop();
+        }//while
+
+        return stack.pop();
+    }//execute
+}//class_IncrementalEvaluator
@@ -0,0 +1,615 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import com.daoshengwanwu.math_util.calculator.exception.VariableNotExistException;
+import com.daoshengwanwu.math_util.calculator.exception.VariableNotSetException;
+
+
+/**
+ * 自适应数值积分：求表达式在一个或多个变量的取值范围（Variable.set设置的上下限）上的定积分，取代以很小的跨度逐点求和
+ * 一元积分使用7点Gauss-15点Kronrod求积公式，多元积分使用Genz-Malik的7次求积公式（内嵌5次公式），
+ * 两者在每个子区域上都同时给出积分值和误差估计
+ * 积分是全局自适应的：每一轮把误差估计最大的若干子区域一分为二（多元时沿四阶差分最大的轴），
+ * 直到误差估计之和不超过max(absoluteTolerance, relativeTolerance * |积分值|)，或者求值次数将要超过maxEvaluations
+ * 每一轮新产生的子区域在ForkJoinPool上并行计算：每个任务把若干子区域的所有节点放在一起，由BatchEvaluator按块求值；
+ * 细分的顺序只取决于误差估计，因此结果与线程数和任务的划分方式无关
+ * Integrator是不可变的，可以被多个线程同时使用
+ */
+public final class Integrator {
+    public static final double DEFAULT_ABSOLUTE_TOLERANCE = 1e-12;
+    public static final double DEFAULT_RELATIVE_TOLERANCE = 1e-10;
+    public static final long DEFAULT_MAX_EVALUATIONS = 10_000_000;
+    //Genz-Malik公式每个子区域需要2^n + 2n^2 + 2n + 1个节点，维数更高时节点过多
+    public static final int MAX_DIMENSION = 15;
+
+    private static final double EPSILON = Math.ulp(1.0);
+    //相对误差低于该值时，Gauss-Kronrod的误差估计已经以舍入误差为主，不可能达到
+    private static final double MIN_RELATIVE_TOLERANCE = 50 * EPSILON;
+    //每个任务至少计算的节点数
+    private static final int MIN_LEAF_EVALUATIONS = BatchEvaluator.DEFAULT_BLOCK_SIZE * 2;
+
+    private static final ThreadLocal<BatchEvaluator> sBatchEvaluator = ThreadLocal.withInitial(BatchEvaluator::new);
+
+    private final double mAbsoluteTolerance;
+    private final double mRelativeTolerance;
+    private final long mMaxEvaluations;
+
+
+    public Integrator() {
+        this(DEFAULT_ABSOLUTE_TOLERANCE, DEFAULT_RELATIVE_TOLERANCE, DEFAULT_MAX_EVALUATIONS);
+    }//con_Integrator
+
+    /**
+     * @param absoluteTolerance 允许的绝对误差，积分值接近0时起作用
+     * @param relativeTolerance 允许的相对误差，absoluteTolerance不是正数时不能小于50倍的机器精度
+     * @param maxEvaluations 最多的求值次数，达到前误差仍然超出时返回未收敛的结果
+     */
+    public Integrator(double absoluteTolerance, double relativeTolerance, long maxEvaluations) {
+        if (!(absoluteTolerance >= 0) || !(relativeTolerance >= 0)
+                || (absoluteTolerance == 0 && relativeTolerance < MIN_RELATIVE_TOLERANCE)) {
+
+            throw new IllegalArgumentException("误差不能为负数，并且绝对误差为0时相对误差不能小于" + MIN_RELATIVE_TOLERANCE
+                    + "：absoluteTolerance = " + absoluteTolerance + ", relativeTolerance = " + relativeTolerance);
+        }//if
+
+        if (maxEvaluations <= 0) {
+            throw new IllegalArgumentException("最多求值次数必须是正数：" + maxEvaluations);
+        }//if
+
+        mAbsoluteTolerance = absoluteTolerance;
+        mRelativeTolerance = relativeTolerance;
+        mMaxEvaluations = maxEvaluations;
+    }//con_Integrator
+
+    /**
+     * 在各变量的取值范围（Variable.set设置的上下限，开闭不影响积分值）的乘积上对表达式积分，
+     * 表达式用到的其他变量取其当前值，积分不改变任何变量的值
+     * @param varAriExp 表达式
+     * @param variables 积分变量
+     * @param pool 执行计算的线程池
+     * @return 积分值及其误差估计
+     */
+    public Result integrate(VarAriExp varAriExp, Variable[] variables, ForkJoinPool pool) {
+        CompiledExpression compiledExp = varAriExp.getCompiledExpression();
+        int[] slots = new int[variables.length];
+        double[] lowers = new double[variables.length];
+        double[] uppers = new double[variables.length];
+        for (int axis = 0; axis < variables.length; axis++) {
+            Variable variable = variables[axis];
+            if (!variable.isSet()) {
+                throw new VariableNotSetException(variable.getFlagStr());
+            }//if
+
+            slots[axis] = compiledExp.slotOf(variable);
+            if (slots[axis] < 0) {
+                throw new VariableNotExistException(variable.getFlagStr());
+            }//if
+            lowers[axis] = variable.getLowerLimit();
+            uppers[axis] = variable.getUpperLimit();
+        }//for
+
+        double[] values = new double[compiledExp.getVariableCount()];
+        for (int slot = 0; slot < values.length; slot++) {
+            if (compiledExp.isVariableReferenced(slot) && !contains(slots, slot)) {
+                values[slot] = compiledExp.getVariable(slot).curValue();
+            }//if
+        }//for
+
+        return integrate(compiledExp, values, slots, lowers, uppers, pool);
+    }//integrate
+
+    /**
+     * 在[lowers[axis], uppers[axis]]的乘积上对表达式积分，第axis个积分变量的槽位为slots[axis]，
+     * 其他变量取values中对应槽位的值
+     * 积分区域内有超出定义域的点时，与逐点计算一样抛出OperandOutOfBoundsException；
+     * 求积节点都在子区域的内部，因此端点处的可积奇点（如ln(x)在0处）不会被计算
+     * @param values 各变量槽位的值，积分变量的槽位忽略
+     * @return 积分值及其误差估计
+     */
+    public Result integrate(CompiledExpression compiledExp, double[] values, int[] slots,
+                            double[] lowers, double[] uppers, ForkJoinPool pool) {
+        int dimension = slots.length;
+        if (dimension == 0 || dimension > MAX_DIMENSION
+                || lowers.length != dimension || uppers.length != dimension) {
+
+            throw new IllegalArgumentException("积分变量的个数必须在[1, " + MAX_DIMENSION + "]之内，并且与上下限的个数相同："
+                    + dimension + ", " + lowers.length + ", " + uppers.length);
+        }//if
+
+        for (int axis = 0; axis < dimension; axis++) {
+            if (!(lowers[axis] <= uppers[axis]) || Double.isInfinite(uppers[axis] - lowers[axis])) {
+                throw new IllegalArgumentException("区间必须是有限的，并且下限不大于上限：["
+                        + lowers[axis] + ", " + uppers[axis] + "]");
+            }//if
+
+            if (contains(Arrays.copyOf(slots, axis), slots[axis])) {
+                throw new IllegalArgumentException("积分变量重复：槽位" + slots[axis]);
+            }//if
+        }//for
+
+        Rule rule = dimension == 1 ? new GaussKronrod() : new GenzMalik(dimension);
+
+        return new Integration(compiledExp, values, slots, rule, pool).run(lowers, uppers);
+    }//integrate
+
+    public double getAbsoluteTolerance() {
+        return mAbsoluteTolerance;
+    }//getAbsoluteTolerance
+
+    public double getRelativeTolerance() {
+        return mRelativeTolerance;
+    }//getRelativeTolerance
+
+    public long getMaxEvaluations() {
+        return mMaxEvaluations;
+    }//getMaxEvaluations
+
+    private static boolean contains(int[] array, int value) {
+        for (int element : array) {
+            if (element == value) {
+                return true;
+            }//if
+        }//for
+
+        return false;
+    }//contains
+
+    /*
+     * 各子区域的积分值（isError为false时）或误差估计（isError为true时）的补偿求和（Neumaier），
+     * 子区域很多时避免舍入误差的累积
+     */
+    private static double sum(Region[] regions, boolean isError) {
+        double sum = 0;
+        double compensation = 0;
+        for (Region region : regions) {
+            double term = isError ? region.mError : region.mValue;
+            double next = sum + term;
+            if (Math.abs(sum) >= Math.abs(term)) {
+                compensation += (sum - next) + term;
+            } else {
+                compensation += (term - next) + sum;
+            }//if-else
+            sum = next;
+        }//for
+
+        return sum + compensation;
+    }//sum
+
+
+    /**
+     * 积分的结果
+     */
+    public static final class Result {
+        private final double mValue;
+        private final double mError;
+        private final long mEvaluationCount;
+        private final boolean mIsConverged;
+
+
+        private Result(double value, double error, long evaluationCount, boolean isConverged) {
+            mValue = value;
+            mError = error;
+            mEvaluationCount = evaluationCount;
+            mIsConverged = isConverged;
+        }//con_Result
+
+        public double getValue() {
+            return mValue;
+        }//getValue
+
+        /**
+         * 获取误差估计，即各子区域上求积公式与其内嵌的低阶公式之差的总和
+         */
+        public double getError() {
+            return mError;
+        }//getError
+
+        public long getEvaluationCount() {
+            return mEvaluationCount;
+        }//getEvaluationCount
+
+        /**
+         * 误差估计是否达到了要求，为false时表示求值次数用完或者子区域已经不能再分
+         */
+        public boolean isConverged() {
+            return mIsConverged;
+        }//isConverged
+
+        @Override
+        public String toString() {
+            return mValue + " ± " + mError + (mIsConverged ? "" : "（未收敛）");
+        }//toString
+    }//class_Result
+
+
+    /*
+     * 积分区域的一个子区域（各轴上的中心和半宽），以及求积公式在其上的结果
+     */
+    private static final class Region {
+        private final double[] mCenter;
+        private final double[] mHalfWidths;
+        private double mValue;
+        private double mError;
+        private int mSplitAxis;
+        private boolean mIsSplit = false;
+
+
+        Region(double[] center, double[] halfWidths) {
+            mCenter = center;
+            mHalfWidths = halfWidths;
+        }//con_Region
+
+        //沿mSplitAxis一分为二后子区域的中心不能与原来的中心重合
+        boolean isSplittable() {
+            double center = mCenter[mSplitAxis];
+            double quarter = mHalfWidths[mSplitAxis] / 2;
+
+            return center - quarter < center && center + quarter > center;
+        }//isSplittable
+
+        Region[] split() {
+            double quarter = mHalfWidths[mSplitAxis] / 2;
+            Region[] children = new Region[2];
+            for (int i = 0; i < 2; i++) {
+                double[] center = mCenter.clone();
+                double[] halfWidths = mHalfWidths.clone();
+                center[mSplitAxis] += i == 0 ? -quarter : quarter;
+                halfWidths[mSplitAxis] = quarter;
+                children[i] = new Region(center, halfWidths);
+            }//for
+
+            return children;
+        }//split
+    }//class_Region
+
+
+    /*
+     * 子区域上的求积公式：给出各节点的坐标，再由各节点的函数值算出子区域上的积分值、误差估计和细分的轴
+     */
+    private interface Rule {
+        int getPointCount();
+
+        //把各节点第axis个积分变量的坐标写入columns[axis][row]开始的getPointCount()个位置
+        void fillPoints(Region region, double[][] columns, int row);
+
+        //由values[row]开始的各节点的函数值设置region的积分值、误差估计和细分的轴
+        void apply(Region region, double[] values, int row);
+    }//interface_Rule
+
+
+    /*
+     * 一元的7点Gauss-15点Kronrod公式（见QUADPACK的QK15）：15个节点为中心和对称的7对，
+     * 其中中心和第2、4、6对同时是7点Gauss公式的节点，两者之差经过QUADPACK的经验缩放后作为误差估计
+     */
+    private static final class GaussKronrod implements Rule {
+        //Kronrod节点（最后一个是中心）及其权重
+        private static final double[] NODES = {
+                0.991455371120812639206854697526329, 0.949107912342758524526189684047851,
+                0.864864423359769072789712788640926, 0.741531185599394439863864773280788,
+                0.586087235467691130294144845693013, 0.405845151377397166906606412076961,
+                0.207784955007898467600689403773245, 0};
+        private static final double[] KRONROD_WEIGHTS = {
+                0.022935322010529224963732008058970, 0.063092092629978553290700663189204,
+                0.104790010322250183839876322541518, 0.140653259715525918745189590510238,
+                0.169004726639267902826583426598550, 0.190350578064785409913256402421014,
+                0.204432940075298892414161999234649, 0.209482141084727828012999174891714};
+        //Gauss节点NODES[1]、NODES[3]、NODES[5]和中心的权重
+        private static final double[] GAUSS_WEIGHTS = {
+                0.129484966168869693270611432679082, 0.279705391489276667901467771423780,
+                0.381830050505118944950369775488975, 0.417959183673469387755102040816327};
+        private static final int PAIR_COUNT = 7;
+
+
+        @Override
+        public int getPointCount() {
+            return PAIR_COUNT * 2 + 1;
+        }//getPointCount
+
+        //第row个为中心，之后依次为各对节点的左、右两点
+        @Override
+        public void fillPoints(Region region, double[][] columns, int row) {
+            double[] column = columns[0];
+            double center = region.mCenter[0];
+            double halfWidth = region.mHalfWidths[0];
+            column[row] = center;
+            for (int j = 0; j < PAIR_COUNT; j++) {
+                column[row + 1 + 2 * j] = center - halfWidth * NODES[j];
+                column[row + 2 + 2 * j] = center + halfWidth * NODES[j];
+            }//for
+        }//fillPoints
+
+        @Override
+        public void apply(Region region, double[] values, int row) {
+            double centerValue = values[row];
+            double kronrod = KRONROD_WEIGHTS[PAIR_COUNT] * centerValue;
+            double gauss = GAUSS_WEIGHTS[PAIR_COUNT / 2] * centerValue;
+            double absolute = KRONROD_WEIGHTS[PAIR_COUNT] * Math.abs(centerValue);
+            for (int j = 0; j < PAIR_COUNT; j++) {
+                double sum = values[row + 1 + 2 * j] + values[row + 2 + 2 * j];
+                kronrod += KRONROD_WEIGHTS[j] * sum;
+                absolute += KRONROD_WEIGHTS[j] * (Math.abs(values[row + 1 + 2 * j]) + Math.abs(values[row + 2 + 2 * j]));
+                if (j % 2 == 1) {
+                    gauss += GAUSS_WEIGHTS[j / 2] * sum;
+                }//if
+            }//for
+
+            //函数偏离其平均值的程度，用于缩放误差估计
+            double mean = kronrod / 2;
+            double deviation = KRONROD_WEIGHTS[PAIR_COUNT] * Math.abs(centerValue - mean);
+            for (int j = 0; j < PAIR_COUNT; j++) {
+                deviation += KRONROD_WEIGHTS[j]
+                        * (Math.abs(values[row + 1 + 2 * j] - mean) + Math.abs(values[row + 2 + 2 * j] - mean));
+            }//for
+
+            double halfWidth = region.mHalfWidths[0];
+            double error = Math.abs((kronrod - gauss) * halfWidth);
+            deviation *= halfWidth;
+            absolute *= halfWidth;
+            if (deviation != 0 && error != 0) {
+                error = deviation * Math.min(1, Math.pow(200 * error / deviation, 1.5));
+            }//if
+            if (absolute > Double.MIN_NORMAL / (50 * EPSILON)) {
+                error = Math.max(50 * EPSILON * absolute, error);
+            }//if
+
+            region.mValue = kronrod * halfWidth;
+            region.mError = error;
+            region.mSplitAxis = 0;
+        }//apply
+    }//class_GaussKronrod
+
+
+    /*
+     * n元的Genz-Malik公式（A. C. Genz and A. A. Malik, 1980）：7次公式及内嵌的5次公式，两者之差作为误差估计
+     * 节点为中心、各轴上的±λ2和±λ4、每两个轴上的(±λ4, ±λ4)以及2^n个角(±λ5, ..., ±λ5)（相对于半宽），
+     * 细分的轴取四阶差分最大的轴（四阶差分相同时取最宽的轴）
+     */
+    private static final class GenzMalik implements Rule {
+        private static final double LAMBDA2 = Math.sqrt(9.0 / 70);
+        private static final double LAMBDA4 = Math.sqrt(9.0 / 10);
+        private static final double LAMBDA5 = Math.sqrt(9.0 / 19);
+        //由±λ2和±λ4两组点的二阶差分之差得到四阶差分，消去二阶项
+        private static final double RATIO = (LAMBDA2 * LAMBDA2) / (LAMBDA4 * LAMBDA4);
+        //四阶差分的相对差不超过该值时认为相同
+        private static final double DIFFERENCE_TOLERANCE = 1e-10;
+        //7次公式和5次公式中与维数无关的权重
+        private static final double WEIGHT2 = 980.0 / 6561;
+        private static final double WEIGHT4 = 200.0 / 19683;
+        private static final double LOW_WEIGHT2 = 245.0 / 486;
+        private static final double LOW_WEIGHT4 = 25.0 / 729;
+
+        private final int mDimension;
+        private final int mPointCount;
+        private final double mWeight1;
+        private final double mWeight3;
+        private final double mWeight5;
+        private final double mLowWeight1;
+        private final double mLowWeight3;
+
+
+        GenzMalik(int dimension) {
+            double n = dimension;
+            mDimension = dimension;
+            mPointCount = (1 << dimension) + 2 * dimension * dimension + 2 * dimension + 1;
+            mWeight1 = (12824 - 9120 * n + 400 * n * n) / 19683;
+            mWeight3 = (1820 - 400 * n) / 19683;
+            mWeight5 = 6859.0 / 19683 / (1 << dimension);
+            mLowWeight1 = (729 - 950 * n + 50 * n * n) / 729;
+            mLowWeight3 = (265 - 100 * n) / 1458;
+        }//con_GenzMalik
+
+        @Override
+        public int getPointCount() {
+            return mPointCount;
+        }//getPointCount
+
+        /*
+         * 节点的顺序：中心；各轴上的-λ2、+λ2、-λ4、+λ4；每两个轴i < j上的(-λ4, -λ4)、(+λ4, -λ4)、(-λ4, +λ4)、(+λ4, +λ4)；
+         * 2^n个角，第k个角在第axis个轴上的符号取k的第axis位
+         */
+        @Override
+        public void fillPoints(Region region, double[][] columns, int row) {
+            double[] center = region.mCenter;
+            double[] halfWidths = region.mHalfWidths;
+            for (int axis = 0; axis < mDimension; axis++) {
+                Arrays.fill(columns[axis], row, row + mPointCount, center[axis]);
+            }//for
+
+            int point = row + 1;
+            for (int axis = 0; axis < mDimension; axis++) {
+                double[] column = columns[axis];
+                column[point++] = center[axis] - LAMBDA2 * halfWidths[axis];
+                column[point++] = center[axis] + LAMBDA2 * halfWidths[axis];
+                column[point++] = center[axis] - LAMBDA4 * halfWidths[axis];
+                column[point++] = center[axis] + LAMBDA4 * halfWidths[axis];
+            }//for
+
+            for (int i = 0; i < mDimension; i++) {
+                for (int j = i + 1; j < mDimension; j++) {
+                    for (int signs = 0; signs < 4; signs++) {
+                        columns[i][point] = center[i] + ((signs & 1) == 0 ? -LAMBDA4 : LAMBDA4) * halfWidths[i];
+                        columns[j][point] = center[j] + ((signs & 2) == 0 ? -LAMBDA4 : LAMBDA4) * halfWidths[j];
+                        point++;
+                    }//for
+                }//for
+            }//for
+
+            for (int corner = 0; corner < 1 << mDimension; corner++) {
+                for (int axis = 0; axis < mDimension; axis++) {
+                    columns[axis][point] = center[axis]
+                            + (((corner >> axis) & 1) == 0 ? -LAMBDA5 : LAMBDA5) * halfWidths[axis];
+                }//for
+                point++;
+            }//for
+        }//fillPoints
+
+        @Override
+        public void apply(Region region, double[] values, int row) {
+            double centerValue = values[row];
+            double sum2 = 0;
+            double sum3 = 0;
+            double maxDifference = 0;
+            double[] differences = new double[mDimension];
+            int point = row + 1;
+            for (int axis = 0; axis < mDimension; axis++) {
+                double inner = values[point] + values[point + 1];
+                double outer = values[point + 2] + values[point + 3];
+                sum2 += inner;
+                sum3 += outer;
+                differences[axis] = Math.abs(inner - 2 * centerValue - RATIO * (outer - 2 * centerValue));
+                maxDifference = Math.max(maxDifference, differences[axis]);
+                point += 4;
+            }//for
+
+            double sum4 = 0;
+            int pairPointEnd = point + 2 * mDimension * (mDimension - 1);
+            for (; point < pairPointEnd; point++) {
+                sum4 += values[point];
+            }//for
+
+            double sum5 = 0;
+            for (; point < row + mPointCount; point++) {
+                sum5 += values[point];
+            }//for
+
+            double volume = 1;
+            int splitAxis = 0;
+            for (int axis = 0; axis < mDimension; axis++) {
+                volume *= 2 * region.mHalfWidths[axis];
+                if (differences[axis] >= maxDifference * (1 - DIFFERENCE_TOLERANCE)
+                        && (differences[splitAxis] < maxDifference * (1 - DIFFERENCE_TOLERANCE)
+                        || region.mHalfWidths[axis] > region.mHalfWidths[splitAxis])) {
+
+                    splitAxis = axis;
+                }//if
+            }//for
+
+            double value = volume * (mWeight1 * centerValue + WEIGHT2 * sum2 + mWeight3 * sum3
+                    + WEIGHT4 * sum4 + mWeight5 * sum5);
+            double lowValue = volume * (mLowWeight1 * centerValue + LOW_WEIGHT2 * sum2 + mLowWeight3 * sum3
+                    + LOW_WEIGHT4 * sum4);
+            region.mValue = value;
+            region.mError = Math.abs(value - lowValue);
+            region.mSplitAxis = splitAxis;
+        }//apply
+    }//class_GenzMalik
+
+
+    /*
+     * 一次积分的状态
+     */
+    private final class Integration {
+        private final CompiledExpression mCompiledExp;
+        private final double[] mValues;
+        private final int[] mSlots;
+        private final Rule mRule;
+        private final ForkJoinPool mPool;
+        private final int mMinLeafSize; //每个任务至少计算的子区域个数
+        private long mEvaluationCount = 0;
+
+
+        Integration(CompiledExpression compiledExp, double[] values, int[] slots, Rule rule, ForkJoinPool pool) {
+            mCompiledExp = compiledExp;
+            mValues = values;
+            mSlots = slots;
+            mRule = rule;
+            mPool = pool;
+            mMinLeafSize = Math.max(1, MIN_LEAF_EVALUATIONS / rule.getPointCount());
+        }//con_Integration
+
+        Result run(double[] lowers, double[] uppers) {
+            double[] center = new double[mSlots.length];
+            double[] halfWidths = new double[mSlots.length];
+            for (int axis = 0; axis < mSlots.length; axis++) {
+                halfWidths[axis] = (uppers[axis] - lowers[axis]) / 2;
+                center[axis] = lowers[axis] + halfWidths[axis];
+            }//for
+
+            Region[] regions = {new Region(center, halfWidths)};
+            evaluate(regions);
+            while (true) {
+                double value = sum(regions, false);
+                double error = sum(regions, true);
+                double tolerance = Math.max(mAbsoluteTolerance, mRelativeTolerance * Math.abs(value));
+                if (error <= tolerance) {
+                    return new Result(value, error, mEvaluationCount, true);
+                }//if
+
+                //按误差估计从大到小细分，直到未细分的子区域的误差之和不超过tolerance的一半，或者求值次数用完
+                long budget = (mMaxEvaluations - mEvaluationCount) / (2L * mRule.getPointCount());
+                Region[] sorted = regions.clone();
+                Arrays.sort(sorted, (left, right) -> Double.compare(right.mError, left.mError));
+                List<Region> children = new ArrayList<>();
+                double remaining = error;
+                for (Region region : sorted) {
+                    if (remaining <= tolerance / 2 || children.size() / 2 >= budget) {
+                        break;
+                    }//if
+
+                    if (region.isSplittable()) {
+                        remaining -= region.mError;
+                        children.addAll(Arrays.asList(region.split()));
+                        region.mIsSplit = true;
+                    }//if
+                }//for
+
+                if (children.isEmpty()) {
+                    return new Result(value, error, mEvaluationCount, false);
+                }//if
+
+                Region[] next = new Region[regions.length + children.size() / 2];
+                int count = 0;
+                for (Region region : regions) {
+                    if (!region.mIsSplit) {
+                        next[count++] = region;
+                    }//if
+                }//for
+                Region[] newRegions = children.toArray(new Region[0]);
+                evaluate(newRegions);
+                System.arraycopy(newRegions, 0, next, count, newRegions.length);
+                regions = Arrays.copyOf(next, count + newRegions.length);
+            }//while
+        }//run
+
+        //在线程池上计算各子区域上的求积公式，子区域按下标划分的方式与网格的并行计算相同
+        private void evaluate(Region[] regions) {
+            ParallelSweep.forEachRange(0, regions.length, mMinLeafSize, mPool,
+                    (from, to) -> evaluate(regions, (int)from, (int)to));
+            mEvaluationCount += (long)regions.length * mRule.getPointCount();
+        }//evaluate
+
+        //顺序计算第from个到第to个（不含）子区域：所有节点放在一起按块求值
+        private void evaluate(Region[] regions, int from, int to) {
+            int pointCount = mRule.getPointCount();
+            int rows = (to - from) * pointCount;
+            double[][] columnsBySlot = new double[mValues.length][];
+            for (int slot = 0; slot < mValues.length; slot++) {
+                if (mCompiledExp.isVariableReferenced(slot)) {
+                    columnsBySlot[slot] = new double[rows];
+                    Arrays.fill(columnsBySlot[slot], mValues[slot]);
+                }//if
+            }//for
+
+            double[][] columns = new double[mSlots.length][];
+            for (int axis = 0; axis < mSlots.length; axis++) {
+                columns[axis] = new double[rows];
+                columnsBySlot[mSlots[axis]] = columns[axis];
+            }//for
+
+            for (int i = from; i < to; i++) {
+                mRule.fillPoints(regions[i], columns, (i - from) * pointCount);
+            }//for
+
+            double[] values = new double[rows];
+            sBatchEvaluator.get().evaluate(mCompiledExp, columnsBySlot, values, 0, rows);
+            for (int i = from; i < to; i++) {
+                mRule.apply(regions[i], values, (i - from) * pointCount);
+            }//for
+        }//evaluate
+    }//class_Integration
+}//class_Integrator
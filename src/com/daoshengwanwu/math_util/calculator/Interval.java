@@ -0,0 +1,56 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+/**
+ * 表达式在一组变量区间上的值的包络（见CompiledExpression.evaluateRange）
+ * 区间内任意一点按evaluate计算的结果，只要没有超出定义域并且不是NaN，都在[getLower(), getUpper()]之内
+ * mayFail()为false时，区间内的每一点都能算出一个有限的值；为true时可能有点超出定义域、除以0或者溢出
+ * 所有点都超出定义域时包络为空
+ */
+public final class Interval {
+    private final double mLower;
+    private final double mUpper;
+    private final boolean mMayFail;
+
+
+    Interval(double lower, double upper, boolean mayFail) {
+        mLower = lower;
+        mUpper = upper;
+        mMayFail = mayFail;
+    }//con_Interval
+
+    public double getLower() {
+        return mLower;
+    }//getLower
+
+    public double getUpper() {
+        return mUpper;
+    }//getUpper
+
+    /**
+     * 区间内是否可能有算不出有限值的点（超出定义域、除以0、溢出等）
+     */
+    public boolean mayFail() {
+        return mMayFail;
+    }//mayFail
+
+    /**
+     * 包络是否为空，即区间内所有点都超出定义域
+     */
+    public boolean isEmpty() {
+        return IntervalEvaluator.isEmpty(mLower, mUpper);
+    }//isEmpty
+
+    public boolean contains(double value) {
+        return value >= mLower && value <= mUpper;
+    }//contains
+
+    @Override
+    public String toString() {
+        if (isEmpty()) {
+            return "∅";
+        }//if
+
+        return "[" + mLower + ", " + mUpper + "]" + (mMayFail ? "?" : "");
+    }//toString
+}//class_Interval
@@ -0,0 +1,552 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import com.daoshengwanwu.math_util.calculator.util.DigitUtil;
+
+
+/*
+ * 区间算术：以区间执行编译后的指令序列，得到表达式在各变量取值区间的笛卡尔积（盒子）上的值的包络
+ * 包络是有保证的：盒子中任意一点按evaluate计算的结果（没有超出定义域、不是NaN时）都在包络之内
+ * 四则运算的端点向外舍入一个ulp，Math中的超越函数（误差不超过1个ulp，并且是半单调的）向外舍入两个ulp，
+ * 因此包络同时包含浮点计算的结果和精确的数学值
+ *
+ * 定义域的处理与NaN方式求值一致：操作数区间只有一部分在定义域内时只对这一部分求包络，并记下"可能出错"；
+ * 完全在定义域外时结果为空区间（下限为+∞，上限为-∞），之后的运算都为空
+ * 包络的端点为无穷、或者运算可能得到NaN（如除数区间含0）时同样记为"可能出错"，
+ * 因此没有"可能出错"时，盒子中的每一点都能算出一个有限的值，并且都在包络之内
+ * 中间结果可能为NaN时同样记为"可能出错"，并随之记下NaN的传播：规范化有效数字把NaN变为0，包络在此并入0
+ */
+final class IntervalEvaluator {
+    private static final double TWO_PI = 2 * Math.PI;
+    private static final double HALF_PI = Math.PI / 2;
+    //参数的绝对值超过该值时三角函数直接取整个值域，不再定位极值点
+    private static final double MAX_TRIG_ARGUMENT = 1e9;
+    //定位三角函数的极值点和极点时的相对误差，只会使包络变宽
+    private static final double PERIOD_TOLERANCE = 1e-12;
+    //阶乘按long计算，超过20!后溢出
+    private static final int MAX_EXACT_FACT = 20;
+    //2^63，规范化有效数字时绝对值不小于该值的数转换为long会溢出
+    private static final double LONG_LIMIT = 0x1p63;
+
+    private final int[] mCode;
+    private final double[] mConstants;
+    private final double[] mLowers;
+    private final double[] mUppers;
+    private final double[] mTempLowers;
+    private final double[] mTempUppers;
+    //栈中和临时变量中的值是否可能为NaN（如负数的非整数次幂、∞ - ∞），NaN不在包络之内
+    private final boolean[] mNaNs;
+    private final boolean[] mTempNaNs;
+
+    //最近一次运算的结果
+    private double mLower;
+    private double mUpper;
+    private boolean mMayFail;
+    private boolean mMayBeNaN;
+
+
+    IntervalEvaluator(CompiledExpression compiledExp) {
+        mCode = compiledExp.getCode();
+        mConstants = compiledExp.getConstants();
+        mLowers = new double[compiledExp.getMaxDepth()];
+        mUppers = new double[compiledExp.getMaxDepth()];
+        mTempLowers = new double[compiledExp.getTempCount()];
+        mTempUppers = new double[compiledExp.getTempCount()];
+        mNaNs = new boolean[compiledExp.getMaxDepth()];
+        mTempNaNs = new boolean[compiledExp.getTempCount()];
+    }//con_IntervalEvaluator
+
+    /**
+     * 计算表达式在各变量槽位取[lowers[slot], uppers[slot]]时的包络，结果通过getLower、getUpper、mayFail读取
+     */
+    void evaluate(double[] lowers, double[] uppers) {
+        double[] stackLowers = mLowers;
+        double[] stackUppers = mUppers;
+        boolean[] stackNaNs = mNaNs;
+        boolean mayFail = false;
+
+        int sp = 0;
+        for (int instruction : mCode) {
+            int opCode = OpCode.opCode(instruction);
+            int arg = OpCode.arg(instruction);
+            switch (opCode) {
+            case OpCode.CONST: {
+                stackLowers[sp] = mConstants[arg];
+                stackUppers[sp] = mConstants[arg];
+                stackNaNs[sp] = false;
+                sp++;
+            } break;
+            case OpCode.LOAD_VAR: {
+                stackLowers[sp] = lowers[arg];
+                stackUppers[sp] = uppers[arg];
+                stackNaNs[sp] = false;
+                sp++;
+            } break;
+            case OpCode.LOAD_TEMP: {
+                stackLowers[sp] = mTempLowers[arg];
+                stackUppers[sp] = mTempUppers[arg];
+                stackNaNs[sp] = mTempNaNs[arg];
+                sp++;
+            } break;
+            case OpCode.STORE_TEMP: {
+                mTempLowers[arg] = stackLowers[sp - 1];
+                mTempUppers[arg] = stackUppers[sp - 1];
+                mTempNaNs[arg] = stackNaNs[sp - 1];
+            } break;
+            default: {
+                mMayFail = false;
+                mMayBeNaN = false;
+                boolean isNaNOperand;
+                if (OpCode.getDimension(opCode) == 2) {
+                    sp--;
+                    isNaNOperand = stackNaNs[sp - 1] || stackNaNs[sp];
+                    binary(opCode, stackLowers[sp - 1], stackUppers[sp - 1], stackLowers[sp], stackUppers[sp]);
+                } else {
+                    isNaNOperand = stackNaNs[sp - 1];
+                    unary(opCode, arg, stackLowers[sp - 1], stackUppers[sp - 1]);
+                }//if-else
+                if (isNaNOperand) {
+                    acceptNaN(opCode);
+                }//if
+                normalize();
+                mayFail |= mMayFail || mMayBeNaN;
+                stackLowers[sp - 1] = mLower;
+                stackUppers[sp - 1] = mUpper;
+                stackNaNs[sp - 1] = mMayBeNaN;
+            } break;
+            }//switch
+        }//for
+
+        mLower = stackLowers[0];
+        mUpper = stackUppers[0];
+        mMayFail = mayFail || isEmpty(mLower, mUpper) || Double.isInfinite(mLower) || Double.isInfinite(mUpper);
+    }//evaluate
+
+    double getLower() {
+        return mLower;
+    }//getLower
+
+    double getUpper() {
+        return mUpper;
+    }//getUpper
+
+    boolean mayFail() {
+        return mMayFail;
+    }//mayFail
+
+    static boolean isEmpty(double lower, double upper) {
+        return lower > upper;
+    }//isEmpty
+
+    private void binary(int opCode, double a, double b, double c, double d) {
+        if (isEmpty(a, b) || isEmpty(c, d)) {
+            setEmpty();
+            return;
+        }//if
+
+        switch (opCode) {
+        case OpCode.ADD: {
+            mMayBeNaN = (a == Double.NEGATIVE_INFINITY && d == Double.POSITIVE_INFINITY)
+                    || (b == Double.POSITIVE_INFINITY && c == Double.NEGATIVE_INFINITY);
+            set(down(a + c), up(b + d));
+        } break;
+        case OpCode.SUB: {
+            mMayBeNaN = (a == Double.NEGATIVE_INFINITY && c == Double.NEGATIVE_INFINITY)
+                    || (b == Double.POSITIVE_INFINITY && d == Double.POSITIVE_INFINITY);
+            set(down(a - d), up(b - c));
+        } break;
+        case OpCode.MUL: {
+            //0 * ∞为NaN
+            mMayBeNaN = (containsZero(a, b) && isUnbounded(c, d)) || (containsZero(c, d) && isUnbounded(a, b));
+            double p1 = multiply(a, c);
+            double p2 = multiply(a, d);
+            double p3 = multiply(b, c);
+            double p4 = multiply(b, d);
+            set(down(min(p1, p2, p3, p4)), up(max(p1, p2, p3, p4)));
+        } break;
+        case OpCode.DIV: divide(a, b, c, d); break;
+        case OpCode.MOD: mod(a, b, c, d); break;
+        case OpCode.POW: pow(a, b, c, d); break;
+        case OpCode.LOG: {
+            //ln(∞) / ln(∞)为NaN
+            mMayBeNaN = b == Double.POSITIVE_INFINITY && d == Double.POSITIVE_INFINITY;
+            log(a, b, c, d);
+        } break;
+        default: throw new IllegalArgumentException(OpCode.getName(opCode));
+        }//switch
+    }//binary
+
+    private void unary(int opCode, int arg, double a, double b) {
+        if (isEmpty(a, b)) {
+            setEmpty();
+            return;
+        }//if
+
+        switch (opCode) {
+        case OpCode.ROUND: round(a, b, arg); break;
+        case OpCode.NEGATE: set(0 - b, 0 - a); break;
+        case OpCode.SIN: case OpCode.COS: case OpCode.TAN: {
+            //三角函数在±∞处为NaN
+            mMayBeNaN = isUnbounded(a, b);
+            if (opCode == OpCode.SIN) {
+                sinOrCos(a, b, HALF_PI, -HALF_PI, true);
+            } else if (opCode == OpCode.COS) {
+                sinOrCos(a, b, 0, Math.PI, false);
+            } else {
+                tan(a, b);
+            }//if-else
+        } break;
+        case OpCode.ASIN: case OpCode.ACOS: case OpCode.ATAN: {
+            //本计算器中三个反三角函数的定义域都是[-1, 1]
+            if (b < -1 || a > 1) {
+                setEmpty();
+                return;
+            }//if
+            mMayFail = a < -1 || b > 1;
+            a = Math.max(a, -1);
+            b = Math.min(b, 1);
+            if (opCode == OpCode.ACOS) {
+                set(down2(Math.acos(b)), up2(Math.acos(a)));
+            } else if (opCode == OpCode.ASIN) {
+                set(down2(Math.asin(a)), up2(Math.asin(b)));
+            } else {
+                set(down2(Math.atan(a)), up2(Math.atan(b)));
+            }//if-else
+        } break;
+        case OpCode.LN: case OpCode.LG: {
+            if (b <= 0) {
+                setEmpty();
+                return;
+            }//if
+            mMayFail = a <= 0;
+            double lower = a <= 0 ? Double.NEGATIVE_INFINITY :
+                    down2(opCode == OpCode.LN ? OperatorFunctions.ln(a) : OperatorFunctions.lg(a));
+            set(lower, up2(opCode == OpCode.LN ? OperatorFunctions.ln(b) : OperatorFunctions.lg(b)));
+        } break;
+        case OpCode.SQRT: {
+            if (b < 0) {
+                setEmpty();
+                return;
+            }//if
+            mMayFail = a < 0;
+            set(a <= 0 ? 0 : down(Math.sqrt(a)), up(Math.sqrt(b)));
+        } break;
+        case OpCode.FACT: fact(a, b); break;
+        case OpCode.ABS: {
+            if (a >= 0) {
+                set(a, b);
+            } else if (b <= 0) {
+                set(-b, -a);
+            } else {
+                set(0, Math.max(-a, b));
+            }//if-else
+        } break;
+        default: throw new IllegalArgumentException(OpCode.getName(opCode));
+        }//switch
+    }//unary
+
+    private void divide(double a, double b, double c, double d) {
+        //0 / 0和∞ / ∞为NaN
+        mMayBeNaN = (containsZero(a, b) && containsZero(c, d)) || (isUnbounded(a, b) && isUnbounded(c, d));
+        if (containsZero(c, d)) {
+            //除数可能为0，结果可能为±∞或NaN
+            setEntire();
+            return;
+        }//if
+
+        double q1 = a / c;
+        double q2 = a / d;
+        double q3 = b / c;
+        double q4 = b / d;
+        set(down(min(q1, q2, q3, q4)), up(max(q1, q2, q3, q4)));
+    }//divide
+
+    /*
+     * x % y与x同号，绝对值小于|y|
+     * y是一个点、x不跨过0并且[a, b]中没有跳跃点（y的整数倍）时%是x减去一个常数，直接取两端的值：
+     * 区间长度小于|y|时，跨过跳跃点的充要条件是a % y > b % y（%的结果是精确的）
+     */
+    private void mod(double a, double b, double c, double d) {
+        //x % 0和∞ % y为NaN
+        mMayBeNaN = containsZero(c, d) || isUnbounded(a, b);
+        mMayFail = mMayBeNaN;
+        if (c == d && c != 0) {
+            double q = Math.abs(c);
+            if ((a >= 0 || b <= 0) && b - a < q && a % q <= b % q) {
+                set(a % q, b % q);
+                return;
+            }//if
+        }//if
+
+        double bound = Math.max(Math.abs(c), Math.abs(d));
+        set(a >= 0 ? 0 : Math.max(a, -bound), b <= 0 ? 0 : Math.min(b, bound));
+    }//mod
+
+    private void pow(double a, double b, double c, double d) {
+        if (c == d) {
+            if (c == 0) {
+                set(1, 1);
+                return;
+            }//if
+
+            //绝对值不小于2^53的double都是偶数，负数的这些次幂并不是NaN
+            if (c == Math.rint(c) && !Double.isInfinite(c)) {
+                powInteger(a, b, c);
+                return;
+            }//if
+        }//if
+
+        //(±1)^∞为NaN
+        mMayBeNaN = a <= 1 && b >= -1 && isUnbounded(c, d);
+        if (a < 0) {
+            //负数的非整数次幂为NaN；指数是区间时其中可能有整数，结果的符号不确定
+            mMayFail = true;
+            mMayBeNaN = true;
+            if (c != d) {
+                setEntire();
+                return;
+            }//if
+
+            if (b < 0) {
+                setEmpty();
+                return;
+            }//if
+            a = 0;
+        }//if
+
+        //底数非负时x^y对每个参数都是单调的，极值在四个角上
+        double p1 = Math.pow(a, c);
+        double p2 = Math.pow(a, d);
+        double p3 = Math.pow(b, c);
+        double p4 = Math.pow(b, d);
+        set(down2(min(p1, p2, p3, p4)), up2(max(p1, p2, p3, p4)));
+    }//pow
+
+    private void powInteger(double a, double b, double n) {
+        double pa = Math.pow(a, n);
+        double pb = Math.pow(b, n);
+        if (a > 0 || b < 0) {
+            //不含0时在区间上单调
+            set(down2(Math.min(pa, pb)), up2(Math.max(pa, pb)));
+        } else if (n < 0) {
+            setEntire();
+        } else if (n % 2 == 0) {
+            set(0, up2(Math.max(pa, pb)));
+        } else {
+            set(down2(pa), up2(pb));
+        }//if-else
+    }//powInteger
+
+    //log(底数[a, b])~(真数[c, d]) = ln(真数) / ln(底数)
+    private void log(double a, double b, double c, double d) {
+        if (b <= 0 || d <= 0) {
+            setEmpty();
+            return;
+        }//if
+
+        mMayFail = a <= 0 || c <= 0;
+        if (a <= 1 && b >= 1) {
+            //底数可能为1或趋近于1，ln(底数)可能为0
+            mMayFail = true;
+            setEntire();
+            return;
+        }//if
+
+        double lnBaseLower = a <= 0 ? Double.NEGATIVE_INFINITY : down2(Math.log(a));
+        double lnBaseUpper = up2(Math.log(b));
+        double lnLower = c <= 0 ? Double.NEGATIVE_INFINITY : down2(Math.log(c));
+        double lnUpper = up2(Math.log(d));
+        divide(lnLower, lnUpper, lnBaseLower, lnBaseUpper);
+    }//log
+
+    /*
+     * sin和cos：两端的值之外，区间内含有极大值点（相位maxPhase + 2kπ）时上限为1，含有极小值点时下限为-1
+     */
+    private void sinOrCos(double a, double b, double maxPhase, double minPhase, boolean isSin) {
+        if (b - a >= TWO_PI || Math.abs(a) > MAX_TRIG_ARGUMENT || Math.abs(b) > MAX_TRIG_ARGUMENT) {
+            set(-1, 1);
+            return;
+        }//if
+
+        double fa = isSin ? Math.sin(a) : Math.cos(a);
+        double fb = isSin ? Math.sin(b) : Math.cos(b);
+        double lower = containsPhase(a, b, minPhase, TWO_PI) ? -1 : Math.max(-1, down2(Math.min(fa, fb)));
+        double upper = containsPhase(a, b, maxPhase, TWO_PI) ? 1 : Math.min(1, up2(Math.max(fa, fb)));
+        set(lower, upper);
+    }//sinOrCos
+
+    private void tan(double a, double b) {
+        if (b - a >= Math.PI || Math.abs(a) > MAX_TRIG_ARGUMENT || Math.abs(b) > MAX_TRIG_ARGUMENT
+                || containsPhase(a, b, HALF_PI, Math.PI)) {
+            setEntire();
+            return;
+        }//if
+
+        set(down2(Math.tan(a)), up2(Math.tan(b)));
+    }//tan
+
+    /*
+     * 阶乘只在非负整数上有定义，在其上单调不减（0! = 1! = 1）
+     * 比整数n略大、在有效数字之内与n相等的数也按n!计算，因此从floor(a)开始
+     */
+    private void fact(double a, double b) {
+        double first = Math.max(0, Math.floor(a));
+        double last = Math.floor(b);
+        mMayFail = a != b || a < 0 || a != Math.rint(a);
+        if (first > last) {
+            setEmpty();
+            return;
+        }//if
+
+        if (last > MAX_EXACT_FACT) {
+            //溢出后的结果仍然是一个long
+            set(Long.MIN_VALUE, Long.MAX_VALUE);
+            return;
+        }//if
+
+        set(OperatorFunctions.fact(first), OperatorFunctions.fact(last));
+    }//fact
+
+    /*
+     * 操作数可能为NaN时结果也可能为NaN，但有三个例外：
+     * NaN的0次幂为1，NaN的阶乘为1（NaN被当作整数0），规范化有效数字把NaN变为0
+     */
+    private void acceptNaN(int opCode) {
+        switch (opCode) {
+        case OpCode.ROUND: include(0); break;
+        case OpCode.POW: case OpCode.FACT: {
+            include(1);
+            mMayBeNaN = true;
+        } break;
+        default: mMayBeNaN = true; break;
+        }//switch
+    }//acceptNaN
+
+    //判断[a, b]（按误差放宽）中是否含有phase + k * period
+    private static boolean containsPhase(double a, double b, double phase, double period) {
+        double tolerance = PERIOD_TOLERANCE * Math.max(1, Math.max(Math.abs(a), Math.abs(b)));
+        double k = Math.ceil((a - tolerance - phase) / period);
+
+        return phase + k * period <= b + tolerance;
+    }//containsPhase
+
+    /*
+     * 规范化有效数字只在绝对值小于10^significantDigits时是单调的：
+     * 更大的数被除以10的幂，结果的绝对值落在[10^(significantDigits - 1), 10^significantDigits]之内，
+     * 不小于2^63的数（包括正无穷）因long溢出，结果不超过2^63；
+     * 不大于-2^63的数（包括负无穷）取绝对值时溢出，位数算作0，结果总是Long.MIN_VALUE / 10^significantDigits
+     * 因此区间越过±10^significantDigits时，越过的部分会落回[10^(significantDigits - 1), 10^significantDigits]，
+     * 下限（或上限）不能只取端点规范化的结果
+     */
+    private void round(double a, double b, int significantDigits) {
+        double limit = Math.pow(10, significantDigits);
+        double lower;
+        if (a >= limit) {
+            lower = limit / 10;
+        } else if (a > -limit) {
+            lower = DigitUtil.reserveSignificantDigits(a, significantDigits);
+            if (b >= limit) {
+                lower = Math.min(lower, limit / 10);
+            }//if
+        } else {
+            lower = a > -LONG_LIMIT ? -limit : Long.MIN_VALUE;
+        }//if-else
+
+        double upper;
+        if (b <= -limit) {
+            upper = -limit / 10;
+        } else if (b < limit) {
+            upper = DigitUtil.reserveSignificantDigits(b, significantDigits);
+            if (a <= -limit) {
+                upper = Math.max(upper, -limit / 10);
+            }//if
+        } else {
+            upper = b < LONG_LIMIT ? limit : Long.MAX_VALUE;
+        }//if-else
+        if (a <= -LONG_LIMIT) {
+            upper = Math.max(upper, Long.MIN_VALUE / limit);
+        }//if
+
+        set(lower, upper);
+    }//round
+
+    //区间乘法中0乘以任何数（包括无穷）都是0
+    private static double multiply(double x, double y) {
+        return x == 0 || y == 0 ? 0 : x * y;
+    }//multiply
+
+    private static double min(double p1, double p2, double p3, double p4) {
+        return Math.min(Math.min(p1, p2), Math.min(p3, p4));
+    }//min
+
+    private static double max(double p1, double p2, double p3, double p4) {
+        return Math.max(Math.max(p1, p2), Math.max(p3, p4));
+    }//max
+
+    private static boolean containsZero(double lower, double upper) {
+        return lower <= 0 && upper >= 0;
+    }//containsZero
+
+    private static boolean isUnbounded(double lower, double upper) {
+        return lower == Double.NEGATIVE_INFINITY || upper == Double.POSITIVE_INFINITY;
+    }//isUnbounded
+
+    private static double down(double value) {
+        return value == Double.POSITIVE_INFINITY ? value : Math.nextDown(value);
+    }//down
+
+    private static double up(double value) {
+        return value == Double.NEGATIVE_INFINITY ? value : Math.nextUp(value);
+    }//up
+
+    private static double down2(double value) {
+        return down(down(value));
+    }//down2
+
+    private static double up2(double value) {
+        return up(up(value));
+    }//up2
+
+    private void set(double lower, double upper) {
+        mLower = lower;
+        mUpper = upper;
+    }//set
+
+    //把value并入最近一次运算的结果
+    private void include(double value) {
+        mLower = Math.min(mLower, value);
+        mUpper = Math.max(mUpper, value);
+    }//include
+
+    private void setEmpty() {
+        mLower = Double.POSITIVE_INFINITY;
+        mUpper = Double.NEGATIVE_INFINITY;
+        mMayFail = true;
+    }//setEmpty
+
+    private void setEntire() {
+        mLower = Double.NEGATIVE_INFINITY;
+        mUpper = Double.POSITIVE_INFINITY;
+        mMayFail = true;
+    }//setEntire
+
+    //端点为NaN（如∞ - ∞）时放宽为无穷；空区间之外端点为无穷时记为可能出错
+    private void normalize() {
+        if (isEmpty(mLower, mUpper)) {
+            mMayFail = true;
+            return;
+        }//if
+
+        if (Double.isNaN(mLower)) {
+            mLower = Double.NEGATIVE_INFINITY;
+        }//if
+
+        if (Double.isNaN(mUpper)) {
+            mUpper = Double.POSITIVE_INFINITY;
+        }//if
+
+        if (Double.isInfinite(mLower) || Double.isInfinite(mUpper)) {
+            mMayFail = true;
+        }//if
+    }//normalize
+}//class_IntervalEvaluator
@@ -0,0 +1,399 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.PriorityQueue;
+import java.util.function.LongConsumer;
+
+
+/**
+ * 网格上的分支定界搜索：求网格上表达式的最大值、最小值，或者找出值超过（低于）阈值的所有点
+ * 网格按下标被划分为一个个子盒子，先以区间算术（见CompiledExpression.evaluateRange）求出盒子上的值的包络：
+ * 包络表明盒子中不可能有需要的点时整个盒子跳过；包络表明盒子中所有点都满足条件时整个盒子直接输出，都不必逐点计算；
+ * 无法判断的盒子沿点数最多的轴一分为二，只有足够小的盒子才逐点计算
+ * 结果与以NaN方式（见Calculator.sweepOrNaN）逐点计算整个网格完全相同：超出定义域或者结果为NaN的点不参与
+ * 网格中的变量按对象本身、其次按变量名对应到表达式中的变量（同一个变量出现在多个轴上时以后面的轴为准），
+ * 表达式用到、但不在网格中的变量取构造LatticeSearch时的当前值
+ * LatticeSearch是不可变的，可以被多个线程同时使用
+ */
+public final class LatticeSearch {
+    //盒子中（表达式用到的轴上的）点数不超过该值时逐点计算
+    private static final int LEAF_SIZE = 64;
+
+    private final CompiledExpression mCompiledExp;
+    private final VariableLattice mLattice;
+    private final int[] mSlots; //各轴在表达式中的槽位，表达式的值与该轴无关时为-1
+    private final double[] mFixedValues; //按槽位，不在网格中的变量的值
+
+
+    public LatticeSearch(CompiledExpression compiledExp, VariableLattice lattice) {
+        mCompiledExp = compiledExp;
+        mLattice = lattice;
+
+        boolean[] isBound = new boolean[compiledExp.getVariableCount()];
+        mSlots = new int[lattice.getDimension()];
+        for (int axis = 0; axis < mSlots.length; axis++) {
+            int slot = compiledExp.slotOf(lattice.getVariable(axis));
+            if (slot < 0 || !compiledExp.isVariableReferenced(slot)) {
+                mSlots[axis] = -1;
+                continue;
+            }//if
+
+            //逐点计算时后面的轴覆盖前面的轴
+            for (int previous = 0; previous < axis; previous++) {
+                if (mSlots[previous] == slot) {
+                    mSlots[previous] = -1;
+                }//if
+            }//for
+            mSlots[axis] = slot;
+            isBound[slot] = true;
+        }//for
+
+        mFixedValues = new double[isBound.length];
+        for (int slot = 0; slot < isBound.length; slot++) {
+            if (!isBound[slot] && compiledExp.isVariableReferenced(slot)) {
+                mFixedValues[slot] = compiledExp.getVariable(slot).curValue();
+            }//if
+        }//for
+    }//con_LatticeSearch
+
+    /**
+     * 求网格上表达式的最大值，多个点取得最大值时返回其中任意一个
+     * @return 最大值及其所在的点，没有能算出值的点时值为NaN、下标为-1
+     */
+    public Extremum maximum() {
+        return new Search().extremum(1);
+    }//maximum
+
+    /**
+     * 求网格上表达式的最小值，见maximum()
+     */
+    public Extremum minimum() {
+        return new Search().extremum(-1);
+    }//minimum
+
+    /**
+     * 对网格上值大于threshold的每一个点调用action，参数为点的下标（见VariableLattice）
+     * 每个点恰好调用一次，但不保证按下标的顺序
+     * @return 满足条件的点数
+     */
+    public long forEachAbove(double threshold, LongConsumer action) {
+        Search search = new Search();
+
+        return search.filter(search.newRootBox(), threshold, true, action);
+    }//forEachAbove
+
+    /**
+     * 对网格上值小于threshold的每一个点调用action，见forEachAbove
+     * @return 满足条件的点数
+     */
+    public long forEachBelow(double threshold, LongConsumer action) {
+        Search search = new Search();
+
+        return search.filter(search.newRootBox(), threshold, false, action);
+    }//forEachBelow
+
+
+    /**
+     * 网格上的最值及其所在的点
+     */
+    public static final class Extremum {
+        private final double mValue;
+        private final long mIndex;
+        private final long mEvaluationCount;
+
+
+        private Extremum(double value, long index, long evaluationCount) {
+            mValue = value;
+            mIndex = index;
+            mEvaluationCount = evaluationCount;
+        }//con_Extremum
+
+        public double getValue() {
+            return mValue;
+        }//getValue
+
+        /**
+         * 获取取得最值的点在网格中的下标，没有能算出值的点时为-1
+         */
+        public long getIndex() {
+            return mIndex;
+        }//getIndex
+
+        /**
+         * 获取搜索过程中逐点计算的次数（不含区间计算）
+         */
+        public long getEvaluationCount() {
+            return mEvaluationCount;
+        }//getEvaluationCount
+
+        @Override
+        public String toString() {
+            return mValue + "@" + mIndex;
+        }//toString
+    }//class_Extremum
+
+
+    /*
+     * 网格的子盒子：各轴上的下标范围[mLowerIndices[axis], mUpperIndices[axis]]
+     */
+    private static final class Box {
+        private final long[] mLowerIndices;
+        private final long[] mUpperIndices;
+        private double mBound; //最值搜索时盒子中的值（乘以符号后）的上界
+
+
+        Box(long[] lowerIndices, long[] upperIndices) {
+            mLowerIndices = lowerIndices;
+            mUpperIndices = upperIndices;
+        }//con_Box
+    }//class_Box
+
+
+    /*
+     * 一次搜索的状态
+     */
+    private final class Search {
+        private final IntervalEvaluator mEvaluator = new IntervalEvaluator(mCompiledExp);
+        private final double[] mLowers = mFixedValues.clone();
+        private final double[] mUppers = mFixedValues.clone();
+        private final VariableFrame mFrame = mCompiledExp.newFrame();
+        private final long[] mAxisIndices = new long[mSlots.length];
+        private long mEvaluationCount = 0;
+
+        //最值搜索中目前最好的点
+        private double mBest;
+        private long mBestIndex;
+
+
+        Search() {
+            System.arraycopy(mFixedValues, 0, mFrame.getValues(), 0, mFixedValues.length);
+        }//con_Search
+
+        Box newRootBox() {
+            long[] upperIndices = new long[mSlots.length];
+            for (int axis = 0; axis < mSlots.length; axis++) {
+                upperIndices[axis] = mLattice.getAxisSize(axis) - 1;
+            }//for
+
+            return new Box(new long[mSlots.length], upperIndices);
+        }//newRootBox
+
+        //sign为1时求最大值，为-1时求最小值（即求-f的最大值）
+        Extremum extremum(double sign) {
+            mBest = Double.NEGATIVE_INFINITY;
+            mBestIndex = -1;
+
+            PriorityQueue<Box> queue = new PriorityQueue<>((left, right) -> Double.compare(right.mBound, left.mBound));
+            offer(queue, newRootBox(), sign);
+            while (!queue.isEmpty()) {
+                Box box = queue.poll();
+                if (mBestIndex >= 0 && box.mBound <= mBest) {
+                    //队列中其余盒子的上界都不超过这一个
+                    break;
+                }//if
+
+                if (countRelevantPoints(box) <= LEAF_SIZE) {
+                    evaluateLeaf(box, sign, Double.NaN, false, null);
+                    continue;
+                }//if
+
+                int axis = splitAxis(box);
+                offer(queue, lowerHalf(box, axis), sign);
+                offer(queue, upperHalf(box, axis), sign);
+            }//while
+
+            return new Extremum(mBestIndex < 0 ? Double.NaN : sign * mBest, mBestIndex, mEvaluationCount);
+        }//extremum
+
+        //盒子可能比目前最好的点更好时放入队列，并计算盒子中心的一点，尽早提高下界
+        private void offer(PriorityQueue<Box> queue, Box box, double sign) {
+            enclose(box);
+            if (IntervalEvaluator.isEmpty(mEvaluator.getLower(), mEvaluator.getUpper())) {
+                return;
+            }//if
+
+            box.mBound = sign > 0 ? mEvaluator.getUpper() : -mEvaluator.getLower();
+            if (mBestIndex >= 0 && box.mBound <= mBest) {
+                return;
+            }//if
+
+            for (int axis = 0; axis < mSlots.length; axis++) {
+                mAxisIndices[axis] = mSlots[axis] < 0 ? box.mLowerIndices[axis]
+                        : box.mLowerIndices[axis] + (box.mUpperIndices[axis] - box.mLowerIndices[axis]) / 2;
+            }//for
+            consider(evaluatePoint(), sign);
+            queue.add(box);
+        }//offer
+
+        private void consider(double value, double sign) {
+            if (Double.isNaN(value)) {
+                return;
+            }//if
+
+            double score = sign * value;
+            if (mBestIndex < 0 || score > mBest) {
+                mBest = score;
+                mBestIndex = mLattice.getIndex(mAxisIndices);
+            }//if
+        }//consider
+
+        long filter(Box box, double threshold, boolean isAbove, LongConsumer action) {
+            enclose(box);
+            double lower = mEvaluator.getLower();
+            double upper = mEvaluator.getUpper();
+            if (IntervalEvaluator.isEmpty(lower, upper) || (isAbove ? upper <= threshold : lower >= threshold)) {
+                return 0;
+            }//if
+
+            if (!mEvaluator.mayFail() && (isAbove ? lower > threshold : upper < threshold)) {
+                return emit(box.mLowerIndices, box.mUpperIndices, action);
+            }//if
+
+            if (countRelevantPoints(box) <= LEAF_SIZE) {
+                return evaluateLeaf(box, 0, threshold, isAbove, action);
+            }//if
+
+            int axis = splitAxis(box);
+
+            return filter(lowerHalf(box, axis), threshold, isAbove, action)
+                    + filter(upperHalf(box, axis), threshold, isAbove, action);
+        }//filter
+
+        /*
+         * 逐点计算盒子中表达式用到的轴上的各点（其余轴取盒子的下端）
+         * action为null时更新最值，否则对满足条件的点调用action（其余轴上的所有点一起输出），返回满足条件的点数
+         */
+        private long evaluateLeaf(Box box, double sign, double threshold, boolean isAbove, LongConsumer action) {
+            long count = 0;
+            long[] indices = mAxisIndices;
+            System.arraycopy(box.mLowerIndices, 0, indices, 0, indices.length);
+            while (true) {
+                double value = evaluatePoint();
+                if (null == action) {
+                    consider(value, sign);
+                } else if (isAbove ? value > threshold : value < threshold) {
+                    long[] lowerIndices = indices.clone();
+                    long[] upperIndices = indices.clone();
+                    for (int axis = 0; axis < indices.length; axis++) {
+                        if (mSlots[axis] < 0) {
+                            upperIndices[axis] = box.mUpperIndices[axis];
+                        }//if
+                    }//for
+                    count += emit(lowerIndices, upperIndices, action);
+                }//if-else
+
+                //按"里程表"的方式前进到表达式用到的轴上的下一个点
+                int axis = 0;
+                while (axis < indices.length
+                        && (mSlots[axis] < 0 || indices[axis] == box.mUpperIndices[axis])) {
+                    if (mSlots[axis] >= 0) {
+                        indices[axis] = box.mLowerIndices[axis];
+                    }//if
+                    axis++;
+                }//while
+                if (axis == indices.length) {
+                    return count;
+                }//if
+                indices[axis]++;
+            }//while
+        }//evaluateLeaf
+
+        //对盒子中的所有点调用action，返回点数
+        private long emit(long[] lowerIndices, long[] upperIndices, LongConsumer action) {
+            long[] indices = lowerIndices.clone();
+            long count = 0;
+            while (true) {
+                action.accept(mLattice.getIndex(indices));
+                count++;
+
+                int axis = 0;
+                while (axis < indices.length && indices[axis] == upperIndices[axis]) {
+                    indices[axis] = lowerIndices[axis];
+                    axis++;
+                }//while
+                if (axis == indices.length) {
+                    return count;
+                }//if
+                indices[axis]++;
+            }//while
+        }//emit
+
+        //以区间算术计算盒子上的包络
+        private void enclose(Box box) {
+            for (int axis = 0; axis < mSlots.length; axis++) {
+                int slot = mSlots[axis];
+                if (slot < 0) {
+                    continue;
+                }//if
+
+                long lowerIndex = box.mLowerIndices[axis];
+                long upperIndex = box.mUpperIndices[axis];
+                double upper = mLattice.getCoordinate(axis, upperIndex);
+                if (upperIndex > lowerIndex && upperIndex == mLattice.getAxisSize(axis) - 1) {
+                    //最后一个坐标是上限，倒数第二个坐标由下标算出，在舍入误差内可能略大于上限
+                    upper = Math.max(upper, mLattice.getCoordinate(axis, upperIndex - 1));
+                }//if
+                mLowers[slot] = mLattice.getCoordinate(axis, lowerIndex);
+                mUppers[slot] = upper;
+            }//for
+
+            mEvaluator.evaluate(mLowers, mUppers);
+        }//enclose
+
+        //以NaN方式计算mAxisIndices所在的点
+        private double evaluatePoint() {
+            double[] values = mFrame.getValues();
+            for (int axis = 0; axis < mSlots.length; axis++) {
+                if (mSlots[axis] >= 0) {
+                    values[mSlots[axis]] = mLattice.getCoordinate(axis, mAxisIndices[axis]);
+                }//if
+            }//for
+            mEvaluationCount++;
+
+            return mCompiledExp.evaluateOrNaN(mFrame);
+        }//evaluatePoint
+
+        private long countRelevantPoints(Box box) {
+            long count = 1;
+            for (int axis = 0; axis < mSlots.length; axis++) {
+                if (mSlots[axis] >= 0) {
+                    count *= box.mUpperIndices[axis] - box.mLowerIndices[axis] + 1;
+                    if (count > LEAF_SIZE) {
+                        return count;
+                    }//if
+                }//if
+            }//for
+
+            return count;
+        }//countRelevantPoints
+
+        //表达式用到的轴中点数最多的轴
+        private int splitAxis(Box box) {
+            int splitAxis = -1;
+            long maxLength = 0;
+            for (int axis = 0; axis < mSlots.length; axis++) {
+                long length = box.mUpperIndices[axis] - box.mLowerIndices[axis] + 1;
+                if (mSlots[axis] >= 0 && length > maxLength) {
+                    splitAxis = axis;
+                    maxLength = length;
+                }//if
+            }//for
+
+            return splitAxis;
+        }//splitAxis
+
+        private Box lowerHalf(Box box, int axis) {
+            long[] upperIndices = box.mUpperIndices.clone();
+            upperIndices[axis] = box.mLowerIndices[axis] + (box.mUpperIndices[axis] - box.mLowerIndices[axis]) / 2;
+
+            return new Box(box.mLowerIndices, upperIndices);
+        }//lowerHalf
+
+        private Box upperHalf(Box box, int axis) {
+            long[] lowerIndices = box.mLowerIndices.clone();
+            lowerIndices[axis] = box.mLowerIndices[axis] + (box.mUpperIndices[axis] - box.mLowerIndices[axis]) / 2 + 1;
+
+            return new Box(lowerIndices, box.mUpperIndices);
+        }//upperHalf
+    }//class_Search
+}//class_LatticeSearch
@@ -0,0 +1,118 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import com.daoshengwanwu.math_util.calculator.util.DigitUtil;
+
+
+/**
+ * 表达式求值时的数值策略，决定在哪里把计算结果规范化为指定的有效数字位数（见DigitUtil.reserveSignificantDigits）
+ * PER_OPERATION：每个运算的结果以及每个变量的值都规范化，与最初的逐项计算完全相同，是默认的策略；
+ * FINAL_ONLY：中间结果保持IEEE双精度，只规范化最终结果，结果可以直接用==判等，
+ * 但与PER_OPERATION相比，中间结果的舍入不同，可能相差最后一位有效数字；
+ * RAW：不做任何规范化，结果就是IEEE双精度的运算结果
+ * 策略在编译时生效，只决定编译出的指令序列中规范化指令的位置，求值过程本身没有额外的判断
+ * 表达式中的字面量在解析时就按Operand.SIGNIFICANCE_DIGIT位有效数字规范化，与策略无关
+ * NumericPolicy是不可变的
+ */
+public final class NumericPolicy {
+    //规范化时long能够精确表示10的幂的上限
+    public static final int MAX_SIGNIFICANT_DIGITS = 18;
+
+    public static final NumericPolicy PER_OPERATION =
+            new NumericPolicy(Mode.PER_OPERATION, Operand.SIGNIFICANCE_DIGIT);
+    public static final NumericPolicy FINAL_ONLY =
+            new NumericPolicy(Mode.FINAL_ONLY, Operand.SIGNIFICANCE_DIGIT);
+    public static final NumericPolicy RAW = new NumericPolicy(Mode.RAW, 0);
+
+    private final Mode mMode;
+    private final int mSignificantDigits;
+
+
+    private NumericPolicy(Mode mode, int significantDigits) {
+        mMode = mode;
+        mSignificantDigits = significantDigits;
+    }//con_NumericPolicy
+
+    /**
+     * 获取默认的策略，即按Operand.SIGNIFICANCE_DIGIT位有效数字逐个运算规范化
+     * @return 默认策略
+     */
+    public static NumericPolicy getDefault() {
+        return PER_OPERATION;
+    }//getDefault
+
+    /**
+     * 每个运算的结果和每个变量的值都规范化为significantDigits位有效数字
+     * @param significantDigits 有效数字位数，位于[1, MAX_SIGNIFICANT_DIGITS]
+     * @return 对应的策略
+     */
+    public static NumericPolicy perOperation(int significantDigits) {
+        return of(Mode.PER_OPERATION, significantDigits);
+    }//perOperation
+
+    /**
+     * 只把最终结果规范化为significantDigits位有效数字
+     * @param significantDigits 有效数字位数，位于[1, MAX_SIGNIFICANT_DIGITS]
+     * @return 对应的策略
+     */
+    public static NumericPolicy finalOnly(int significantDigits) {
+        return of(Mode.FINAL_ONLY, significantDigits);
+    }//finalOnly
+
+    public Mode getMode() {
+        return mMode;
+    }//getMode
+
+    /**
+     * 获取规范化的有效数字位数，RAW策略返回0
+     * @return 有效数字位数
+     */
+    public int getSignificantDigits() {
+        return mSignificantDigits;
+    }//getSignificantDigits
+
+    /**
+     * 按本策略规范化一个值，编译后的规范化指令与本方法等价
+     * @param value 要规范化的值
+     * @return 规范化后的值
+     */
+    public double normalize(double value) {
+        return mMode == Mode.RAW ? value : DigitUtil.reserveSignificantDigits(value, mSignificantDigits);
+    }//normalize
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof NumericPolicy)) {
+            return false;
+        }//if
+
+        NumericPolicy policy = (NumericPolicy)obj;
+        return mMode == policy.mMode && mSignificantDigits == policy.mSignificantDigits;
+    }//equals
+
+    @Override
+    public int hashCode() {
+        return mMode.hashCode() * 31 + mSignificantDigits;
+    }//hashCode
+
+    @Override
+    public String toString() {
+        return mMode == Mode.RAW ? mMode.name() : mMode.name() + "(" + mSignificantDigits + ")";
+    }//toString
+
+    private static NumericPolicy of(Mode mode, int significantDigits) {
+        if (significantDigits < 1 || significantDigits > MAX_SIGNIFICANT_DIGITS) {
+            throw new IllegalArgumentException("有效数字位数必须位于[1, " + MAX_SIGNIFICANT_DIGITS + "]：" +
+                    significantDigits);
+        }//if
+
+        return new NumericPolicy(mode, significantDigits);
+    }//of
+
+
+    public enum Mode {
+        PER_OPERATION, //逐个运算规范化
+        FINAL_ONLY,    //只规范化最终结果
+        RAW            //不规范化
+    }//enum_Mode
+}//class_NumericPolicy
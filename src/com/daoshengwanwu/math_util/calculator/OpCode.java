@@ -0,0 +1,139 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import com.daoshengwanwu.math_util.calculator.exception.ExpressionTooLargeException;
+
+
+/*
+ * 编译后表达式所使用的指令集
+ * 每条指令占一个int：低8位为操作码，高24位为指令参数（常量索引、变量槽位等）
+ * 操作码连续编号，以便求值循环中的switch被编译为tableswitch
+ */
+final class OpCode {
+    //==================数据指令=========================
+    static final int CONST = 0;       //参数：常量池索引
+    static final int LOAD_VAR = 1;    //参数：变量槽位
+    static final int LOAD_TEMP = 2;   //参数：临时槽位，将公共子表达式保存的值入栈
+    static final int STORE_TEMP = 3;  //参数：临时槽位，将栈顶的值保存到临时槽位（不出栈）
+    static final int ROUND = 4;       //参数：保留的有效数字位数
+
+    //====================双目运算=========================
+    static final int ADD = 5;
+    static final int SUB = 6;
+    static final int MUL = 7;
+    static final int DIV = 8;
+    static final int MOD = 9;
+    static final int POW = 10;
+    static final int LOG = 11;
+
+    //====================单目运算=========================
+    static final int NEGATE = 12;
+    static final int SIN = 13;
+    static final int COS = 14;
+    static final int TAN = 15;
+    static final int ASIN = 16;
+    static final int ACOS = 17;
+    static final int ATAN = 18;
+    static final int LN = 19;
+    static final int LG = 20;
+    static final int SQRT = 21;
+    static final int FACT = 22;
+    static final int ABS = 23;
+
+    static final int OPCODE_COUNT = 24;
+
+    private static final int OPCODE_BITS = 8;
+    private static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+    static final int MAX_ARG = (1 << (Integer.SIZE - OPCODE_BITS)) - 1;
+
+
+    private OpCode() {
+    }//con_OpCode
+
+    //参数只有24位，常量、变量或临时槽位过多时左移会丢掉高位，得到错误的索引，因此直接拒绝
+    static int encode(int opCode, int arg) {
+        if (arg < 0 || arg > MAX_ARG) {
+            throw new ExpressionTooLargeException("", getName(opCode) + "指令参数的最大值" + MAX_ARG);
+        }//if
+
+        return opCode | (arg << OPCODE_BITS);
+    }//encode
+
+    static int opCode(int instruction) {
+        return instruction & OPCODE_MASK;
+    }//opCode
+
+    static int arg(int instruction) {
+        return instruction >>> OPCODE_BITS;
+    }//arg
+
+    //获取指令需要从栈中弹出的操作数个数，STORE_TEMP只读取栈顶而不出栈，视为0
+    static int getDimension(int opCode) {
+        if (opCode < ROUND) {
+            return 0;
+        }//if
+
+        return opCode >= ADD && opCode <= LOG ? 2 : 1;
+    }//getDimension
+
+    //判断指令是否为真正的运算（而不是入栈、临时槽位等数据指令）
+    static boolean isOperation(int opCode) {
+        return opCode >= ROUND;
+    }//isOperation
+
+    //根据OperatorAssistant中的运算符标识得到对应的操作码，无需计算的运算符返回-1
+    static int fromOperatorFlag(int operatorFlag) {
+        switch (operatorFlag) {
+            case OperatorAssistant.ADD: return ADD;
+            case OperatorAssistant.SUB: return SUB;
+            case OperatorAssistant.MUL: return MUL;
+            case OperatorAssistant.DIV: return DIV;
+            case OperatorAssistant.MOD: return MOD;
+            case OperatorAssistant.POW: return POW;
+            case OperatorAssistant.LOG_END: return LOG;
+            case OperatorAssistant.NEGATE: return NEGATE;
+            case OperatorAssistant.SIN: return SIN;
+            case OperatorAssistant.COS: return COS;
+            case OperatorAssistant.TAN: return TAN;
+            case OperatorAssistant.ASIN: return ASIN;
+            case OperatorAssistant.ACOS: return ACOS;
+            case OperatorAssistant.ATAN: return ATAN;
+            case OperatorAssistant.LN: return LN;
+            case OperatorAssistant.LG: return LG;
+            case OperatorAssistant.SQRT: return SQRT;
+            case OperatorAssistant.FACT: return FACT;
+            case OperatorAssistant.LEFT_ABS: return ABS;
+            default: return -1;
+        }//switch
+    }//fromOperatorFlag
+
+    static String getName(int opCode) {
+        switch (opCode) {
+            case CONST: return "const";
+            case LOAD_VAR: return "load";
+            case LOAD_TEMP: return "load_temp";
+            case STORE_TEMP: return "store_temp";
+            case ROUND: return "round";
+            case ADD: return "+";
+            case SUB: return "-";
+            case MUL: return "*";
+            case DIV: return "/";
+            case MOD: return "%";
+            case POW: return "^";
+            case LOG: return "log~";
+            case NEGATE: return "neg";
+            case SIN: return "sin";
+            case COS: return "cos";
+            case TAN: return "tan";
+            case ASIN: return "asin";
+            case ACOS: return "acos";
+            case ATAN: return "atan";
+            case LN: return "ln";
+            case LG: return "lg";
+            case SQRT: return "sqrt";
+            case FACT: return "!";
+            case ABS: return "abs";
+            default: return "?";
+        }//switch
+    }//getName
+}//class_OpCode
@@ -13,12 +13,17 @@ class Operand extends ExpItem {
     static final int SIGNIFICANCE_DIGIT = DigitUtil.DOUBLE_SIGNIFICANT_DIGIT;
 
     private static final Map<String, Operand> sConstantsMap = new HashMap<>();
+    private static final SymbolTable<Operand> sConstantsTable = new SymbolTable<>();
 
 
     static {
         //初始化常量表
         sConstantsMap.put("pi", new Constant_PI());
         sConstantsMap.put("e", new Constant_E());
+
+        for (Map.Entry<String, Operand> entry : sConstantsMap.entrySet()) {
+            sConstantsTable.put(entry.getKey(), entry.getValue());
+        }//for
     }//static
 
 
@@ -45,6 +50,14 @@ class Operand extends ExpItem {
         throw new ConstantNotExistException(constantStr);
     }//getConstant
 
+    /**
+     * 根据seq中[start, end)这段字符查找常量，不截取字符串
+     * @return 对应的常量，不存在时返回null
+     */
+    static Operand getConstant(CharSequence seq, int start, int end) {
+        return sConstantsTable.get(seq, start, end);
+    }//getConstant
+
     private Operand(double value) {
         super(ItemType.OPERAND);
 
@@ -4,6 +4,7 @@ package com.daoshengwanwu.math_util.calculator;
 import com.daoshengwanwu.math_util.calculator.exception.OperatorNotExistException;
 
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 
@@ -63,6 +64,8 @@ class OperatorAssistant {
 
     private static Map<String, Integer> sStrFlagMap = new HashMap<>();
     private static Map<Integer, Operator> sFlagOperatorMap = new HashMap<>();
+    private static Map<Operator, Integer> sOperatorFlagMap = new IdentityHashMap<>();
+    private static SymbolTable<Operator> sOperatorTable = new SymbolTable<>();
 
 
     static {
@@ -88,6 +91,25 @@ class OperatorAssistant {
         sStrFlagMap.put("ln", LN);
         sStrFlagMap.put("sqrt", SQRT);
         sStrFlagMap.put("!", FACT);
+
+        //预先创建所有运算符的实例，之后两个映射表只读，多个线程同时解析表达式是安全的
+        int[] allFlags = {
+                ADD, SUB, MUL, DIV, MOD, POW,
+                NEGATE, SIN, COS, TAN, ASIN, ACOS, ATAN, LN, LG, SQRT,
+                FACT,
+                LEFT_ABS, LEFT_BRACKETS, START_FLAG, LOG_START,
+                RIGHT_ABS, RIGHT_BRACKETS, END_FLAG, LOG_END,
+                HYPHEN_UNCERTAIN, VERTICAL_LINE_UNCERTAIN
+        };
+        for (int operatorFlag : allFlags) {
+            Operator operator = newOperator(operatorFlag);
+            sFlagOperatorMap.put(operatorFlag, operator);
+            sOperatorFlagMap.put(operator, operatorFlag);
+        }//for
+
+        for (Map.Entry<String, Integer> entry : sStrFlagMap.entrySet()) {
+            sOperatorTable.put(entry.getKey(), getOperator(entry.getValue()));
+        }//for
     }//static
 
 
@@ -109,15 +131,28 @@ class OperatorAssistant {
         return getOperator(operatorFlag);
     }//getOperator
 
+    /**
+     * 根据seq中[start, end)这段字符查找运算符，不截取字符串
+     * @return 对应的运算符，不存在时返回null
+     */
+    static Operator getOperator(CharSequence seq, int start, int end) {
+        return sOperatorTable.get(seq, start, end);
+    }//getOperator
+
     static Operator getOperator(int operatorFlag) {
-        Operator operator = sFlagOperatorMap.get(operatorFlag);
-        if (null == operator) {
-            operator = newOperator(operatorFlag);
-            sFlagOperatorMap.put(operatorFlag, operator);
-        }
-        return operator;
+        return sFlagOperatorMap.get(operatorFlag);
     }//getOperator
 
+    //根据运算符实例反查其标识描述
+    static int getOperatorFlag(Operator operator) {
+        Integer operatorFlag = sOperatorFlagMap.get(operator);
+        if (null == operatorFlag) {
+            throw new OperatorNotExistException(operator.getOperatorStr());
+        }//if
+
+        return operatorFlag;
+    }//getOperatorFlag
+
     static boolean isIdentifierAlreadyExist(String identifierStr) {
         return sStrFlagMap.containsKey(identifierStr);
     }//isIdentifierAlreadyExist
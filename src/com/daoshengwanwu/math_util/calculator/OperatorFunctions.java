@@ -0,0 +1,225 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import com.daoshengwanwu.math_util.calculator.exception.OperandOutOfBoundsException;
+import com.daoshengwanwu.math_util.calculator.util.DigitUtil;
+
+
+/*
+ * 各运算符的计算语义
+ * CertainOperator的各个子类与编译后的表达式共用这里的实现，保证两条计算路径的结果（包括抛出的异常）完全一致
+ * 这里的方法均不做有效数字的规范化，由调用者决定何时规范化
+ */
+final class OperatorFunctions {
+    private OperatorFunctions() {
+    }//con_OperatorFunctions
+
+    /**
+     * 执行一条运算指令
+     * @param opCode 操作码，必须是OpCode.isOperation为true的操作码
+     * @param arg 指令参数
+     * @param left 双目运算的左操作数，或单目运算的唯一操作数
+     * @param right 双目运算的右操作数，单目运算时忽略
+     * @return 运算结果（ROUND之外的运算均未规范化有效数字）
+     */
+    static double operate(int opCode, int arg, double left, double right) {
+        switch (opCode) {
+            case OpCode.ROUND: return DigitUtil.reserveSignificantDigits(left, arg);
+            case OpCode.ADD: return left + right;
+            case OpCode.SUB: return left - right;
+            case OpCode.MUL: return left * right;
+            case OpCode.DIV: return left / right;
+            case OpCode.MOD: return mod(left, right);
+            case OpCode.POW: return pow(left, right);
+            case OpCode.LOG: return log(left, right);
+            case OpCode.NEGATE: return negate(left);
+            case OpCode.SIN: return Math.sin(left);
+            case OpCode.COS: return Math.cos(left);
+            case OpCode.TAN: return Math.tan(left);
+            case OpCode.ASIN: return asin(left);
+            case OpCode.ACOS: return acos(left);
+            case OpCode.ATAN: return atan(left);
+            case OpCode.LN: return ln(left);
+            case OpCode.LG: return lg(left);
+            case OpCode.SQRT: return sqrt(left);
+            case OpCode.FACT: return fact(left);
+            case OpCode.ABS: return Math.abs(left);
+            default: throw new IllegalArgumentException(OpCode.getName(opCode));
+        }//switch
+    }//operate
+
+    /**
+     * 与operate(int, int, double, double)相同，但可以选择操作数超出定义域时抛出的异常是否记录调用栈
+     * writableStackTrace为false只用于异常会被捕获后丢弃的路径（求根、曲线取样、网格的逐行计算），
+     * 这些路径上每个出错的点都会抛出一次异常，填充调用栈的开销远大于一次运算
+     */
+    static double operate(int opCode, int arg, double left, double right, boolean writableStackTrace) {
+        if (!writableStackTrace) {
+            int errorCode = domainError(opCode, left, right);
+            if (errorCode != DomainError.NONE) {
+                throw outOfBounds(errorCode, left, right, false);
+            }//if
+        }//if
+
+        return operate(opCode, arg, left, right);
+    }//operate
+
+    static double mod(double left, double right) {
+        return left % right;
+    }//mod
+
+    static double pow(double left, double right) {
+        return Math.pow(left, right);
+    }//pow
+
+    static double negate(double operand) {
+        return 0 - operand;
+    }//negate
+
+    static double asin(double operand) {
+        if (operand < -1 || operand > 1) {
+            throw outOfBounds(DomainError.ASIN, operand, 0, true);
+        }//if
+
+        return Math.asin(operand);
+    }//asin
+
+    static double acos(double operand) {
+        if (operand < -1 || operand > 1) {
+            throw outOfBounds(DomainError.ACOS, operand, 0, true);
+        }//if
+
+        return Math.acos(operand);
+    }//acos
+
+    static double atan(double operand) {
+        if (operand < -1 || operand > 1) {
+            throw outOfBounds(DomainError.ATAN, operand, 0, true);
+        }//if
+
+        return Math.atan(operand);
+    }//atan
+
+    static double ln(double operand) {
+        if (operand <= 0) {
+            throw outOfBounds(DomainError.LN, operand, 0, true);
+        }//if
+
+        return Math.log1p(operand - 1); //Math.log1p(x)返回值为：ln(1 + x);
+    }//ln
+
+    static double lg(double operand) {
+        if (operand <= 0) {
+            throw outOfBounds(DomainError.LG, operand, 0, true);
+        }//if
+
+        return Math.log10(operand);
+    }//lg
+
+    static double sqrt(double operand) {
+        if (operand < 0) {
+            throw outOfBounds(DomainError.SQRT, operand, 0, true);
+        }//if
+
+        return Math.sqrt(operand);
+    }//sqrt
+
+    static double fact(double operand) {
+        if (operand < 0 || !isInteger(operand)) {
+            throw outOfBounds(DomainError.FACT, operand, 0, true);
+        }//if
+
+        long result = 1;
+        int nOperand = (int)operand;
+        for (int i = 2; i <= nOperand; i++) {
+            result *= i;
+        }//for
+
+        return result;
+    }//fact
+
+    static double log(double base, double operand) {
+        if (base <= 0 || base == 1) {
+            throw outOfBounds(DomainError.LOG_BASE, base, operand, true);
+        }//if
+
+        if (operand <= 0) {
+            throw outOfBounds(DomainError.LOG_OPERAND, base, operand, true);
+        }//if
+
+        return Math.log(operand) / Math.log(base);
+    }//log
+
+    /**
+     * 检查一条运算指令的操作数是否在定义域内，条件与上面各方法抛出OperandOutOfBoundsException的条件相同
+     * @param opCode 操作码
+     * @param left 双目运算的左操作数，或单目运算的唯一操作数
+     * @param right 双目运算的右操作数，单目运算时忽略
+     * @return 操作数超出定义域时为对应的DomainError错误码，否则（包括没有定义域限制的运算）为DomainError.NONE
+     */
+    static int domainError(int opCode, double left, double right) {
+        switch (opCode) {
+            case OpCode.ASIN: return left < -1 || left > 1 ? DomainError.ASIN : DomainError.NONE;
+            case OpCode.ACOS: return left < -1 || left > 1 ? DomainError.ACOS : DomainError.NONE;
+            case OpCode.ATAN: return left < -1 || left > 1 ? DomainError.ATAN : DomainError.NONE;
+            case OpCode.LN: return left <= 0 ? DomainError.LN : DomainError.NONE;
+            case OpCode.LG: return left <= 0 ? DomainError.LG : DomainError.NONE;
+            case OpCode.SQRT: return left < 0 ? DomainError.SQRT : DomainError.NONE;
+            case OpCode.FACT: return left < 0 || !isInteger(left) ? DomainError.FACT : DomainError.NONE;
+            case OpCode.LOG: {
+                if (left <= 0 || left == 1) {
+                    return DomainError.LOG_BASE;
+                }//if
+
+                return right <= 0 ? DomainError.LOG_OPERAND : DomainError.NONE;
+            }
+            default: return DomainError.NONE;
+        }//switch
+    }//domainError
+
+    /**
+     * 运算是否有定义域限制，即domainError是否可能返回错误码
+     */
+    static boolean hasDomain(int opCode) {
+        switch (opCode) {
+            case OpCode.ASIN: case OpCode.ACOS: case OpCode.ATAN: case OpCode.LN:
+            case OpCode.LG: case OpCode.SQRT: case OpCode.FACT: case OpCode.LOG:
+                return true;
+            default:
+                return false;
+        }//switch
+    }//hasDomain
+
+    private static boolean isInteger(double operand) {
+        return DigitUtil.reserveSignificantDigits(operand - (int)operand, Operand.SIGNIFICANCE_DIGIT) == 0;
+    }//isInteger
+
+    /**
+     * 创建错误码对应的OperandOutOfBoundsException
+     * @param errorCode 错误码（见DomainError），不能是DomainError.NONE
+     * @param left 双目运算的左操作数，或单目运算的唯一操作数
+     * @param right 双目运算的右操作数，单目运算时忽略
+     * @param writableStackTrace 是否记录调用栈
+     */
+    static OperandOutOfBoundsException outOfBounds(int errorCode, double left, double right,
+                                                   boolean writableStackTrace) {
+        String operatorStr;
+        String bounds;
+        switch (errorCode) {
+            case DomainError.ASIN: operatorStr = "asin"; bounds = "[-1, 1]"; break;
+            case DomainError.ACOS: operatorStr = "acos"; bounds = "[-1, 1]"; break;
+            case DomainError.ATAN: operatorStr = "atan"; bounds = "[-1, 1]"; break;
+            case DomainError.LN: operatorStr = "ln"; bounds = "(0, +∞)"; break;
+            case DomainError.LG: operatorStr = "lg"; bounds = "(0, +∞)"; break;
+            case DomainError.SQRT: operatorStr = "sqrt"; bounds = "[0, +∞)"; break;
+            case DomainError.FACT: operatorStr = "!"; bounds = "非负整数"; break;
+            case DomainError.LOG_BASE: operatorStr = "~"; bounds = "底数应该大于0并且不等于1"; break;
+            case DomainError.LOG_OPERAND: operatorStr = "~"; bounds = "logx~y: 中的y的取值应该大于0"; break;
+            default: throw new IllegalArgumentException("错误码：" + errorCode);
+        }//switch
+
+        double operand = errorCode == DomainError.LOG_OPERAND ? right : left;
+
+        return new OperandOutOfBoundsException(operatorStr, bounds, operand, writableStackTrace);
+    }//outOfBounds
+}//class_OperatorFunctions
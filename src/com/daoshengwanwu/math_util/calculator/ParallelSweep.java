@@ -0,0 +1,137 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/*
+ * 在ForkJoinPool上并行计算一组取值点（见PointSource）中一段下标区间内各点的结果
+ * 区间按下标二分，每个区间的结果写入结果中对应的位置，因此结果的顺序与逐个计算完全相同，
+ * 与线程数和任务的划分方式无关
+ * 区间的划分是自适应的：先按线程数划分到每个线程若干个区间，
+ * 之后只有在当前线程的任务队列中没有多余的任务（即其他线程可能空闲）时才继续二分，直到最小的区间长度
+ * 每个叶子区间交给RangeAction顺序处理，写入数组时由SweepSpliterator按块求值，
+ * 变量值由PointSource直接按下标算出，不经过各Variable的当前值
+ */
+final class ParallelSweep {
+    //取值点的区间至少包含的点数，不足一块时按块求值没有意义
+    private static final int MIN_LEAF_SIZE = BatchEvaluator.DEFAULT_BLOCK_SIZE;
+    //每个线程平均分到的区间个数，保证有足够的任务可以被窃取
+    private static final int LEAVES_PER_THREAD = 8;
+    //当前线程队列中多余的任务超过该值时不再继续二分
+    private static final int SURPLUS_TASK_THRESHOLD = 2;
+
+    private final RangeAction mAction;
+    private final long mMinLeafSize;
+    private final long mMaxLeafSize;
+
+
+    private ParallelSweep(RangeAction action, long size, long minLeafSize, int parallelism) {
+        mAction = action;
+        mMinLeafSize = minLeafSize;
+        mMaxLeafSize = Math.max(minLeafSize, size / ((long)parallelism * LEAVES_PER_THREAD));
+    }//con_ParallelSweep
+
+    /**
+     * 计算第from个到第to个（不含）点的结果，第i个点的结果写入out[offset + i - from]
+     * 计算出错时抛出与逐个计算相同类型的异常，但出错的未必是最靠前的出错点，此时out中的结果不完整
+     * @param method 调用方式，记录在SweepEvent中
+     * @param pool 执行计算的线程池
+     */
+    static void sweep(String method, CompiledExpression compiledExp, PointSource points, long from, long to,
+                      double[] out, int offset, ForkJoinPool pool) {
+        sweep(method, compiledExp, points, from, to, out, null, offset, pool, false);
+    }//sweep
+
+    /**
+     * 以NaN方式计算，见sweep(String, CompiledExpression, PointSource, long, long, double[], int, ForkJoinPool)
+     * 操作数超出定义域的点结果为NaN，第i个点的错误码（见DomainError）写入errorCodes[offset + i - from]
+     * @param errorCodes 错误码数组，不需要时可以为null
+     * @return 所有点的错误码按位或得到的错误位图
+     */
+    static int sweepOrNaN(String method, CompiledExpression compiledExp, PointSource points, long from, long to,
+                          double[] out, int[] errorCodes, int offset, ForkJoinPool pool) {
+        return sweep(method, compiledExp, points, from, to, out, errorCodes, offset, pool, true);
+    }//sweepOrNaN
+
+    private static int sweep(String method, CompiledExpression compiledExp, PointSource points, long from, long to,
+                             double[] out, int[] errorCodes, int offset, ForkJoinPool pool, boolean isNaNMode) {
+        AtomicInteger errorMask = new AtomicInteger();
+        SweepEvent event = new SweepEvent();
+        event.begin();
+        RuntimeException failure = null;
+        try {
+            forEachRange(from, to, pool, (start, end) -> {
+                SweepSpliterator results = new SweepSpliterator(compiledExp, points, start, end, isNaNMode);
+                results.fill(out, errorCodes, (int)(offset + start - from), (int)(end - start));
+                if (results.getErrorMask() != DomainError.NONE) {
+                    errorMask.accumulateAndGet(results.getErrorMask(), (a, b) -> a | b);
+                }//if
+            });
+        } catch (RuntimeException e) {
+            failure = e;
+        }//try-catch
+        event.finish(compiledExp, method, to - from, pool.getParallelism(), failure);
+
+        if (null != failure) {
+            throw failure;
+        }//if
+
+        return errorMask.get();
+    }//sweep
+
+    /**
+     * 把取值点的下标区间[from, to)拆分后并行处理，每个区间至少包含一块点，
+     * 见forEachRange(long, long, long, ForkJoinPool, RangeAction)
+     */
+    static void forEachRange(long from, long to, ForkJoinPool pool, RangeAction action) {
+        forEachRange(from, to, MIN_LEAF_SIZE, pool, action);
+    }//forEachRange
+
+    /**
+     * 把[from, to)自适应地拆分为若干互不相交的区间，在pool上并行地对每个区间执行action
+     * 所有区间都处理完毕后才返回，任何一个区间抛出的异常都会从本方法抛出
+     * @param minLeafSize 只有长度不小于它的两倍的区间才会被继续二分，必须是正数
+     */
+    static void forEachRange(long from, long to, long minLeafSize, ForkJoinPool pool, RangeAction action) {
+        ParallelSweep sweep = new ParallelSweep(action, to - from, minLeafSize, pool.getParallelism());
+        pool.invoke(sweep.new SweepTask(from, to));
+    }//forEachRange
+
+
+    /*
+     * 对一个下标区间的顺序处理，不同区间上的调用可能同时发生
+     */
+    interface RangeAction {
+        void run(long from, long to);
+    }//interface_RangeAction
+
+
+    private final class SweepTask extends RecursiveAction {
+        private static final long serialVersionUID = 4410390146367525418L;
+
+        private final long mFrom;
+        private final long mTo;
+
+
+        SweepTask(long from, long to) {
+            mFrom = from;
+            mTo = to;
+        }//con_SweepTask
+
+        @Override
+        protected void compute() {
+            long size = mTo - mFrom;
+            if (size >= mMinLeafSize * 2 && (size > mMaxLeafSize ||
+                    getSurplusQueuedTaskCount() <= SURPLUS_TASK_THRESHOLD)) {
+
+                long middle = mFrom + size / 2;
+                invokeAll(new SweepTask(mFrom, middle), new SweepTask(middle, mTo));
+            } else {
+                mAction.run(mFrom, mTo);
+            }//if-else
+        }//compute
+    }//class_SweepTask
+}//class_ParallelSweep
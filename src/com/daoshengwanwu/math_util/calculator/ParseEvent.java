@@ -0,0 +1,68 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+
+/*
+ * VarAriExp解析表达式字符串（构造）的JFR事件
+ * 没有开启JFR记录时begin、end、shouldCommit都是空方法，事件对象会被JIT消除；
+ * 解析耗时不到阈值的事件不会被提交，各字段也不会被计算
+ */
+@Name("com.daoshengwanwu.calculator.Parse")
+@Label("表达式解析")
+@Category(CalculatorEvents.CATEGORY)
+@Description("VarAriExp解析表达式字符串的耗时")
+@Threshold("1 ms")
+@StackTrace(false)
+final class ParseEvent extends Event {
+    @Name("expression")
+    @Label("表达式")
+    String mExpression;
+
+    @Name("expressionLength")
+    @Label("表达式长度")
+    int mExpressionLength;
+
+    @Name("itemCount")
+    @Label("项数")
+    @Description("解析得到的运算符、操作数和变量的个数，不含开始和结束标记")
+    int mItemCount;
+
+    @Name("operatorMix")
+    @Label("运算符构成")
+    @Description("各运算符出现的次数，括号等不需要计算的运算符不计入")
+    String mOperatorMix;
+
+    @Name("outcome")
+    @Label("结果")
+    @Description("OK或解析时抛出的异常的类名")
+    String mOutcome;
+
+
+    //结束计时，耗时超过阈值时填写各字段并提交；解析出错时failure为抛出的异常
+    void finish(String expStr, List<ExpItem> expItems, RuntimeException failure) {
+        end();
+        if (shouldCommit()) {
+            record(expStr, expItems, failure);
+        }//if
+    }//finish
+
+    //只在事件需要提交时调用，见CalculatorEvents
+    private void record(String expStr, List<ExpItem> expItems, RuntimeException failure) {
+        mExpression = CalculatorEvents.abbreviate(expStr);
+        mExpressionLength = expStr.length();
+        mItemCount = Math.max(0, expItems.size() - 2);
+        mOperatorMix = CalculatorEvents.operatorMix(expItems);
+        mOutcome = CalculatorEvents.outcomeOf(failure);
+        commit();
+    }//record
+}//class_ParseEvent
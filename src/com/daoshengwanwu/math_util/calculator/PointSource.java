@@ -0,0 +1,46 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+/*
+ * 按下标排列的一组变量取值点，已经与某个编译后表达式的变量槽位对应好
+ * SweepSpliterator和ParallelSweep通过它逐块取得各点的变量值，
+ * 实现有ResultGenerator的路径（SweepPath）和笛卡尔积网格（VariableLattice.bind）
+ * 实现应当是不可变的，可被多个线程同时使用
+ */
+interface PointSource {
+    /**
+     * 获取点的个数
+     * @return 点数
+     */
+    long size();
+
+    /**
+     * 获取从第start个点开始顺序读取的游标
+     * @param start 起始点，位于[0, size())
+     * @return 游标
+     */
+    Cursor cursor(long start);
+
+
+    /*
+     * 顺序游标，本身是可变的，不应在线程之间共享
+     */
+    interface Cursor {
+        /**
+         * 把接下来的length个点的变量值按槽位写入各列的第0到length - 1行，并前进length个点
+         * @param columnsBySlot 各槽位的列，长度不小于length，表达式没有用到的槽位可以为null
+         * @param length 点数
+         */
+        void fillColumns(double[][] columnsBySlot, int length);
+
+        /**
+         * 计算接下来的length个点的结果，写入out的第0到length - 1个元素，并前进length个点
+         * 默认把各点的变量值写入各列后按块计算；点可以分成只有一个变量在变化的若干行时，
+         * 实现应逐行调用evaluator.evaluateRow，使不随行内变量变化的子树在每行只计算一次
+         * @param length 点数，不超过evaluator.getBlockSize()
+         */
+        default void evaluate(SweepEvaluator evaluator, double[] out, int length) {
+            evaluator.evaluateColumns(this, out, length);
+        }//evaluate
+    }//interface_Cursor
+}//interface_PointSource
@@ -0,0 +1,517 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.Arrays;
+
+
+/*
+ * 对一组取值点（见PointSource）按块求值
+ * 不了解点的排列方式时，游标把各点的变量值写入各列后交给BatchEvaluator按块计算（evaluateColumns）；
+ * 网格和路径上的点可以分成若干"行"：一行之内只有一个变量（内层变量）在变化，其余变量都不变，
+ * 这时游标逐行调用evaluateRow，按子树所依赖的变量（见DependencyAnalysis）把每条指令分为三类：
+ * 不依赖内层变量的（外层子树）在每行只计算一次，依赖的外层变量与上一行相同时直接使用上一行的值，
+ * 结果广播到整行；只依赖内层变量的（轴上子树，如sin(x)），在内层变量的坐标固定时对整个坐标轴预先算出一列，
+ * 各行只复制其中的一段；其余指令（混合子树）才在整行上逐条按列计算
+ * 外层变量都没有变化时（如网格中表达式没有用到的坐标轴），整行的结果与之前相同，直接复制已经算出的结果
+ * 每条指令的计算方式与BatchEvaluator相同，只是计算的次数减少了，因此结果与逐块计算完全相同；
+ * 但计算的顺序不同，出错时调用者应按逐块计算的方式重新计算出错的块，以得到相同的异常
+ * 以NaN方式求值时（见BatchEvaluator.evaluateOrNaN）不抛出定义域异常，各子树连同其中的错误码一起提升：
+ * 外层子树和轴上子树的错误码在它们原本的计算位置合并到各点上，因此每个点记录的仍然是按计算顺序第一个出错的运算
+ * 一个SweepEvaluator内部保存了各行之间的中间结果，不是线程安全的
+ */
+final class SweepEvaluator {
+    //行短于该值时逐行计算的分派开销超过节省的计算，游标应改用evaluateColumns
+    static final int MIN_ROW_LENGTH = 32;
+    //内层坐标轴的坐标个数不超过该值时才预先计算轴上子树，限制每列占用的内存
+    static final int MAX_AXIS_LENGTH = 1 << 16;
+
+    private static final byte OUTER = 0;
+    private static final byte AXIS = 1;
+    private static final byte MIXED = 2;
+    //还没有选定内层变量时的mInnerSlot
+    private static final int NO_PLAN = Integer.MIN_VALUE;
+
+    private final CompiledExpression mCompiledExp;
+    private final boolean mIsNaNMode;
+    private final int[] mErrorCodes; //NaN方式求值时，上一次计算的各点的错误码，与结果的位置相同
+    private final int[] mCode;
+    private final double[] mConstants;
+    private final BatchEvaluator mBatchEvaluator;
+    private final double[][] mColumns;
+
+    //以下用于逐行计算，表达式不适合逐行计算时为null
+    private final DependencyAnalysis mAnalysis;
+    private final int[] mParents; //mParents[i]为以指令i为操作数的指令，最后一条指令为-1
+    private final int[] mReferencedSlots;
+    private final double[][] mRegisters;
+    private final double[][] mTemps;
+    private final double[] mScalarStack;
+    private final double[] mScalarTemps;
+    private final int[] mRowErrors; //NaN方式求值时当前行各点的错误码
+
+    //当前内层变量下各指令的分类，以及每个起点开始的最大的非混合子树的根（没有时为-1）
+    private int mInnerSlot = NO_PLAN;
+    private final byte[] mKinds;
+    private final int[] mHoistedRoots;
+
+    //上一行各外层变量的值，以及上一行各外层子树的值；出错或更换内层变量后失效
+    private final double[] mValues;
+    private final double[] mOuterValues;
+    private final int[] mOuterErrors;
+    private boolean mIsValid = false;
+
+    //内层坐标轴上的坐标，以及已经在它上面计算过的点数，超过一个轴的长度后才预先计算轴上子树
+    private double[] mAxisCoordinates;
+    private long mAxisPointCount;
+    private double[][] mAxisValues; //mAxisValues[root]为轴上子树在整个坐标轴上的值
+    private int[][] mAxisErrors; //NaN方式求值时轴上子树在各坐标上的错误码，没有出错的子树为null
+
+    //外层变量不变时内层坐标轴上[mCachedFrom, mCachedTo)区间的结果
+    private double[] mRowCache;
+    private int[] mRowErrorCache;
+    private int mCachedFrom;
+    private int mCachedTo;
+
+
+    /**
+     * @param isNaNMode 是否以NaN方式求值，是则各点的错误码通过getErrorCodes读取
+     */
+    SweepEvaluator(CompiledExpression compiledExp, boolean isNaNMode) {
+        mCompiledExp = compiledExp;
+        mIsNaNMode = isNaNMode;
+        mCode = compiledExp.getCode();
+        mConstants = compiledExp.getConstants();
+        mBatchEvaluator = new BatchEvaluator();
+        int blockSize = mBatchEvaluator.getBlockSize();
+        mErrorCodes = isNaNMode ? new int[blockSize] : null;
+
+        mColumns = new double[compiledExp.getVariableCount()][];
+        int referencedCount = 0;
+        for (int slot = 0; slot < mColumns.length; slot++) {
+            if (compiledExp.isVariableReferenced(slot)) {
+                mColumns[slot] = new double[blockSize];
+                referencedCount++;
+            }//if
+        }//for
+
+        if (!isHoistable(compiledExp)) {
+            mAnalysis = null;
+            mParents = null;
+            mReferencedSlots = null;
+            mRegisters = null;
+            mTemps = null;
+            mScalarStack = null;
+            mScalarTemps = null;
+            mRowErrors = null;
+            mKinds = null;
+            mHoistedRoots = null;
+            mValues = null;
+            mOuterValues = null;
+            mOuterErrors = null;
+
+            return;
+        }//if
+
+        mAnalysis = compiledExp.getDependencyAnalysis();
+        mParents = parentsOf(mCode, mAnalysis);
+        mReferencedSlots = new int[referencedCount];
+        referencedCount = 0;
+        for (int slot = 0; slot < mColumns.length; slot++) {
+            if (compiledExp.isVariableReferenced(slot)) {
+                mReferencedSlots[referencedCount++] = slot;
+            }//if
+        }//for
+
+        int depth = Math.max(1, compiledExp.getMaxDepth());
+        mRegisters = new double[depth][blockSize];
+        mTemps = new double[compiledExp.getTempCount()][blockSize];
+        mScalarStack = new double[depth];
+        mScalarTemps = new double[compiledExp.getTempCount()];
+        mRowErrors = isNaNMode ? new int[blockSize] : null;
+        mKinds = new byte[mCode.length];
+        mHoistedRoots = new int[mCode.length];
+        mValues = new double[mColumns.length];
+        mOuterValues = new double[mCode.length];
+        mOuterErrors = new int[mCode.length];
+    }//con_SweepEvaluator
+
+    int getBlockSize() {
+        return mBatchEvaluator.getBlockSize();
+    }//getBlockSize
+
+    /**
+     * 获取NaN方式求值时上一次计算的各点的错误码，第k个点的错误码位于第k个元素（与结果在out中的位置相同）
+     */
+    int[] getErrorCodes() {
+        return mErrorCodes;
+    }//getErrorCodes
+
+    /**
+     * 表达式是否可以逐行计算，不能时游标应使用evaluateColumns
+     */
+    boolean isRowEnabled() {
+        return null != mAnalysis;
+    }//isRowEnabled
+
+    /**
+     * 把游标接下来的length个点的变量值写入各列，用BatchEvaluator计算，结果写入out的第0到length - 1个元素
+     * @param length 点数，不超过getBlockSize()
+     */
+    void evaluateColumns(PointSource.Cursor cursor, double[] out, int length) {
+        cursor.fillColumns(mColumns, length);
+        if (mIsNaNMode) {
+            mBatchEvaluator.evaluateOrNaN(mCompiledExp, mColumns, out, 0, length, mErrorCodes);
+        } else {
+            mBatchEvaluator.evaluate(mCompiledExp, mColumns, out, 0, length);
+        }//if-else
+    }//evaluateColumns
+
+    /**
+     * 计算一行的结果：除innerSlot之外各变量的值都不变，取valuesBySlot中的值；
+     * 第k个点上内层变量的值为innerValues[innerOffset + k]，结果写入out[outOffset + k]
+     * @param valuesBySlot 各槽位上变量的值，表达式用到的槽位中除innerSlot之外都必须有效
+     * @param innerSlot 内层变量的槽位，-1表示这一行的各点上所有变量都不变
+     * @param innerValues 内层变量的取值，innerSlot为-1时忽略
+     * @param isAxis innerValues是否为整个坐标轴上的坐标：是则各行应传入同一个数组，
+     *               innerOffset为这一行在轴上的起点，可以预先计算轴上子树，并在外层变量不变时复用已有的结果
+     * @param length 点数，不超过getBlockSize()
+     */
+    void evaluateRow(double[] valuesBySlot, int innerSlot, double[] innerValues, int innerOffset, boolean isAxis,
+                     double[] out, int outOffset, int length) {
+        if (innerSlot != mInnerSlot) {
+            plan(innerSlot);
+        }//if
+        if (innerSlot < 0) {
+            isAxis = false;
+        }//if
+
+        long changed = 0;
+        for (int slot : mReferencedSlots) {
+            double value = valuesBySlot[slot];
+            if (slot != innerSlot && Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(mValues[slot])) {
+                mValues[slot] = value;
+                changed |= DependencyAnalysis.dependencyBit(slot);
+            }//if
+        }//for
+
+        if (isAxis && innerValues != mAxisCoordinates) {
+            mAxisCoordinates = innerValues;
+            mAxisPointCount = 0;
+            mAxisValues = null;
+            mAxisErrors = null;
+            mRowCache = null;
+        }//if
+        if (!mIsValid || changed != 0) {
+            mCachedTo = mCachedFrom;
+        }//if
+        if (isAxis && innerOffset >= mCachedFrom && innerOffset + length <= mCachedTo) {
+            System.arraycopy(mRowCache, innerOffset, out, outOffset, length);
+            if (mIsNaNMode) {
+                System.arraycopy(mRowErrorCache, innerOffset, mErrorCodes, outOffset, length);
+            }//if
+            return;
+        }//if
+
+        if (isAxis && null == mAxisValues && mAxisPointCount >= innerValues.length) {
+            mAxisValues = precomputeAxis(innerValues);
+        }//if
+
+        //执行出错时保持无效，下一行重新计算所有外层子树
+        boolean isValid = mIsValid;
+        mIsValid = false;
+        executeRow(valuesBySlot, innerSlot, innerValues, innerOffset, isAxis && null != mAxisValues,
+                changed, isValid, length);
+        System.arraycopy(mRegisters[0], 0, out, outOffset, length);
+        if (mIsNaNMode) {
+            BatchEvaluator.applyErrors(mRowErrors, out, outOffset, length);
+            System.arraycopy(mRowErrors, 0, mErrorCodes, outOffset, length);
+        }//if
+        mIsValid = true;
+
+        if (isAxis) {
+            mAxisPointCount += length;
+            cacheRow(out, outOffset, innerOffset, length);
+        }//if
+    }//evaluateRow
+
+    //数组中的槽位超过64个时依赖集合会混淆不同的变量；常量子树存入临时槽位时，无法确定以哪种方式读取
+    private static boolean isHoistable(CompiledExpression compiledExp) {
+        if (compiledExp.getVariableCount() > Long.SIZE) {
+            return false;
+        }//if
+
+        int[] code = compiledExp.getCode();
+        DependencyAnalysis analysis = compiledExp.getDependencyAnalysis();
+        for (int i = 0; i < code.length; i++) {
+            if (OpCode.opCode(code[i]) == OpCode.STORE_TEMP && analysis.getDependencies(i) == 0) {
+                return false;
+            }//if
+        }//for
+
+        return true;
+    }//isHoistable
+
+    private static int[] parentsOf(int[] code, DependencyAnalysis analysis) {
+        int[] parents = new int[code.length];
+        Arrays.fill(parents, -1);
+        for (int i = 0; i < code.length; i++) {
+            //操作数子树紧挨着排列在指令i之前，从最后一个操作数开始向前依次找到各个操作数的根
+            int start = analysis.getSubtreeStart(i);
+            int child = i - 1;
+            while (child >= start) {
+                parents[child] = i;
+                child = analysis.getSubtreeStart(child) - 1;
+            }//while
+        }//for
+
+        return parents;
+    }//parentsOf
+
+    //按内层变量对各指令分类，找出最大的外层子树和轴上子树
+    private void plan(int innerSlot) {
+        long innerBit = innerSlot < 0 ? 0 : DependencyAnalysis.dependencyBit(innerSlot);
+        for (int i = 0; i < mCode.length; i++) {
+            long dependencies = mAnalysis.getDependencies(i);
+            if ((dependencies & innerBit) == 0) {
+                mKinds[i] = OUTER;
+            } else if (dependencies == innerBit) {
+                mKinds[i] = AXIS;
+            } else {
+                mKinds[i] = MIXED;
+            }//if-else
+        }//for
+
+        Arrays.fill(mHoistedRoots, -1);
+        for (int i = 0; i < mCode.length; i++) {
+            if (mKinds[i] != MIXED && (mParents[i] < 0 || mKinds[mParents[i]] == MIXED)) {
+                mHoistedRoots[mAnalysis.getSubtreeStart(i)] = i;
+            }//if
+        }//for
+
+        mInnerSlot = innerSlot;
+        mIsValid = false;
+        mAxisCoordinates = null;
+        mAxisValues = null;
+        mAxisErrors = null;
+        mRowCache = null;
+        mCachedFrom = 0;
+        mCachedTo = 0;
+    }//plan
+
+    //在寄存器列上执行一行，外层子树按需计算后广播，轴上子树（isAxisHoisted时）复制预先算出的一段
+    private void executeRow(double[] valuesBySlot, int innerSlot, double[] innerValues, int innerOffset,
+                            boolean isAxisHoisted, long changed, boolean isValid, int length) {
+        int[] code = mCode;
+        double[][] registers = mRegisters;
+        double[][] temps = mTemps;
+        int[] errors = mRowErrors;
+        int sp = 0;
+        if (mIsNaNMode) {
+            Arrays.fill(errors, 0, length, DomainError.NONE);
+        }//if
+
+        int i = 0;
+        while (i < code.length) {
+            int root = mHoistedRoots[i];
+            if (root >= 0 && mKinds[root] == OUTER) {
+                if (!isValid || (mAnalysis.getDependencies(root) & changed) != 0) {
+                    mOuterValues[root] = executeScalar(valuesBySlot, i, root);
+                }//if
+                Arrays.fill(registers[sp++], 0, length, mOuterValues[root]);
+                if (mIsNaNMode && mOuterErrors[root] != DomainError.NONE) {
+                    mergeErrors(errors, mOuterErrors[root], length);
+                }//if
+                i = root + 1;
+                continue;
+            }//if
+            if (root >= 0 && isAxisHoisted) {
+                System.arraycopy(mAxisValues[root], innerOffset, registers[sp++], 0, length);
+                if (mIsNaNMode && null != mAxisErrors[root]) {
+                    mergeErrors(errors, mAxisErrors[root], innerOffset, length);
+                }//if
+                i = root + 1;
+                continue;
+            }//if
+
+            int opCode = OpCode.opCode(code[i]);
+            int arg = OpCode.arg(code[i]);
+            switch (opCode) {
+            case OpCode.CONST: Arrays.fill(registers[sp++], 0, length, mConstants[arg]); break;
+            case OpCode.LOAD_VAR: {
+                if (arg == innerSlot) {
+                    System.arraycopy(innerValues, innerOffset, registers[sp++], 0, length);
+                } else {
+                    Arrays.fill(registers[sp++], 0, length, valuesBySlot[arg]);
+                }//if-else
+            } break;
+            case OpCode.LOAD_TEMP: System.arraycopy(temps[arg], 0, registers[sp++], 0, length); break;
+            case OpCode.STORE_TEMP: System.arraycopy(registers[sp - 1], 0, temps[arg], 0, length); break;
+            default: {
+                if (OpCode.getDimension(opCode) == 2) {
+                    sp--;
+                }//if
+                execute(opCode, arg, registers, sp, errors, length);
+            } break;
+            }//switch
+            i++;
+        }//while
+    }//executeRow
+
+    //在寄存器列上执行一条运算，操作数位于registers[sp - 1]（以及双目运算的registers[sp]），结果写入registers[sp - 1]
+    private void execute(int opCode, int arg, double[][] registers, int sp, int[] errors, int length) {
+        boolean isBinary = OpCode.getDimension(opCode) == 2;
+        if (mIsNaNMode && OperatorFunctions.hasDomain(opCode)) {
+            if (isBinary) {
+                BatchEvaluator.nanBinary(opCode, registers[sp - 1], registers[sp], errors, 0, length);
+            } else {
+                BatchEvaluator.nanUnary(opCode, arg, registers[sp - 1], errors, 0, length);
+            }//if-else
+            return;
+        }//if
+
+        if (OperatorFunctions.hasDomain(opCode)) {
+            checkDomain(opCode, registers[sp - 1], isBinary ? registers[sp] : null, length);
+        }//if
+        if (isBinary) {
+            BatchEvaluator.scalarBinary(opCode, registers[sp - 1], registers[sp], 0, length);
+        } else {
+            BatchEvaluator.scalarUnary(opCode, arg, registers[sp - 1], 0, length);
+        }//if-else
+    }//execute
+
+    //逐行计算和预先计算轴上子树出错时，异常都会被捕获后丢弃（见SweepSpliterator），因此抛出不记录调用栈的异常
+    private static void checkDomain(int opCode, double[] x, double[] y, int length) {
+        for (int i = 0; i < length; i++) {
+            double right = null == y ? 0 : y[i];
+            int error = OperatorFunctions.domainError(opCode, x[i], right);
+            if (error != DomainError.NONE) {
+                throw OperatorFunctions.outOfBounds(error, x[i], right, false);
+            }//if
+        }//for
+    }//checkDomain
+
+    //把整行共同的错误码合并到还没有出错的点上
+    private static void mergeErrors(int[] errors, int error, int length) {
+        for (int k = 0; k < length; k++) {
+            if (errors[k] == DomainError.NONE) {
+                errors[k] = error;
+            }//if
+        }//for
+    }//mergeErrors
+
+    private static void mergeErrors(int[] errors, int[] axisErrors, int axisOffset, int length) {
+        for (int k = 0; k < length; k++) {
+            if (errors[k] == DomainError.NONE) {
+                errors[k] = axisErrors[axisOffset + k];
+            }//if
+        }//for
+    }//mergeErrors
+
+    //逐条计算外层子树[start, root]的值，其中的临时槽位也是外层的，保存在mScalarTemps中
+    //NaN方式求值时子树中第一个出错的运算的错误码记入mOuterErrors[root]
+    private double executeScalar(double[] valuesBySlot, int start, int root) {
+        double[] stack = mScalarStack;
+        int sp = 0;
+        int error = DomainError.NONE;
+
+        for (int i = start; i <= root; i++) {
+            int opCode = OpCode.opCode(mCode[i]);
+            int arg = OpCode.arg(mCode[i]);
+            switch (opCode) {
+            case OpCode.CONST: stack[sp++] = mConstants[arg]; break;
+            case OpCode.LOAD_VAR: stack[sp++] = valuesBySlot[arg]; break;
+            case OpCode.LOAD_TEMP: stack[sp++] = mScalarTemps[arg]; break;
+            case OpCode.STORE_TEMP: mScalarTemps[arg] = stack[sp - 1]; break;
+            default: {
+                double right = 0;
+                if (OpCode.getDimension(opCode) == 2) {
+                    right = stack[--sp];
+                }//if
+
+                int operationError = mIsNaNMode ?
+                        OperatorFunctions.domainError(opCode, stack[sp - 1], right) : DomainError.NONE;
+                if (operationError == DomainError.NONE) {
+                    stack[sp - 1] = OperatorFunctions.operate(opCode, arg, stack[sp - 1], right, false);
+                } else {
+                    stack[sp - 1] = Double.NaN;
+                    if (error == DomainError.NONE) {
+                        error = operationError;
+                    }//if
+                }//if-else
+            } break;
+            }//switch
+        }//for
+        mOuterErrors[root] = error;
+
+        return stack[0];
+    }//executeScalar
+
+    //在整个坐标轴上按列计算各轴上子树，轴上子树中只有内层变量、常量和轴上的临时槽位；出错时返回null，不预先计算
+    private double[][] precomputeAxis(double[] coordinates) {
+        int length = coordinates.length;
+        double[][] registers = new double[Math.max(1, mCompiledExp.getMaxDepth())][];
+        double[][] temps = new double[mCompiledExp.getTempCount()][];
+        double[][] axisValues = new double[mCode.length][];
+        int[][] axisErrors = new int[mCode.length][];
+
+        try {
+            for (int start = 0; start < mCode.length; start++) {
+                int root = mHoistedRoots[start];
+                if (root < 0 || mKinds[root] != AXIS) {
+                    continue;
+                }//if
+
+                int sp = 0;
+                int[] errors = mIsNaNMode ? new int[length] : null;
+                for (int i = start; i <= root; i++) {
+                    int opCode = OpCode.opCode(mCode[i]);
+                    int arg = OpCode.arg(mCode[i]);
+                    switch (opCode) {
+                    case OpCode.CONST: registers[sp] = new double[length];
+                        Arrays.fill(registers[sp++], mConstants[arg]); break;
+                    case OpCode.LOAD_VAR: registers[sp++] = coordinates.clone(); break;
+                    case OpCode.LOAD_TEMP: registers[sp++] = temps[arg].clone(); break;
+                    case OpCode.STORE_TEMP: temps[arg] = registers[sp - 1].clone(); break;
+                    default: {
+                        if (OpCode.getDimension(opCode) == 2) {
+                            sp--;
+                        }//if
+                        execute(opCode, arg, registers, sp, errors, length);
+                    } break;
+                    }//switch
+                }//for
+                axisValues[root] = registers[0];
+                if (mIsNaNMode && BatchEvaluator.applyErrors(errors, registers[0], 0, length) != DomainError.NONE) {
+                    axisErrors[root] = errors;
+                }//if
+            }//for
+        } catch (RuntimeException e) {
+            //坐标轴上的某些点可能不在要计算的范围内，此时不应抛出异常，只是不再预先计算
+            return null;
+        }//try-catch
+        mAxisErrors = axisErrors;
+
+        return axisValues;
+    }//precomputeAxis
+
+    //把刚算出的一行结果记入mRowCache，与已有的区间相接或重叠时合并，否则替换
+    private void cacheRow(double[] out, int outOffset, int innerOffset, int length) {
+        if (null == mRowCache) {
+            mRowCache = new double[mAxisCoordinates.length];
+            mRowErrorCache = mIsNaNMode ? new int[mAxisCoordinates.length] : null;
+        }//if
+
+        System.arraycopy(out, outOffset, mRowCache, innerOffset, length);
+        if (mIsNaNMode) {
+            System.arraycopy(mErrorCodes, outOffset, mRowErrorCache, innerOffset, length);
+        }//if
+        int end = innerOffset + length;
+        if (mCachedFrom >= mCachedTo || end < mCachedFrom || innerOffset > mCachedTo) {
+            mCachedFrom = innerOffset;
+            mCachedTo = end;
+        } else {
+            mCachedFrom = Math.min(mCachedFrom, innerOffset);
+            mCachedTo = Math.max(mCachedTo, end);
+        }//if-else
+    }//cacheRow
+}//class_SweepEvaluator
@@ -0,0 +1,84 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+
+/*
+ * 一次取得多个结果（ResultGenerator的各种取结果方法、Calculator.sweep、SweepFile.write）的JFR事件
+ * 记录调用方式、点数、并行度、运算符构成、耗时和结果，默认只记录耗时超过阈值的调用
+ */
+@Name("com.daoshengwanwu.calculator.Sweep")
+@Label("批量取值")
+@Category(CalculatorEvents.CATEGORY)
+@Description("在一组变量取值点上求出表达式结果的耗时")
+@Threshold("10 ms")
+final class SweepEvent extends Event {
+    static final String RESULT_LIST = "ResultGenerator.getResultList";
+    static final String RESULT_ARRAY = "ResultGenerator.getResultArray";
+    static final String SWEEP_INTO = "ResultGenerator.sweepInto";
+    static final String FOR_EACH_RESULT = "ResultGenerator.forEachResult";
+    static final String FILL = "ResultGenerator.fill";
+    static final String LATTICE = "Calculator.sweep";
+    static final String FILE = "SweepFile.write";
+
+    @Name("expression")
+    @Label("表达式")
+    String mExpression;
+
+    @Name("method")
+    @Label("调用方式")
+    String mMethod;
+
+    @Name("pointCount")
+    @Label("点数")
+    @Description("本次调用求出的结果个数，出错时为计划求出的个数")
+    long mPointCount;
+
+    @Name("parallelism")
+    @Label("并行度")
+    @Description("执行计算的ForkJoinPool的并行度，顺序计算时为1")
+    int mParallelism;
+
+    @Name("operatorCount")
+    @Label("运算指令数")
+    @Description("编译后每个点需要执行的运算指令条数，包括规范化指令round")
+    int mOperatorCount;
+
+    @Name("operatorMix")
+    @Label("运算符构成")
+    @Description("编译后各运算指令的条数")
+    String mOperatorMix;
+
+    @Name("outcome")
+    @Label("结果")
+    @Description("OK或计算时抛出的异常的类名")
+    String mOutcome;
+
+
+    void finish(CompiledExpression compiledExp, String method, long pointCount,
+                int parallelism, Exception failure) {
+        end();
+        if (shouldCommit()) {
+            record(compiledExp, method, pointCount, parallelism, failure);
+        }//if
+    }//finish
+
+    //只在事件需要提交时调用，见CalculatorEvents
+    private void record(CompiledExpression compiledExp, String method, long pointCount,
+                        int parallelism, Exception failure) {
+        mExpression = CalculatorEvents.abbreviate(compiledExp.toString());
+        mMethod = method;
+        mPointCount = pointCount;
+        mParallelism = parallelism;
+        mOperatorCount = CalculatorEvents.operatorCount(compiledExp);
+        mOperatorMix = CalculatorEvents.operatorMix(compiledExp);
+        mOutcome = CalculatorEvents.outcomeOf(failure);
+        commit();
+    }//record
+}//class_SweepEvent
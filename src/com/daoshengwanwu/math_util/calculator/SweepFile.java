@@ -0,0 +1,311 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * 以内存映射文件保存的网格计算结果
+ * 文件由头部和若干列组成，所有数值都是小端序：
+ * 头部：魔数"CALCSWP1"，格式版本(int)，维数d(int)，点数n(long)，数据区的起始位置(long)，
+ * 之后是每个轴的下限、上限、跨度(double)、坐标个数(long)、变量名(int长度 + UTF-8)，
+ * 最后是表达式和数值策略的字符串描述(int长度 + UTF-8)；头部按DATA_ALIGNMENT字节对齐
+ * 数据区：d个坐标列依次排列，之后是结果列，每列n个double，第k列从 数据区起始位置 + k * n * 8 开始，
+ * 点的顺序与VariableLattice相同
+ * 写入时按窗口逐段映射，结果直接写入映射区，不经过Java堆；读取时同样直接映射，返回的DoubleBuffer不复制数据
+ * 因此文件的大小只受磁盘空间限制，不受堆大小限制
+ */
+public final class SweepFile implements Closeable {
+    public static final int FORMAT_VERSION = 1;
+
+    private static final byte[] MAGIC = "CALCSWP1".getBytes(StandardCharsets.US_ASCII);
+    private static final int DATA_ALIGNMENT = 64;
+    //每次映射的点数，每列映射 WINDOW_SIZE * 8 字节
+    private static final int WINDOW_SIZE = 1 << 24;
+
+    private final FileChannel mChannel;
+    private final int mDimension;
+    private final long mPointCount;
+    private final long mDataOffset;
+    private final String[] mVariableNames;
+    private final double[] mLowerLimits;
+    private final double[] mUpperLimits;
+    private final double[] mSpans;
+    private final long[] mAxisSizes;
+    private final String mExpression;
+    private final String mNumericPolicy;
+
+
+    private SweepFile(FileChannel channel, ByteBuffer header) throws IOException {
+        mChannel = channel;
+
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        int version = header.getInt();
+        if (!Arrays.equals(magic, MAGIC) || version != FORMAT_VERSION) {
+            throw new IOException("不是可以识别的计算结果文件（版本" + FORMAT_VERSION + "）");
+        }//if
+
+        mDimension = header.getInt();
+        mPointCount = header.getLong();
+        mDataOffset = header.getLong();
+        mVariableNames = new String[mDimension];
+        mLowerLimits = new double[mDimension];
+        mUpperLimits = new double[mDimension];
+        mSpans = new double[mDimension];
+        mAxisSizes = new long[mDimension];
+        for (int axis = 0; axis < mDimension; axis++) {
+            mLowerLimits[axis] = header.getDouble();
+            mUpperLimits[axis] = header.getDouble();
+            mSpans[axis] = header.getDouble();
+            mAxisSizes[axis] = header.getLong();
+            mVariableNames[axis] = readString(header);
+        }//for
+        mExpression = readString(header);
+        mNumericPolicy = readString(header);
+    }//con_SweepFile
+
+    /**
+     * 在公共的ForkJoinPool上计算网格上所有点的结果，连同各点的坐标写入文件，见write(Path, CompiledExpression, VariableLattice, ForkJoinPool)
+     */
+    public static void write(Path path, CompiledExpression compiledExp, VariableLattice lattice) throws IOException {
+        write(path, compiledExp, lattice, ForkJoinPool.commonPool());
+    }//write
+
+    /**
+     * 计算网格上所有点的结果，连同各点的坐标写入文件，已存在的文件会被覆盖
+     * 计算出错时抛出与逐个计算相同类型的异常，此时文件中的结果不完整
+     * @param path 文件路径
+     * @param compiledExp 编译后的表达式
+     * @param lattice 变量网格
+     * @param pool 执行计算的线程池
+     * @throws IOException 写入出错时
+     */
+    public static void write(Path path, CompiledExpression compiledExp, VariableLattice lattice,
+                             ForkJoinPool pool) throws IOException {
+        ByteBuffer header = encodeHeader(compiledExp, lattice);
+        PointSource points = lattice.bind(compiledExp);
+        int dimension = lattice.getDimension();
+        long pointCount = lattice.size();
+        long dataOffset = header.limit();
+
+        SweepEvent event = new SweepEvent();
+        event.begin();
+        Exception failure = null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }//while
+
+            for (long windowStart = 0; windowStart < pointCount; windowStart += WINDOW_SIZE) {
+                int windowLength = (int)Math.min(WINDOW_SIZE, pointCount - windowStart);
+                MappedByteBuffer[] regions = new MappedByteBuffer[dimension + 1];
+                DoubleBuffer[] columns = new DoubleBuffer[dimension + 1];
+                for (int column = 0; column <= dimension; column++) {
+                    long position = dataOffset + (column * pointCount + windowStart) * Double.BYTES;
+                    regions[column] = channel.map(FileChannel.MapMode.READ_WRITE,
+                            position, (long)windowLength * Double.BYTES);
+                    columns[column] = regions[column].order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                }//for
+
+                long base = windowStart;
+                ParallelSweep.forEachRange(windowStart, windowStart + windowLength, pool,
+                        (from, to) -> writeRange(compiledExp, points, lattice, columns, base, from, to));
+
+                for (MappedByteBuffer region : regions) {
+                    region.force();
+                }//for
+            }//for
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            event.finish(compiledExp, SweepEvent.FILE, pointCount, pool.getParallelism(), failure);
+        }//try-catch-finally
+    }//write
+
+    /**
+     * 打开计算结果文件，之后可以直接映射其中的各列
+     * @param path 文件路径
+     * @return 打开的文件，使用完毕后应当关闭
+     * @throws IOException 读取出错或文件格式不正确时
+     */
+    public static SweepFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer prefix = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, prefix, 0);
+            long dataOffset = prefix.getLong(24);
+            if (dataOffset < prefix.capacity() || dataOffset > channel.size()) {
+                throw new IOException("计算结果文件的头部已损坏");
+            }//if
+
+            ByteBuffer header = ByteBuffer.allocate((int)dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+
+            return new SweepFile(channel, header);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }//try-catch
+    }//open
+
+    public int getDimension() {
+        return mDimension;
+    }//getDimension
+
+    public long getPointCount() {
+        return mPointCount;
+    }//getPointCount
+
+    public String getVariableName(int axis) {
+        return mVariableNames[axis];
+    }//getVariableName
+
+    public double getLowerLimit(int axis) {
+        return mLowerLimits[axis];
+    }//getLowerLimit
+
+    public double getUpperLimit(int axis) {
+        return mUpperLimits[axis];
+    }//getUpperLimit
+
+    public double getSpan(int axis) {
+        return mSpans[axis];
+    }//getSpan
+
+    public long getAxisSize(int axis) {
+        return mAxisSizes[axis];
+    }//getAxisSize
+
+    /**
+     * 获取写入时表达式的字符串描述
+     * @return 表达式
+     */
+    public String getExpression() {
+        return mExpression;
+    }//getExpression
+
+    /**
+     * 获取写入时表达式所用数值策略的字符串描述（见NumericPolicy.toString()）
+     * @return 数值策略
+     */
+    public String getNumericPolicy() {
+        return mNumericPolicy;
+    }//getNumericPolicy
+
+    /**
+     * 只读地映射第axis个轴的坐标列中第from个开始的length个点，不复制数据
+     * @return 小端序的只读DoubleBuffer，下标0对应第from个点
+     * @throws IOException 映射出错时
+     */
+    public DoubleBuffer mapCoordinates(int axis, long from, int length) throws IOException {
+        if (axis < 0 || axis >= mDimension) {
+            throw new IndexOutOfBoundsException("坐标轴超出范围：" + axis);
+        }//if
+
+        return mapColumn(axis, from, length);
+    }//mapCoordinates
+
+    /**
+     * 只读地映射结果列中第from个开始的length个点，不复制数据
+     * @return 小端序的只读DoubleBuffer，下标0对应第from个点
+     * @throws IOException 映射出错时
+     */
+    public DoubleBuffer mapResults(long from, int length) throws IOException {
+        return mapColumn(mDimension, from, length);
+    }//mapResults
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }//close
+
+    private DoubleBuffer mapColumn(int column, long from, int length) throws IOException {
+        if (from < 0 || length < 0 || from + length > mPointCount) {
+            throw new IndexOutOfBoundsException("[" + from + ", " + (from + length) +
+                    ")超出了点的下标范围[0, " + mPointCount + ")");
+        }//if
+
+        long position = mDataOffset + (column * mPointCount + from) * Double.BYTES;
+        return mChannel.map(FileChannel.MapMode.READ_ONLY, position, (long)length * Double.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }//mapColumn
+
+    //计算[from, to)区间内各点的坐标和结果，写入各列映射区中对应的位置，columns[k]的下标0对应第base个点
+    private static void writeRange(CompiledExpression compiledExp, PointSource points, VariableLattice lattice,
+                                   DoubleBuffer[] columns, long base, long from, long to) {
+        int dimension = lattice.getDimension();
+        SweepSpliterator results = new SweepSpliterator(compiledExp, points, from, to);
+        double[][] block = new double[dimension + 1][BatchEvaluator.DEFAULT_BLOCK_SIZE];
+
+        for (long blockStart = from; blockStart < to; blockStart += BatchEvaluator.DEFAULT_BLOCK_SIZE) {
+            int length = (int)Math.min(BatchEvaluator.DEFAULT_BLOCK_SIZE, to - blockStart);
+            lattice.fillCoordinates(blockStart, block, length);
+            results.fill(block[dimension], 0, length);
+
+            int index = (int)(blockStart - base);
+            for (int column = 0; column <= dimension; column++) {
+                columns[column].put(index, block[column], 0, length);
+            }//for
+        }//for
+    }//writeRange
+
+    private static ByteBuffer encodeHeader(CompiledExpression compiledExp, VariableLattice lattice) {
+        int dimension = lattice.getDimension();
+        byte[][] names = new byte[dimension][];
+        byte[] expression = compiledExp.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] policy = compiledExp.getNumericPolicy().toString().getBytes(StandardCharsets.UTF_8);
+
+        int size = MAGIC.length + Integer.BYTES * 2 + Long.BYTES * 2;
+        for (int axis = 0; axis < dimension; axis++) {
+            names[axis] = lattice.getVariable(axis).getFlagStr().getBytes(StandardCharsets.UTF_8);
+            size += Double.BYTES * 3 + Long.BYTES + Integer.BYTES + names[axis].length;
+        }//for
+        size += Integer.BYTES * 2 + expression.length + policy.length;
+        int dataOffset = (size + DATA_ALIGNMENT - 1) / DATA_ALIGNMENT * DATA_ALIGNMENT;
+
+        ByteBuffer header = ByteBuffer.allocate(dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(FORMAT_VERSION).putInt(dimension)
+                .putLong(lattice.size()).putLong(dataOffset);
+        for (int axis = 0; axis < dimension; axis++) {
+            header.putDouble(lattice.getLowerLimit(axis)).putDouble(lattice.getUpperLimit(axis))
+                    .putDouble(lattice.getSpan(axis)).putLong(lattice.getAxisSize(axis))
+                    .putInt(names[axis].length).put(names[axis]);
+        }//for
+        header.putInt(expression.length).put(expression);
+        header.putInt(policy.length).put(policy);
+        header.clear();
+
+        return header;
+    }//encodeHeader
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }//readString
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("计算结果文件不完整");
+            }//if
+        }//while
+        buffer.flip();
+    }//readFully
+}//class_SweepFile
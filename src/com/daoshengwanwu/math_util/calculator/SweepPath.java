@@ -0,0 +1,289 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/*
+ * ResultGenerator依次经过的变量取值点组成的路径，可以按下标直接定位到任意一个点
+ * ResultGenerator每一步只推进第一个还有下一个值的变量（见VariableAssistant.nextValue），
+ * 推进到上限后不再复位，因此路径由各变量依次走完自己的取值序列组成：
+ * 第0个点为各变量的当前值；之后第一个变量逐步走到上限，其余变量不变；
+ * 然后第二个变量逐步走到上限，第一个变量保持在上限；依此类推
+ * 路径的点数为 1 + Σ(第i个变量的取值个数 - 1)
+ * 各变量的取值在构造时按Variable.nextValue()的累加方式重放一遍，每隔CHECKPOINT_INTERVAL个值记录一个检查点，
+ * 定位到任意一点时从最近的检查点继续累加，因此路径上每个点的变量值都与逐个调用nextValue()得到的完全相同，
+ * 而占用的内存只有各变量取值个数的1/CHECKPOINT_INTERVAL
+ * 构造之后SweepPath不再读取各变量，是不可变的，可被多个线程同时使用
+ */
+final class SweepPath implements PointSource {
+    private static final int CHECKPOINT_INTERVAL = 1024;
+
+    //以下数组的下标i对应第i个路径变量
+    private final double[] mSpans;
+    private final double[] mUpperLimits;
+    private final long[] mValueCounts; //从当前值开始的取值个数
+    private final double[][] mCheckpoints; //mCheckpoints[i][m]为第m * CHECKPOINT_INTERVAL个取值
+    private final double[] mLastValues;
+    //mSlots[i]为第i个路径变量在表达式中的槽位，表达式没有用到该变量时为-1
+    private final int[] mSlots;
+    //mReadSlots[i]为第i个路径变量被表达式读取时的槽位，否则为-1，逐行计算时作为第i段的内层变量
+    private final int[] mReadSlots;
+    //表达式用到、但不在VariableAssistant中的变量，其值在整条路径上不变
+    private final int[] mFixedSlots;
+    private final double[] mFixedValues;
+    private final long mSize;
+    private final int mSlotCount;
+
+
+    SweepPath(List<Variable> pathVariables, CompiledExpression compiledExp) {
+        int count = pathVariables.size();
+        int slotCount = compiledExp.getVariableCount();
+        boolean[] isOnPath = new boolean[slotCount];
+        long size = 1;
+
+        mSpans = new double[count];
+        mUpperLimits = new double[count];
+        mValueCounts = new long[count];
+        mCheckpoints = new double[count][];
+        mLastValues = new double[count];
+        mSlots = new int[count];
+        mReadSlots = new int[count];
+        mSlotCount = slotCount;
+        for (int i = 0; i < count; i++) {
+            Variable variable = pathVariables.get(i);
+            int slot = indexOf(compiledExp, variable);
+
+            mSlots[i] = slot;
+            if (slot >= 0) {
+                isOnPath[slot] = true;
+            }//if
+
+            //未设置值、表达式又用到的变量，与逐个计算一样抛出异常
+            boolean isRead = slot >= 0 && compiledExp.isVariableReferenced(slot);
+            mReadSlots[i] = isRead ? slot : -1;
+            double value = isRead || variable.isValueSet() ? variable.curValue() : 0;
+            mSpans[i] = variable.getSpan();
+            mUpperLimits[i] = variable.getUpperLimit();
+            replay(i, value);
+            size += mValueCounts[i] - 1;
+        }//for
+        mSize = size;
+
+        int fixedCount = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (!isOnPath[slot] && compiledExp.isVariableReferenced(slot)) {
+                fixedCount++;
+            }//if
+        }//for
+        mFixedSlots = new int[fixedCount];
+        mFixedValues = new double[fixedCount];
+        fixedCount = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (!isOnPath[slot] && compiledExp.isVariableReferenced(slot)) {
+                mFixedSlots[fixedCount] = slot;
+                mFixedValues[fixedCount++] = compiledExp.getVariable(slot).curValue();
+            }//if
+        }//for
+    }//con_SweepPath
+
+    /**
+     * 获取路径的点数，与ResultGenerator从当前状态开始能产生的结果个数相同
+     * @return 点数
+     */
+    @Override
+    public long size() {
+        return mSize;
+    }//size
+
+    @Override
+    public PathCursor cursor(long start) {
+        return new PathCursor(start);
+    }//cursor
+
+    //按Variable.nextValue()的方式从value开始重放第i个变量的所有取值，记录取值个数、检查点和最后一个值
+    //循环条件与Variable.hasNext()相同，没有下一个值的变量只有value这一个取值
+    private void replay(int i, double value) {
+        double[] checkpoints = new double[1];
+        long valueCount = 1;
+
+        checkpoints[0] = value;
+        while (value < mUpperLimits[i]) {
+            value = Variable.stepValue(value, mSpans[i], mUpperLimits[i]);
+            if (valueCount % CHECKPOINT_INTERVAL == 0) {
+                int index = (int)(valueCount / CHECKPOINT_INTERVAL);
+                if (index == checkpoints.length) {
+                    checkpoints = Arrays.copyOf(checkpoints, index * 2);
+                }//if
+                checkpoints[index] = value;
+            }//if
+            valueCount++;
+        }//while
+
+        mValueCounts[i] = valueCount;
+        mCheckpoints[i] = Arrays.copyOf(checkpoints, (int)((valueCount - 1) / CHECKPOINT_INTERVAL) + 1);
+        mLastValues[i] = value;
+    }//replay
+
+    //第i个变量的第index个取值，从最近的检查点开始累加得到
+    private double valueAt(int i, long index) {
+        double value = mCheckpoints[i][(int)(index / CHECKPOINT_INTERVAL)];
+        for (long k = index % CHECKPOINT_INTERVAL; k > 0; k--) {
+            value = Variable.stepValue(value, mSpans[i], mUpperLimits[i]);
+        }//for
+
+        return value;
+    }//valueAt
+
+    private static int indexOf(CompiledExpression compiledExp, Variable variable) {
+        for (int i = 0; i < compiledExp.getVariableCount(); i++) {
+            if (compiledExp.getVariable(i) == variable) {
+                return i;
+            }//if
+        }//for
+
+        return -1;
+    }//indexOf
+
+
+    /*
+     * 路径上的顺序游标，每前进一个点只需一次累加
+     */
+    final class PathCursor implements PointSource.Cursor {
+        //第mSegment个变量正在推进，位于其取值序列的第mPosition个值mValue
+        private int mSegment = 0;
+        private long mPosition;
+        private double mValue;
+        //以下在第一次逐行计算时才创建
+        private double[] mValuesBySlot;
+        private double[] mSegmentValues; //当前段中内层变量的各个取值
+
+
+        private PathCursor(long start) {
+            if (mValueCounts.length == 0) {
+                return;
+            }//if
+
+            //每段的第0个值与上一段的最后一个点相同，因此每段占用取值个数 - 1个点
+            mPosition = start;
+            while (mPosition > mValueCounts[mSegment] - 1) {
+                mPosition -= mValueCounts[mSegment] - 1;
+                mSegment++;
+            }//while
+            mValue = valueAt(mSegment, mPosition);
+        }//con_PathCursor
+
+        @Override
+        public void fillColumns(double[][] columnsBySlot, int length) {
+            for (int i = 0; i < mFixedSlots.length; i++) {
+                Arrays.fill(columnsBySlot[mFixedSlots[i]], 0, length, mFixedValues[i]);
+            }//for
+
+            if (mValueCounts.length == 0) {
+                return;
+            }//if
+
+            for (int row = 0; row < length; row++) {
+                for (int i = 0; i < mSlots.length; i++) {
+                    double[] column = mSlots[i] < 0 ? null : columnsBySlot[mSlots[i]];
+                    if (null == column) {
+                        continue;
+                    }//if
+
+                    if (i < mSegment) {
+                        column[row] = mLastValues[i];
+                    } else if (i == mSegment) {
+                        column[row] = mValue;
+                    } else {
+                        column[row] = mCheckpoints[i][0];
+                    }//if-else
+                }//for
+
+                advance();
+            }//for
+        }//fillColumns
+
+        //路径的每一段只有一个变量在变化；表达式没有用到这个变量时整段的结果都相同，不必逐个累加
+        @Override
+        public void evaluate(SweepEvaluator evaluator, double[] out, int length) {
+            if (!evaluator.isRowEnabled()) {
+                evaluator.evaluateColumns(this, out, length);
+                return;
+            }//if
+
+            if (null == mValuesBySlot) {
+                mValuesBySlot = new double[mSlotCount];
+                mSegmentValues = new double[evaluator.getBlockSize()];
+                for (int i = 0; i < mFixedSlots.length; i++) {
+                    mValuesBySlot[mFixedSlots[i]] = mFixedValues[i];
+                }//for
+            }//if
+
+            if (mValueCounts.length == 0) {
+                evaluator.evaluateRow(mValuesBySlot, -1, null, 0, false, out, 0, length);
+                return;
+            }//if
+
+            int done = 0;
+            while (done < length) {
+                int count = (int)Math.min(length - done, mValueCounts[mSegment] - mPosition);
+                for (int i = 0; i < mSlots.length; i++) {
+                    if (mSlots[i] < 0) {
+                        continue;
+                    }//if
+
+                    if (i < mSegment) {
+                        mValuesBySlot[mSlots[i]] = mLastValues[i];
+                    } else if (i == mSegment) {
+                        mValuesBySlot[mSlots[i]] = mValue;
+                    } else {
+                        mValuesBySlot[mSlots[i]] = mCheckpoints[i][0];
+                    }//if-else
+                }//for
+
+                int innerSlot = mReadSlots[mSegment];
+                if (innerSlot < 0) {
+                    evaluator.evaluateRow(mValuesBySlot, -1, null, 0, false, out, done, count);
+                    skip(count);
+                } else {
+                    for (int k = 0; k < count; k++) {
+                        mSegmentValues[k] = mValue;
+                        advance();
+                    }//for
+                    evaluator.evaluateRow(mValuesBySlot, innerSlot, mSegmentValues, 0, false, out, done, count);
+                }//if-else
+                done += count;
+            }//while
+        }//evaluate
+
+        //在当前段内前进count个点（至多到段尾），直接从检查点定位，不逐个累加
+        private void skip(int count) {
+            long position = mPosition + count;
+            if (position < mValueCounts[mSegment]) {
+                mPosition = position;
+                mValue = valueAt(mSegment, position);
+            } else {
+                mPosition = mValueCounts[mSegment] - 1;
+                advance();
+            }//if-else
+        }//skip
+
+        //前进到下一个点，跳过只有一个取值的变量
+        private void advance() {
+            mPosition++;
+            if (mPosition < mValueCounts[mSegment]) {
+                mValue = Variable.stepValue(mValue, mSpans[mSegment], mUpperLimits[mSegment]);
+                return;
+            }//if
+
+            while (mPosition >= mValueCounts[mSegment] && mSegment < mValueCounts.length - 1) {
+                mSegment++;
+                mPosition = 1;
+            }//while
+            if (mPosition < mValueCounts[mSegment]) {
+                mValue = Variable.stepValue(mCheckpoints[mSegment][0], mSpans[mSegment], mUpperLimits[mSegment]);
+            }//if
+        }//advance
+    }//class_PathCursor
+}//class_SweepPath
@@ -0,0 +1,168 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+
+
+/*
+ * 依次产生一组取值点（见PointSource）中[from, to)区间内各点结果的Spliterator
+ * 结果按块计算：每次用SweepEvaluator算出一块的结果放入缓冲区，再逐个交出，
+ * 因此无论有多少个点，占用的内存只有一块的寄存器列和缓冲区（以及网格第一个轴上预先计算的子树）
+ * trySplit把尚未计算的区间一分为二，前一半交给新的Spliterator，可以用于并行流
+ * 以NaN方式计算时（见BatchEvaluator.evaluateOrNaN）不抛出定义域异常，各点的错误码通过fill取出
+ */
+final class SweepSpliterator implements Spliterator.OfDouble {
+    private static final int CHARACTERISTICS = ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+
+    private final CompiledExpression mCompiledExp;
+    private final PointSource mPoints;
+    private final boolean mIsNaNMode;
+    private long mIndex; //下一块的第一个点
+    private final long mEnd;
+
+    //以下在第一次计算时才创建，拆分出的Spliterator不会被用到时不占内存
+    private PointSource.Cursor mCursor; //位于mIndex，拆分后需要重新定位
+    private SweepEvaluator mEvaluator;
+    private double[] mBuffer;
+    private int mBufferPos = 0;
+    private int mBufferLength = 0;
+    private int mErrorMask = DomainError.NONE; //NaN方式计算时已计算的各点错误码的按位或
+
+
+    SweepSpliterator(CompiledExpression compiledExp, PointSource points, long from, long to) {
+        this(compiledExp, points, from, to, false);
+    }//con_SweepSpliterator
+
+    SweepSpliterator(CompiledExpression compiledExp, PointSource points, long from, long to, boolean isNaNMode) {
+        mCompiledExp = compiledExp;
+        mPoints = points;
+        mIsNaNMode = isNaNMode;
+        mIndex = from;
+        mEnd = to;
+    }//con_SweepSpliterator
+
+    @Override
+    public boolean tryAdvance(DoubleConsumer action) {
+        if (mBufferPos == mBufferLength && !nextBlock()) {
+            return false;
+        }//if
+
+        action.accept(mBuffer[mBufferPos++]);
+
+        return true;
+    }//tryAdvance
+
+    @Override
+    public void forEachRemaining(DoubleConsumer action) {
+        do {
+            double[] buffer = mBuffer;
+            int length = mBufferLength;
+            for (int i = mBufferPos; i < length; i++) {
+                action.accept(buffer[i]);
+            }//for
+            mBufferPos = length;
+        } while (nextBlock());
+    }//forEachRemaining
+
+    /**
+     * 把接下来的至多length个结果写入buf[offset]开始的位置
+     * @return 写入的结果个数，所有结果都已交出时返回0
+     */
+    int fill(double[] buf, int offset, int length) {
+        return fill(buf, null, offset, length);
+    }//fill
+
+    /**
+     * 把接下来的至多length个结果写入buf[offset]开始的位置，NaN方式计算时各点的错误码写入errorCodes的相同位置
+     * @param errorCodes 错误码数组，不需要时可以为null
+     * @return 写入的结果个数，所有结果都已交出时返回0
+     */
+    int fill(double[] buf, int[] errorCodes, int offset, int length) {
+        int count = 0;
+        while (count < length) {
+            if (mBufferPos == mBufferLength && !nextBlock()) {
+                break;
+            }//if
+
+            int copyCount = Math.min(length - count, mBufferLength - mBufferPos);
+            System.arraycopy(mBuffer, mBufferPos, buf, offset + count, copyCount);
+            if (null != errorCodes && mIsNaNMode) {
+                System.arraycopy(mEvaluator.getErrorCodes(), mBufferPos, errorCodes, offset + count, copyCount);
+            }//if
+            mBufferPos += copyCount;
+            count += copyCount;
+        }//while
+
+        return count;
+    }//fill
+
+    @Override
+    public Spliterator.OfDouble trySplit() {
+        //缓冲区中还有结果时无法把前一半交出去，否则顺序会被打乱
+        long remaining = mEnd - mIndex;
+        if (mBufferPos < mBufferLength || remaining < BatchEvaluator.DEFAULT_BLOCK_SIZE * 2) {
+            return null;
+        }//if
+
+        long middle = mIndex + remaining / 2;
+        SweepSpliterator prefix = new SweepSpliterator(mCompiledExp, mPoints, mIndex, middle, mIsNaNMode);
+        mIndex = middle;
+        mCursor = null;
+
+        return prefix;
+    }//trySplit
+
+    @Override
+    public long estimateSize() {
+        return mEnd - mIndex + (mBufferLength - mBufferPos);
+    }//estimateSize
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }//characteristics
+
+    /**
+     * 获取NaN方式计算时到目前为止计算过的各点错误码的按位或
+     */
+    int getErrorMask() {
+        return mErrorMask;
+    }//getErrorMask
+
+    //计算下一块的结果放入缓冲区，没有剩余的点时返回false
+    private boolean nextBlock() {
+        if (mIndex >= mEnd) {
+            return false;
+        }//if
+
+        if (null == mEvaluator) {
+            mEvaluator = new SweepEvaluator(mCompiledExp, mIsNaNMode);
+            mBuffer = new double[mEvaluator.getBlockSize()];
+        }//if
+
+        if (null == mCursor) {
+            mCursor = mPoints.cursor(mIndex);
+        }//if
+
+        int length = (int)Math.min(mBuffer.length, mEnd - mIndex);
+        try {
+            mCursor.evaluate(mEvaluator, mBuffer, length);
+        } catch (RuntimeException e) {
+            //逐行计算时指令的执行顺序与逐块计算不同，重新逐块计算这一块，抛出与逐块计算相同的异常
+            mCursor = mPoints.cursor(mIndex);
+            mEvaluator.evaluateColumns(mCursor, mBuffer, length);
+        }//try-catch
+        if (mIsNaNMode) {
+            int[] errorCodes = mEvaluator.getErrorCodes();
+            for (int i = 0; i < length; i++) {
+                mErrorMask |= errorCodes[i];
+            }//for
+        }//if
+        mIndex += length;
+        mBufferPos = 0;
+        mBufferLength = length;
+
+        return true;
+    }//nextBlock
+}//class_SweepSpliterator
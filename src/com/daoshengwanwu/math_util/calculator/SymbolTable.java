@@ -0,0 +1,114 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.Arrays;
+
+
+/*
+ * 以字符串为键的开放寻址散列表
+ * 查找时直接比较字符序列中的一段字符，不需要先截取出字符串，词法分析时查找运算符、常量和变量不产生任何对象
+ * 键的散列值与String.hashCode()的算法相同
+ */
+final class SymbolTable<V> {
+    private String[] mKeys;
+    private Object[] mValues;
+    private int mSize = 0;
+
+
+    SymbolTable() {
+        mKeys = new String[16];
+        mValues = new Object[16];
+    }//con_SymbolTable
+
+    /**
+     * 查找seq中[start, end)这段字符对应的值
+     * @return 对应的值，不存在时返回null
+     */
+    @SuppressWarnings("unchecked")
+    V get(CharSequence seq, int start, int end) {
+        int mask = mKeys.length - 1;
+        int index = hash(seq, start, end) & mask;
+
+        String key;
+        while (null != (key = mKeys[index])) {
+            if (isKeyMatch(key, seq, start, end)) {
+                return (V)mValues[index];
+            }//if
+            index = (index + 1) & mask;
+        }//while
+
+        return null;
+    }//get
+
+    V get(String key) {
+        return get(key, 0, key.length());
+    }//get
+
+    void put(String key, V value) {
+        if ((mSize + 1) * 2 > mKeys.length) {
+            resize();
+        }//if
+
+        int mask = mKeys.length - 1;
+        int index = spread(key.hashCode()) & mask;
+        while (null != mKeys[index]) {
+            if (mKeys[index].equals(key)) {
+                mValues[index] = value;
+                return;
+            }//if
+            index = (index + 1) & mask;
+        }//while
+
+        mKeys[index] = key;
+        mValues[index] = value;
+        mSize++;
+    }//put
+
+    int size() {
+        return mSize;
+    }//size
+
+    private void resize() {
+        String[] oldKeys = mKeys;
+        Object[] oldValues = mValues;
+
+        mKeys = new String[oldKeys.length * 2];
+        mValues = new Object[oldKeys.length * 2];
+        mSize = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (null != oldKeys[i]) {
+                @SuppressWarnings("unchecked")
+                V value = (V)oldValues[i];
+                put(oldKeys[i], value);
+            }//if
+        }//for
+        Arrays.fill(oldValues, null);
+    }//resize
+
+    private static boolean isKeyMatch(String key, CharSequence seq, int start, int end) {
+        if (key.length() != end - start) {
+            return false;
+        }//if
+
+        for (int i = start; i < end; i++) {
+            if (key.charAt(i - start) != seq.charAt(i)) {
+                return false;
+            }//if
+        }//for
+
+        return true;
+    }//isKeyMatch
+
+    private static int hash(CharSequence seq, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + seq.charAt(i);
+        }//for
+
+        return spread(hash);
+    }//hash
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }//spread
+}//class_SymbolTable
@@ -2,9 +2,7 @@ package com.daoshengwanwu.math_util.calculator;
 
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import com.daoshengwanwu.math_util.calculator.exception.VariableNotExistException;
 
@@ -16,20 +14,12 @@ import com.daoshengwanwu.math_util.calculator.exception.VariableNotExistExceptio
  * 运算符只由特殊字符组成
  */
 public class VarAriExp {
-    private static Set<Character> sOcSet = new HashSet<>();
-
     private String mExpStr;
     private VariableAssistant mVarAssist;
+    private final NumericPolicy mNumericPolicy;
     private List<ExpItem> mExpItems = new ArrayList<>();
-    
-    
-    static {
-        //初始化sOcSet
-        sOcSet.add(')');
-        sOcSet.add('(');
-        sOcSet.add('|');
-        
-    }//static
+    private volatile CompiledExpression mCompiledExp;
+    private volatile CompiledExpression mCompiledExpOrNaN;
 
 
     public VarAriExp(String expStr) {
@@ -37,69 +27,43 @@ public class VarAriExp {
     }
 
     public VarAriExp(String expStr, VariableAssistant varAssist) {
-        mExpStr = expStr;
+        this(expStr, varAssist, NumericPolicy.getDefault());
+    }//con_VarAriExp
 
-        expStr = expStr + " ";
+    /**
+     * @param expStr 表达式字符串
+     * @param varAssist 变量助手，可以为null
+     * @param numericPolicy 编译本表达式时使用的数值策略
+     */
+    public VarAriExp(String expStr, VariableAssistant varAssist, NumericPolicy numericPolicy) {
+        mExpStr = expStr;
+        mNumericPolicy = numericPolicy;
         mVarAssist = varAssist;
         if (mVarAssist == null) {
             mVarAssist = new VariableAssistant();
         }
 
-        int curIndex;
-        char curChar;
-        String itemStr;
-        int itemStartIndex = -1;
-        boolean isNumberIdentifierOpen = false;
-        boolean isNormalIdentifierOpen = false;
-        boolean isSpecialIdentifierOpen = false;
-
-        mExpItems.add(OperatorAssistant.getStartFlag());
-        for (curIndex = 0; curIndex < expStr.length(); curIndex++) {
-            curChar = expStr.charAt(curIndex);
-
-            if (isNumberIdentifierOpen) {
-                if (isNumberPartCharacter(expStr.charAt(curIndex - 1), curChar)) {
-                    continue;
-                }
-
-                isNumberIdentifierOpen = false;
-                itemStr = expStr.substring(itemStartIndex, curIndex);
-                mExpItems.add(analysisOperand(itemStr));
-            } else if (isSpecialIdentifierOpen) {
-                if (isSpecialIdentifierPartCharacter(curChar) && !sOcSet.contains(curChar)) {
-                    continue;
-                }
-
-                isSpecialIdentifierOpen = false;
-                itemStr = expStr.substring(itemStartIndex, curIndex);
-                mExpItems.add(analysisOperator(itemStr));
-            } else if (isNormalIdentifierOpen) {
-                if (isNormalIdentifierPartCharacter(curChar)) {
-                    continue;
-                }
-
-                isNormalIdentifierOpen = false;
-                itemStr = expStr.substring(itemStartIndex, curIndex);
-                mExpItems.add(analysisNormalIdentifier(itemStr));
-            }
-
-            if (!isBlankCharacter(curChar)) {
-                itemStartIndex = curIndex;
-
-                if (isNumberStartCharacter(curChar)) {
-                    isNumberIdentifierOpen = true;
-                } else if (isSpecialIdentifierStartCharacter(curChar)) {
-                    if (!sOcSet.contains(curChar)) {
-                        isSpecialIdentifierOpen = true;
-                    } else {
-                        mExpItems.add(analysisOperator(String.valueOf(curChar)));
-                    }
-                } else if (isNormalIdentifierStartCharacter(curChar)) {
-                    isNormalIdentifierOpen = true;
-                }
-            }
-        }
-        mExpItems.add(OperatorAssistant.getEndFlag());
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        RuntimeException failure = null;
+        try {
+            ExpressionLexer lexer = new ExpressionLexer(expStr, 0, expStr.length());
+            ExpressionParser parser = new ExpressionParser(mVarAssist);
+            int tokenType;
+
+            mExpItems.add(OperatorAssistant.getStartFlag());
+            while ((tokenType = lexer.next()) != ExpressionLexer.END) {
+                mExpItems.add(parser.parseToken(lexer, tokenType));
+            }//while
+            mExpItems.add(OperatorAssistant.getEndFlag());
+        } catch (RuntimeException e) {
+            failure = e;
+        }//try-catch
+        event.finish(expStr, mExpItems, failure);
+
+        if (null != failure) {
+            throw failure;
+        }//if
     }//con_VarAriExp
 
     public VarAriExp setVariableValue(String flagStr, double value) {
@@ -111,10 +75,48 @@ public class VarAriExp {
         return mVarAssist;
     }//getVariableAssistant
 
+    public NumericPolicy getNumericPolicy() {
+        return mNumericPolicy;
+    }//getNumericPolicy
+
     public Variable getVariable(String flagStr) {
         return mVarAssist.getVariable(flagStr);
     }
 
+    /**
+     * 获取表达式按其数值策略编译（并优化）后的结果，只在第一次调用时编译
+     * 表达式的项在构造后不再改变，编译结果也不可变，多个线程并发调用最多只会重复编译，结果相同
+     * @return 编译后的表达式
+     */
+    public CompiledExpression getCompiledExpression() {
+        CompiledExpression compiledExp = mCompiledExp;
+        if (null == compiledExp) {
+            compiledExp = ExpressionOptimizer.optimize(ExpressionCompiler.compile(this));
+            mCompiledExp = compiledExp;
+        }//if
+
+        return compiledExp;
+    }//getCompiledExpression
+
+    /**
+     * 获取以NaN方式求值（evaluateOrNaN、sweepOrNaN等）时使用的编译结果，只在第一次调用时编译
+     * 与getCompiledExpression()不同，超出定义域的常量子表达式（如sqrt(cos(2))）不在编译时抛出异常，
+     * 而是不折叠，以NaN方式求值时得到NaN和错误码；已经按getCompiledExpression()编译过时直接返回其结果
+     * @return 编译后的表达式
+     */
+    public CompiledExpression getCompiledExpressionOrNaN() {
+        CompiledExpression compiledExp = mCompiledExp;
+        if (null == compiledExp) {
+            compiledExp = mCompiledExpOrNaN;
+        }//if
+        if (null == compiledExp) {
+            compiledExp = ExpressionOptimizer.optimizeOrNaN(ExpressionCompiler.compile(this));
+            mCompiledExpOrNaN = compiledExp;
+        }//if
+
+        return compiledExp;
+    }//getCompiledExpressionOrNaN
+
     @Override
     public String toString() {
         return mExpStr;
@@ -123,60 +125,4 @@ public class VarAriExp {
     List<ExpItem> getExpItemList() {
         return mExpItems;
     }//getExpItemList
-    
-    private ExpItem analysisNormalIdentifier(String itemStr) {
-        if (OperatorAssistant.isIdentifierAlreadyExist(itemStr)) {
-            return analysisOperator(itemStr);
-        } else if (Operand.hasConstant(itemStr)) { 
-            return Operand.getConstant(itemStr);
-        } else {
-            return mVarAssist.getVariable(itemStr);
-        }
-    }//analysisIdentifier
-    
-    private ExpItem analysisOperator(String itemStr) {
-        Operator operator = OperatorAssistant.getOperator(itemStr);
-        if (!operator.isCertain()) {
-            operator = ((UncertainOperator)operator).
-                    getCertainOperator(mExpItems.get(mExpItems.size() - 1));
-        }
-
-        return operator;
-    }//analysisOperator
-    
-    private ExpItem analysisOperand(String itemStr) {
-        return Operand.getOperand(itemStr);
-    }//analysisOperand
-
-    private boolean isBlankCharacter(char c) {
-        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
-    }
-
-    private boolean isNumberPartCharacter(char preC, char curC) {
-        return curC >= '0' && curC <= '9' || curC == '.' ||
-                curC == 'e' || curC == '-' && preC == 'e';
-    }
-
-    private boolean isNormalIdentifierPartCharacter(char c) {
-        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' ||
-                c >= '0' && c <= '9' || c == '_';
-    }
-
-    private boolean isSpecialIdentifierPartCharacter(char c) {
-        return (c < '0' || c > '9') && (c < 'a' || c > 'z') &&
-                (c < 'A' || c > 'Z') && !isBlankCharacter(c);
-    }
-
-    private boolean isNumberStartCharacter(char c) {
-        return c >= '0' && c <= '9' || c == '.';
-    }
-
-    private boolean isNormalIdentifierStartCharacter(char c) {
-        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
-    }
-
-    private boolean isSpecialIdentifierStartCharacter(char c) {
-        return !isNumberStartCharacter(c) &&
-                !isNormalIdentifierStartCharacter(c) && !isBlankCharacter(c);
-    }
 }//class_VarAriExp
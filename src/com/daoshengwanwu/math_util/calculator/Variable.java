@@ -38,11 +38,7 @@ public class Variable extends ExpItem {
 
     public double nextValue() {
         if (hasNext()) {
-            if (mCurValue + mSpan <= mUpperLimit) {
-                mCurValue += mSpan;
-            } else {
-                mCurValue = mUpperLimit;
-            }//if-else
+            mCurValue = stepValue(mCurValue, mSpan, mUpperLimit);
 
             return mCurValue;
         }//if
@@ -50,6 +46,15 @@ public class Variable extends ExpItem {
         throw new NoNextValueException(mFlagStr);
     }//nextValue
 
+    /**
+     * 计算跨度为span、上限为upperLimit的变量在当前值为value时，nextValue()将会得到的下一个值
+     * @param value 当前值，应小于上限
+     * @return 下一个值
+     */
+    static double stepValue(double value, double span, double upperLimit) {
+        return value + span <= upperLimit ? value + span : upperLimit;
+    }//stepValue
+
     public double curValue() {
         if (!mIsValueSet) {
             throw new VariableValueNotInitException();
@@ -126,11 +131,20 @@ public class Variable extends ExpItem {
         mIsValueSet = true;
     }
 
+    public String getFlagStr() {
+        return mFlagStr;
+    }//getFlagStr
+
     @Override
     public String toString() {
         return mFlagStr;
     }//toString
 
+    //当前值是否已经设置过，未设置时curValue()会抛出异常
+    boolean isValueSet() {
+        return mIsValueSet;
+    }//isValueSet
+
     public boolean isSet() {
         return mLowerLimit <= mUpperLimit;
     }//isSet
@@ -5,7 +5,9 @@ import com.daoshengwanwu.math_util.calculator.exception.VarAssistHasNoNextValueE
 import com.daoshengwanwu.math_util.calculator.exception.VarIdentifierAlreadyExistException;
 import com.daoshengwanwu.math_util.calculator.exception.VariableNotExistException;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 
@@ -81,6 +83,11 @@ public class VariableAssistant {
         throw new VarAssistHasNoNextValueException();
     }//nextValue
 
+    //按照变量加入的顺序返回所有变量
+    List<Variable> getVariables() {
+        return new ArrayList<>(mVariablesMap.values());
+    }//getVariables
+
     public void clear() {
         mVariablesMap.clear();
     }//clear
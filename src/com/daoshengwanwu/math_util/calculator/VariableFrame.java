@@ -0,0 +1,87 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import com.daoshengwanwu.math_util.calculator.exception.VariableNotExistException;
+import com.daoshengwanwu.math_util.calculator.util.DoubleStack;
+
+
+/**
+ * 变量帧，保存一次求值所需的全部可变状态：各变量的值、求值栈以及公共子表达式的临时槽位
+ * 同一个CompiledExpression可以被多个线程同时求值，只要每个线程使用自己的VariableFrame即可
+ * VariableFrame本身不是线程安全的，不应在线程之间共享
+ */
+public final class VariableFrame {
+    private final CompiledExpression mCompiledExp;
+    private final double[] mValues;
+    private final DoubleStack mStack;
+    private final double[] mTemps;
+    private int mErrorCode = DomainError.NONE;
+    private DualEvaluator mDualEvaluator; //第一次求偏导数时才创建
+
+
+    VariableFrame(CompiledExpression compiledExp) {
+        mCompiledExp = compiledExp;
+        mValues = new double[compiledExp.getVariableCount()];
+        mStack = new DoubleStack(compiledExp.getMaxDepth());
+        mTemps = new double[compiledExp.getTempCount()];
+    }//con_VariableFrame
+
+    public VariableFrame setValue(String flagStr, double value) {
+        int index = mCompiledExp.getVariableIndex(flagStr);
+        if (index < 0) {
+            throw new VariableNotExistException(flagStr);
+        }//if
+
+        mValues[index] = value;
+        return this;
+    }//setValue
+
+    public VariableFrame setValue(int index, double value) {
+        mValues[index] = value;
+        return this;
+    }//setValue
+
+    public double getValue(int index) {
+        return mValues[index];
+    }//getValue
+
+    /**
+     * 获取保存变量值的数组，下标为变量槽位，直接修改该数组等同于调用setValue
+     * @return 变量值数组
+     */
+    public double[] getValues() {
+        return mValues;
+    }//getValues
+
+    public CompiledExpression getCompiledExpression() {
+        return mCompiledExp;
+    }//getCompiledExpression
+
+    /**
+     * 获取上一次以NaN方式求值（CompiledExpression.evaluateOrNaN）的错误码
+     * @return 错误码（见DomainError），没有出错时为DomainError.NONE
+     */
+    public int getErrorCode() {
+        return mErrorCode;
+    }//getErrorCode
+
+    void setErrorCode(int errorCode) {
+        mErrorCode = errorCode;
+    }//setErrorCode
+
+    DoubleStack getStack() {
+        return mStack;
+    }//getStack
+
+    double[] getTemps() {
+        return mTemps;
+    }//getTemps
+
+    DualEvaluator getDualEvaluator() {
+        if (null == mDualEvaluator) {
+            mDualEvaluator = new DualEvaluator(mCompiledExp, true);
+        }//if
+
+        return mDualEvaluator;
+    }//getDualEvaluator
+}//class_VariableFrame
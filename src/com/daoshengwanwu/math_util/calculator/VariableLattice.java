@@ -0,0 +1,419 @@
+package com.daoshengwanwu.math_util.calculator;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.daoshengwanwu.math_util.calculator.exception.VariableNotSetException;
+
+
+/**
+ * 由若干变量的取值范围组成的笛卡尔积网格
+ * 每个变量是一个坐标轴，第i个坐标由下标直接算出：lower + i * span，最后一个坐标总是upper，
+ * 不像Variable.nextValue()那样逐次累加，因此不会随着下标增大而积累误差，也可以直接定位到任意一点
+ * 网格上的点按下标排列，第一个轴变化最快：
+ * 点的下标 = i0 + n0 * (i1 + n1 * (i2 + ...))，其中ik为第k个轴上的下标，nk为第k个轴上的坐标个数
+ * 因此任意一段下标区间都可以独立计算，网格可以按下标区间拆分给多个线程，或者从任意一点继续
+ * 网格在构造时复制各变量的上下限和跨度，之后是不可变的，可被多个线程同时使用
+ */
+public final class VariableLattice {
+    //判断上下限之差是否恰好为跨度的整数倍时允许的相对误差
+    private static final double STEP_TOLERANCE = 1e-9;
+
+    private final Variable[] mVariables;
+    private final double[] mLowerLimits;
+    private final double[] mUpperLimits;
+    private final double[] mSpans;
+    private final long[] mAxisSizes;
+    private final long mSize;
+
+
+    /**
+     * 以变量助手中所有已设置取值范围的变量为坐标轴，轴的顺序与变量加入的顺序相同
+     * @param varAssist 变量助手
+     */
+    public VariableLattice(VariableAssistant varAssist) {
+        this(setVariablesOf(varAssist));
+    }//con_VariableLattice
+
+    /**
+     * 以给定的变量为坐标轴
+     * @param variables 各轴的变量，都必须已设置取值范围
+     * @throws VariableNotSetException 有变量没有设置取值范围时
+     */
+    public VariableLattice(Variable... variables) {
+        mVariables = variables.clone();
+        mLowerLimits = new double[variables.length];
+        mUpperLimits = new double[variables.length];
+        mSpans = new double[variables.length];
+        mAxisSizes = new long[variables.length];
+
+        long size = 1;
+        for (int axis = 0; axis < variables.length; axis++) {
+            Variable variable = variables[axis];
+            if (!variable.isSet()) {
+                throw new VariableNotSetException(variable.getFlagStr());
+            }//if
+
+            mLowerLimits[axis] = variable.getLowerLimit();
+            mUpperLimits[axis] = variable.getUpperLimit();
+            mSpans[axis] = variable.getSpan();
+            mAxisSizes[axis] = axisSize(mLowerLimits[axis], mUpperLimits[axis], mSpans[axis]);
+            size = Math.multiplyExact(size, mAxisSizes[axis]);
+        }//for
+        mSize = size;
+    }//con_VariableLattice
+
+    /**
+     * 获取网格的维数，即坐标轴的个数
+     * @return 维数
+     */
+    public int getDimension() {
+        return mVariables.length;
+    }//getDimension
+
+    /**
+     * 获取网格的点数，即各轴坐标个数之积
+     * @return 点数
+     */
+    public long size() {
+        return mSize;
+    }//size
+
+    public Variable getVariable(int axis) {
+        return mVariables[axis];
+    }//getVariable
+
+    /**
+     * 获取变量名对应的坐标轴
+     * @param flagStr 变量名
+     * @return 坐标轴，不存在时返回-1
+     */
+    public int getAxis(String flagStr) {
+        for (int axis = 0; axis < mVariables.length; axis++) {
+            if (mVariables[axis].getFlagStr().equals(flagStr)) {
+                return axis;
+            }//if
+        }//for
+
+        return -1;
+    }//getAxis
+
+    /**
+     * 获取坐标轴上的坐标个数
+     * @param axis 坐标轴
+     * @return 坐标个数
+     */
+    public long getAxisSize(int axis) {
+        return mAxisSizes[axis];
+    }//getAxisSize
+
+    /**
+     * 获取坐标轴上第index个坐标
+     * @param axis 坐标轴
+     * @param index 坐标下标，位于[0, getAxisSize(axis))
+     * @return 坐标值
+     */
+    public double getCoordinate(int axis, long index) {
+        if (index == mAxisSizes[axis] - 1) {
+            return mUpperLimits[axis];
+        }//if
+
+        return mLowerLimits[axis] + index * mSpans[axis];
+    }//getCoordinate
+
+    /**
+     * 获取第index个点在坐标轴axis上的下标
+     * @param index 点的下标，位于[0, size())
+     * @param axis 坐标轴
+     * @return 该轴上的下标
+     */
+    public long getAxisIndex(long index, int axis) {
+        for (int k = 0; k < axis; k++) {
+            index /= mAxisSizes[k];
+        }//for
+
+        return index % mAxisSizes[axis];
+    }//getAxisIndex
+
+    /**
+     * 由各轴上的下标计算点的下标
+     * @param axisIndices 各轴上的下标
+     * @return 点的下标
+     */
+    public long getIndex(long... axisIndices) {
+        long index = 0;
+        for (int axis = mAxisSizes.length - 1; axis >= 0; axis--) {
+            index = index * mAxisSizes[axis] + axisIndices[axis];
+        }//for
+
+        return index;
+    }//getIndex
+
+    /**
+     * 获取第index个点的坐标
+     * @param index 点的下标，位于[0, size())
+     * @param coordinates 用于保存各轴坐标的数组，长度不小于getDimension()
+     * @return coordinates
+     */
+    public double[] getPoint(long index, double[] coordinates) {
+        for (int axis = 0; axis < mAxisSizes.length; axis++) {
+            coordinates[axis] = getCoordinate(axis, index % mAxisSizes[axis]);
+            index /= mAxisSizes[axis];
+        }//for
+
+        return coordinates;
+    }//getPoint
+
+    public double getLowerLimit(int axis) {
+        return mLowerLimits[axis];
+    }//getLowerLimit
+
+    public double getUpperLimit(int axis) {
+        return mUpperLimits[axis];
+    }//getUpperLimit
+
+    public double getSpan(int axis) {
+        return mSpans[axis];
+    }//getSpan
+
+    /**
+     * 把下标区间[from, to)尽量均匀地拆分为partCount段
+     * @return 长度为partCount + 1的数组，第k段为[bounds[k], bounds[k + 1])
+     */
+    public static long[] split(long from, long to, int partCount) {
+        long[] bounds = new long[partCount + 1];
+        long length = to - from;
+        for (int k = 0; k <= partCount; k++) {
+            bounds[k] = from + length / partCount * k + Math.min(k, length % partCount);
+        }//for
+
+        return bounds;
+    }//split
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int axis = 0; axis < mVariables.length; axis++) {
+            if (axis > 0) {
+                builder.append(" × ");
+            }//if
+            builder.append(mVariables[axis].getFlagStr())
+                    .append('[').append(mLowerLimits[axis]).append(", ").append(mUpperLimits[axis])
+                    .append("; ").append(mSpans[axis]).append(']');
+        }//for
+
+        return builder.toString();
+    }//toString
+
+    /**
+     * 把从第start个点开始的length个点的坐标按轴写入各列的第0到length - 1行
+     * @param columnsByAxis 各轴的列，长度不小于length
+     */
+    void fillCoordinates(long start, double[][] columnsByAxis, int length) {
+        long[] axisIndices = toAxisIndices(start, new long[mAxisSizes.length]);
+        for (int row = 0; row < length; row++) {
+            for (int axis = 0; axis < axisIndices.length; axis++) {
+                columnsByAxis[axis][row] = getCoordinate(axis, axisIndices[axis]);
+            }//for
+            advance(axisIndices);
+        }//for
+    }//fillCoordinates
+
+    /**
+     * 把网格与编译后的表达式的变量槽位对应起来：坐标轴上的变量按对象本身、其次按变量名对应到槽位，
+     * 表达式用到、但不在网格中的变量取其当前值
+     */
+    PointSource bind(CompiledExpression compiledExp) {
+        return new Binding(compiledExp);
+    }//bind
+
+    private static Variable[] setVariablesOf(VariableAssistant varAssist) {
+        List<Variable> variables = new ArrayList<>();
+        for (Variable variable : varAssist.getVariables()) {
+            if (variable.isSet()) {
+                variables.add(variable);
+            }//if
+        }//for
+
+        return variables.toArray(new Variable[0]);
+    }//setVariablesOf
+
+    private long[] toAxisIndices(long index, long[] axisIndices) {
+        for (int axis = 0; axis < axisIndices.length; axis++) {
+            axisIndices[axis] = index % mAxisSizes[axis];
+            index /= mAxisSizes[axis];
+        }//for
+
+        return axisIndices;
+    }//toAxisIndices
+
+    //按"里程表"的方式前进到下一个点：第一个轴加一，到头后归零并进位到下一个轴
+    private void advance(long[] axisIndices) {
+        for (int axis = 0; axis < axisIndices.length; axis++) {
+            if (++axisIndices[axis] < mAxisSizes[axis]) {
+                return;
+            }//if
+            axisIndices[axis] = 0;
+        }//for
+    }//advance
+
+    //上下限之差在误差范围内恰好是跨度的整数倍时，upper本身就是最后一个坐标；否则upper是额外的最后一个坐标
+    private static long axisSize(double lowerLimit, double upperLimit, double span) {
+        if (lowerLimit == upperLimit) {
+            return 1;
+        }//if
+
+        double steps = (upperLimit - lowerLimit) / span;
+        double roundSteps = Math.rint(steps);
+        if (Math.abs(steps - roundSteps) <= STEP_TOLERANCE * Math.max(1, roundSteps)) {
+            return (long)roundSteps + 1;
+        }//if
+
+        return (long)Math.floor(steps) + 2;
+    }//axisSize
+
+
+    private final class Binding implements PointSource {
+        //mSlots[axis]为该轴在表达式中的槽位，表达式没有用到该轴时为-1
+        private final int[] mSlots;
+        private final int[] mFixedSlots;
+        private final double[] mFixedValues;
+        //逐行计算时第一个轴是内层变量：mInnerSlot为其槽位，表达式没有用到时为-1；
+        //mAxisCoordinates为第一个轴上的所有坐标，轴太长时为null；不能逐行计算时mIsRowwise为false
+        private final int mSlotCount;
+        private final boolean mIsRowwise;
+        private final int mInnerSlot;
+        private final double[] mAxisCoordinates;
+
+
+        Binding(CompiledExpression compiledExp) {
+            boolean[] isBound = new boolean[compiledExp.getVariableCount()];
+
+            mSlots = new int[mVariables.length];
+            for (int axis = 0; axis < mVariables.length; axis++) {
+                int slot = compiledExp.slotOf(mVariables[axis]);
+                mSlots[axis] = slot;
+                if (slot >= 0) {
+                    isBound[slot] = true;
+                }//if
+            }//for
+
+            int fixedCount = 0;
+            int[] fixedSlots = new int[isBound.length];
+            double[] fixedValues = new double[isBound.length];
+            for (int slot = 0; slot < isBound.length; slot++) {
+                if (!isBound[slot] && compiledExp.isVariableReferenced(slot)) {
+                    fixedSlots[fixedCount] = slot;
+                    fixedValues[fixedCount++] = compiledExp.getVariable(slot).curValue();
+                }//if
+            }//for
+            mFixedSlots = Arrays.copyOf(fixedSlots, fixedCount);
+            mFixedValues = Arrays.copyOf(fixedValues, fixedCount);
+            mSlotCount = isBound.length;
+
+            //第一个轴的变量同时出现在其他轴上时，逐个填列时后面的轴覆盖前面的，逐行计算无法保持这一点
+            boolean isRowwise = mSlots.length > 0 && mAxisSizes[0] >= SweepEvaluator.MIN_ROW_LENGTH;
+            for (int axis = 1; axis < mSlots.length && isRowwise; axis++) {
+                isRowwise = mSlots[0] < 0 || mSlots[axis] != mSlots[0];
+            }//for
+            mIsRowwise = isRowwise;
+            mInnerSlot = isRowwise && mSlots[0] >= 0 && compiledExp.isVariableReferenced(mSlots[0]) ? mSlots[0] : -1;
+            if (mInnerSlot >= 0 && mAxisSizes[0] <= SweepEvaluator.MAX_AXIS_LENGTH) {
+                mAxisCoordinates = new double[(int)mAxisSizes[0]];
+                for (int i = 0; i < mAxisCoordinates.length; i++) {
+                    mAxisCoordinates[i] = getCoordinate(0, i);
+                }//for
+            } else {
+                mAxisCoordinates = null;
+            }//if-else
+        }//con_Binding
+
+        @Override
+        public long size() {
+            return mSize;
+        }//size
+
+        @Override
+        public Cursor cursor(long start) {
+            return new LatticeCursor(start);
+        }//cursor
+
+
+        private final class LatticeCursor implements Cursor {
+            private final long[] mAxisIndices;
+            //以下在第一次逐行计算时才创建
+            private double[] mValues; //各槽位上变量的值
+            private double[] mRowCoordinates; //没有mAxisCoordinates时，当前行在第一个轴上的坐标
+
+
+            LatticeCursor(long start) {
+                mAxisIndices = toAxisIndices(start, new long[mVariables.length]);
+            }//con_LatticeCursor
+
+            //网格的每一行是第一个轴上连续的一段，其余各轴的坐标不变
+            @Override
+            public void evaluate(SweepEvaluator evaluator, double[] out, int length) {
+                if (!mIsRowwise || !evaluator.isRowEnabled()) {
+                    evaluator.evaluateColumns(this, out, length);
+                    return;
+                }//if
+
+                if (null == mValues) {
+                    mValues = new double[mSlotCount];
+                    for (int i = 0; i < mFixedSlots.length; i++) {
+                        mValues[mFixedSlots[i]] = mFixedValues[i];
+                    }//for
+                }//if
+
+                int done = 0;
+                while (done < length) {
+                    int count = (int)Math.min(length - done, mAxisSizes[0] - mAxisIndices[0]);
+                    for (int axis = 1; axis < mSlots.length; axis++) {
+                        if (mSlots[axis] >= 0) {
+                            mValues[mSlots[axis]] = getCoordinate(axis, mAxisIndices[axis]);
+                        }//if
+                    }//for
+
+                    if (mInnerSlot < 0) {
+                        evaluator.evaluateRow(mValues, -1, null, 0, false, out, done, count);
+                    } else if (null != mAxisCoordinates) {
+                        evaluator.evaluateRow(mValues, mInnerSlot, mAxisCoordinates, (int)mAxisIndices[0], true,
+                                out, done, count);
+                    } else {
+                        if (null == mRowCoordinates) {
+                            mRowCoordinates = new double[evaluator.getBlockSize()];
+                        }//if
+                        for (int k = 0; k < count; k++) {
+                            mRowCoordinates[k] = getCoordinate(0, mAxisIndices[0] + k);
+                        }//for
+                        evaluator.evaluateRow(mValues, mInnerSlot, mRowCoordinates, 0, false, out, done, count);
+                    }//if-else
+
+                    mAxisIndices[0] += count - 1;
+                    advance(mAxisIndices);
+                    done += count;
+                }//while
+            }//evaluate
+
+            @Override
+            public void fillColumns(double[][] columnsBySlot, int length) {
+                for (int i = 0; i < mFixedSlots.length; i++) {
+                    Arrays.fill(columnsBySlot[mFixedSlots[i]], 0, length, mFixedValues[i]);
+                }//for
+
+                for (int row = 0; row < length; row++) {
+                    for (int axis = 0; axis < mSlots.length; axis++) {
+                        double[] column = mSlots[axis] < 0 ? null : columnsBySlot[mSlots[axis]];
+                        if (null != column) {
+                            column[row] = getCoordinate(axis, mAxisIndices[axis]);
+                        }//if
+                    }//for
+
+                    advance(mAxisIndices);
+                }//for
+            }//fillColumns
+        }//class_LatticeCursor
+    }//class_Binding
+}//class_VariableLattice
@@ -0,0 +1,11 @@
+package com.daoshengwanwu.math_util.calculator.exception;
+
+
+public class ExpressionTooLargeException extends RuntimeException {
+    private static final long serialVersionUID = -3518702264180423917L;
+
+
+    public ExpressionTooLargeException(String expStr, String limitStr) {
+        super("表达式过大，超出了" + limitStr + "的限制：" + expStr);
+    }
+}
@@ -0,0 +1,11 @@
+package com.daoshengwanwu.math_util.calculator.exception;
+
+
+public class FrameNotMatchException extends RuntimeException {
+    private static final long serialVersionUID = 5209864718806539132L;
+
+
+    public FrameNotMatchException(String expStr) {
+        super("VariableFrame不是由该表达式创建的：" + expStr);
+    }
+}
@@ -4,8 +4,42 @@ package com.daoshengwanwu.math_util.calculator.exception;
 public class OperandOutOfBoundsException extends RuntimeException {
     private static final long serialVersionUID = 830822729160070834L;
 
+    private final String mOperatorStr;
+    private final String mBounds;
+    private final double mOperand;
+
 
     public OperandOutOfBoundsException(String operatorStr, String bounds, double operand) {
-        super("操作数范围异常：" + operatorStr + "运算符要求操作数的范围为：" + bounds + ", 实际传入的操作数为：" + operand);
+        this(operatorStr, bounds, operand, true);
+    }
+
+    /**
+     * @param writableStackTrace 为false时不记录调用栈，用于异常会被捕获后丢弃的批量求值路径，
+     *                           这些路径上填充调用栈的开销远大于一次运算
+     */
+    public OperandOutOfBoundsException(String operatorStr, String bounds, double operand,
+                                       boolean writableStackTrace) {
+        super(null, null, true, writableStackTrace);
+        mOperatorStr = operatorStr;
+        mBounds = bounds;
+        mOperand = operand;
+    }
+
+    //消息在读取时才拼接，捕获后直接丢弃的异常不必格式化
+    @Override
+    public String getMessage() {
+        return "操作数范围异常：" + mOperatorStr + "运算符要求操作数的范围为：" + mBounds + ", 实际传入的操作数为：" + mOperand;
+    }
+
+    public String getOperatorStr() {
+        return mOperatorStr;
+    }
+
+    public String getBounds() {
+        return mBounds;
+    }
+
+    public double getOperand() {
+        return mOperand;
     }
 }
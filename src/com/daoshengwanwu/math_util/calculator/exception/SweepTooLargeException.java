@@ -0,0 +1,11 @@
+package com.daoshengwanwu.math_util.calculator.exception;
+
+
+public class SweepTooLargeException extends RuntimeException {
+    private static final long serialVersionUID = 6902918274065313482L;
+
+
+    public SweepTooLargeException(long resultCount) {
+        super("结果个数超出了数组所能容纳的上限：" + resultCount);
+    }
+}
@@ -0,0 +1,11 @@
+package com.daoshengwanwu.math_util.calculator.exception;
+
+
+public class VariableColumnNotSetException extends RuntimeException {
+    private static final long serialVersionUID = -2716038459127365840L;
+
+
+    public VariableColumnNotSetException(String flagStr) {
+        super("批量计算时没有提供变量的输入列：" + flagStr);
+    }
+}
@@ -2,5 +2,14 @@ package com.daoshengwanwu.math_util.calculator.exception;
 
 
 public class VariableNotSetException extends RuntimeException {
+    private static final long serialVersionUID = -3349167722416031935L;
 
+
+    public VariableNotSetException() {
+        super();
+    }
+
+    public VariableNotSetException(String flagStr) {
+        super(flagStr + "变量还没有设置取值范围");
+    }
 }
@@ -0,0 +1,48 @@
+package com.daoshengwanwu.math_util.calculator.util;
+
+
+/**
+ * 容量固定的double栈，元素直接存放在double数组中，入栈出栈都不会产生任何对象
+ * 容量在创建时确定，调用者需保证栈深不超过容量
+ */
+public class DoubleStack {
+    private final double[] mElems;
+    private int mSize = 0;
+
+
+    public DoubleStack(int capacity) {
+        mElems = new double[capacity];
+    }//con_DoubleStack
+
+    public void push(double elem) {
+        mElems[mSize++] = elem;
+    }//push
+
+    public double pop() {
+        return mElems[--mSize];
+    }//pop
+
+    public double getTop() {
+        return mElems[mSize - 1];
+    }//getTop
+
+    public void setTop(double elem) {
+        mElems[mSize - 1] = elem;
+    }//setTop
+
+    public int size() {
+        return mSize;
+    }//size
+
+    public int capacity() {
+        return mElems.length;
+    }//capacity
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }//isEmpty
+
+    public void clear() {
+        mSize = 0;
+    }//clear
+}//class_DoubleStack